@@ -5,6 +5,7 @@ import java.util.List;
 
 import com.alibaba.otter.canal.client.impl.ClusterCanalConnector;
 import com.alibaba.otter.canal.client.impl.ClusterNodeAccessStrategy;
+import com.alibaba.otter.canal.client.impl.PrefetchCanalConnector;
 import com.alibaba.otter.canal.client.impl.SimpleCanalConnector;
 import com.alibaba.otter.canal.client.impl.SimpleNodeAccessStrategy;
 import com.alibaba.otter.canal.common.zookeeper.ZkClientx;
@@ -34,6 +35,26 @@ public class CanalConnectors {
         return canalConnector;
     }
 
+    /**
+     * 创建预取数据的单链接客户端，后台线程保持prefetchSize个批次在传输中，ack异步按顺序发送
+     *
+     * @param address
+     * @param destination
+     * @param username
+     * @param password
+     * @param prefetchSize
+     * @return
+     */
+    public static CanalConnector newPrefetchConnector(SocketAddress address, String destination, String username,
+                                                      String password, int prefetchSize) {
+        SimpleCanalConnector canalConnector = new SimpleCanalConnector(address, username, password, destination);
+        canalConnector.setSoTimeout(60 * 1000);
+        canalConnector.setIdleTimeout(60 * 60 * 1000);
+        PrefetchCanalConnector prefetchConnector = new PrefetchCanalConnector(canalConnector);
+        prefetchConnector.setPrefetchSize(prefetchSize);
+        return prefetchConnector;
+    }
+
     /**
      * 创建带cluster模式的客户端链接，自动完成failover切换
      *
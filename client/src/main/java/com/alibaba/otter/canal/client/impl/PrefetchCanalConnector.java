@@ -0,0 +1,336 @@
+package com.alibaba.otter.canal.client.impl;
+
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.client.CanalConnector;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+
+/**
+ * 预取版本的connector，在后台线程中持续接收数据，get时直接从本地队列返回
+ *
+ * <pre>
+ * 1. 基于{@linkplain SimpleCanalConnector}的流式订阅，server端最多推送prefetchSize个未ack的批次，本地队列的大小也因此有界
+ * 2. Entry的反序列化在后台reader线程中完成，业务线程拿到的是已经解析好的Message
+ * 3. ack异步发送，按照get返回的顺序放行，业务乱序ack时会等前面的批次都ack之后再发给server
+ * 4. rollback和ack在同一个线程中发送，保证在之前的ack之后到达server，本地已预取的旧批次在get时丢弃，rollback(batchId)也回滚所有批次
+ * 5. 流式订阅的batchSize/timeout以第一次get为准，未指定timeout时使用fetchTimeout，reader依赖server定期推送的空批次检查状态
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class PrefetchCanalConnector implements CanalConnector {
+
+    private static final Logger          logger       = LoggerFactory.getLogger(PrefetchCanalConnector.class);
+    private final SimpleCanalConnector   connector;
+    private int                          prefetchSize = 4;                                                      // 允许预取的批次数量，即server端流式推送的窗口
+    private long                         fetchTimeout = 1000;                                                   // 第一次get未指定timeout时，流式订阅使用的timeout，单位ms
+
+    private final BlockingQueue<Batch>   batches      = new LinkedBlockingQueue<Batch>();
+    private final LinkedList<AckRequest> ackRequests  = new LinkedList<AckRequest>();                          // 已经返回给业务、还未发送ack的批次，按返回顺序排列
+    private ExecutorService              ackExecutor;
+    private Thread                       reader;
+    private volatile boolean             reading      = false;
+    private volatile Throwable           failure;                                                               // reader或者ack线程中的异常，下一次调用时抛出
+
+    public PrefetchCanalConnector(SimpleCanalConnector connector){
+        this.connector = connector;
+    }
+
+    public void connect() throws CanalClientException {
+        connector.setStreamWindow(prefetchSize);
+        failure = null;
+        ackExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "canal-client-ack");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        connector.connect();
+    }
+
+    public void disconnect() throws CanalClientException {
+        reading = false;
+        if (ackExecutor != null) {
+            ackExecutor.shutdown(); // 已经提交的ack仍然会发出
+            try {
+                ackExecutor.awaitTermination(connector.getSoTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ackExecutor = null;
+        }
+
+        connector.disconnect(); // 关闭socket，阻塞在读取上的reader会直接退出
+        joinReader();
+        discardPrefetched();
+    }
+
+    public boolean checkValid() throws CanalClientException {
+        return connector.checkValid();
+    }
+
+    public void subscribe(String filter) throws CanalClientException {
+        boolean prefetching = stopReader();
+        connector.subscribe(filter);
+        if (prefetching) {
+            // 等待订阅结果时server推送的数据被跳过，回滚之后从上一次ack的位置重新推送
+            rollback();
+        }
+    }
+
+    public void subscribe() throws CanalClientException {
+        subscribe(""); // 传递空字符即可
+    }
+
+    public void unsubscribe() throws CanalClientException {
+        stopReader();
+        connector.unsubscribe();
+        discardPrefetched();
+    }
+
+    public Message get(int batchSize) throws CanalClientException {
+        return get(batchSize, null, null);
+    }
+
+    public Message get(int batchSize, Long timeout, TimeUnit unit) throws CanalClientException {
+        Message message = getWithoutAck(batchSize, timeout, unit);
+        ack(message.getId());
+        return message;
+    }
+
+    public Message getWithoutAck(int batchSize) throws CanalClientException {
+        return getWithoutAck(batchSize, null, null);
+    }
+
+    public Message getWithoutAck(int batchSize, Long timeout, TimeUnit unit) throws CanalClientException {
+        checkFailure();
+        if (unit == null) {
+            unit = TimeUnit.MILLISECONDS;
+        }
+        long waitMillis = (timeout == null || timeout < 0) ? 0 : unit.toMillis(timeout); // 未指定timeout时有多少取多少
+        if (!reading) {
+            startReader((batchSize <= 0) ? 1000 : batchSize, (waitMillis > 0) ? waitMillis : fetchTimeout);
+        }
+
+        long deadline = System.currentTimeMillis() + waitMillis;
+        try {
+            for (;;) {
+                long remain = deadline - System.currentTimeMillis();
+                Batch batch = (remain > 0) ? batches.poll(remain, TimeUnit.MILLISECONDS) : batches.poll();
+                if (batch == null) {
+                    checkFailure();
+                    return new Message(-1);
+                }
+
+                synchronized (ackRequests) {
+                    if (batch.boundaries != connector.getStreamRollbacks()) {
+                        continue; // rollback之前推送的数据
+                    }
+                    ackRequests.add(new AckRequest(batch.message.getId()));
+                }
+                return batch.message;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CanalClientException(e);
+        }
+    }
+
+    public void ack(long batchId) throws CanalClientException {
+        checkFailure();
+        if (batchId == -1L) {
+            return; // -1代表上一次get没有数据，直接忽略之
+        }
+
+        synchronized (ackRequests) {
+            AckRequest found = null;
+            for (AckRequest request : ackRequests) {
+                if (request.batchId == batchId) {
+                    found = request;
+                    break;
+                }
+            }
+            if (found == null) {
+                throw new CanalClientException("ack error , batchId:" + batchId + " is not exist , please check");
+            }
+
+            found.acked = true;
+            // 前面的批次都已经ack，按顺序放行
+            while (!ackRequests.isEmpty() && ackRequests.getFirst().acked) {
+                final long id = ackRequests.removeFirst().batchId;
+                ackExecutor.execute(new Runnable() {
+
+                    public void run() {
+                        try {
+                            connector.ack(id);
+                        } catch (Throwable e) {
+                            logger.error("failed to ack batchId:" + id, e);
+                            failure = e;
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 流式订阅下已预取的批次都会被丢弃，指定batchId时同样回滚所有批次
+     */
+    public void rollback(long batchId) throws CanalClientException {
+        checkFailure();
+        Future<?> future = ackExecutor.submit(new Runnable() {
+
+            public void run() {
+                connector.rollback();
+            }
+        });
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CanalClientException(e);
+        } catch (ExecutionException e) {
+            throw new CanalClientException(e.getCause());
+        }
+
+        synchronized (ackRequests) {
+            ackRequests.clear(); // 本地队列中rollback之前的批次在get时丢弃，reader可能已经放入了回滚之后的批次
+        }
+    }
+
+    public void rollback() throws CanalClientException {
+        rollback(0);// 0代笔未设置
+    }
+
+    public void stopRunning() throws CanalClientException {
+        reading = false;
+        connector.stopRunning();
+    }
+
+    // ==================== helper method ====================
+
+    private synchronized void startReader(final int batchSize, final long timeout) {
+        if (reading) {
+            return;
+        }
+
+        reading = true;
+        reader = new Thread("canal-client-prefetch") {
+
+            public void run() {
+                try {
+                    while (reading) {
+                        Message message = connector.getWithoutAck(batchSize, timeout, TimeUnit.MILLISECONDS);
+                        if (message == null || message.getId() == -1) {
+                            continue; // 超时推送的空批次，只用于检查状态
+                        }
+
+                        // 分界ack只在当前线程中读取，记录读到这个批次时已经越过的rollback次数
+                        batches.add(new Batch(connector.getStreamBoundaries(), message));
+                    }
+                } catch (Throwable e) {
+                    if (reading) {
+                        logger.error("failed to prefetch data from server", e);
+                        failure = e;
+                    }
+                } finally {
+                    reading = false;
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 停止reader，最多等待一个流式订阅的timeout周期，返回之前是否在预取
+     */
+    private synchronized boolean stopReader() {
+        boolean prefetching = (reader != null);
+        reading = false;
+        joinReader();
+        return prefetching;
+    }
+
+    private void joinReader() {
+        Thread thread = reader;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CanalClientException(e);
+            }
+        }
+        reader = null;
+    }
+
+    private void discardPrefetched() {
+        synchronized (ackRequests) {
+            ackRequests.clear();
+            batches.clear();
+        }
+    }
+
+    private void checkFailure() {
+        Throwable e = failure;
+        if (e != null) {
+            throw (e instanceof CanalClientException) ? (CanalClientException) e : new CanalClientException(e);
+        }
+    }
+
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    public long getFetchTimeout() {
+        return fetchTimeout;
+    }
+
+    public void setFetchTimeout(long fetchTimeout) {
+        this.fetchTimeout = fetchTimeout;
+    }
+
+    public SimpleCanalConnector getConnector() {
+        return connector;
+    }
+
+    private static class Batch {
+
+        private final long    boundaries;
+        private final Message message;
+
+        public Batch(long boundaries, Message message){
+            this.boundaries = boundaries;
+            this.message = message;
+        }
+    }
+
+    private static class AckRequest {
+
+        private final long batchId;
+        private boolean    acked = false;
+
+        public AckRequest(long batchId){
+            this.batchId = batchId;
+        }
+    }
+}
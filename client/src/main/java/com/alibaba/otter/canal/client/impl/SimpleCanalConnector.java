@@ -13,6 +13,7 @@ import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +39,7 @@ import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
 import com.alibaba.otter.canal.protocol.CanalPacket.Sub;
 import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.CompressionUtils;
 import com.alibaba.otter.canal.protocol.Message;
 import com.alibaba.otter.canal.protocol.exception.CanalClientException;
 import com.google.protobuf.ByteString;
@@ -72,6 +74,11 @@ public class SimpleCanalConnector implements CanalConnector {
     private boolean              rollbackOnConnect     = true;                                               // 是否在connect链接成功后，自动执行rollback操作
     private boolean              rollbackOnDisConnect  = false;                                              // 是否在connect链接成功后，自动执行rollback操作
     private boolean              lazyParseEntry        = false;                                              // 是否自动化解析Entry对象,如果考虑最大化性能可以延后解析
+    private int                  streamWindow          = 0;                                                  // 大于0时使用流式订阅，server持续推送数据，代表允许未ack的批次数量
+    private volatile boolean     streaming             = false;                                              // 当前连接是否已经开启流式订阅
+    private final AtomicLong     streamRollbacks       = new AtomicLong(0);                                  // 流式订阅下发出的rollback次数，rollback可以和读取在不同线程
+    private volatile long        streamBoundaries      = 0;                                                  // 流式订阅下收到server分界ack的次数，小于streamRollbacks时推送的都是rollback之前的数据
+    private Compression          compression           = Compression.NONE;                                   // 期望server返回数据的压缩方式，server不支持时不压缩
     // 读写数据分别使用不同的锁进行控制，减小锁粒度,读也需要排他锁，并发度容易造成数据包混乱，反序列化失败
     private Object               readDataLock          = new Object();
     private Object               writeDataLock         = new Object();
@@ -140,8 +147,12 @@ public class SimpleCanalConnector implements CanalConnector {
 
     private InetSocketAddress doConnect() throws CanalClientException {
         try {
+            streaming = false;
+            streamRollbacks.set(0);
+            streamBoundaries = 0;
             channel = SocketChannel.open();
             channel.socket().setSoTimeout(soTimeout);
+            channel.socket().setTcpNoDelay(true); // header和body分开写，避免和delayed ack叠加出现40ms的延迟
             SocketAddress address = getAddress();
             if (address == null) {
                 address = getNextAddress();
@@ -159,13 +170,22 @@ public class SimpleCanalConnector implements CanalConnector {
             }
             //
             Handshake handshake = Handshake.parseFrom(p.getBody());
+            supportedCompressions.clear();
             supportedCompressions.addAll(handshake.getSupportedCompressionsList());
+            // server不支持时退化为不压缩
+            Compression negotiated = Compression.NONE;
+            if (supportedCompressions.contains(compression)) {
+                negotiated = compression;
+            } else if (compression != Compression.NONE) {
+                logger.warn("compression {} is not supported by server, fallback to NONE", compression);
+            }
             //
             ClientAuth ca = ClientAuth.newBuilder()
                 .setUsername(username != null ? username : "")
                 .setPassword(ByteString.copyFromUtf8(password != null ? password : ""))
                 .setNetReadTimeout(idleTimeout)
                 .setNetWriteTimeout(idleTimeout)
+                .setCompression(negotiated)
                 .build();
             writeWithHeader(Packet.newBuilder()
                 .setType(PacketType.CLIENTAUTHENTICATION)
@@ -235,8 +255,7 @@ public class SimpleCanalConnector implements CanalConnector {
                 .build()
                 .toByteArray());
             //
-            Packet p = Packet.parseFrom(readNextPacket());
-            Ack ack = Ack.parseFrom(p.getBody());
+            Ack ack = readAck();
             if (ack.getErrorCode() > 0) {
                 throw new CanalClientException("failed to subscribe with reason: " + ack.getErrorMessage());
             }
@@ -263,8 +282,8 @@ public class SimpleCanalConnector implements CanalConnector {
                 .build()
                 .toByteArray());
             //
-            Packet p = Packet.parseFrom(readNextPacket());
-            Ack ack = Ack.parseFrom(p.getBody());
+            Ack ack = readAck();
+            streaming = false; // server取消订阅时会同时停止推送
             if (ack.getErrorCode() > 0) {
                 throw new CanalClientException("failed to unSubscribe with reason: " + ack.getErrorMessage());
             }
@@ -299,6 +318,10 @@ public class SimpleCanalConnector implements CanalConnector {
                 unit = TimeUnit.MILLISECONDS;
             }
 
+            if (streamWindow > 0) {
+                return streamMessages(size, time, unit);
+            }
+
             writeWithHeader(Packet.newBuilder()
                 .setType(PacketType.GET)
                 .setBody(Get.newBuilder()
@@ -318,16 +341,76 @@ public class SimpleCanalConnector implements CanalConnector {
         }
     }
 
+    /**
+     * 流式订阅，第一次调用时开启订阅，之后直接读取server推送的数据，batchSize/timeout以开启订阅时为准
+     */
+    private Message streamMessages(int batchSize, long timeout, TimeUnit unit) throws IOException {
+        if (!streaming) {
+            synchronized (writeDataLock) { // 和rollback互斥，server是否回复rollback分界和streaming状态保持一致
+                writeWithHeader(Packet.newBuilder()
+                    .setType(PacketType.STREAM)
+                    .setBody(Get.newBuilder()
+                        .setDestination(clientIdentity.getDestination())
+                        .setClientId(String.valueOf(clientIdentity.getClientId()))
+                        .setFetchSize(batchSize)
+                        .setTimeout(timeout)
+                        .setUnit(unit.ordinal())
+                        .setWindow(streamWindow)
+                        .build()
+                        .toByteString())
+                    .build()
+                    .toByteArray());
+                streaming = true;
+            }
+        }
+
+        for (;;) {
+            Packet p = Packet.parseFrom(readNextPacket());
+            if (streamBoundaries < streamRollbacks.get()) {
+                if (p.getType() == PacketType.ACK && Ack.parseFrom(p.getBody()).getErrorCode() == 0) {
+                    streamBoundaries++; // rollback的分界，之后推送的才是回滚之后的数据
+                    continue;
+                } else if (p.getType() == PacketType.MESSAGES) {
+                    continue; // rollback之前推送的数据，直接丢弃
+                }
+            }
+
+            return receiveMessages(p);
+        }
+    }
+
+    /**
+     * 读取请求的ack，流式订阅时跳过server推送的数据以及rollback的分界
+     */
+    private Ack readAck() throws IOException {
+        for (;;) {
+            Packet p = Packet.parseFrom(readNextPacket());
+            if (streaming && p.getType() == PacketType.MESSAGES) {
+                continue;
+            }
+
+            Ack ack = Ack.parseFrom(p.getBody());
+            if (streamBoundaries < streamRollbacks.get() && ack.getErrorCode() == 0) {
+                streamBoundaries++;
+                continue;
+            }
+            return ack;
+        }
+    }
+
     private Message receiveMessages() throws IOException {
-        byte[] data = readNextPacket();
-        Packet p = Packet.parseFrom(data);
+        return receiveMessages(Packet.parseFrom(readNextPacket()));
+    }
+
+    private Message receiveMessages(Packet p) throws IOException {
         switch (p.getType()) {
             case MESSAGES: {
-                if (!p.getCompression().equals(Compression.NONE)) {
-                    throw new CanalClientException("compression is not supported in this connector");
+                Messages messages;
+                if (p.getCompression() == Compression.NONE) {
+                    messages = Messages.parseFrom(p.getBody());
+                } else {
+                    messages = Messages.parseFrom(CompressionUtils.decompress(p.getCompression(), p.getBody()));
                 }
-
-                Messages messages = Messages.parseFrom(p.getBody());
                 Message result = new Message(messages.getBatchId());
                 if (lazyParseEntry) {
                     // byteString
@@ -378,11 +461,16 @@ public class SimpleCanalConnector implements CanalConnector {
             .setBatchId(batchId)
             .build();
         try {
-            writeWithHeader(Packet.newBuilder()
-                .setType(PacketType.CLIENTROLLBACK)
-                .setBody(ca.toByteString())
-                .build()
-                .toByteArray());
+            synchronized (writeDataLock) {
+                if (streaming) {
+                    streamRollbacks.incrementAndGet(); // 先计数，其他线程中的读取立即开始丢弃rollback之前的推送
+                }
+                writeWithHeader(Packet.newBuilder()
+                    .setType(PacketType.CLIENTROLLBACK)
+                    .setBody(ca.toByteString())
+                    .build()
+                    .toByteArray());
+            }
         } catch (IOException e) {
             throw new CanalClientException(e);
         }
@@ -552,6 +640,33 @@ public class SimpleCanalConnector implements CanalConnector {
         this.lazyParseEntry = lazyParseEntry;
     }
 
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    public void setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+
+    public long getStreamRollbacks() {
+        return streamRollbacks.get();
+    }
+
+    public long getStreamBoundaries() {
+        return streamBoundaries;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        if (!CompressionUtils.isSupported(compression)) {
+            throw new CanalClientException("compression is not supported in this connector : " + compression);
+        }
+        this.compression = compression;
+    }
+
     public void stopRunning() {
         if (running) {
             running = false; // 设置为非running状态
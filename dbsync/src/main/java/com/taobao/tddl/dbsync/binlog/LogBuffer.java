@@ -7,6 +7,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.zip.Checksum;
 
 /**
  * TODO: Document Me!!
@@ -61,6 +62,15 @@ public class LogBuffer {
         return dupBuffer;
     }
 
+    /**
+     * Return next n bytes in this buffer for later decoding. The default
+     * implementation makes a copy, subclasses which guarantee the bytes are
+     * not reused until the event is released may share them instead.
+     */
+    public LogBuffer slice(final int len) {
+        return duplicate(len);
+    }
+
     /**
      * Return next n bytes in this buffer.
      */
@@ -70,6 +80,27 @@ public class LogBuffer {
         return new LogBuffer(buf, 0, limit);
     }
 
+    /**
+     * Returns the absolute offset of this buffer's origin in the backing
+     * array. Bytes of an event can still be addressed with it after the event
+     * is consumed, as long as the backing array is not reused.
+     */
+    public final int origin() {
+        return origin;
+    }
+
+    /**
+     * Updates the checksum with <code>len</code> bytes of the backing array
+     * starting at the absolute offset <code>from</code>, see
+     * {@link #origin()}.
+     */
+    public final void updateChecksum(final Checksum checksum, final int from, final int len) {
+        if (from < 0 || len < 0 || from + len > buffer.length) throw new IllegalArgumentException("capacity excceed: "
+                                                                                                  + (from + len));
+
+        checksum.update(buffer, from, len);
+    }
+
     /**
      * Returns this buffer's capacity. </p>
      * 
@@ -1272,6 +1303,35 @@ public class LogBuffer {
         return decimal;
     }
 
+    /**
+     * Return next decimal from buffer in plain string format, the same as
+     * <code>getDecimal(precision, scale).toPlainString()</code> but without
+     * creating the <code>BigDecimal</code>.
+     * 
+     * @see mysql-5.1.60/strings/decimal.c - decimal2string()
+     */
+    public final String getDecimalString(final int precision, final int scale) {
+        final int intg = precision - scale;
+        final int frac = scale;
+        final int intg0 = intg / DIG_PER_INT32;
+        final int frac0 = frac / DIG_PER_INT32;
+        final int intg0x = intg - intg0 * DIG_PER_INT32;
+        final int frac0x = frac - frac0 * DIG_PER_INT32;
+
+        final int binSize = intg0 * SIZE_OF_INT32 + dig2bytes[intg0x] + frac0 * SIZE_OF_INT32 + dig2bytes[frac0x];
+        if (position + binSize > origin + limit) {
+            throw new IllegalArgumentException("limit excceed: " + (position + binSize - origin));
+        }
+
+        String decimal = getDecimalString0(position, intg, frac, // NL
+            intg0,
+            frac0,
+            intg0x,
+            frac0x);
+        position += binSize;
+        return decimal;
+    }
+
     /**
      * Return big decimal from buffer.
      * 
@@ -1299,6 +1359,11 @@ public class LogBuffer {
      */
     private final BigDecimal getDecimal0(final int begin, final int intg, final int frac, final int intg0,
                                          final int frac0, final int intg0x, final int frac0x) {
+        return new BigDecimal(getDecimalString0(begin, intg, frac, intg0, frac0, intg0x, frac0x));
+    }
+
+    private final String getDecimalString0(final int begin, final int intg, final int frac, final int intg0,
+                                           final int frac0, final int intg0x, final int frac0x) {
         final int mask = ((buffer[begin] & 0x80) == 0x80) ? 0 : -1;
         int from = begin;
 
@@ -1445,8 +1510,20 @@ public class LogBuffer {
         }
 
         d_copy[begin] ^= 0x80; /* restore sign */
-        String decimal = String.valueOf(buf, 0, pos);
-        return new BigDecimal(decimal);
+        if (mask != 0 && isZero(buf, 1, pos)) {
+            /* BigDecimal drops the sign of zero */
+            return String.valueOf(buf, 1, pos - 1);
+        }
+        return String.valueOf(buf, 0, pos);
+    }
+
+    private static boolean isZero(final char[] buf, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != '0' && buf[i] != '.') {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
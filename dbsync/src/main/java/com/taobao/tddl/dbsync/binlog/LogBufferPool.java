@@ -0,0 +1,55 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of {@link PooledLogBuffer} slabs. Buffers are taken by the
+ * network reader and given back by the last consumer, so it is safe to
+ * acquire and recycle from different threads. When the pool is empty a new
+ * slab is allocated, slabs grown for very large events are shrunk before
+ * being pooled again.
+ *
+ * @version 1.0.26
+ */
+public final class LogBufferPool {
+
+    /** Slabs larger than slabSize * MAX_SLAB_FACTOR are not kept. */
+    public static final int                     MAX_SLAB_FACTOR = 16;
+
+    private final int                           slabSize;
+    private final int                           maxSlabSize;
+    private final BlockingQueue<PooledLogBuffer> free;
+
+    public LogBufferPool(final int slabSize, final int capacity){
+        if (slabSize <= 0 || capacity <= 0) throw new IllegalArgumentException("slabSize and capacity must be positive");
+
+        this.slabSize = slabSize;
+        this.maxSlabSize = slabSize * MAX_SLAB_FACTOR;
+        this.free = new ArrayBlockingQueue<PooledLogBuffer>(capacity);
+    }
+
+    public PooledLogBuffer acquire() {
+        PooledLogBuffer buffer = free.poll();
+        if (buffer == null) {
+            buffer = new PooledLogBuffer(this, new byte[slabSize]);
+        }
+        return buffer;
+    }
+
+    final void recycle(PooledLogBuffer buffer) {
+        if (buffer.capacity() > maxSlabSize) {
+            buffer.shrink(new byte[slabSize]);
+        }
+        // pool is full, leave it to gc
+        free.offer(buffer);
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    public int size() {
+        return free.size();
+    }
+}
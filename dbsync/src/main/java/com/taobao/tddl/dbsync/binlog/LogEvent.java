@@ -256,6 +256,13 @@ public abstract class LogEvent {
      */
     public static final int    LOG_EVENT_IGNORABLE_F                    = 0x80;
 
+    /**
+     * Set in the FORMAT_DESCRIPTION_EVENT of a binlog that is not closed
+     * properly. The master computes the checksum of the event with this flag
+     * cleared, since the flag is reset in place when the binlog is closed.
+     */
+    public static final int    LOG_EVENT_BINLOG_IN_USE_F                = 0x1;
+
     /** enum_field_types */
     public static final int    MYSQL_TYPE_DECIMAL                       = 0;
     public static final int    MYSQL_TYPE_TINY                          = 1;
@@ -0,0 +1,399 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+
+/**
+ * Fetches a local binlog file through a memory mapping with sequential
+ * read-ahead, for bulk replay of archived binlogs.
+ *
+ * <pre>
+ * MappedFileLogFetcher fetcher = new MappedFileLogFetcher();
+ * fetcher.open(file, position);
+ *
+ * while (fetcher.fetch()) {
+ *     LogBuffer buffer;
+ *     while ((buffer = fetcher.handoff()) != null) {
+ *         // one event per buffer, valid as long as it is referenced.
+ *     }
+ * }
+ * // file ending reached.
+ * </pre>
+ *
+ * A reader thread maps the file window by window, loads each window ahead
+ * (madvise WILLNEED and touch) and copies whole events into chunks with one
+ * bulk copy per chunk, while the caller decodes the chunks before. Chunks are
+ * never reused, so {@link #handoff()} and {@link #slice(int)} share them
+ * instead of copying every event. The file size is taken at open time like
+ * {@link FileLogFetcher} reaching the file end, a truncated last event is left
+ * unfetched.
+ *
+ * @version 1.0.26
+ */
+public final class MappedFileLogFetcher extends LogFetcher {
+
+    public static final int    DEFAULT_CHUNK_SIZE        = 4 * 1024 * 1024;
+
+    public static final int    DEFAULT_READ_AHEAD_CHUNKS = 4;
+
+    public static final int    DEFAULT_MAP_SIZE          = 64 * 1024 * 1024;
+
+    private static final Chunk END                       = new Chunk(null, 0, null);
+
+    private final int          chunkSize;
+    private final int          readAheadChunks;
+    private final int          mapSize;
+
+    private RandomAccessFile   file;
+    private Reader             reader;
+
+    public MappedFileLogFetcher(){
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_READ_AHEAD_CHUNKS);
+    }
+
+    public MappedFileLogFetcher(final int chunkSize, final int readAheadChunks){
+        this(chunkSize, readAheadChunks, DEFAULT_MAP_SIZE);
+    }
+
+    public MappedFileLogFetcher(final int chunkSize, final int readAheadChunks, final int mapSize){
+        super(0, DEFAULT_GROWTH_FACTOR);
+        if (chunkSize < FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN) throw new IllegalArgumentException("chunkSize too small: "
+                                                                                                           + chunkSize);
+        if (readAheadChunks < 1) throw new IllegalArgumentException("readAheadChunks must be positive: "
+                                                                    + readAheadChunks);
+        if (mapSize < chunkSize) throw new IllegalArgumentException("mapSize must not be less than chunkSize: "
+                                                                    + mapSize);
+
+        this.chunkSize = chunkSize;
+        this.readAheadChunks = readAheadChunks;
+        this.mapSize = mapSize;
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(File file) throws FileNotFoundException, IOException {
+        open(file, 0L);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(String filePath) throws FileNotFoundException, IOException {
+        open(new File(filePath), 0L);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(String filePath, final long filePosition) throws FileNotFoundException, IOException {
+        open(new File(filePath), filePosition);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch. When starting in the middle of
+     * the file, the format description event is fetched first like
+     * {@link FileLogFetcher} does.
+     */
+    public void open(File file, final long filePosition) throws FileNotFoundException, IOException {
+        close();
+
+        this.file = new RandomAccessFile(file, "r");
+        FileChannel channel = this.file.getChannel();
+        final long fileSize = channel.size();
+
+        byte[] header = new byte[BIN_LOG_HEADER_SIZE];
+        if (!readFully(channel, header, 0)) {
+            throw new IOException("No binlog file header");
+        }
+
+        if (!Arrays.equals(header, FileLogFetcher.BINLOG_MAGIC)) {
+            throw new IOException("Error binlog file header: " + Arrays.toString(header));
+        }
+
+        buffer = new byte[0];
+        limit = 0;
+        origin = 0;
+        position = 0;
+
+        byte[] formatDescription = null;
+        long start = BIN_LOG_HEADER_SIZE;
+        if (filePosition > BIN_LOG_HEADER_SIZE) {
+            byte[] eventHeader = new byte[FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN];
+            if (!readFully(channel, eventHeader, BIN_LOG_HEADER_SIZE)) {
+                throw new IOException("No format description event in " + file.getPath());
+            }
+
+            formatDescription = new byte[(int) getUint32(eventHeader, LogEvent.EVENT_LEN_OFFSET)];
+            if (!readFully(channel, formatDescription, BIN_LOG_HEADER_SIZE)) {
+                throw new IOException("Truncated format description event in " + file.getPath());
+            }
+            start = filePosition;
+        }
+
+        reader = new Reader(channel, start, fileSize, formatDescription);
+        Thread thread = new Thread(reader, "MappedFileLogFetcher-" + file.getName());
+        thread.setDaemon(true);
+        reader.thread = thread;
+        thread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.taobao.tddl.dbsync.binlog.LogFetcher#fetch()
+     */
+    public boolean fetch() throws IOException {
+        if (limit > 0) {
+            /* Whole events left in current chunk */
+            return true;
+        }
+
+        if (reader == null) {
+            return false;
+        }
+
+        Chunk chunk;
+        try {
+            chunk = reader.chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while fetching " + reader.thread.getName());
+        }
+
+        if (chunk == END) {
+            /* Keep it for later fetch */
+            reader.chunks.offer(END);
+            return false;
+        }
+
+        if (chunk.error != null) {
+            reader.chunks.offer(chunk);
+            throw new IOException("Failed to read binlog file", chunk.error);
+        }
+
+        buffer = chunk.data;
+        origin = 0;
+        position = 0;
+        limit = chunk.length;
+        return true;
+    }
+
+    /**
+     * Hands off the event at the origin of this fetcher as a buffer which
+     * shares the chunk, and consumes it.
+     *
+     * @return <code>null</code> if current chunk is consumed.
+     */
+    public LogBuffer handoff() {
+        if (limit < FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN) {
+            return null;
+        }
+
+        final int len = (int) getUint32(LogEvent.EVENT_LEN_OFFSET);
+        LogBuffer eventBuffer = new LogBuffer(buffer, origin, len);
+        consume(len);
+        return eventBuffer;
+    }
+
+    /**
+     * Shares the chunk instead of copying, chunks are never reused.
+     */
+    @Override
+    public LogBuffer slice(final int len) {
+        if (position + len > origin + limit) throw new IllegalArgumentException("limit excceed: "
+                                                                                + (position + len - origin));
+
+        LogBuffer sliceBuffer = new LogBuffer(buffer, position, len);
+        position += len;
+        return sliceBuffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.taobao.tddl.dbsync.binlog.LogFetcher#close()
+     */
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.running = false;
+            reader.thread.interrupt();
+            reader.chunks.clear();
+        }
+
+        if (file != null) file.close();
+
+        reader = null;
+        file = null;
+    }
+
+    private static boolean readFully(FileChannel channel, byte[] dst, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(dst);
+        while (buf.hasRemaining()) {
+            final int len = channel.read(buf, position + buf.position());
+            if (len < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getUint32(byte[] buf, int pos) {
+        return ((long) (0xff & buf[pos])) | ((long) (0xff & buf[pos + 1]) << 8)
+               | ((long) (0xff & buf[pos + 2]) << 16) | ((long) (0xff & buf[pos + 3]) << 24);
+    }
+
+    /**
+     * Release the mapping right away instead of waiting for gc, nothing is
+     * referencing it since events are copied out.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner.invoke(field.get(null), mapped);
+        } catch (NoSuchMethodException e) {
+            // jdk 8 and before
+            try {
+                Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapped);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Throwable ignore) {
+                // ignore
+            }
+        } catch (Throwable ignore) {
+            // ignore
+        }
+    }
+
+    private static final class Chunk {
+
+        final byte[]    data;
+        final int       length; // bytes of whole events
+        final Throwable error;
+
+        Chunk(byte[] data, int length, Throwable error){
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    private final class Reader implements Runnable {
+
+        final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(readAheadChunks);
+        final FileChannel          channel;
+        final long                 end;
+        byte[]                     formatDescription;
+        long                       position;
+        volatile boolean           running = true;
+        Thread                     thread;
+
+        MappedByteBuffer           window;
+        long                       windowStart;
+
+        Reader(FileChannel channel, long start, long end, byte[] formatDescription){
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.formatDescription = formatDescription;
+        }
+
+        public void run() {
+            try {
+                if (formatDescription != null) {
+                    chunks.put(new Chunk(formatDescription, formatDescription.length, null));
+                    formatDescription = null;
+                }
+
+                while (running && position + FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN <= end) {
+                    int len = (int) Math.min(chunkSize, end - position);
+                    byte[] data = new byte[len];
+                    read(position, data, len);
+
+                    int offset = 0;
+                    while (offset + FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN <= len) {
+                        final long eventLen = getUint32(data, offset + LogEvent.EVENT_LEN_OFFSET);
+                        if (eventLen < FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN) {
+                            throw new IOException("Invalid event length " + eventLen + " at " + (position + offset));
+                        }
+                        if (offset + eventLen > len) {
+                            break;
+                        }
+                        offset += eventLen;
+                    }
+
+                    if (offset == 0) {
+                        /* The first event is larger than a chunk */
+                        final long eventLen = getUint32(data, LogEvent.EVENT_LEN_OFFSET);
+                        if (position + eventLen > end) {
+                            /* Truncated at file end */
+                            break;
+                        }
+                        data = new byte[(int) eventLen];
+                        read(position, data, data.length);
+                        offset = data.length;
+                    }
+
+                    chunks.put(new Chunk(data, offset, null));
+                    position += offset;
+                }
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // closed
+            } catch (Throwable e) {
+                chunks.clear();
+                chunks.offer(new Chunk(null, 0, e));
+            } finally {
+                if (window != null) {
+                    unmap(window);
+                    window = null;
+                }
+            }
+        }
+
+        /**
+         * Copies bytes of the file into dst, mapping and loading the next
+         * window when reaching the end of current one.
+         */
+        private void read(long from, byte[] dst, int len) throws IOException {
+            int offset = 0;
+            while (offset < len) {
+                if (window == null || from < windowStart || from >= windowStart + window.capacity()) {
+                    if (window != null) {
+                        unmap(window);
+                        window = null;
+                    }
+                    windowStart = from;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(mapSize, end - from));
+                    window.load();
+                }
+
+                final int n = (int) Math.min(len - offset, windowStart + window.capacity() - from);
+                ((Buffer) window).position((int) (from - windowStart)); // jdk9之后ByteBuffer覆盖了position(int)，按Buffer调用保证在java 7/8上运行
+                window.get(dst, offset, n);
+                offset += n;
+                from += n;
+            }
+        }
+    }
+}
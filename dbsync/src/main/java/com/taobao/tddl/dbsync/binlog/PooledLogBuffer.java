@@ -0,0 +1,96 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted <code>LogBuffer</code> whose backing array is recycled
+ * into a {@link LogBufferPool} when the last reference is released. Slices
+ * share the backing array, they are only valid until the buffer is released.
+ *
+ * <pre>
+ * PooledLogBuffer buffer = pool.acquire();
+ * fetcherBytes = buffer.swap(fetcherBytes, origin, limit, semival); // refCnt = 1
+ * ...
+ * buffer.release(); // refCnt = 0, back to pool
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public final class PooledLogBuffer extends LogBuffer {
+
+    private final LogBufferPool pool;
+    private final AtomicInteger refCnt = new AtomicInteger();
+
+    PooledLogBuffer(LogBufferPool pool, byte[] buffer){
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Takes over the given bytes as the content of this buffer and returns the
+     * previous backing array, so the caller can keep reading into it without
+     * any copy.
+     */
+    public byte[] swap(byte[] data, final int origin, final int limit, final int semival) {
+        if (origin + limit > data.length) throw new IllegalArgumentException("capacity excceed: " + (origin + limit));
+
+        byte[] previous = this.buffer;
+        this.buffer = data;
+        this.origin = origin;
+        this.position = origin;
+        this.limit = limit;
+        this.semival = semival;
+        this.refCnt.set(1);
+        return previous;
+    }
+
+    public PooledLogBuffer retain() {
+        for (;;) {
+            int cnt = refCnt.get();
+            if (cnt <= 0) throw new IllegalStateException("buffer already released");
+            if (refCnt.compareAndSet(cnt, cnt + 1)) return this;
+        }
+    }
+
+    /**
+     * Decreases the reference count, recycles the buffer when it reaches 0.
+     *
+     * @return <code>true</code> if the buffer was recycled
+     */
+    public boolean release() {
+        int cnt = refCnt.decrementAndGet();
+        if (cnt == 0) {
+            pool.recycle(this);
+            return true;
+        } else if (cnt < 0) {
+            refCnt.incrementAndGet();
+            throw new IllegalStateException("buffer already released");
+        }
+        return false;
+    }
+
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    /**
+     * Shares the backing array instead of copying, the pool will not reuse it
+     * before this buffer is released.
+     */
+    @Override
+    public LogBuffer slice(final int len) {
+        if (position + len > origin + limit) throw new IllegalArgumentException("limit excceed: "
+                                                                                + (position + len - origin));
+
+        LogBuffer sliceBuffer = new LogBuffer(buffer, position, len);
+        position += len;
+        return sliceBuffer;
+    }
+
+    final void shrink(byte[] data) {
+        this.buffer = data;
+        this.origin = 0;
+        this.position = 0;
+        this.limit = 0;
+    }
+}
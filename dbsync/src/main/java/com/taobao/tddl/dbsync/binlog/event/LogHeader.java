@@ -1,5 +1,7 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
+import java.util.zip.Checksum;
+
 import com.taobao.tddl.dbsync.binlog.LogBuffer;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 
@@ -275,6 +277,29 @@ public final class LogHeader {
         return checksumAlg;
     }
 
+    /**
+     * Verifies the CRC32 checksum of this event against its bytes, which start
+     * at the absolute offset <code>from</code> of the buffer's backing array
+     * (see {@link LogBuffer#origin()}). Events without a CRC32 checksum always
+     * pass.
+     */
+    public boolean verifyChecksum(LogBuffer buffer, final int from, Checksum checksum) {
+        if (checksumAlg != LogEvent.BINLOG_CHECKSUM_ALG_CRC32) {
+            return true;
+        }
+
+        final int len = eventLen - LogEvent.BINLOG_CHECKSUM_LEN;
+        checksum.reset();
+        if (type == LogEvent.FORMAT_DESCRIPTION_EVENT && (flags & LogEvent.LOG_EVENT_BINLOG_IN_USE_F) != 0) {
+            buffer.updateChecksum(checksum, from, LogEvent.FLAGS_OFFSET);
+            checksum.update(flags & ~LogEvent.LOG_EVENT_BINLOG_IN_USE_F & 0xff);
+            buffer.updateChecksum(checksum, from + LogEvent.FLAGS_OFFSET + 1, len - LogEvent.FLAGS_OFFSET - 1);
+        } else {
+            buffer.updateChecksum(checksum, from, len);
+        }
+        return checksum.getValue() == crc;
+    }
+
     public String getLogFileName() {
         return logFileName;
     }
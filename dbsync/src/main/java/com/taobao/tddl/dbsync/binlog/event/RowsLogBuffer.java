@@ -1,6 +1,7 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.BitSet;
@@ -29,6 +30,13 @@ public final class RowsLogBuffer {
     public static final long   TIMEF_OFS         = 0x800000000000L;
     private static char[]      digits            = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
 
+    private static final int   KIND_OBJECT       = 0;
+    private static final int   KIND_INT          = 1;
+    private static final int   KIND_LONG         = 2;
+    private static final int   KIND_FLOAT        = 3;
+    private static final int   KIND_DOUBLE       = 4;
+    private static final int   KIND_DECIMAL      = 5;
+
     private final LogBuffer    buffer;
     private final int          columnLen;
     private final String       charsetName;
@@ -41,6 +49,11 @@ public final class RowsLogBuffer {
     private int                javaType;
     private int                length;
     private Serializable       value;
+    // numeric values are kept unboxed, value is created on demand
+    private int                valueKind;
+    private long               longValue;
+    private double             doubleValue;
+    private String             decimalValue;
 
     public RowsLogBuffer(LogBuffer buffer, final int columnLen, String charsetName){
         this.buffer = buffer;
@@ -88,16 +101,26 @@ public final class RowsLogBuffer {
      * Rows_log_event::print_verbose_one_row
      */
     public final Serializable nextValue(final int type, final int meta, boolean isBinary) {
+        readNextValue(type, meta, isBinary);
+        return getValue();
+    }
+
+    /**
+     * Extracting next field value from packed buffer without boxing numeric
+     * values, use the typed accessors (getLongValue / getDoubleValue /
+     * getDecimalString) to read them.
+     */
+    public final void readNextValue(final int type, final int meta, boolean isBinary) {
         fNull = nullBits.get(nullBitIndex++);
+        valueKind = KIND_OBJECT;
 
         if (fNull) {
             value = null;
             javaType = mysqlToJavaType(type, meta, isBinary);
             length = 0;
-            return null;
         } else {
             // Extracting field value from packed buffer.
-            return fetchValue(type, meta, isBinary);
+            fetchValue(type, meta, isBinary);
         }
     }
 
@@ -284,7 +307,7 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = unsigned ? Long.valueOf(buffer.getUint32()) :
                 // Integer.valueOf(buffer.getInt32());
-                value = Integer.valueOf(buffer.getInt32());
+                setInt(buffer.getInt32());
                 javaType = Types.INTEGER;
                 length = 4;
                 break;
@@ -293,7 +316,7 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint8() :
                 // buffer.getInt8());
-                value = Integer.valueOf(buffer.getInt8());
+                setInt(buffer.getInt8());
                 javaType = Types.TINYINT; // java.sql.Types.INTEGER;
                 length = 1;
                 break;
@@ -302,7 +325,7 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint16() :
                 // buffer.getInt16());
-                value = Integer.valueOf((short) buffer.getInt16());
+                setInt((short) buffer.getInt16());
                 javaType = Types.SMALLINT; // java.sql.Types.INTEGER;
                 length = 2;
                 break;
@@ -311,7 +334,7 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint24() :
                 // buffer.getInt24());
-                value = Integer.valueOf(buffer.getInt24());
+                setInt(buffer.getInt24());
                 javaType = Types.INTEGER;
                 length = 3;
                 break;
@@ -320,7 +343,7 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = unsigned ? buffer.getUlong64()) :
                 // Long.valueOf(buffer.getLong64());
-                value = Long.valueOf(buffer.getLong64());
+                setLong(buffer.getLong64());
                 javaType = Types.BIGINT; // Types.INTEGER;
                 length = 8;
                 break;
@@ -340,19 +363,19 @@ public final class RowsLogBuffer {
             case LogEvent.MYSQL_TYPE_NEWDECIMAL: {
                 final int precision = meta >> 8;
                 final int decimals = meta & 0xff;
-                value = buffer.getDecimal(precision, decimals);
+                setDecimal(buffer.getDecimalString(precision, decimals));
                 javaType = Types.DECIMAL;
                 length = precision;
                 break;
             }
             case LogEvent.MYSQL_TYPE_FLOAT: {
-                value = Float.valueOf(buffer.getFloat32());
+                setDouble(KIND_FLOAT, buffer.getFloat32());
                 javaType = Types.REAL; // Types.FLOAT;
                 length = 4;
                 break;
             }
             case LogEvent.MYSQL_TYPE_DOUBLE: {
-                value = Double.valueOf(buffer.getDouble64());
+                setDouble(KIND_DOUBLE, buffer.getDouble64());
                 javaType = Types.DOUBLE;
                 length = 8;
                 break;
@@ -367,25 +390,25 @@ public final class RowsLogBuffer {
                     // 转化为unsign long
                     switch (len) {
                         case 1:
-                            value = buffer.getInt8();
+                            setInt(buffer.getInt8());
                             break;
                         case 2:
-                            value = buffer.getBeUint16();
+                            setInt(buffer.getBeUint16());
                             break;
                         case 3:
-                            value = buffer.getBeUint24();
+                            setInt(buffer.getBeUint24());
                             break;
                         case 4:
-                            value = buffer.getBeUint32();
+                            setLong(buffer.getBeUint32());
                             break;
                         case 5:
-                            value = buffer.getBeUlong40();
+                            setLong(buffer.getBeUlong40());
                             break;
                         case 6:
-                            value = buffer.getBeUlong48();
+                            setLong(buffer.getBeUlong48());
                             break;
                         case 7:
-                            value = buffer.getBeUlong56();
+                            setLong(buffer.getBeUlong56());
                             break;
                         case 8:
                             value = buffer.getBeUlong64();
@@ -396,7 +419,7 @@ public final class RowsLogBuffer {
                 } else {
                     final int bit = buffer.getInt8();
                     // value = (bit != 0) ? Boolean.TRUE : Boolean.FALSE;
-                    value = bit;
+                    setInt(bit);
                 }
                 javaType = Types.BIT;
                 length = nbits;
@@ -845,7 +868,7 @@ public final class RowsLogBuffer {
                 }
                 // logger.warn("MYSQL_TYPE_ENUM : This enumeration value is "
                 // + "only used internally and cannot exist in a binlog!");
-                value = Integer.valueOf(int32);
+                setInt(int32);
                 javaType = Types.INTEGER;
                 length = len;
                 break;
@@ -1113,9 +1136,97 @@ public final class RowsLogBuffer {
     }
 
     public final Serializable getValue() {
+        if (value == null) {
+            switch (valueKind) {
+                case KIND_INT:
+                    value = Integer.valueOf((int) longValue);
+                    break;
+                case KIND_LONG:
+                    value = Long.valueOf(longValue);
+                    break;
+                case KIND_FLOAT:
+                    value = Float.valueOf((float) doubleValue);
+                    break;
+                case KIND_DOUBLE:
+                    value = Double.valueOf(doubleValue);
+                    break;
+                case KIND_DECIMAL:
+                    value = new BigDecimal(decimalValue);
+                    break;
+                default:
+            }
+        }
         return value;
     }
 
+    /**
+     * Whether current value is an integer (int, enum, bit) held by
+     * {@link #getLongValue()}.
+     */
+    public final boolean isLongValue() {
+        return valueKind == KIND_INT || valueKind == KIND_LONG;
+    }
+
+    public final long getLongValue() {
+        return longValue;
+    }
+
+    /**
+     * Whether current value is a float/double held by
+     * {@link #getDoubleValue()}.
+     */
+    public final boolean isDoubleValue() {
+        return valueKind == KIND_FLOAT || valueKind == KIND_DOUBLE;
+    }
+
+    public final double getDoubleValue() {
+        return doubleValue;
+    }
+
+    /**
+     * Return current value in the same format as String.valueOf(getValue())
+     * for numeric values, toPlainString() for decimals.
+     */
+    public final String getNumberString() {
+        switch (valueKind) {
+            case KIND_INT:
+            case KIND_LONG:
+                return Long.toString(longValue);
+            case KIND_FLOAT:
+                return Float.toString((float) doubleValue);
+            case KIND_DOUBLE:
+                return Double.toString(doubleValue);
+            case KIND_DECIMAL:
+                return decimalValue;
+            default:
+                return String.valueOf(getValue());
+        }
+    }
+
+    private void setInt(final int v) {
+        value = null;
+        valueKind = KIND_INT;
+        longValue = v;
+    }
+
+    private void setLong(final long v) {
+        value = null;
+        valueKind = KIND_LONG;
+        longValue = v;
+    }
+
+    private void setDouble(final int kind, final double v) {
+        value = null;
+        valueKind = kind;
+        doubleValue = v;
+    }
+
+    private void setDecimal(final String v) {
+        value = null;
+        valueKind = KIND_DECIMAL;
+        decimalValue = v;
+    }
+
     public final int getLength() {
         return length;
     }
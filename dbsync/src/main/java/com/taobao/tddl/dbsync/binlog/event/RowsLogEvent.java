@@ -163,7 +163,7 @@ public abstract class RowsLogEvent extends LogEvent {
 
         // XXX: Don't handle buffer in another thread.
         int dataSize = buffer.limit() - buffer.position();
-        rowsBuf = buffer.duplicate(dataSize);
+        rowsBuf = buffer.slice(dataSize);
     }
 
     public final void fillTable(LogContext context) {
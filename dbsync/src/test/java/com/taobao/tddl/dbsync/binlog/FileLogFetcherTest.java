@@ -1,14 +1,20 @@
 package com.taobao.tddl.dbsync.binlog;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.taobao.tddl.dbsync.binlog.event.DeleteRowsLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.LogHeader;
 import com.taobao.tddl.dbsync.binlog.event.QueryLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.RotateLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.RowsQueryLogEvent;
@@ -87,4 +93,93 @@ public class FileLogFetcherTest extends BaseLogFetcherTest {
             }
         }
     }
+
+    @Test
+    public void testChecksum() throws IOException {
+        File current = new File(directory, "mysql-bin.000001");
+        byte[] data = appendChecksum(Files.readAllBytes(current.toPath()));
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition(current.getName()));
+
+        CRC32 crc32 = new CRC32();
+        LogBuffer buffer = new LogBuffer(data, 4, data.length - 4);
+        int verified = 0;
+        while (buffer.hasRemaining()) {
+            int from = buffer.origin();
+            LogEvent event = decoder.decode(buffer, context);
+            if (event == null) {
+                break;
+            }
+
+            LogHeader header = event.getHeader();
+            Assert.assertTrue(header.verifyChecksum(buffer, from, crc32));
+            if (header.getChecksumAlg() != LogEvent.BINLOG_CHECKSUM_ALG_CRC32) {
+                continue;
+            }
+
+            // 修改事件中的任意一个字节之后校验失败
+            int corrupted = from + header.getEventLen() / 2;
+            data[corrupted] ^= 0x20;
+            Assert.assertFalse(header.verifyChecksum(buffer, from, crc32));
+            data[corrupted] ^= 0x20;
+            verified++;
+        }
+        Assert.assertTrue(verified > 0);
+    }
+
+    /**
+     * 测试数据来自5.1，没有checksum，按照5.6开启binlog_checksum=CRC32的格式重新生成：FDE中修改版本号并追加校验算法，
+     * 所有事件末尾追加crc，同时给FDE加上LOG_EVENT_BINLOG_IN_USE_F，和master上正在写入的binlog一致
+     */
+    private byte[] appendChecksum(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+        out.write(data, 0, 4);
+        CRC32 crc32 = new CRC32();
+        int position = 4;
+        int appended = 0;
+        while (position + FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN <= data.length) {
+            int eventLen = getInt32(data, position + LogEvent.EVENT_LEN_OFFSET);
+            boolean fde = data[position + LogEvent.EVENT_TYPE_OFFSET] == LogEvent.FORMAT_DESCRIPTION_EVENT;
+            int length = eventLen + (fde ? LogEvent.BINLOG_CHECKSUM_ALG_DESC_LEN : 0);
+            byte[] event = Arrays.copyOfRange(data, position, position + length + LogEvent.BINLOG_CHECKSUM_LEN);
+            if (fde) {
+                // binlog_version之后是50个字节的server_version
+                int versionOffset = FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN + 2;
+                byte[] version = "5.6.10-log".getBytes("ISO-8859-1");
+                Arrays.fill(event, versionOffset, versionOffset + FormatDescriptionLogEvent.ST_SERVER_VER_LEN, (byte) 0);
+                System.arraycopy(version, 0, event, versionOffset, version.length);
+                event[eventLen] = LogEvent.BINLOG_CHECKSUM_ALG_CRC32;
+            }
+
+            appended += event.length - eventLen;
+            putInt32(event, LogEvent.EVENT_LEN_OFFSET, event.length);
+            int logPos = getInt32(event, LogEvent.LOG_POS_OFFSET);
+            if (logPos != 0) {
+                putInt32(event, LogEvent.LOG_POS_OFFSET, logPos + appended);
+            }
+
+            crc32.reset();
+            crc32.update(event, 0, length);
+            putInt32(event, length, (int) crc32.getValue());
+            if (fde) {
+                event[LogEvent.FLAGS_OFFSET] |= LogEvent.LOG_EVENT_BINLOG_IN_USE_F;
+            }
+            out.write(event, 0, event.length);
+            position += eventLen;
+        }
+        return out.toByteArray();
+    }
+
+    private static int getInt32(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8) | ((data[offset + 2] & 0xff) << 16)
+               | ((data[offset + 3] & 0xff) << 24);
+    }
+
+    private static void putInt32(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >>> 8);
+        data[offset + 2] = (byte) (value >>> 16);
+        data[offset + 3] = (byte) (value >>> 24);
+    }
 }
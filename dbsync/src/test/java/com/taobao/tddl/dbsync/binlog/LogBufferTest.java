@@ -2,9 +2,12 @@ package com.taobao.tddl.dbsync.binlog;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.BitSet;
 
 import junit.framework.TestCase;
 
+import com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer;
+
 public class LogBufferTest extends TestCase {
 
     public static final int LOOP = 10000;
@@ -309,4 +312,48 @@ public class LogBufferTest extends TestCase {
             System.out.println(bd5);
         } while (false);
     }
+
+    public void testDecimalString() {
+        byte[][] arrays = { array1, array2, array3, array4, array5, { 0x7f, (byte) 0xff } };
+        int[][] metas = { { 19, 10 }, { 19, 10 }, { 18, 6 }, { 18, 6 }, { 18, 6 }, { 4, 2 } };
+        for (int i = 0; i < arrays.length; i++) {
+            LogBuffer buffer = new LogBuffer(arrays[i], 0, arrays[i].length);
+            String expect = buffer.getDecimal(metas[i][0], metas[i][1]).toPlainString();
+            buffer.rewind();
+            assertEquals(expect, buffer.getDecimalString(metas[i][0], metas[i][1]));
+        }
+    }
+
+    public void testRowsPrimitiveValue() {
+        // null bitmap + int(-2) + float(1.1) + bigint(1L << 40)
+        byte[] array = new byte[1 + 4 + 4 + 8];
+        LogBuffer buffer = new LogBuffer(array, 0, array.length);
+        array[1] = (byte) 0xfe;
+        array[2] = array[3] = array[4] = (byte) 0xff;
+        int bits = Float.floatToIntBits(1.1f);
+        for (int i = 0; i < 4; i++) {
+            array[5 + i] = (byte) (bits >> (8 * i));
+        }
+        array[9 + 5] = 1;
+
+        BitSet columns = new BitSet(3);
+        columns.set(0, 3);
+        RowsLogBuffer rowsBuffer = new RowsLogBuffer(buffer, 3, "UTF-8");
+        assertTrue(rowsBuffer.nextOneRow(columns));
+
+        rowsBuffer.readNextValue(LogEvent.MYSQL_TYPE_LONG, 0, false);
+        assertTrue(rowsBuffer.isLongValue());
+        assertEquals(-2L, rowsBuffer.getLongValue());
+        assertEquals("-2", rowsBuffer.getNumberString());
+        assertEquals(Integer.valueOf(-2), rowsBuffer.getValue());
+
+        rowsBuffer.readNextValue(LogEvent.MYSQL_TYPE_FLOAT, 4, false);
+        assertTrue(rowsBuffer.isDoubleValue());
+        assertEquals(String.valueOf(1.1f), rowsBuffer.getNumberString());
+        assertEquals(Float.valueOf(1.1f), rowsBuffer.getValue());
+
+        rowsBuffer.readNextValue(LogEvent.MYSQL_TYPE_LONGLONG, 0, false);
+        assertEquals(1L << 40, rowsBuffer.getLongValue());
+        assertEquals(Long.valueOf(1L << 40), rowsBuffer.getValue());
+    }
 }
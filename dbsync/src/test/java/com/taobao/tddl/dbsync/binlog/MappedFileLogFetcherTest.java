@@ -0,0 +1,126 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileLogFetcherTest {
+
+    private File binlog;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        File dummyFile = new File(url.getFile());
+        binlog = new File(dummyFile.getParent() + "/binlog", "mysql-bin.000001");
+    }
+
+    @Test
+    public void testHandoff() throws IOException {
+        List<long[]> expected = decode(binlog, 0);
+
+        // chunk小于部分事件，window小于文件，覆盖事件跨chunk、跨window的情况
+        MappedFileLogFetcher fetcher = new MappedFileLogFetcher(128, 2, 1024);
+        List<long[]> actual = new ArrayList<long[]>();
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition(binlog.getName()));
+        try {
+            fetcher.open(binlog);
+            while (fetcher.fetch()) {
+                LogBuffer buffer;
+                while ((buffer = fetcher.handoff()) != null) {
+                    LogEvent event = decoder.decode(buffer, context);
+                    actual.add(new long[] { event.getHeader().getType(), event.getLogPos() });
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        assertEvents(expected, actual);
+    }
+
+    @Test
+    public void testDecodeFromPosition() throws IOException {
+        List<long[]> expected = decode(binlog, 2016);
+
+        MappedFileLogFetcher fetcher = new MappedFileLogFetcher(1024, 1, 4096);
+        List<long[]> actual = new ArrayList<long[]>();
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition(binlog.getName()));
+        try {
+            fetcher.open(binlog, 2016);
+            while (fetcher.fetch()) {
+                LogEvent event = decoder.decode(fetcher, context);
+                if (event != null) {
+                    actual.add(new long[] { event.getHeader().getType(), event.getLogPos() });
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        // 从中间开始时先返回FDE
+        Assert.assertEquals(LogEvent.FORMAT_DESCRIPTION_EVENT, actual.get(0)[0]);
+        assertEvents(expected, actual.subList(1, actual.size()));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] data = Files.readAllBytes(binlog.toPath());
+        File truncated = File.createTempFile("mysql-bin", ".000001");
+        truncated.deleteOnExit();
+        Files.write(truncated.toPath(), Arrays.copyOf(data, data.length - 10));
+
+        MappedFileLogFetcher fetcher = new MappedFileLogFetcher(4096, 2, 8192);
+        int count = 0;
+        try {
+            fetcher.open(truncated);
+            while (fetcher.fetch()) {
+                while (fetcher.handoff() != null) {
+                    count++;
+                }
+            }
+            Assert.assertFalse(fetcher.fetch());
+        } finally {
+            fetcher.close();
+        }
+        // 最后一个不完整的事件不会返回
+        Assert.assertEquals(decode(binlog, 0).size() - 1, count);
+    }
+
+    private List<long[]> decode(File file, int from) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition(file.getName()));
+
+        List<long[]> events = new ArrayList<long[]>();
+        LogBuffer buffer = new LogBuffer(data, 4, data.length - 4);
+        LogEvent event = decoder.decode(buffer, context); // FDE
+        events.add(new long[] { event.getHeader().getType(), event.getLogPos() });
+        if (from > 4) {
+            events.clear();
+            buffer = new LogBuffer(data, from, data.length - from);
+        }
+        while ((event = decoder.decode(buffer, context)) != null) {
+            events.add(new long[] { event.getHeader().getType(), event.getLogPos() });
+        }
+        return events;
+    }
+
+    private void assertEvents(List<long[]> expected, List<long[]> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @version 1.0.26
+ */
+public class PooledLogBufferTest {
+
+    @Test
+    public void testSwapAndRecycle() {
+        LogBufferPool pool = new LogBufferPool(16, 4);
+        byte[] data = new byte[] { 0, 0, 1, 2, 3, 4 };
+
+        PooledLogBuffer buffer = pool.acquire();
+        byte[] previous = buffer.swap(data, 2, 4, 1);
+        Assert.assertEquals(16, previous.length);
+        Assert.assertEquals(1, buffer.refCnt());
+        Assert.assertEquals(4, buffer.limit());
+        Assert.assertEquals(1, buffer.getUint8());
+
+        // slice共享底层数组
+        LogBuffer slice = buffer.slice(2);
+        data[3] = 9;
+        Assert.assertEquals(9, slice.getUint8(0));
+        Assert.assertEquals(4, buffer.getUint8());
+
+        buffer.retain();
+        Assert.assertFalse(buffer.release());
+        Assert.assertEquals(0, pool.size());
+        Assert.assertTrue(buffer.release());
+        Assert.assertEquals(1, pool.size());
+        Assert.assertSame(buffer, pool.acquire());
+
+        try {
+            buffer.release();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShrinkLargeSlab() {
+        LogBufferPool pool = new LogBufferPool(16, 4);
+        PooledLogBuffer buffer = pool.acquire();
+        buffer.swap(new byte[16 * LogBufferPool.MAX_SLAB_FACTOR + 1], 0, 1, 0);
+        buffer.release();
+        Assert.assertEquals(16, pool.acquire().capacity());
+    }
+
+    @Test
+    public void testPlainSliceCopies() {
+        byte[] data = new byte[] { 1, 2, 3, 4 };
+        LogBuffer buffer = new LogBuffer(data, 0, data.length);
+        LogBuffer slice = buffer.slice(2);
+        data[0] = 9;
+        Assert.assertEquals(1, slice.getUint8(0));
+    }
+}
@@ -11,7 +11,6 @@ import io.netty.util.internal.SystemPropertyUtil;
 import java.io.IOException;
 import java.net.SocketAddress;
 
-import org.apache.commons.lang.NotImplementedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,130 +22,133 @@ import org.slf4j.LoggerFactory;
 public class NettySocketChannel implements SocketChannel {
 
     private static final Logger logger                   = LoggerFactory.getLogger(SocketChannel.class);
-    private static final int    WAIT_PERIOD              = 10;                                                                   // milliseconds
     private static final int    DEFAULT_INIT_BUFFER_SIZE = 1024 * 1024;                                                          // 1MB，默认初始缓存大小
     // 参考 mysql-connector-java-5.1.40.jar: com.mysql.jdbc.MysqlIO.maxThreeBytes
     // < 256 * 256 * 256 = 16MB
     private static final int    DEFAULT_MAX_BUFFER_SIZE  = 16 * DEFAULT_INIT_BUFFER_SIZE;                                        // 16MB，默认最大缓存大小
-    private Channel             channel                  = null;
+    // 缓存数据超过高水位时暂停从socket读取，消费到低水位以下再恢复，避免阻塞netty的io线程
+    private static final int    HIGH_WATER_MARK          = DEFAULT_INIT_BUFFER_SIZE;
+    private static final int    LOW_WATER_MARK           = HIGH_WATER_MARK >> 1;
+    private volatile Channel    channel                  = null;
     private Object              lock                     = new Object();
     private ByteBuf             cache                    = PooledByteBufAllocator.DEFAULT.directBuffer(DEFAULT_INIT_BUFFER_SIZE); // 缓存大小
     private int                 maxDirectBuffer          = cache.maxCapacity();
+    private int                 waitingSize              = 0;                                                                    // 读线程正在等待的数据长度
 
     public Channel getChannel() {
         return channel;
     }
 
     public void setChannel(Channel channel) {
-        this.channel = channel;
+        synchronized (lock) {
+            this.channel = channel;
+            // 连接断开时唤醒等待中的读线程
+            lock.notifyAll();
+        }
     }
 
-    public void writeCache(ByteBuf buf) throws InterruptedException, IOException {
+    public void writeCache(ByteBuf buf) throws IOException {
         synchronized (lock) {
-            while (true) {
-                if (null == cache) {
-                    throw new IOException("socket is closed !");
-                }
+            if (null == cache) {
+                throw new IOException("socket is closed !");
+            }
 
-                // source buffer is empty.
-                if (!buf.isReadable()) {
-                    break;
-                }
+            // source buffer is empty.
+            if (!buf.isReadable()) {
+                return;
+            }
 
-                // 默认缓存大小不够用时需自动清理或扩充，否则将因缓存空间不足而造成I/O超时假象
-                int length = buf.readableBytes();
-                int deltaSize = length - cache.writableBytes();
-                if (deltaSize > 0) {
-                    // 首先避免频繁分配内存（扩容/收缩），其次避免频繁移动内存（清理）
-                    if (cache.readerIndex() >= deltaSize) { // 可以清理
-                        // 回收已读空间，重置读写指针
-                        cache.discardReadBytes();
-                        // 恢复自动扩充的过大缓存到默认初始缓存大小，释放空间
-                        int oldCapacity = cache.capacity();
-                        if (oldCapacity > DEFAULT_MAX_BUFFER_SIZE) { // 尝试收缩
-                            int newCapacity = cache.writerIndex();
-                            newCapacity = ((newCapacity - 1) / DEFAULT_INIT_BUFFER_SIZE + 1) * DEFAULT_INIT_BUFFER_SIZE; // 对齐
-                            int quarter = (newCapacity >> 2); // 至少留空四分之一
-                            quarter = ((quarter - 1) / DEFAULT_INIT_BUFFER_SIZE + 1) * DEFAULT_INIT_BUFFER_SIZE; // 对齐
-                            newCapacity += quarter; // 留空四分之一
-                            if (newCapacity < (oldCapacity >> 1)) { // 至少收缩二分之一
+            // 默认缓存大小不够用时需自动清理或扩充，否则将因缓存空间不足而造成I/O超时假象
+            int length = buf.readableBytes();
+            int deltaSize = length - cache.writableBytes();
+            if (deltaSize > 0) {
+                // 首先避免频繁分配内存（扩容/收缩），其次避免频繁移动内存（清理）
+                if (cache.readerIndex() >= deltaSize) { // 可以清理
+                    // 回收已读空间，重置读写指针
+                    cache.discardReadBytes();
+                    // 恢复自动扩充的过大缓存到默认初始缓存大小，释放空间
+                    int oldCapacity = cache.capacity();
+                    if (oldCapacity > DEFAULT_MAX_BUFFER_SIZE) { // 尝试收缩
+                        int newCapacity = cache.writerIndex();
+                        newCapacity = ((newCapacity - 1) / DEFAULT_INIT_BUFFER_SIZE + 1) * DEFAULT_INIT_BUFFER_SIZE; // 对齐
+                        int quarter = (newCapacity >> 2); // 至少留空四分之一
+                        quarter = ((quarter - 1) / DEFAULT_INIT_BUFFER_SIZE + 1) * DEFAULT_INIT_BUFFER_SIZE; // 对齐
+                        newCapacity += quarter; // 留空四分之一
+                        if (newCapacity < (oldCapacity >> 1)) { // 至少收缩二分之一
+                            try {
+                                cache.capacity(newCapacity);
+                                logger.info("shrink cache capacity: {} - {} = {} bytes",
+                                    oldCapacity,
+                                    oldCapacity - newCapacity,
+                                    newCapacity);
+                            } catch (OutOfMemoryError ignore) {
+                                maxDirectBuffer = oldCapacity; // 未来不再超过当前容量，记录日志后继续
+                                logger.warn("cache OutOfMemoryError: {} bytes", newCapacity, ignore);
+                            }
+                        }
+                    }
+                } else { // 尝试扩容
+                    int oldCapacity = cache.capacity();
+                    if (oldCapacity < maxDirectBuffer) {
+                        int quarter = (oldCapacity >> 2); // 至少扩容四分之一
+                        quarter = ((quarter - 1) / DEFAULT_INIT_BUFFER_SIZE + 1) * DEFAULT_INIT_BUFFER_SIZE; // 对齐
+                        deltaSize = ((deltaSize - 1) / quarter + 1) * quarter; // 对齐
+                        int newCapacity = oldCapacity + deltaSize;
+                        if (newCapacity > maxDirectBuffer) {
+                            newCapacity = maxDirectBuffer;
+                        }
+                        try {
+                            cache.capacity(newCapacity);
+                            logger.info("expand cache capacity: {} + {} = {} bytes",
+                                oldCapacity,
+                                newCapacity - oldCapacity,
+                                newCapacity);
+                        } catch (OutOfDirectMemoryError e) {
+                            // failed to allocate 885571168 byte(s) of
+                            // direct memory (used: 1002946176, max:
+                            // 1888485376)
+                            long maxDirectMemory = SystemPropertyUtil.getLong("io.netty.maxDirectMemory", -1);
+                            if (maxDirectMemory < 0) {
+                                maxDirectMemory = PlatformDependent.maxDirectMemory();
+                            }
+                            if (maxDirectBuffer > maxDirectMemory) {
+                                maxDirectBuffer = (int) maxDirectMemory;
+                                newCapacity = maxDirectBuffer;
+                                logger.warn("resize maxDirectBuffer: {} bytes", maxDirectBuffer, e);
                                 try {
                                     cache.capacity(newCapacity);
-                                    logger.info("shrink cache capacity: {} - {} = {} bytes",
+                                    logger.info("expand cache capacity: {} + {} = {} bytes",
                                         oldCapacity,
-                                        oldCapacity - newCapacity,
+                                        newCapacity - oldCapacity,
                                         newCapacity);
                                 } catch (OutOfMemoryError ignore) {
                                     maxDirectBuffer = oldCapacity; // 未来不再超过当前容量，记录日志后继续
                                     logger.warn("cache OutOfMemoryError: {} bytes", newCapacity, ignore);
                                 }
-                            }
-                        }
-                    } else { // 尝试扩容
-                        int oldCapacity = cache.capacity();
-                        if (oldCapacity < maxDirectBuffer) {
-                            int quarter = (oldCapacity >> 2); // 至少扩容四分之一
-                            quarter = ((quarter - 1) / DEFAULT_INIT_BUFFER_SIZE + 1) * DEFAULT_INIT_BUFFER_SIZE; // 对齐
-                            deltaSize = ((deltaSize - 1) / quarter + 1) * quarter; // 对齐
-                            int newCapacity = oldCapacity + deltaSize;
-                            if (newCapacity > maxDirectBuffer) {
-                                newCapacity = maxDirectBuffer;
-                            }
-                            try {
-                                cache.capacity(newCapacity);
-                                logger.info("expand cache capacity: {} + {} = {} bytes",
-                                    oldCapacity,
-                                    newCapacity - oldCapacity,
-                                    newCapacity);
-                            } catch (OutOfDirectMemoryError e) {
-                                // failed to allocate 885571168 byte(s) of
-                                // direct memory (used: 1002946176, max:
-                                // 1888485376)
-                                long maxDirectMemory = SystemPropertyUtil.getLong("io.netty.maxDirectMemory", -1);
-                                if (maxDirectMemory < 0) {
-                                    maxDirectMemory = PlatformDependent.maxDirectMemory();
-                                }
-                                if (maxDirectBuffer > maxDirectMemory) {
-                                    maxDirectBuffer = (int) maxDirectMemory;
-                                    newCapacity = maxDirectBuffer;
-                                    logger.warn("resize maxDirectBuffer: {} bytes", maxDirectBuffer, e);
-                                    try {
-                                        cache.capacity(newCapacity);
-                                        logger.info("expand cache capacity: {} + {} = {} bytes",
-                                            oldCapacity,
-                                            newCapacity - oldCapacity,
-                                            newCapacity);
-                                    } catch (OutOfMemoryError ignore) {
-                                        maxDirectBuffer = oldCapacity; // 未来不再超过当前容量，记录日志后继续
-                                        logger.warn("cache OutOfMemoryError: {} bytes", newCapacity, ignore);
-                                    }
-                                } else {
-                                    maxDirectBuffer = oldCapacity; // 未来不再超过当前容量，记录日志后继续
-                                    logger.warn("cache OutOfDirectMemoryError: {} bytes", newCapacity, e);
-                                }
-                            } catch (OutOfMemoryError ignore) {
+                            } else {
                                 maxDirectBuffer = oldCapacity; // 未来不再超过当前容量，记录日志后继续
-                                logger.warn("cache OutOfMemoryError: {} bytes", newCapacity, ignore);
+                                logger.warn("cache OutOfDirectMemoryError: {} bytes", newCapacity, e);
                             }
+                        } catch (OutOfMemoryError ignore) {
+                            maxDirectBuffer = oldCapacity; // 未来不再超过当前容量，记录日志后继续
+                            logger.warn("cache OutOfMemoryError: {} bytes", newCapacity, ignore);
                         }
                     }
-                    deltaSize = length - cache.writableBytes();
                 }
+            }
 
-                if (deltaSize != length) {
-                    // deltaSize <= 0 可全部写入，deltaSize > 0 只能部分写入
-                    if (deltaSize <= 0) {
-                        cache.writeBytes(buf, length);
-                        break;
-                    } else {
-                        cache.writeBytes(buf, length - deltaSize);
-                    }
-                }
-                // dest buffer is full.
-                lock.wait(WAIT_PERIOD);
-                // 回收已读空间，重置读写指针
-                cache.discardReadBytes();
+            // 不在netty的io线程上等待读线程消费，放不下的数据直接扩充缓存写入，
+            // 超过高水位后关闭autoRead，缓存最多再多出一次读取的数据量
+            try {
+                cache.writeBytes(buf, length);
+            } catch (OutOfMemoryError e) {
+                throw new IOException("cache OutOfMemoryError: " + (cache.readableBytes() + length) + " bytes", e);
+            }
+            // 读线程没有在等待更多的数据时，超过高水位暂停读取
+            if (cache.readableBytes() >= HIGH_WATER_MARK && cache.readableBytes() >= waitingSize) {
+                setAutoRead(false);
             }
+            lock.notifyAll();
         }
     }
 
@@ -163,49 +165,68 @@ public class NettySocketChannel implements SocketChannel {
     }
 
     public byte[] read(int readSize, int timeout) throws IOException {
-        int accumulatedWaitTime = 0;
+        byte[] back = new byte[readSize];
+        read(back, 0, readSize, timeout);
+        return back;
+    }
 
+    @Override
+    public void read(byte[] data, int off, int len, int timeout) throws IOException {
         // 若读取内容较长，则自动扩充超时时间，以初始缓存大小为基准计算倍数
-        if (timeout > 0 && readSize > DEFAULT_INIT_BUFFER_SIZE) {
-            timeout *= (readSize / DEFAULT_INIT_BUFFER_SIZE + 1);
+        if (timeout > 0 && len > DEFAULT_INIT_BUFFER_SIZE) {
+            timeout *= (len / DEFAULT_INIT_BUFFER_SIZE + 1);
         }
-        do {
-            if (readSize > cache.readableBytes()) {
-                if (null == channel) {
-                    throw new IOException("socket has Interrupted !");
-                }
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+
+        synchronized (lock) {
+            try {
+                while (true) {
+                    if (null == cache) {
+                        throw new IOException("socket is closed !");
+                    }
 
-                if (timeout > 0) {
-                    accumulatedWaitTime += WAIT_PERIOD;
-                    if (accumulatedWaitTime > timeout) {
-                        StringBuilder sb = new StringBuilder("socket read timeout occured !");
-                        sb.append(" readSize = ").append(readSize);
-                        sb.append(", readableBytes = ").append(cache.readableBytes());
-                        sb.append(", timeout = ").append(timeout);
-                        throw new IOException(sb.toString());
+                    if (len <= cache.readableBytes()) {
+                        cache.readBytes(data, off, len);
+                        if (cache.readableBytes() < LOW_WATER_MARK) {
+                            setAutoRead(true);
+                        }
+                        return;
                     }
-                }
 
-                synchronized (this) {
-                    try {
-                        wait(WAIT_PERIOD);
-                    } catch (InterruptedException e) {
+                    if (null == channel) {
                         throw new IOException("socket has Interrupted !");
                     }
+
+                    // 数据不足时必须保证channel在读取，数据到达后由writeCache唤醒
+                    waitingSize = len;
+                    setAutoRead(true);
+                    if (timeout > 0) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            StringBuilder sb = new StringBuilder("socket read timeout occured !");
+                            sb.append(" readSize = ").append(len);
+                            sb.append(", readableBytes = ").append(cache.readableBytes());
+                            sb.append(", timeout = ").append(timeout);
+                            throw new IOException(sb.toString());
+                        }
+                        lock.wait(remaining);
+                    } else {
+                        lock.wait();
+                    }
                 }
-            } else {
-                byte[] back = new byte[readSize];
-                synchronized (lock) {
-                    cache.readBytes(back);
-                }
-                return back;
+            } catch (InterruptedException e) {
+                throw new IOException("socket has Interrupted !");
+            } finally {
+                waitingSize = 0;
             }
-        } while (true);
+        }
     }
 
-    @Override
-    public void read(byte[] data, int off, int len, int timeout) throws IOException {
-        throw new NotImplementedException();
+    private void setAutoRead(boolean autoRead) {
+        Channel ch = channel;
+        if (ch != null && ch.config().isAutoRead() != autoRead) {
+            ch.config().setAutoRead(autoRead);
+        }
     }
 
     public boolean isConnected() {
@@ -220,13 +241,17 @@ public class NettySocketChannel implements SocketChannel {
         if (channel != null) {
             channel.close();
         }
-        channel = null;
         // A fatal error has been detected by the Java Runtime Environment:
         // EXCEPTION_ACCESS_VIOLATION (0xc0000005)
         synchronized (lock) {
-            cache.discardReadBytes();// 回收已占用的内存
-            cache.release();// 释放整个内存
-            cache = null;
+            channel = null;
+            if (cache != null) {
+                cache.discardReadBytes();// 回收已占用的内存
+                cache.release();// 释放整个内存
+                cache = null;
+            }
+            // 唤醒所有等待的读线程
+            lock.notifyAll();
         }
     }
 
@@ -0,0 +1,149 @@
+package com.alibaba.otter.canal.parse.driver.mysql.socket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NettySocketChannelTest {
+
+    private EmbeddedChannel    channel;
+    private NettySocketChannel socket;
+    private ExecutorService    executor;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel();
+        socket = new NettySocketChannel();
+        socket.setChannel(channel);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        socket.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadTimeout() {
+        long start = System.currentTimeMillis();
+        try {
+            socket.read(4, 200);
+            Assert.fail("read should timeout");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("timeout"));
+        }
+        long cost = System.currentTimeMillis() - start;
+        Assert.assertTrue("cost " + cost, cost >= 200 && cost < 2000);
+    }
+
+    @Test
+    public void testReadWakeupOnData() throws Exception {
+        Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+
+            public byte[] call() throws Exception {
+                return socket.read(4, 5000);
+            }
+        });
+
+        Thread.sleep(100);
+        Assert.assertFalse(future.isDone());
+        socket.writeCache(Unpooled.wrappedBuffer(new byte[] { 1, 2 }));
+        Thread.sleep(50);
+        Assert.assertFalse(future.isDone());
+        socket.writeCache(Unpooled.wrappedBuffer(new byte[] { 3, 4, 5 }));
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3, 4 }, future.get(1, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(new byte[] { 5 }, socket.read(1, 100));
+    }
+
+    @Test
+    public void testReadAfterClose() throws Exception {
+        Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+
+            public byte[] call() throws Exception {
+                return socket.read(4, 0);
+            }
+        });
+
+        Thread.sleep(100);
+        socket.close();
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            Assert.fail("read should fail after close");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        final int chunk = 64 * 1024;
+        byte[] data = new byte[chunk];
+        // 没有读线程消费时写入不能阻塞，超过高水位后关闭autoRead
+        for (int i = 0; i < 32; i++) {
+            Arrays.fill(data, (byte) i);
+            ByteBuf buf = Unpooled.copiedBuffer(data);
+            Future<?> future = write(buf);
+            future.get(1, TimeUnit.SECONDS);
+            Assert.assertFalse(buf.isReadable());
+        }
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // 消费到低水位以上不恢复读取
+        for (int i = 0; i < 20; i++) {
+            byte[] back = socket.read(chunk, 1000);
+            Assert.assertEquals((byte) i, back[0]);
+            Assert.assertEquals((byte) i, back[chunk - 1]);
+        }
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // 消费到低水位以下恢复读取
+        for (int i = 20; i < 32; i++) {
+            Assert.assertEquals((byte) i, socket.read(chunk, 1000)[0]);
+        }
+        Assert.assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testReaderWaitingEnablesAutoRead() throws Exception {
+        byte[] data = new byte[1024 * 1024];
+        socket.writeCache(Unpooled.copiedBuffer(data));
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // 读线程需要的数据超过已缓存数据时必须恢复读取，否则永远等不到数据
+        Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+
+            public byte[] call() throws Exception {
+                return socket.read(2 * 1024 * 1024, 5000);
+            }
+        });
+        Thread.sleep(100);
+        Assert.assertTrue(channel.config().isAutoRead());
+        socket.writeCache(Unpooled.copiedBuffer(data));
+        Assert.assertEquals(2 * 1024 * 1024, future.get(1, TimeUnit.SECONDS).length);
+    }
+
+    private Future<?> write(final ByteBuf buf) {
+        return executor.submit(new Callable<Object>() {
+
+            public Object call() throws Exception {
+                socket.writeCache(buf);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,262 @@
+package com.alibaba.otter.canal.filter.regex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.canal.filter.CanalEventFilter;
+import com.alibaba.otter.canal.filter.exception.CanalFilterException;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * 预编译的tableName正则匹配过滤算法，和{@linkplain com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter}的匹配语义一致
+ *
+ * <pre>
+ * 1. 构造时将逗号分隔的pattern一次性编译：
+ *   a. 不包含正则元字符的pattern，放入精确匹配的hash set
+ *   b. 只包含普通字符、'.'以及以'.*'结尾的pattern，放入前缀树，'.'匹配任意单个字符
+ *   c. 其余的pattern，使用java.util.regex进行整串匹配
+ * 2. 匹配结果按schema.table缓存，缓存大小有上限
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class CompiledRegexFilter implements CanalEventFilter<String> {
+
+    private static final String                 SPLIT              = ",";
+    private static final int                    DEFAULT_CACHE_SIZE = 64 * 1024;
+
+    private final boolean                       defaultEmptyValue;
+    private final boolean                       empty;
+    private final Set<String>                   exactNames         = new HashSet<String>();
+    private final TrieNode                      root               = new TrieNode();
+    private final List<Pattern>                 patterns           = new ArrayList<Pattern>();
+    private final LoadingCache<String, Boolean> results;
+
+    public CompiledRegexFilter(String pattern){
+        this(pattern, true);
+    }
+
+    public CompiledRegexFilter(String pattern, boolean defaultEmptyValue){
+        this(pattern, defaultEmptyValue, DEFAULT_CACHE_SIZE);
+    }
+
+    public CompiledRegexFilter(String pattern, boolean defaultEmptyValue, int cacheSize){
+        this.defaultEmptyValue = defaultEmptyValue;
+        this.empty = StringUtils.isEmpty(pattern);
+        if (!empty) {
+            for (String item : StringUtils.split(pattern, SPLIT)) {
+                // 单个pattern中的'|'等价于多个pattern
+                for (String alternative : splitAlternatives(item)) {
+                    compile(alternative);
+                }
+            }
+        }
+
+        this.results = CacheBuilder.newBuilder().maximumSize(cacheSize).build(new CacheLoader<String, Boolean>() {
+
+            public Boolean load(String name) throws Exception {
+                return doFilter(name);
+            }
+        });
+    }
+
+    public boolean filter(String filtered) throws CanalFilterException {
+        if (empty) {
+            return defaultEmptyValue;
+        }
+
+        if (StringUtils.isEmpty(filtered)) {
+            return defaultEmptyValue;
+        }
+
+        return results.getUnchecked(filtered);
+    }
+
+    private boolean doFilter(String filtered) {
+        String name = filtered.toLowerCase();
+        if (exactNames.contains(name)) {
+            return true;
+        }
+
+        if (root.matches(name, 0)) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 编译单个pattern，能用hash set/前缀树处理的不再使用正则
+     */
+    private void compile(String pattern) {
+        List<Character> tokens = new ArrayList<Character>(); // null代表'.'
+        boolean prefix = false;
+        boolean literal = true;
+        int length = pattern.length();
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < length && !Character.isLetterOrDigit(pattern.charAt(i + 1))) {
+                tokens.add(Character.toLowerCase(pattern.charAt(++i))); // 转义的特殊字符
+            } else if (c == '.' && i + 2 == length && pattern.charAt(i + 1) == '*') {
+                prefix = true; // 以.*结尾
+                break;
+            } else if (c == '.') {
+                tokens.add(null);
+                literal = false;
+            } else if (isMetaChar(c)) {
+                addPattern(pattern);
+                return;
+            } else {
+                tokens.add(Character.toLowerCase(c));
+            }
+        }
+
+        if (literal && !prefix) {
+            StringBuilder name = new StringBuilder(tokens.size());
+            for (Character token : tokens) {
+                name.append(token.charValue());
+            }
+            exactNames.add(name.toString());
+        } else {
+            root.add(tokens, prefix);
+        }
+    }
+
+    private void addPattern(String pattern) {
+        try {
+            patterns.add(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+        } catch (PatternSyntaxException e) {
+            throw new CanalFilterException(e);
+        }
+    }
+
+    /**
+     * 按顶层的'|'拆分，忽略转义以及括号内的'|'
+     */
+    private static List<String> splitAlternatives(String pattern) {
+        List<String> result = new ArrayList<String>();
+        int depth = 0;
+        boolean inClass = false;
+        int start = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = (c != ']');
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                result.add(pattern.substring(start, i));
+                start = i + 1;
+            }
+        }
+        result.add(pattern.substring(start));
+        return result;
+    }
+
+    private static boolean isMetaChar(char c) {
+        switch (c) {
+            case '\\':
+            case '^':
+            case '$':
+            case '|':
+            case '?':
+            case '*':
+            case '+':
+            case '(':
+            case ')':
+            case '[':
+            case ']':
+            case '{':
+            case '}':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 前缀树节点，any为'.'对应的子节点
+     */
+    private static class TrieNode {
+
+        private Map<Character, TrieNode> children;
+        private TrieNode                 any;
+        private boolean                  exact;
+        private boolean                  prefix;
+
+        public void add(List<Character> tokens, boolean prefix) {
+            TrieNode node = this;
+            for (Character token : tokens) {
+                node = node.child(token);
+            }
+
+            if (prefix) {
+                node.prefix = true;
+            } else {
+                node.exact = true;
+            }
+        }
+
+        public boolean matches(String name, int index) {
+            if (prefix) {
+                return true;
+            }
+
+            if (index == name.length()) {
+                return exact;
+            }
+
+            if (children != null) {
+                TrieNode child = children.get(name.charAt(index));
+                if (child != null && child.matches(name, index + 1)) {
+                    return true;
+                }
+            }
+
+            return any != null && any.matches(name, index + 1);
+        }
+
+        private TrieNode child(Character token) {
+            if (token == null) {
+                if (any == null) {
+                    any = new TrieNode();
+                }
+                return any;
+            }
+
+            if (children == null) {
+                children = new HashMap<Character, TrieNode>();
+            }
+
+            TrieNode child = children.get(token);
+            if (child == null) {
+                child = new TrieNode();
+                children.put(token, child);
+            }
+            return child;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.alibaba.otter.canal.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.filter.regex.CompiledRegexFilter;
+
+public class CompiledRegexFilterTest {
+
+    @Test
+    public void test_regex() {
+        CompiledRegexFilter filter = new CompiledRegexFilter("s1\\..*,s2\\..*");
+        Assert.assertEquals(true, filter.filter("s1.t1"));
+        Assert.assertEquals(true, filter.filter("s1.t2"));
+        Assert.assertEquals(true, filter.filter(""));
+        Assert.assertEquals(false, filter.filter("s12.t1"));
+        Assert.assertEquals(true, filter.filter("s2.t2"));
+        Assert.assertEquals(false, filter.filter("s3.t2"));
+
+        CompiledRegexFilter filter2 = new CompiledRegexFilter("s1\\..*,s2.t1");
+        Assert.assertEquals(true, filter2.filter("s1.t1"));
+        Assert.assertEquals(true, filter2.filter("s1.t2"));
+        Assert.assertEquals(true, filter2.filter("s2.t1"));
+        Assert.assertEquals(true, filter2.filter("s2xt1")); // '.'匹配任意字符
+
+        CompiledRegexFilter filter3 = new CompiledRegexFilter("foooo,f.*t");
+        Assert.assertEquals(true, filter3.filter("fooooot"));
+
+        CompiledRegexFilter filter4 = new CompiledRegexFilter("otter2.otter_stability1|otter1.otter_stability1|retl.retl_mark|retl.retl_buffer|retl.xdual");
+        Assert.assertEquals(true, filter4.filter("otter1.otter_stability1"));
+        Assert.assertEquals(false, filter4.filter("otter3.otter_stability1"));
+    }
+
+    @Test
+    public void test_empty() {
+        CompiledRegexFilter filter = new CompiledRegexFilter("", false);
+        Assert.assertEquals(false, filter.filter("s1.t1"));
+
+        filter = new CompiledRegexFilter("s1\\.t1", false);
+        Assert.assertEquals(false, filter.filter(""));
+        Assert.assertEquals(true, filter.filter("S1.T1")); // 忽略大小写
+    }
+
+    @Test
+    public void test_sameAsAviater() {
+        String pattern = "u\\..*,uvw\\..*,uv\\..*,a\\.x,a\\.xyz,a\\.xy,abc\\.x,abc\\.xyz,abc\\.xy,ab\\.x,ab\\.xyz,ab\\.xy,"
+                         + "db_\\d+\\.t_[0-9]{2},test\\.(order|user)_.*,.*\\.heartbeat,Mixed\\.Case";
+        String[] names = { "u.abc", "uv.abc", "uvw.abc", "uvwx.abc", "a.x", "a.xy", "a.xyz", "a.xyzz", "abc.x",
+                "ab.xyz1", "db_1.t_01", "db_12.t_1", "dbx.t_01", "test.order_1", "test.user", "test.user_", "x.heartbeat",
+                "x.heartbeats", "mixed.case", "MIXED.CASE", "u", "uv" };
+
+        AviaterRegexFilter aviaterFilter = new AviaterRegexFilter(pattern);
+        CompiledRegexFilter compiledFilter = new CompiledRegexFilter(pattern);
+        for (String name : names) {
+            Assert.assertEquals(name, aviaterFilter.filter(name), compiledFilter.filter(name));
+            // 第二次走缓存
+            Assert.assertEquals(name, aviaterFilter.filter(name), compiledFilter.filter(name));
+        }
+    }
+}
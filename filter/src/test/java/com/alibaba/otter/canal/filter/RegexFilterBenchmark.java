@@ -0,0 +1,99 @@
+package com.alibaba.otter.canal.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.filter.regex.CompiledRegexFilter;
+
+/**
+ * 1k条pattern下，aviater正则过滤和预编译过滤的单次匹配耗时对比
+ *
+ * @version 1.0.26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexFilterBenchmark {
+
+    private static final int    PATTERN_COUNT = 1000;
+    private static final int    NAME_COUNT    = 1024;
+
+    private AviaterRegexFilter  aviaterFilter;
+    private CompiledRegexFilter compiledFilter;
+    private String[]            names;
+    private int                 index         = 0;
+
+    @Setup
+    public void setUp() {
+        // 60%精确表名，30%表名前缀，10%需要正则
+        List<String> patterns = new ArrayList<String>(PATTERN_COUNT);
+        for (int i = 0; i < PATTERN_COUNT; i++) {
+            if (i % 10 < 6) {
+                patterns.add("db_" + i + "\\.table_" + i);
+            } else if (i % 10 < 9) {
+                patterns.add("db_" + i + "\\.log_.*");
+            } else {
+                patterns.add("db_" + i + "\\.t_\\d+");
+            }
+        }
+        String pattern = StringUtils.join(patterns, ",");
+        aviaterFilter = new AviaterRegexFilter(pattern);
+        compiledFilter = new CompiledRegexFilter(pattern);
+
+        // 一半命中，一半不命中
+        Random random = new Random(0);
+        names = new String[NAME_COUNT];
+        for (int i = 0; i < NAME_COUNT; i++) {
+            int db = random.nextInt(PATTERN_COUNT * 2);
+            switch (random.nextInt(3)) {
+                case 0:
+                    names[i] = "db_" + db + ".table_" + db;
+                    break;
+                case 1:
+                    names[i] = "db_" + db + ".log_" + i;
+                    break;
+                default:
+                    names[i] = "db_" + db + ".t_" + i;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean aviater() {
+        return aviaterFilter.filter(nextName());
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return compiledFilter.filter(nextName());
+    }
+
+    private String nextName() {
+        return names[index++ & (NAME_COUNT - 1)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RegexFilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -16,7 +16,7 @@ import com.alibaba.otter.canal.common.alarm.CanalAlarmHandler;
 import com.alibaba.otter.canal.common.alarm.LogAlarmHandler;
 import com.alibaba.otter.canal.common.utils.JsonUtils;
 import com.alibaba.otter.canal.common.zookeeper.ZkClientx;
-import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.filter.regex.CompiledRegexFilter;
 import com.alibaba.otter.canal.instance.core.AbstractCanalInstance;
 import com.alibaba.otter.canal.instance.manager.model.Canal;
 import com.alibaba.otter.canal.instance.manager.model.CanalParameter;
@@ -49,6 +49,7 @@ import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.sink.entry.EntryEventSink;
 import com.alibaba.otter.canal.sink.entry.group.GroupEventSink;
 import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.file.FileMixedEventStore;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.BatchMode;
 
@@ -147,8 +148,17 @@ public class CanalInstanceWithManager extends AbstractCanalInstance {
             // 后续版本支持
             throw new CanalException("unsupport MetaMode for " + mode);
         } else if (mode.isMixed()) {
-            // 后续版本支持
-            throw new CanalException("unsupport MetaMode for " + mode);
+            FileMixedEventStore mixedEventStore = new FileMixedEventStore();
+            mixedEventStore.setBufferSize(parameters.getMemoryStorageBufferSize());
+            mixedEventStore.setBufferMemUnit(parameters.getMemoryStorageBufferMemUnit());
+            mixedEventStore.setBatchMode(BatchMode.valueOf(parameters.getStorageBatchMode().name()));
+            mixedEventStore.setDdlIsolation(parameters.getDdlIsolation());
+            String storageDir = parameters.getFileStorageDirectory();
+            mixedEventStore.setDataDir(StringUtils.isNotEmpty(storageDir) ? storageDir : parameters.getDataDir());
+            if (parameters.getFileStorageRollverCount() != null) {
+                mixedEventStore.setMaxSegmentCount(parameters.getFileStorageRollverCount());
+            }
+            eventStore = mixedEventStore;
         } else {
             throw new CanalException("unsupport MetaMode for " + mode);
         }
@@ -313,14 +323,14 @@ public class CanalInstanceWithManager extends AbstractCanalInstance {
             abstractEventParser.setEventSink(getEventSink());
 
             if (StringUtils.isNotEmpty(filter)) {
-                AviaterRegexFilter aviaterFilter = new AviaterRegexFilter(filter);
-                abstractEventParser.setEventFilter(aviaterFilter);
+                CompiledRegexFilter regexFilter = new CompiledRegexFilter(filter);
+                abstractEventParser.setEventFilter(regexFilter);
             }
 
             // 设置黑名单
             if (StringUtils.isNotEmpty(parameters.getBlackFilter())) {
-                AviaterRegexFilter aviaterFilter = new AviaterRegexFilter(parameters.getBlackFilter());
-                abstractEventParser.setEventBlackFilter(aviaterFilter);
+                CompiledRegexFilter regexFilter = new CompiledRegexFilter(parameters.getBlackFilter());
+                abstractEventParser.setEventBlackFilter(regexFilter);
             }
         }
         if (eventParser instanceof MysqlEventParser) {
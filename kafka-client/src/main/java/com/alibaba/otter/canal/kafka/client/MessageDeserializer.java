@@ -8,8 +8,8 @@ import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalPacket;
+import com.alibaba.otter.canal.protocol.CompressionUtils;
 import com.alibaba.otter.canal.protocol.Message;
-import com.alibaba.otter.canal.protocol.exception.CanalClientException;
 import com.google.protobuf.ByteString;
 
 /**
@@ -36,11 +36,13 @@ public class MessageDeserializer implements Deserializer<Message> {
                 CanalPacket.Packet p = CanalPacket.Packet.parseFrom(data);
                 switch (p.getType()) {
                     case MESSAGES: {
-                        if (!p.getCompression().equals(CanalPacket.Compression.NONE)) {
-                            throw new CanalClientException("compression is not supported in this connector");
+                        CanalPacket.Messages messages;
+                        if (p.getCompression() == CanalPacket.Compression.NONE) {
+                            messages = CanalPacket.Messages.parseFrom(p.getBody());
+                        } else {
+                            messages = CanalPacket.Messages.parseFrom(CompressionUtils.decompress(p.getCompression(),
+                                p.getBody()));
                         }
-
-                        CanalPacket.Messages messages = CanalPacket.Messages.parseFrom(p.getBody());
                         Message result = new Message(messages.getBatchId());
                         for (ByteString byteString : messages.getMessagesList()) {
                             result.addEntry(CanalEntry.Entry.parseFrom(byteString));
@@ -0,0 +1,61 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 将{@linkplain FlatAvroSerializer}新生成的schema发布到schema topic，供非java的consumer按指纹查找writer schema
+ *
+ * <pre>
+ * 1. key为16位小写十六进制的指纹(和记录header中的小端字节对应同一个long)，value为schema json
+ * 2. 同步等待kafka确认之后才返回，保证consumer读到数据记录时schema已经在topic中
+ * 3. 同一个schema可能重复发布，schema topic建议配置为cleanup.policy=compact
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class AvroSchemaPublisher implements FlatAvroSerializer.SchemaListener {
+
+    private static final Logger            logger  = LoggerFactory.getLogger(AvroSchemaPublisher.class);
+    private static final long              TIMEOUT = 30 * 1000;                                     // 等待kafka确认的时间，单位ms
+
+    private final Producer<String, String> producer;
+    private final String                   topic;
+
+    public AvroSchemaPublisher(Producer<String, String> producer, String topic){
+        this.producer = producer;
+        this.topic = topic;
+    }
+
+    @Override
+    public void onSchema(long fingerprint, String schema) {
+        String key = toKey(fingerprint);
+        try {
+            producer.send(new ProducerRecord<String, String>(topic, key, schema)).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SerializationException("interrupted when publishing avro schema " + key + " to " + topic);
+        } catch (ExecutionException e) {
+            throw new SerializationException("Error when publishing avro schema " + key + " to " + topic, e.getCause());
+        } catch (TimeoutException e) {
+            throw new SerializationException("timeout when publishing avro schema " + key + " to " + topic);
+        }
+        logger.info("publish avro schema {} to topic {}", key, topic);
+    }
+
+    public static String toKey(long fingerprint) {
+        String hex = Long.toHexString(fingerprint);
+        StringBuilder key = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            key.append('0');
+        }
+        return key.append(hex).toString();
+    }
+}
@@ -1,8 +1,13 @@
 package com.alibaba.otter.canal.kafka.producer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -11,7 +16,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.kafka.producer.KafkaProperties.Topic;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
 import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.MessageView;
 
 /**
  * kafka producer 主操作类
@@ -21,11 +31,52 @@ import com.alibaba.otter.canal.protocol.Message;
  */
 public class CanalKafkaProducer {
 
-    private static final Logger       logger = LoggerFactory.getLogger(CanalKafkaProducer.class);
+    private static final Logger           logger = LoggerFactory.getLogger(CanalKafkaProducer.class);
 
-    private Producer<String, Message> producer;
+    private Producer<String, Message>     producer;
+    private Producer<String, FlatMessage> flatProducer;                                          // 扁平格式时使用，和producer只初始化一个
+    private Producer<String, String>      schemaProducer;                                        // avro格式并且配置了schema topic时使用
+
+    public CanalKafkaProducer(){
+    }
+
+    /**
+     * 直接使用指定的producer发送protobuf格式的Message
+     */
+    CanalKafkaProducer(Producer<String, Message> producer){
+        this.producer = producer;
+    }
 
     public void init(KafkaProperties kafkaProperties) {
+        Properties properties = buildProperties(kafkaProperties);
+        String serializer = kafkaProperties.getSerializer();
+        if (serializer == null || KafkaProperties.SERIALIZER_PROTOBUF.equalsIgnoreCase(serializer)) {
+            properties.put("value.serializer", MessageSerializer.class.getName());
+            producer = new KafkaProducer<String, Message>(properties);
+        } else if (KafkaProperties.SERIALIZER_AVRO.equalsIgnoreCase(serializer)) {
+            // 直接传入serializer实例，以便设置schema的发布
+            FlatAvroSerializer avroSerializer = new FlatAvroSerializer();
+            if (kafkaProperties.getAvroSchemaTopic() != null) {
+                schemaProducer = new KafkaProducer<String, String>(properties,
+                    new StringSerializer(),
+                    new StringSerializer());
+                avroSerializer.setSchemaListener(new AvroSchemaPublisher(schemaProducer,
+                    kafkaProperties.getAvroSchemaTopic()));
+            }
+            flatProducer = new KafkaProducer<String, FlatMessage>(properties, new StringSerializer(), avroSerializer);
+        } else {
+            if (KafkaProperties.SERIALIZER_JSON.equalsIgnoreCase(serializer)) {
+                serializer = FlatJsonSerializer.class.getName();
+            }
+            properties.put("value.serializer", serializer);
+            flatProducer = new KafkaProducer<String, FlatMessage>(properties);
+        }
+    }
+
+    /**
+     * producer的公共配置，value.serializer由init按消息格式设置
+     */
+    static Properties buildProperties(KafkaProperties kafkaProperties) {
         Properties properties = new Properties();
         properties.put("bootstrap.servers", kafkaProperties.getServers());
         properties.put("acks", "all");
@@ -33,15 +84,26 @@ public class CanalKafkaProducer {
         properties.put("batch.size", kafkaProperties.getBatchSize());
         properties.put("linger.ms", kafkaProperties.getLingerMs());
         properties.put("buffer.memory", kafkaProperties.getBufferMemory());
+        if (kafkaProperties.getRetries() > 0) {
+            // 多个批次同时在发送，重试时保证同一个partition内的顺序
+            properties.put("max.in.flight.requests.per.connection", 1);
+        }
         properties.put("key.serializer", StringSerializer.class.getName());
-        properties.put("value.serializer", MessageSerializer.class.getName());
-        producer = new KafkaProducer<String, Message>(properties);
+        return properties;
     }
 
     public void stop() {
         try {
             logger.info("## stop the kafka producer");
-            producer.close();
+            if (producer != null) {
+                producer.close();
+            }
+            if (flatProducer != null) {
+                flatProducer.close();
+            }
+            if (schemaProducer != null) {
+                schemaProducer.close();
+            }
         } catch (Throwable e) {
             logger.warn("##something goes wrong when stopping kafka producer:", e);
         } finally {
@@ -49,7 +111,22 @@ public class CanalKafkaProducer {
         }
     }
 
-    public void send(Topic topic, Message message) throws IOException {
+    /**
+     * 异步发送，每条记录在kafka确认或者失败之后回调callback，返回发送的记录数
+     *
+     * <pre>
+     * 1. topic指定了partition时整个批次发送到该partition
+     * 2. 有partitioner时按主键hash拆分到topic的所有partition
+     * 3. 否则整个批次作为一条记录，由kafka选择partition
+     * 4. 扁平格式时每个entry展开为一条记录，见{@linkplain #sendFlat}
+     * </pre>
+     */
+    public int send(Topic topic, Message message, MessagePartitioner partitioner, Callback callback)
+                                                                                                  throws IOException {
+        if (flatProducer != null) {
+            return sendFlat(topic, message, partitioner, callback);
+        }
+
         // set canal.instance.filter.transaction.entry = true
 
         // boolean valid = false;
@@ -76,13 +153,91 @@ public class CanalKafkaProducer {
         // if (!valid) {
         // return;
         // }
+        if (topic.getPartition() == null && partitioner != null) {
+            Message[] partitions = partitioner.partition(message, producer.partitionsFor(topic.getTopic()).size());
+            int records = 0;
+            for (int i = 0; i < partitions.length; i++) {
+                if (partitions[i] != null) {
+                    producer.send(new ProducerRecord<String, Message>(topic.getTopic(), i, null, partitions[i]), callback);
+                    records++;
+                }
+            }
+            logger.debug("send message to kafka topic: {} in {} partitions \n {}",
+                new Object[] { topic.getTopic(), records, message.toString() });
+            return records;
+        }
+
         ProducerRecord<String, Message> record;
         if (topic.getPartition() != null) {
             record = new ProducerRecord<String, Message>(topic.getTopic(), topic.getPartition(), null, message);
         } else {
             record = new ProducerRecord<String, Message>(topic.getTopic(), message);
         }
-        producer.send(record);
+        producer.send(record, callback);
         logger.debug("send message to kafka topic: {} \n {}", topic.getTopic(), message.toString());
+        return 1;
+    }
+
+    /**
+     * 扁平格式发送，事务头尾不输出
+     *
+     * <pre>
+     * 1. 每个entry的行数据直接从原始数据中解析RowChange，作为一条记录发送，不再重新构造Entry
+     * 2. topic指定了partition时全部发送到该partition
+     * 3. 有partitioner时entry中的行按hash列拆分到不同partition，DDL发送到partition 0
+     * 4. 否则以schema.table为key，保证同一个表的变更在同一个partition中有序
+     * </pre>
+     */
+    private int sendFlat(Topic topic, Message message, MessagePartitioner partitioner, Callback callback) {
+        MessageView view = new MessageView(message);
+        int partitionsNum = 0;
+        if (topic.getPartition() == null && partitioner != null) {
+            partitionsNum = flatProducer.partitionsFor(topic.getTopic()).size();
+        }
+
+        int records = 0;
+        for (int i = 0; i < view.size(); i++) {
+            if (view.getEntryType(i) != EntryType.ROWDATA) {
+                continue;
+            }
+
+            Header header = view.getHeader(i);
+            RowChange rowChange = view.getRowChange(i);
+            String key = header.getSchemaName() + "." + header.getTableName();
+            if (rowChange.getIsDdl()) {
+                Integer partition = (partitionsNum > 0) ? Integer.valueOf(0) : topic.getPartition();
+                sendFlat(topic.getTopic(), partition, key, FlatMessage.ofDdl(message.getId(), header, rowChange), callback);
+                records++;
+            } else if (rowChange.getRowDatasCount() == 0) {
+                continue;
+            } else if (partitionsNum > 0) {
+                Map<Integer, List<RowData>> partitions = new LinkedHashMap<Integer, List<RowData>>();
+                for (RowData rowData : rowChange.getRowDatasList()) {
+                    int partition = partitioner.partition(header, rowChange.getEventType(), rowData, partitionsNum);
+                    List<RowData> rows = partitions.get(partition);
+                    if (rows == null) {
+                        rows = new ArrayList<RowData>();
+                        partitions.put(partition, rows);
+                    }
+                    rows.add(rowData);
+                }
+                for (Map.Entry<Integer, List<RowData>> entry : partitions.entrySet()) {
+                    FlatMessage flat = FlatMessage.ofRows(message.getId(), header, rowChange, entry.getValue());
+                    sendFlat(topic.getTopic(), entry.getKey(), key, flat, callback);
+                    records++;
+                }
+            } else {
+                FlatMessage flat = FlatMessage.ofRows(message.getId(), header, rowChange, rowChange.getRowDatasList());
+                sendFlat(topic.getTopic(), topic.getPartition(), key, flat, callback);
+                records++;
+            }
+        }
+        logger.debug("send flat message to kafka topic: {} in {} records, batchId: {}",
+            new Object[] { topic.getTopic(), records, message.getId() });
+        return records;
+    }
+
+    private void sendFlat(String topic, Integer partition, String key, FlatMessage flat, Callback callback) {
+        flatProducer.send(new ProducerRecord<String, FlatMessage>(topic, partition, key, flat), callback);
     }
 }
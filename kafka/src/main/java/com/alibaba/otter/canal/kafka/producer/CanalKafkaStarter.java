@@ -1,11 +1,14 @@
 package com.alibaba.otter.canal.kafka.producer;
 
 import java.io.FileInputStream;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
@@ -15,6 +18,7 @@ import com.alibaba.otter.canal.kafka.producer.KafkaProperties.CanalDestination;
 import com.alibaba.otter.canal.kafka.producer.KafkaProperties.Topic;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.server.CanalService;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 
 /**
@@ -117,34 +121,117 @@ public class CanalKafkaStarter {
                 server.subscribe(clientIdentity);
                 logger.info("## the canal consumer {} is running now ......", destination.getCanalDestination());
 
+                LinkedList<SendingBatch> sendings = new LinkedList<SendingBatch>(); // 已经发给kafka、还未ack的批次，按batchId顺序排列
+                MessagePartitioner partitioner = null;
+                if (destination.getPartitionHash() != null && !destination.getPartitionHash().isEmpty()) {
+                    partitioner = new MessagePartitioner(destination.getPartitionHash());
+                }
                 while (running) {
-                    Message message = server.getWithoutAck(clientIdentity, kafkaProperties.getCanalBatchSize()); // 获取指定数量的数据
-                    long batchId = message.getId();
-                    try {
-                        int size = message.isRaw() ?  message.getRawEntries().size() : message.getEntries().size();
-                        if (batchId != -1 && size != 0) {
-                            if (!StringUtils.isEmpty(destination.getTopic())) {
-                                Topic topic = new Topic();
-                                topic.setTopic(destination.getTopic());
-                                topic.setPartition(destination.getPartition());
-                                destination.getTopics().add(topic);
-                            }
-                            for (Topic topic : destination.getTopics()) {
-                                canalKafkaProducer.send(topic, message); // 发送message到所有topic
-                            }
-                        }
-
-                        if (batchId != -1) {
-                            server.ack(clientIdentity, batchId); // 提交确认
-                        }
-                    } catch (Exception e) {
-                        server.rollback(clientIdentity);
-                        logger.error(e.getMessage(), e);
-                    }
+                    send(server, clientIdentity, destination, partitioner, sendings, canalKafkaProducer, kafkaProperties);
                 }
             } catch (Exception e) {
                 logger.error("process error!", e);
             }
         }
     }
+
+    /**
+     * 一次发送循环：按顺序ack已经被kafka全部确认的批次，在途批次未满时获取下一个批次异步发送，任何一个批次发送失败时回滚
+     */
+    static void send(CanalService server, ClientIdentity clientIdentity, CanalDestination destination,
+                     MessagePartitioner partitioner, LinkedList<SendingBatch> sendings, CanalKafkaProducer producer,
+                     KafkaProperties properties) {
+        try {
+            // 按顺序ack已经被kafka全部确认的批次，遇到发送失败的批次时回滚
+            while (!sendings.isEmpty() && sendings.getFirst().isDone()) {
+                SendingBatch sending = sendings.removeFirst();
+                if (sending.getException() != null) {
+                    throw sending.getException();
+                }
+                server.ack(clientIdentity, sending.getBatchId()); // 提交确认
+            }
+
+            if (sendings.size() >= properties.getMaxInFlightBatches()) {
+                sendings.getFirst().await(100L); // 在途批次已满，等待最早的批次
+                return;
+            }
+
+            Message message = server.getWithoutAck(clientIdentity, properties.getCanalBatchSize()); // 获取指定数量的数据
+            long batchId = message.getId();
+            if (batchId == -1) {
+                if (!sendings.isEmpty()) {
+                    sendings.getFirst().await(100L); // 没有新数据，等待在途的批次
+                }
+                return;
+            }
+
+            int size = message.isRaw() ? message.getRawEntries().size() : message.getEntries().size();
+            if (size != 0 && !StringUtils.isEmpty(destination.getTopic())) {
+                Topic topic = new Topic();
+                topic.setTopic(destination.getTopic());
+                topic.setPartition(destination.getPartition());
+                destination.getTopics().add(topic);
+            }
+
+            SendingBatch sending = new SendingBatch(batchId);
+            sendings.add(sending);
+            int records = 0;
+            if (size != 0) {
+                for (Topic topic : destination.getTopics()) {
+                    records += producer.send(topic, message, partitioner, sending); // 发送message到所有topic
+                }
+            }
+            sending.seal(records);
+        } catch (Exception e) {
+            sendings.clear(); // 之后的批次即使发送成功也不再ack，回滚后重新发送
+            server.rollback(clientIdentity);
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 一个canal批次在kafka中的发送状态，所有记录都确认之后才可以ack，记录数在全部发出之后才确定
+     */
+    static class SendingBatch implements Callback {
+
+        private final long batchId;
+        private int        records   = -1; // 发送的记录数，-1代表还在发送中
+        private int        completed = 0;
+        private Exception  exception;
+
+        public SendingBatch(long batchId){
+            this.batchId = batchId;
+        }
+
+        public synchronized void onCompletion(RecordMetadata metadata, Exception exception) {
+            if (exception != null) {
+                this.exception = exception;
+            }
+            completed++;
+            notifyAll();
+        }
+
+        public synchronized void seal(int records) {
+            this.records = records;
+            notifyAll();
+        }
+
+        public synchronized boolean isDone() {
+            return exception != null || (records >= 0 && completed >= records);
+        }
+
+        public synchronized void await(long timeout) throws InterruptedException {
+            if (!isDone()) {
+                wait(timeout);
+            }
+        }
+
+        public long getBatchId() {
+            return batchId;
+        }
+
+        public synchronized Exception getException() {
+            return exception;
+        }
+    }
 }
@@ -0,0 +1,483 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.otter.canal.kafka.producer.FlatMessage.ValueType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+
+/**
+ * {@linkplain FlatMessage}的avro序列化，每条kafka记录使用avro的single object encoding：0xC3 0x01 + 8字节schema指纹(小端) + 数据
+ *
+ * <pre>
+ * 1. 每个表按列结构生成一个record schema，每列为["null", T]，T按sqlType映射为long/double/bytes/string，decimal和unsigned bigint使用string保留精度，
+ *    long/double列为["null", T, "string"]，值不是合法的数字时按字符串写入
+ * 2. 另外包含_type(事件类型)、_es(执行时间)以及_old(UPDATE变更前的值，列名 -> 字符串)三个字段
+ * 3. 一条记录中的多行作为一个array写入，记录的schema为{"type":"array","items":表的record schema}
+ * 4. schema以schema.table + 每列的名字/类型为key缓存，DDL之后列结构变化自动生成新的schema，新schema及其指纹输出到日志，
+ *    并在使用之前通知{@linkplain SchemaListener}，例如发布到schema topic，consumer按指纹查找schema
+ * 5. DDL使用固定的record schema，包含database/table/type/es/sql
+ * 6. 指纹为schema规范形式(Parsing Canonical Form)的CRC-64-AVRO，编码按照avro 1.8的规范实现，不依赖avro的jar
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class FlatAvroSerializer implements Serializer<FlatMessage> {
+
+    private static final Logger                     logger       = LoggerFactory.getLogger(FlatAvroSerializer.class);
+    private static final Charset                    UTF_8        = Charset.forName("UTF-8");
+    private static final Charset                    ISO_8859_1   = Charset.forName("ISO-8859-1"); // canal中二进制列的编码
+    private static final byte[]                     MAGIC        = new byte[] { (byte) 0xC3, 0x01 };
+    private static final long                       EMPTY        = 0xc15d213aa4d7a795L;           // CRC-64-AVRO的初始值
+    private static final long[]                     FP_TABLE     = new long[256];
+    private static final String                     NAMESPACE    = "com.alibaba.otter.canal";
+    private static final int                        MAX_SCHEMAS  = 10000;                         // 超过之后清空重建，避免频繁DDL导致无限增长
+
+    private final ConcurrentMap<String, AvroSchema> schemas      = new ConcurrentHashMap<String, AvroSchema>();
+    private final ConcurrentMap<Long, AvroSchema>   fingerprints = new ConcurrentHashMap<Long, AvroSchema>();
+    private final AvroSchema                        ddlSchema    = createDdlSchema();
+    private volatile SchemaListener                 schemaListener;
+    private volatile boolean                        ddlNotified;
+
+    static {
+        for (int i = 0; i < FP_TABLE.length; i++) {
+            long fp = i;
+            for (int j = 0; j < 8; j++) {
+                fp = (fp >>> 1) ^ (EMPTY & -(fp & 1L));
+            }
+            FP_TABLE[i] = fp;
+        }
+    }
+
+    public FlatAvroSerializer(){
+        fingerprints.put(ddlSchema.fingerprint, ddlSchema);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(String topic, FlatMessage data) {
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            if (data.isDdl()) {
+                if (!ddlNotified) {
+                    notifySchema(ddlSchema);
+                    ddlNotified = true;
+                }
+                out.write(ddlSchema.header);
+                writeString(out, data.getDatabase());
+                writeString(out, data.getTable());
+                writeString(out, data.getEventType().name());
+                writeLong(out, data.getExecuteTime());
+                writeString(out, data.getSql());
+            } else {
+                List<RowData> rows = data.getRows();
+                if (rows.isEmpty()) {
+                    return null;
+                }
+                AvroSchema schema = getSchema(data, data.getColumns(rows.get(0)));
+                out.write(schema.header);
+                // array的block格式，先写条目数量，最后以0结束
+                writeLong(out, rows.size());
+                for (RowData row : rows) {
+                    writeRow(out, schema, data, row);
+                }
+                writeLong(out, 0);
+            }
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new SerializationException("Error when serializing flat message of " + data.getDatabase() + "."
+                                             + data.getTable() + " to avro", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+
+    /**
+     * 设置之后每个新生成的schema在写入第一条记录之前通知listener，通知失败时本次序列化失败，schema不缓存，下次重新通知
+     */
+    public void setSchemaListener(SchemaListener schemaListener) {
+        this.schemaListener = schemaListener;
+        this.ddlNotified = false;
+    }
+
+    /**
+     * 按指纹查找已经生成的schema json，未找到返回null
+     */
+    public String getSchema(long fingerprint) {
+        AvroSchema schema = fingerprints.get(fingerprint);
+        return schema != null ? schema.schema : null;
+    }
+
+    /**
+     * schema的CRC-64-AVRO指纹，参数为规范形式的schema
+     */
+    public static long fingerprint(String canonicalSchema) {
+        long fp = EMPTY;
+        for (byte b : canonicalSchema.getBytes(UTF_8)) {
+            fp = (fp >>> 8) ^ FP_TABLE[(int) (fp ^ b) & 0xff];
+        }
+        return fp;
+    }
+
+    private void writeRow(ByteArrayOutputStream out, AvroSchema schema, FlatMessage data, RowData row) {
+        writeString(out, data.getEventType().name());
+        writeLong(out, data.getExecuteTime());
+        List<Column> columns = data.getColumns(row);
+        if (columns.size() != schema.types.length) {
+            throw new SerializationException("columns of " + data.getDatabase() + "." + data.getTable()
+                                             + " changed in the same entry");
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (column.getIsNull()) {
+                writeLong(out, 0); // union中的null
+                continue;
+            }
+
+            String value = column.getValue();
+            switch (schema.types[i]) {
+                case LONG:
+                    writeLong(out, value);
+                    break;
+                case DOUBLE:
+                    writeDouble(out, value);
+                    break;
+                case BYTES:
+                    writeLong(out, 1);
+                    writeBytes(out, value.getBytes(ISO_8859_1));
+                    break;
+                default:
+                    writeLong(out, 1);
+                    writeString(out, value);
+            }
+        }
+
+        // _old，按map的block格式写入，先写条目数量，最后以0结束
+        if (data.getEventType() == EventType.UPDATE) {
+            List<Column> before = row.getBeforeColumnsList();
+            List<Column> after = row.getAfterColumnsList();
+            int updated = 0;
+            for (int i = 0; i < before.size() && i < after.size(); i++) {
+                if (after.get(i).getUpdated()) {
+                    updated++;
+                }
+            }
+            if (updated > 0) {
+                writeLong(out, updated);
+                for (int i = 0; i < before.size() && i < after.size(); i++) {
+                    if (after.get(i).getUpdated()) {
+                        Column column = before.get(i);
+                        writeString(out, column.getName());
+                        if (column.getIsNull()) {
+                            writeLong(out, 0);
+                        } else {
+                            writeLong(out, 1);
+                            writeString(out, column.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        writeLong(out, 0);
+    }
+
+    private AvroSchema getSchema(FlatMessage data, List<Column> columns) {
+        StringBuilder key = new StringBuilder(data.getDatabase()).append('.').append(data.getTable());
+        for (Column column : columns) {
+            key.append('|').append(column.getName()).append(':').append(column.getSqlType()).append(':')
+                .append(column.getMysqlType());
+        }
+
+        String version = key.toString();
+        AvroSchema schema = schemas.get(version);
+        if (schema == null) {
+            if (schemas.size() >= MAX_SCHEMAS) {
+                schemas.clear();
+                fingerprints.clear();
+                fingerprints.put(ddlSchema.fingerprint, ddlSchema);
+            }
+            schema = createTableSchema(data, columns);
+            notifySchema(schema);
+            AvroSchema exist = schemas.putIfAbsent(version, schema);
+            if (exist != null) {
+                schema = exist;
+            } else {
+                fingerprints.put(schema.fingerprint, schema);
+                logger.info("new avro schema of {}.{}, fingerprint: {}, schema: {}",
+                    new Object[] { data.getDatabase(), data.getTable(), schema.fingerprint, schema.schema });
+            }
+        }
+        return schema;
+    }
+
+    private void notifySchema(AvroSchema schema) {
+        SchemaListener listener = schemaListener;
+        if (listener != null) {
+            listener.onSchema(schema.fingerprint, schema.schema);
+        }
+    }
+
+    private AvroSchema createTableSchema(FlatMessage data, List<Column> columns) {
+        Set<String> names = new HashSet<String>();
+        JSONArray fields = new JSONArray();
+        fields.add(field("_type", "string"));
+        fields.add(field("_es", "long"));
+        names.add("_type");
+        names.add("_es");
+        names.add("_old");
+
+        ValueType[] types = new ValueType[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            types[i] = FlatMessage.typeOf(column);
+            String name = toAvroName(column.getName());
+            while (!names.add(name)) {
+                name = name + "_";
+            }
+
+            JSONArray type = new JSONArray();
+            type.add("null");
+            type.add(toAvroType(types[i]));
+            if (types[i] == ValueType.LONG || types[i] == ValueType.DOUBLE) {
+                type.add("string");
+            }
+            JSONObject field = field(name, type);
+            if (!name.equals(column.getName())) {
+                field.put("doc", column.getName());
+            }
+            fields.add(field);
+        }
+
+        JSONObject old = new JSONObject(true);
+        old.put("type", "map");
+        old.put("values", new JSONArray().fluentAdd("null").fluentAdd("string"));
+        fields.add(field("_old", old));
+
+        JSONObject record = new JSONObject(true);
+        record.put("type", "record");
+        record.put("name", toAvroName(data.getTable()));
+        record.put("namespace", NAMESPACE + "." + toAvroName(data.getDatabase()));
+        record.put("fields", fields);
+
+        JSONObject array = new JSONObject(true);
+        array.put("type", "array");
+        array.put("items", record);
+        return new AvroSchema(array, types);
+    }
+
+    private static AvroSchema createDdlSchema() {
+        JSONArray fields = new JSONArray();
+        fields.add(field("database", "string"));
+        fields.add(field("table", "string"));
+        fields.add(field("type", "string"));
+        fields.add(field("es", "long"));
+        fields.add(field("sql", "string"));
+
+        JSONObject record = new JSONObject(true);
+        record.put("type", "record");
+        record.put("name", "ddl");
+        record.put("namespace", NAMESPACE);
+        record.put("fields", fields);
+        return new AvroSchema(record, new ValueType[0]);
+    }
+
+    private static JSONObject field(String name, Object type) {
+        JSONObject field = new JSONObject(true);
+        field.put("name", name);
+        field.put("type", type);
+        return field;
+    }
+
+    private static String toAvroType(ValueType type) {
+        switch (type) {
+            case LONG:
+                return "long";
+            case DOUBLE:
+                return "double";
+            case BYTES:
+                return "bytes";
+            default:
+                return "string";
+        }
+    }
+
+    /**
+     * schema的规范形式：去掉doc/namespace，record的name使用全名，属性按name/type/fields/items/values的顺序输出，primitive类型只输出类型名
+     */
+    static String toCanonicalForm(Object schema) {
+        return JSON.toJSONString(canonical(schema, null));
+    }
+
+    private static Object canonical(Object schema, String namespace) {
+        if (schema instanceof JSONArray) {
+            JSONArray union = new JSONArray();
+            for (Object type : (JSONArray) schema) {
+                union.add(canonical(type, namespace));
+            }
+            return union;
+        }
+        if (!(schema instanceof JSONObject)) {
+            return schema;
+        }
+
+        JSONObject object = (JSONObject) schema;
+        String type = object.getString("type");
+        JSONObject result = new JSONObject(true);
+        if ("record".equals(type)) {
+            String name = object.getString("name");
+            if (name.indexOf('.') < 0) {
+                String space = object.containsKey("namespace") ? object.getString("namespace") : namespace;
+                name = (space == null || space.isEmpty()) ? name : space + "." + name;
+            }
+            String space = name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : null;
+            JSONArray fields = new JSONArray();
+            for (Object item : object.getJSONArray("fields")) {
+                JSONObject field = (JSONObject) item;
+                JSONObject canonicalField = new JSONObject(true);
+                canonicalField.put("name", field.getString("name"));
+                canonicalField.put("type", canonical(field.get("type"), space));
+                fields.add(canonicalField);
+            }
+            result.put("name", name);
+            result.put("type", type);
+            result.put("fields", fields);
+        } else if ("array".equals(type)) {
+            result.put("type", type);
+            result.put("items", canonical(object.get("items"), namespace));
+        } else if ("map".equals(type)) {
+            result.put("type", type);
+            result.put("values", canonical(object.get("values"), namespace));
+        } else {
+            return type;
+        }
+        return result;
+    }
+
+    /**
+     * avro的名字只允许[A-Za-z_][A-Za-z0-9_]*
+     */
+    private static String toAvroName(String name) {
+        StringBuilder result = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (c >= '0' && c <= '9');
+            result.append(valid ? c : '_');
+        }
+        if (result.length() == 0 || Character.isDigit(result.charAt(0))) {
+            result.insert(0, '_');
+        }
+        return result.toString();
+    }
+
+    // ==================== avro binary encoding ====================
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        long n = (value << 1) ^ (value >> 63); // zigzag
+        while ((n & ~0x7FL) != 0) {
+            out.write((int) ((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /**
+     * ["null", "long", "string"]中的非null分支，不是合法的long时写入字符串
+     */
+    private static void writeLong(ByteArrayOutputStream out, String value) {
+        long number;
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            writeLong(out, 2);
+            writeString(out, value);
+            return;
+        }
+        writeLong(out, 1);
+        writeLong(out, number);
+    }
+
+    /**
+     * ["null", "double", "string"]中的非null分支，不是合法的double时写入字符串
+     */
+    private static void writeDouble(ByteArrayOutputStream out, String value) {
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            writeLong(out, 2);
+            writeString(out, value);
+            return;
+        }
+        writeLong(out, 1);
+        writeDouble(out, number);
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (bits >>> (i * 8)));
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] value) {
+        writeLong(out, value.length);
+        out.write(value, 0, value.length);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        writeBytes(out, (value == null ? "" : value).getBytes(UTF_8));
+    }
+
+    /**
+     * 新schema的通知，在使用该schema的第一条记录序列化之前调用
+     */
+    public interface SchemaListener {
+
+        void onSchema(long fingerprint, String schema);
+    }
+
+    private static class AvroSchema {
+
+        private final String      schema;
+        private final ValueType[] types;
+        private final long        fingerprint;
+        private final byte[]      header;     // magic + 指纹，每条记录直接拷贝
+
+        public AvroSchema(JSONObject schema, ValueType[] types){
+            this.schema = schema.toJSONString();
+            this.types = types;
+            this.fingerprint = fingerprint(toCanonicalForm(schema));
+            this.header = new byte[MAGIC.length + 8];
+            System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+            for (int i = 0; i < 8; i++) {
+                header[MAGIC.length + i] = (byte) (fingerprint >>> (i * 8));
+            }
+        }
+    }
+}
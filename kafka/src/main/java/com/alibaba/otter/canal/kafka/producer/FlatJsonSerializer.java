@@ -0,0 +1,176 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+
+/**
+ * {@linkplain FlatMessage}的紧凑json序列化，每行展开为列名 -> 值的对象
+ *
+ * <pre>
+ * {"id":1,"database":"test","table":"person","type":"UPDATE","es":1528860000000,"isDdl":false,
+ *  "pkNames":["id"],"data":[{"id":1,"name":"b"}],"old":[{"name":"a"}]}
+ *
+ * 1. 整数/浮点/decimal直接输出数字，decimal保留原始精度，二进制类型输出base64，其余为字符串
+ * 2. old只在UPDATE时输出，只包含发生变更的列
+ * 3. DDL只输出sql
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class FlatJsonSerializer implements Serializer<FlatMessage> {
+
+    private static final Charset UTF_8      = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1"); // canal中二进制列的编码
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(String topic, FlatMessage data) {
+        if (data == null) {
+            return null;
+        }
+
+        SerializeWriter out = new SerializeWriter();
+        try {
+            out.write("{\"id\":");
+            out.writeLong(data.getId());
+            out.write(",\"database\":");
+            out.writeString(data.getDatabase());
+            out.write(",\"table\":");
+            out.writeString(data.getTable());
+            out.write(",\"type\":");
+            out.writeString(data.getEventType().name());
+            out.write(",\"es\":");
+            out.writeLong(data.getExecuteTime());
+            if (data.isDdl()) {
+                out.write(",\"isDdl\":true,\"sql\":");
+                out.writeString(data.getSql());
+                out.write('}');
+                return out.toBytes(UTF_8);
+            }
+
+            out.write(",\"isDdl\":false,\"pkNames\":[");
+            if (!data.getRows().isEmpty()) {
+                boolean first = true;
+                for (Column column : data.getColumns(data.getRows().get(0))) {
+                    if (column.getIsKey()) {
+                        if (!first) {
+                            out.write(',');
+                        }
+                        out.writeString(column.getName());
+                        first = false;
+                    }
+                }
+            }
+            out.write("],\"data\":[");
+            for (int i = 0; i < data.getRows().size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                writeRow(out, data.getColumns(data.getRows().get(i)), null);
+            }
+            out.write(']');
+            if (data.getEventType() == EventType.UPDATE) {
+                out.write(",\"old\":[");
+                for (int i = 0; i < data.getRows().size(); i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    RowData row = data.getRows().get(i);
+                    writeRow(out, row.getBeforeColumnsList(), row.getAfterColumnsList());
+                }
+                out.write(']');
+            }
+            out.write('}');
+            return out.toBytes(UTF_8);
+        } catch (Exception e) {
+            throw new SerializationException("Error when serializing flat message to json", e);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * after不为null时只输出after中标记为updated的列
+     */
+    private void writeRow(SerializeWriter out, List<Column> columns, List<Column> after) {
+        out.write('{');
+        boolean first = true;
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (after != null && !(i < after.size() && after.get(i).getUpdated())) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            out.writeString(column.getName());
+            out.write(':');
+            writeValue(out, column);
+            first = false;
+        }
+        out.write('}');
+    }
+
+    private void writeValue(SerializeWriter out, Column column) {
+        String value = column.getValue();
+        if (column.getIsNull()) {
+            out.writeNull();
+            return;
+        }
+
+        switch (FlatMessage.typeOf(column)) {
+            case LONG:
+            case DOUBLE:
+            case DECIMAL:
+                if (isNumber(value)) {
+                    out.write(value);
+                } else {
+                    out.writeString(value);
+                }
+                break;
+            case BYTES:
+                out.writeByteArray(value.getBytes(ISO_8859_1));
+                break;
+            default:
+                out.writeString(value);
+        }
+    }
+
+    /**
+     * 只允许合法的json数字直接输出，避免NaN/Infinity以及空串破坏格式
+     */
+    private static boolean isNumber(String value) {
+        int length = value.length();
+        int i = (length > 0 && value.charAt(0) == '-') ? 1 : 0;
+        if (i >= length || !Character.isDigit(value.charAt(i))) {
+            return false;
+        }
+        if (value.charAt(i) == '0' && i + 1 < length && Character.isDigit(value.charAt(i + 1))) {
+            return false; // zerofill
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9') && c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-') {
+                return false;
+            }
+        }
+        return Character.isDigit(value.charAt(length - 1));
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+}
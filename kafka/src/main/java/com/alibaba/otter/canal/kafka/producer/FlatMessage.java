@@ -0,0 +1,131 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+
+/**
+ * 扁平格式的一条kafka记录，对应一个entry中发往同一个partition的行
+ *
+ * <pre>
+ * 1. 直接引用解析好的RowChange中的行，不再构造新的Entry，由json/avro等序列化器展开为按行的输出
+ * 2. DDL只有sql，没有行数据
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class FlatMessage {
+
+    /**
+     * 按照Column.sqlType(java.sql.Types)归类的值类型
+     */
+    public enum ValueType {
+        LONG, DOUBLE, DECIMAL, BYTES, STRING
+    }
+
+    private final long          id;          // canal批次id
+    private final Header        header;
+    private final EventType     eventType;
+    private final boolean       ddl;
+    private final String        sql;
+    private final List<RowData> rows;
+
+    private FlatMessage(long id, Header header, EventType eventType, boolean ddl, String sql, List<RowData> rows){
+        this.id = id;
+        this.header = header;
+        this.eventType = eventType;
+        this.ddl = ddl;
+        this.sql = sql;
+        this.rows = rows;
+    }
+
+    public static FlatMessage ofDdl(long id, Header header, RowChange rowChange) {
+        return new FlatMessage(id, header, rowChange.getEventType(), true, rowChange.getSql(), new ArrayList<RowData>());
+    }
+
+    public static FlatMessage ofRows(long id, Header header, RowChange rowChange, List<RowData> rows) {
+        return new FlatMessage(id, header, rowChange.getEventType(), false, null, rows);
+    }
+
+    /**
+     * 行的数据：DELETE为变更前的值，其余为变更后的值
+     */
+    public List<Column> getColumns(RowData row) {
+        return (eventType == EventType.DELETE) ? row.getBeforeColumnsList() : row.getAfterColumnsList();
+    }
+
+    /**
+     * unsigned bigint超出long的范围，按DECIMAL处理
+     */
+    public static ValueType typeOf(Column column) {
+        switch (column.getSqlType()) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return ValueType.LONG;
+            case Types.BIGINT:
+                return isUnsigned(column) ? ValueType.DECIMAL : ValueType.LONG;
+            case Types.BIT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ValueType.DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return ValueType.DOUBLE;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return ValueType.BYTES;
+            default:
+                return ValueType.STRING;
+        }
+    }
+
+    private static boolean isUnsigned(Column column) {
+        return column.getMysqlType() != null && column.getMysqlType().toLowerCase().contains("unsigned");
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    public String getDatabase() {
+        return header.getSchemaName();
+    }
+
+    public String getTable() {
+        return header.getTableName();
+    }
+
+    public long getExecuteTime() {
+        return header.getExecuteTime();
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    public boolean isDdl() {
+        return ddl;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<RowData> getRows() {
+        return rows;
+    }
+}
@@ -2,7 +2,9 @@ package com.alibaba.otter.canal.kafka.producer;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -13,6 +15,10 @@ import java.util.Set;
  */
 public class KafkaProperties {
 
+    public static final String     SERIALIZER_PROTOBUF    = "protobuf";
+    public static final String     SERIALIZER_JSON        = "json";
+    public static final String     SERIALIZER_AVRO        = "avro";
+
     private String                 servers                = "localhost:6667";
     private int                    retries                = 0;
     private int                    batchSize              = 16384;
@@ -20,15 +26,19 @@ public class KafkaProperties {
     private long                   bufferMemory           = 33554432L;
     private boolean                filterTransactionEntry = true;
     private int                    canalBatchSize         = 5;
+    private int                    maxInFlightBatches     = 4;                                  // 同时在发送中的canal批次数量，按顺序等待kafka确认之后ack
+    private String                 serializer             = SERIALIZER_PROTOBUF;                // 消息格式，protobuf/json/avro，或者自定义的Serializer<FlatMessage>类名
+    private String                 avroSchemaTopic;                                             // avro格式时发布schema的topic，key为指纹，value为schema json
 
     private List<CanalDestination> canalDestinations      = new ArrayList<CanalDestination>();
 
     public static class CanalDestination {
 
-        private String     canalDestination;
-        private String     topic;
-        private Integer    partition;
-        private Set<Topic> topics = new HashSet<Topic>();
+        private String              canalDestination;
+        private String              topic;
+        private Integer             partition;
+        private Set<Topic>          topics        = new HashSet<Topic>();
+        private Map<String, String> partitionHash = new LinkedHashMap<String, String>(); // 按主键hash分区，schema.table的正则 -> hash列，$pk$代表主键
 
         public String getCanalDestination() {
             return canalDestination;
@@ -61,6 +71,14 @@ public class KafkaProperties {
         public void setTopics(Set<Topic> topics) {
             this.topics = topics;
         }
+
+        public Map<String, String> getPartitionHash() {
+            return partitionHash;
+        }
+
+        public void setPartitionHash(Map<String, String> partitionHash) {
+            this.partitionHash = partitionHash;
+        }
     }
 
     public static class Topic {
@@ -151,6 +169,30 @@ public class KafkaProperties {
         this.canalBatchSize = canalBatchSize;
     }
 
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    public String getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
+
+    public String getAvroSchemaTopic() {
+        return avroSchemaTopic;
+    }
+
+    public void setAvroSchemaTopic(String avroSchemaTopic) {
+        this.avroSchemaTopic = avroSchemaTopic;
+    }
+
     public List<CanalDestination> getCanalDestinations() {
         return canalDestinations;
     }
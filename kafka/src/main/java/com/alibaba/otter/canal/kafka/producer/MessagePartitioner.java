@@ -0,0 +1,151 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.otter.canal.filter.regex.CompiledRegexFilter;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.MessageView;
+import com.google.protobuf.ByteString;
+
+/**
+ * 按主键hash将一个canal批次拆分到多个partition
+ *
+ * <pre>
+ * 配置为 schema.table的正则 -> hash列，正则的写法和canal的filter一致，hash列为$pk$时使用Column.isKey标记的主键列，也可以指定逗号分隔的列名
+ * 1. 匹配的表按行拆分，key为schema.table + hash列的值，同一个key的变更总是在同一个partition中，保证顺序
+ * 2. DDL、事务头尾以及未配置的表都发送到partition 0，这些entry只解析header，原始数据直接转发
+ * 3. 同一个partition中的行保持在批次中的原始顺序
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class MessagePartitioner {
+
+    public static final String                           PK_COLUMNS   = "$pk$";
+
+    private final Map<CompiledRegexFilter, List<String>> hashColumns  = new LinkedHashMap<CompiledRegexFilter, List<String>>(); // 按配置顺序匹配，null代表使用主键
+    private final Map<String, List<String>>              tableColumns = new HashMap<String, List<String>>();                    // 每个表匹配到的hash列，未配置的表为空列表
+
+    public MessagePartitioner(Map<String, String> partitionHash){
+        for (Map.Entry<String, String> entry : partitionHash.entrySet()) {
+            String columns = StringUtils.trimToEmpty(entry.getValue()).toLowerCase();
+            List<String> names = null;
+            if (StringUtils.isNotEmpty(columns) && !PK_COLUMNS.equals(columns)) {
+                names = new ArrayList<String>();
+                for (String name : StringUtils.split(columns, ",")) {
+                    names.add(name.trim());
+                }
+            }
+            hashColumns.put(new CompiledRegexFilter(entry.getKey(), false), names);
+        }
+    }
+
+    /**
+     * 拆分后的批次，下标即为partition，没有数据的partition为null
+     */
+    public Message[] partition(Message message, int partitionsNum) {
+        Message[] partitions = new Message[partitionsNum];
+        MessageView view = new MessageView(message);
+        List<ByteString> rawEntries = message.getRawEntries();
+        boolean raw = rawEntries != null && !rawEntries.isEmpty();
+        for (int i = 0; i < view.size(); i++) {
+            Header header = view.getHeader(i);
+            List<String> columns = (view.getEntryType(i) == EntryType.ROWDATA) ? getHashColumns(header) : null;
+            RowChange rowChange = (columns != null) ? view.getRowChange(i) : null;
+            if (rowChange == null || rowChange.getIsDdl()) {
+                add(partitions, 0, message.getId(), raw ? rawEntries.get(i) : view.getEntry(i).toByteString());
+                continue;
+            }
+
+            String table = header.getSchemaName() + "." + header.getTableName();
+            Map<Integer, RowChange.Builder> builders = new LinkedHashMap<Integer, RowChange.Builder>();
+            for (RowData rowData : rowChange.getRowDatasList()) {
+                int partition = hash(table, columns, rowData, rowChange.getEventType(), partitionsNum);
+                RowChange.Builder builder = builders.get(partition);
+                if (builder == null) {
+                    builder = rowChange.toBuilder().clearRowDatas();
+                    builders.put(partition, builder);
+                }
+                builder.addRowDatas(rowData);
+            }
+
+            Entry entry = view.getEntry(i);
+            if (builders.size() == 1) { // 整个entry都在同一个partition中，不需要重新序列化
+                add(partitions,
+                    builders.keySet().iterator().next(),
+                    message.getId(),
+                    raw ? rawEntries.get(i) : entry.toByteString());
+                continue;
+            }
+            for (Map.Entry<Integer, RowChange.Builder> builder : builders.entrySet()) {
+                Entry split = entry.toBuilder().setStoreValue(builder.getValue().build().toByteString()).build();
+                add(partitions, builder.getKey(), message.getId(), split.toByteString());
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * 一行数据所在的partition，未配置hash列的表返回0
+     */
+    public int partition(Header header, EventType eventType, RowData rowData, int partitionsNum) {
+        List<String> columns = getHashColumns(header);
+        if (columns == null) {
+            return 0;
+        }
+        return hash(header.getSchemaName() + "." + header.getTableName(), columns, rowData, eventType, partitionsNum);
+    }
+
+    private List<String> getHashColumns(Header header) {
+        String table = header.getSchemaName() + "." + header.getTableName();
+        List<String> columns = tableColumns.get(table);
+        if (columns == null) {
+            columns = new ArrayList<String>();
+            for (Map.Entry<CompiledRegexFilter, List<String>> entry : hashColumns.entrySet()) {
+                if (entry.getKey().filter(table)) {
+                    if (entry.getValue() != null) {
+                        columns.addAll(entry.getValue());
+                    } else {
+                        columns.add(PK_COLUMNS);
+                    }
+                    break;
+                }
+            }
+            tableColumns.put(table, columns);
+        }
+        return columns.isEmpty() ? null : columns;
+    }
+
+    private int hash(String table, List<String> columns, RowData rowData, EventType eventType, int partitionsNum) {
+        List<Column> values = (eventType == EventType.DELETE) ? rowData.getBeforeColumnsList() : rowData
+            .getAfterColumnsList();
+        StringBuilder key = new StringBuilder(table);
+        boolean pk = PK_COLUMNS.equals(columns.get(0));
+        for (Column column : values) {
+            if (pk ? column.getIsKey() : columns.contains(column.getName().toLowerCase())) {
+                key.append(':').append(column.getValue());
+            }
+        }
+        return (key.toString().hashCode() & Integer.MAX_VALUE) % partitionsNum;
+    }
+
+    private void add(Message[] partitions, int partition, long batchId, ByteString entry) {
+        if (partitions[partition] == null) {
+            partitions[partition] = new Message(batchId, true, new ArrayList<ByteString>());
+        }
+        partitions[partition].addRawEntry(entry);
+    }
+}
@@ -0,0 +1,232 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.kafka.producer.CanalKafkaStarter.SendingBatch;
+import com.alibaba.otter.canal.kafka.producer.KafkaProperties.CanalDestination;
+import com.alibaba.otter.canal.kafka.producer.KafkaProperties.Topic;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
+import com.alibaba.otter.canal.server.exception.CanalServerException;
+
+/**
+ * 测试流水线发送：kafka乱序确认时按批次顺序ack，任何一条记录失败时回滚，之后的批次不再ack
+ *
+ * @version 1.0.26
+ */
+public class CanalKafkaStarterTest {
+
+    private final ClientIdentity     clientIdentity = new ClientIdentity("example", (short) 1001, "");
+    private FakeServer               server;
+    private RecordingProducer        kafka;
+    private CanalKafkaProducer       producer;
+    private KafkaProperties          properties;
+    private CanalDestination         destination;
+    private LinkedList<SendingBatch> sendings;
+
+    @Before
+    public void setUp() {
+        server = new FakeServer();
+        kafka = new RecordingProducer();
+        producer = new CanalKafkaProducer(kafka);
+        properties = new KafkaProperties();
+        properties.setMaxInFlightBatches(3);
+        destination = new CanalDestination();
+        destination.setCanalDestination("example");
+        destination.setTopic("example");
+        destination.setPartition(0);
+        // 每个批次发送到两个topic，两条记录都确认之后才能ack
+        Topic topic = new Topic();
+        topic.setTopic("example_copy");
+        topic.setPartition(0);
+        destination.getTopics().add(topic);
+        sendings = new LinkedList<SendingBatch>();
+    }
+
+    @Test
+    public void testAckInOrder() {
+        server.add(1, 2, 3, 4);
+        for (int i = 0; i < 3; i++) {
+            send();
+        }
+        Assert.assertEquals(6, kafka.sent.size());
+        Assert.assertEquals(3, sendings.size());
+
+        // 在途批次已满，不再获取新的批次
+        send();
+        Assert.assertEquals(6, kafka.sent.size());
+
+        // 后面的批次先确认，最早的批次未确认时都不能ack
+        kafka.complete(4, null);
+        kafka.complete(5, null);
+        kafka.complete(2, null);
+        kafka.complete(0, null);
+        send();
+        Assert.assertTrue(server.acks.isEmpty());
+        Assert.assertEquals(6, kafka.sent.size());
+
+        // 第一个批次确认之后，已确认的批次按顺序ack，并发送下一个批次
+        kafka.complete(1, null);
+        send();
+        Assert.assertEquals(Arrays.asList(1L), server.acks);
+        Assert.assertEquals(8, kafka.sent.size());
+
+        kafka.complete(3, null);
+        send();
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), server.acks);
+
+        kafka.complete(7, null);
+        kafka.complete(6, null);
+        send();
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L), server.acks);
+        Assert.assertTrue(sendings.isEmpty());
+        Assert.assertEquals(0, server.rollbacks);
+    }
+
+    @Test
+    public void testRollbackOnFailure() {
+        server.add(1, 2, 3);
+        for (int i = 0; i < 3; i++) {
+            send();
+        }
+
+        // 第三个批次已经确认，第二个批次的一条记录失败
+        kafka.complete(0, null);
+        kafka.complete(1, null);
+        kafka.complete(4, null);
+        kafka.complete(5, null);
+        kafka.complete(2, new RuntimeException("broker down"));
+        send();
+
+        // 失败之前的批次正常ack，失败的和之后的批次都不ack，全部回滚
+        Assert.assertEquals(Arrays.asList(1L), server.acks);
+        Assert.assertEquals(1, server.rollbacks);
+        Assert.assertTrue(sendings.isEmpty());
+
+        // 之后晚到的确认不再ack任何批次
+        kafka.complete(3, null);
+        server.add(2, 3);
+        send();
+        send();
+        Assert.assertEquals(Arrays.asList(1L), server.acks);
+        Assert.assertEquals(2, sendings.size());
+    }
+
+    @Test
+    public void testMaxInFlightWithRetries() {
+        Properties config = CanalKafkaProducer.buildProperties(properties);
+        Assert.assertNull(config.get("max.in.flight.requests.per.connection"));
+
+        // 有重试时多个批次在途会乱序，限制每个连接只有一个请求
+        properties.setRetries(3);
+        config = CanalKafkaProducer.buildProperties(properties);
+        Assert.assertEquals(1, config.get("max.in.flight.requests.per.connection"));
+        Assert.assertEquals(3, config.get("retries"));
+    }
+
+    private void send() {
+        CanalKafkaStarter.send(server, clientIdentity, destination, null, sendings, producer, properties);
+    }
+
+    /**
+     * 按顺序返回预先放入的批次，记录ack和rollback
+     */
+    private static class FakeServer extends CanalServerWithEmbedded {
+
+        private final LinkedList<Message> messages  = new LinkedList<Message>();
+        private final List<Long>          acks      = new ArrayList<Long>();
+        private int                       rollbacks = 0;
+
+        public void add(long... batchIds) {
+            for (long batchId : batchIds) {
+                Header header = Header.newBuilder().setLogfileName("mysql-bin.000001").setLogfileOffset(batchId).build();
+                Entry entry = Entry.newBuilder().setHeader(header).setEntryType(EntryType.ROWDATA).build();
+                messages.add(new Message(batchId, new ArrayList<Entry>(Collections.singletonList(entry))));
+            }
+        }
+
+        @Override
+        public Message getWithoutAck(ClientIdentity clientIdentity, int batchSize) throws CanalServerException {
+            return messages.isEmpty() ? new Message(-1) : messages.removeFirst();
+        }
+
+        @Override
+        public void ack(ClientIdentity clientIdentity, long batchId) throws CanalServerException {
+            acks.add(batchId);
+        }
+
+        @Override
+        public void rollback(ClientIdentity clientIdentity) throws CanalServerException {
+            messages.clear();
+            rollbacks++;
+        }
+    }
+
+    /**
+     * 记录发送的记录和回调，由测试按任意顺序完成
+     */
+    private static class RecordingProducer implements Producer<String, Message> {
+
+        private final List<ProducerRecord<String, Message>> sent      = new ArrayList<ProducerRecord<String, Message>>();
+        private final List<Callback>                        callbacks = new ArrayList<Callback>();
+
+        public void complete(int index, RuntimeException exception) {
+            ProducerRecord<String, Message> record = sent.get(index);
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), record.partition()),
+                0,
+                index);
+            callbacks.get(index).onCompletion(exception == null ? metadata : null, exception);
+        }
+
+        public Future<RecordMetadata> send(ProducerRecord<String, Message> record) {
+            return send(record, null);
+        }
+
+        public Future<RecordMetadata> send(ProducerRecord<String, Message> record, Callback callback) {
+            sent.add(record);
+            callbacks.add(callback);
+            return null;
+        }
+
+        public void flush() {
+        }
+
+        public List<PartitionInfo> partitionsFor(String topic) {
+            return Collections.emptyList();
+        }
+
+        public Map<MetricName, ? extends Metric> metrics() {
+            return Collections.emptyMap();
+        }
+
+        public void close() {
+        }
+
+        public void close(long timeout, TimeUnit unit) {
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+
+/**
+ * 按avro规范解码single object encoding的输出，校验指纹、schema以及每行的数据
+ *
+ * @version 1.0.26
+ */
+public class FlatAvroSerializerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testFingerprint() {
+        // avro规范测试数据(share/test/data/schema-tests.txt)中的指纹
+        Assert.assertEquals(7195948357588979594L, FlatAvroSerializer.fingerprint("\"null\""));
+        Assert.assertEquals(-6970731678124411036L, FlatAvroSerializer.fingerprint("\"boolean\""));
+        Assert.assertEquals(8247732601305521295L, FlatAvroSerializer.fingerprint("\"int\""));
+        Assert.assertEquals(-3434872931120570953L, FlatAvroSerializer.fingerprint("\"long\""));
+        Assert.assertEquals(-8181574048448539266L, FlatAvroSerializer.fingerprint("\"double\""));
+        Assert.assertEquals(5746618253357095269L, FlatAvroSerializer.fingerprint("\"bytes\""));
+        Assert.assertEquals(-8142146995180207161L, FlatAvroSerializer.fingerprint("\"string\""));
+    }
+
+    @Test
+    public void testCanonicalForm() {
+        String schema = "{\"type\":\"array\",\"items\":{\"type\":\"record\",\"name\":\"user\",\"namespace\":\"a.b\","
+                        + "\"doc\":\"x\",\"fields\":[{\"name\":\"id\",\"type\":{\"type\":\"long\"}},"
+                        + "{\"name\":\"m\",\"doc\":\"y\",\"type\":{\"type\":\"map\",\"values\":[\"null\",\"string\"]}}]}}";
+        Assert.assertEquals("{\"type\":\"array\",\"items\":{\"name\":\"a.b.user\",\"type\":\"record\",\"fields\":["
+                            + "{\"name\":\"id\",\"type\":\"long\"},"
+                            + "{\"name\":\"m\",\"type\":{\"type\":\"map\",\"values\":[\"null\",\"string\"]}}]}}",
+            FlatAvroSerializer.toCanonicalForm(JSON.parseObject(schema)));
+    }
+
+    @Test
+    public void testRows() {
+        FlatAvroSerializer serializer = new FlatAvroSerializer();
+        Header header = buildHeader("user", EventType.UPDATE);
+        RowChange rowChange = RowChange.newBuilder().setEventType(EventType.UPDATE).build();
+        List<RowData> rows = new ArrayList<RowData>();
+        rows.add(RowData.newBuilder()
+            .addBeforeColumns(buildColumn("id", Types.BIGINT, "bigint(20)", "1", false, false))
+            .addBeforeColumns(buildColumn("price", Types.DECIMAL, "decimal(20,4)", "1.5000", false, false))
+            .addBeforeColumns(buildColumn("name", Types.VARCHAR, "varchar(32)", "old", false, false))
+            .addAfterColumns(buildColumn("id", Types.BIGINT, "bigint(20)", "1", false, false))
+            .addAfterColumns(buildColumn("price", Types.DECIMAL, "decimal(20,4)", "12345678901234.5678", false, true))
+            .addAfterColumns(buildColumn("name", Types.VARCHAR, "varchar(32)", "新的", false, true))
+            .addAfterColumns(buildColumn("rate", Types.DOUBLE, "double", "0.25", false, false))
+            .addAfterColumns(buildColumn("data", Types.BLOB, "blob", "\u0000ÿ", false, false))
+            .addAfterColumns(buildColumn("big", Types.BIGINT, "bigint(20) unsigned", "18446744073709551615", false,
+                false))
+            .addAfterColumns(buildColumn("memo", Types.VARCHAR, "varchar(32)", "", true, false))
+            .build());
+        rows.add(rows.get(0).toBuilder().setAfterColumns(0, buildColumn("id", Types.BIGINT, "bigint(20)", "-2", false,
+            false)).build());
+
+        byte[] bytes = serializer.serialize("test", FlatMessage.ofRows(1L, header, rowChange, rows));
+        Decoder decoder = new Decoder(bytes);
+        long fingerprint = decoder.readHeader();
+        String schema = serializer.getSchema(fingerprint);
+        Assert.assertNotNull(schema);
+        Assert.assertEquals(fingerprint,
+            FlatAvroSerializer.fingerprint(FlatAvroSerializer.toCanonicalForm(JSON.parseObject(schema))));
+
+        List<?> result = (List<?>) decoder.read(JSON.parseObject(schema));
+        Assert.assertTrue(decoder.isEnd());
+        Assert.assertEquals(2, result.size());
+
+        Map<?, ?> first = (Map<?, ?>) result.get(0);
+        Assert.assertEquals("UPDATE", first.get("_type"));
+        Assert.assertEquals(1000L, first.get("_es"));
+        Assert.assertEquals(1L, first.get("id"));
+        Assert.assertEquals("12345678901234.5678", first.get("price"));
+        Assert.assertEquals("新的", first.get("name"));
+        Assert.assertEquals(0.25d, first.get("rate"));
+        Assert.assertArrayEquals(new byte[] { 0, (byte) 0xff }, (byte[]) first.get("data"));
+        Assert.assertEquals("18446744073709551615", first.get("big"));
+        Assert.assertNull(first.get("memo"));
+        Map<String, Object> old = new LinkedHashMap<String, Object>();
+        old.put("price", "1.5000");
+        old.put("name", "old");
+        Assert.assertEquals(old, first.get("_old"));
+        Assert.assertEquals(-2L, ((Map<?, ?>) result.get(1)).get("id"));
+
+        // 相同的列结构复用schema
+        byte[] again = serializer.serialize("test", FlatMessage.ofRows(2L, header, rowChange, rows.subList(0, 1)));
+        Assert.assertEquals(fingerprint, new Decoder(again).readHeader());
+        Assert.assertTrue("no container header per record", again.length < bytes.length);
+    }
+
+    @Test
+    public void testSchemaChange() {
+        FlatAvroSerializer serializer = new FlatAvroSerializer();
+        Header header = buildHeader("user", EventType.INSERT);
+        RowChange rowChange = RowChange.newBuilder().setEventType(EventType.INSERT).build();
+        RowData before = RowData.newBuilder()
+            .addAfterColumns(buildColumn("id", Types.INTEGER, "int(11)", "1", false, false))
+            .build();
+        RowData after = before.toBuilder()
+            .addAfterColumns(buildColumn("age", Types.INTEGER, "int(11)", "18", false, false))
+            .build();
+
+        byte[] first = serializer.serialize("test", FlatMessage.ofRows(1L, header, rowChange, Arrays.asList(before)));
+        byte[] second = serializer.serialize("test", FlatMessage.ofRows(2L, header, rowChange, Arrays.asList(after)));
+        long firstFingerprint = new Decoder(first).readHeader();
+        Decoder decoder = new Decoder(second);
+        long secondFingerprint = decoder.readHeader();
+        Assert.assertTrue(firstFingerprint != secondFingerprint);
+
+        List<?> rows = (List<?>) decoder.read(JSON.parseObject(serializer.getSchema(secondFingerprint)));
+        Assert.assertEquals(18L, ((Map<?, ?>) rows.get(0)).get("age"));
+        Assert.assertTrue(((Map<?, ?>) rows.get(0)).containsKey("_old"));
+    }
+
+    @Test
+    public void testNumberFallback() {
+        FlatAvroSerializer serializer = new FlatAvroSerializer();
+        Header header = buildHeader("user", EventType.INSERT);
+        RowChange rowChange = RowChange.newBuilder().setEventType(EventType.INSERT).build();
+        RowData row = RowData.newBuilder()
+            .addAfterColumns(buildColumn("id", Types.BIGINT, "bigint(20)", "abc", false, false))
+            .addAfterColumns(buildColumn("count", Types.INTEGER, "int(11)", "", false, false))
+            .addAfterColumns(buildColumn("rate", Types.DOUBLE, "double", "1,5", false, false))
+            .addAfterColumns(buildColumn("age", Types.INTEGER, "int(11)", "18", false, false))
+            .build();
+
+        // 不是合法数字的值按字符串写入，不会导致序列化失败
+        byte[] bytes = serializer.serialize("test", FlatMessage.ofRows(1L, header, rowChange, Arrays.asList(row)));
+        Decoder decoder = new Decoder(bytes);
+        List<?> rows = (List<?>) decoder.read(JSON.parseObject(serializer.getSchema(decoder.readHeader())));
+        Assert.assertTrue(decoder.isEnd());
+        Map<?, ?> result = (Map<?, ?>) rows.get(0);
+        Assert.assertEquals("abc", result.get("id"));
+        Assert.assertEquals("", result.get("count"));
+        Assert.assertEquals("1,5", result.get("rate"));
+        Assert.assertEquals(18L, result.get("age"));
+    }
+
+    @Test
+    public void testPublishSchema() {
+        MockProducer<String, String> producer = new MockProducer<String, String>(true,
+            new StringSerializer(),
+            new StringSerializer());
+        FlatAvroSerializer serializer = new FlatAvroSerializer();
+        serializer.setSchemaListener(new AvroSchemaPublisher(producer, "schema"));
+        Header header = buildHeader("user", EventType.INSERT);
+        RowChange rowChange = RowChange.newBuilder().setEventType(EventType.INSERT).build();
+        RowData row = RowData.newBuilder()
+            .addAfterColumns(buildColumn("id", Types.INTEGER, "int(11)", "1", false, false))
+            .build();
+
+        byte[] first = serializer.serialize("test", FlatMessage.ofRows(1L, header, rowChange, Arrays.asList(row)));
+        serializer.serialize("test", FlatMessage.ofRows(2L, header, rowChange, Arrays.asList(row)));
+        RowChange ddl = RowChange.newBuilder().setIsDdl(true).setEventType(EventType.ALTER).setSql("alter").build();
+        byte[] second = serializer.serialize("test", FlatMessage.ofDdl(3L, buildHeader("user", EventType.ALTER), ddl));
+        serializer.serialize("test", FlatMessage.ofDdl(4L, buildHeader("user", EventType.ALTER), ddl));
+
+        // 每个schema只在第一次使用时发布一次，consumer只需要schema topic就可以按记录header中的指纹解码
+        List<ProducerRecord<String, String>> history = producer.history();
+        Assert.assertEquals(2, history.size());
+        for (ProducerRecord<String, String> record : history) {
+            Assert.assertEquals("schema", record.topic());
+        }
+        Decoder decoder = new Decoder(first);
+        long fingerprint = decoder.readHeader();
+        Assert.assertEquals(AvroSchemaPublisher.toKey(fingerprint), history.get(0).key());
+        Assert.assertEquals(16, history.get(0).key().length());
+        Assert.assertEquals(fingerprint, new BigInteger(history.get(0).key(), 16).longValue());
+        List<?> rows = (List<?>) decoder.read(JSON.parseObject(history.get(0).value()));
+        Assert.assertEquals(1L, ((Map<?, ?>) rows.get(0)).get("id"));
+
+        decoder = new Decoder(second);
+        Assert.assertEquals(AvroSchemaPublisher.toKey(decoder.readHeader()), history.get(1).key());
+        Map<?, ?> result = (Map<?, ?>) decoder.read(JSON.parseObject(history.get(1).value()));
+        Assert.assertEquals("alter", result.get("sql"));
+    }
+
+    @Test
+    public void testPublishSchemaFailed() {
+        final List<Long> published = new ArrayList<Long>();
+        final boolean[] fail = new boolean[] { true };
+        FlatAvroSerializer serializer = new FlatAvroSerializer();
+        serializer.setSchemaListener(new FlatAvroSerializer.SchemaListener() {
+
+            public void onSchema(long fingerprint, String schema) {
+                if (fail[0]) {
+                    throw new SerializationException("schema topic unavailable");
+                }
+                published.add(fingerprint);
+            }
+        });
+        Header header = buildHeader("user", EventType.INSERT);
+        RowChange rowChange = RowChange.newBuilder().setEventType(EventType.INSERT).build();
+        FlatMessage message = FlatMessage.ofRows(1L, header, rowChange, Arrays.asList(RowData.newBuilder()
+            .addAfterColumns(buildColumn("id", Types.INTEGER, "int(11)", "1", false, false))
+            .build()));
+
+        // 发布失败时不输出引用未发布schema的记录，下次重新发布
+        try {
+            serializer.serialize("test", message);
+            Assert.fail("serialize should fail when schema is not published");
+        } catch (SerializationException e) {
+            // expected
+        }
+        fail[0] = false;
+        byte[] bytes = serializer.serialize("test", message);
+        Assert.assertEquals(Arrays.asList(new Decoder(bytes).readHeader()), published);
+    }
+
+    @Test
+    public void testDdl() {
+        FlatAvroSerializer serializer = new FlatAvroSerializer();
+        RowChange rowChange = RowChange.newBuilder()
+            .setIsDdl(true)
+            .setEventType(EventType.ALTER)
+            .setSql("alter table user add column age int")
+            .build();
+        byte[] bytes = serializer.serialize("test",
+            FlatMessage.ofDdl(1L, buildHeader("user", EventType.ALTER), rowChange));
+
+        Decoder decoder = new Decoder(bytes);
+        String schema = serializer.getSchema(decoder.readHeader());
+        Map<?, ?> ddl = (Map<?, ?>) decoder.read(JSON.parseObject(schema));
+        Assert.assertTrue(decoder.isEnd());
+        Assert.assertEquals("test", ddl.get("database"));
+        Assert.assertEquals("user", ddl.get("table"));
+        Assert.assertEquals("ALTER", ddl.get("type"));
+        Assert.assertEquals(1000L, ddl.get("es"));
+        Assert.assertEquals("alter table user add column age int", ddl.get("sql"));
+    }
+
+    private Header buildHeader(String table, EventType eventType) {
+        return Header.newBuilder()
+            .setSchemaName("test")
+            .setTableName(table)
+            .setEventType(eventType)
+            .setExecuteTime(1000L)
+            .build();
+    }
+
+    private Column buildColumn(String name, int sqlType, String mysqlType, String value, boolean isNull,
+                               boolean updated) {
+        return Column.newBuilder()
+            .setName(name)
+            .setSqlType(sqlType)
+            .setMysqlType(mysqlType)
+            .setValue(value)
+            .setIsNull(isNull)
+            .setUpdated(updated)
+            .build();
+    }
+
+    /**
+     * 按avro 1.8规范实现的binary decoder，只支持序列化器用到的类型
+     */
+    private static class Decoder {
+
+        private final byte[] bytes;
+        private int          position;
+
+        public Decoder(byte[] bytes){
+            this.bytes = bytes;
+        }
+
+        /**
+         * single object encoding的header：0xC3 0x01 + 8字节小端的指纹
+         */
+        public long readHeader() {
+            Assert.assertEquals((byte) 0xC3, bytes[position++]);
+            Assert.assertEquals((byte) 0x01, bytes[position++]);
+            long fingerprint = 0;
+            for (int i = 0; i < 8; i++) {
+                fingerprint |= (bytes[position++] & 0xFFL) << (i * 8);
+            }
+            return fingerprint;
+        }
+
+        public boolean isEnd() {
+            return position == bytes.length;
+        }
+
+        public Object read(Object schema) {
+            if (schema instanceof JSONArray) {
+                JSONArray union = (JSONArray) schema;
+                return read(union.get((int) readLong()));
+            }
+            if (schema instanceof JSONObject) {
+                JSONObject object = (JSONObject) schema;
+                String type = object.getString("type");
+                if ("record".equals(type)) {
+                    Map<String, Object> record = new HashMap<String, Object>();
+                    for (Object item : object.getJSONArray("fields")) {
+                        JSONObject field = (JSONObject) item;
+                        record.put(field.getString("name"), read(field.get("type")));
+                    }
+                    return record;
+                } else if ("array".equals(type)) {
+                    List<Object> array = new ArrayList<Object>();
+                    for (long count = readLong(); count != 0; count = readLong()) {
+                        for (long i = 0; i < count; i++) {
+                            array.add(read(object.get("items")));
+                        }
+                    }
+                    return array;
+                } else if ("map".equals(type)) {
+                    Map<String, Object> map = new LinkedHashMap<String, Object>();
+                    for (long count = readLong(); count != 0; count = readLong()) {
+                        for (long i = 0; i < count; i++) {
+                            map.put(new String(readBytes(), UTF_8), read(object.get("values")));
+                        }
+                    }
+                    return map;
+                }
+                return read(type);
+            }
+
+            String type = (String) schema;
+            if ("null".equals(type)) {
+                return null;
+            } else if ("long".equals(type)) {
+                return readLong();
+            } else if ("double".equals(type)) {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits |= (bytes[position++] & 0xFFL) << (i * 8);
+                }
+                return Double.longBitsToDouble(bits);
+            } else if ("bytes".equals(type)) {
+                return readBytes();
+            } else if ("string".equals(type)) {
+                return new String(readBytes(), UTF_8);
+            }
+            throw new IllegalArgumentException("unsupported type : " + type);
+        }
+
+        private long readLong() {
+            long n = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                n |= (b & 0x7FL) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (n >>> 1) ^ -(n & 1); // zigzag
+        }
+
+        private byte[] readBytes() {
+            int length = (int) readLong();
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+
+/**
+ * 测试扁平json中按sqlType输出的值类型、old以及DDL
+ *
+ * @version 1.0.26
+ */
+public class FlatJsonSerializerTest {
+
+    private static final Charset     UTF_8      = Charset.forName("UTF-8");
+
+    private final FlatJsonSerializer serializer = new FlatJsonSerializer();
+
+    @Test
+    public void testValueTypes() {
+        RowData row = RowData.newBuilder()
+            .addAfterColumns(buildColumn("id", Types.INTEGER, "int(11)", "1", true, false))
+            .addAfterColumns(buildColumn("big", Types.BIGINT, "bigint(20) unsigned", "18446744073709551615", false,
+                false))
+            .addAfterColumns(buildColumn("price", Types.DECIMAL, "decimal(30,10)", "12345678901234567890.0123456789",
+                false, false))
+            .addAfterColumns(buildColumn("rate", Types.DOUBLE, "double", "1.5E-7", false, false))
+            .addAfterColumns(buildColumn("nan", Types.DOUBLE, "double", "NaN", false, false))
+            .addAfterColumns(buildColumn("code", Types.INTEGER, "int(5) zerofill", "00042", false, false))
+            .addAfterColumns(buildColumn("data", Types.VARBINARY, "varbinary(8)", "\u0000ÿ", false, false))
+            .addAfterColumns(buildColumn("name", Types.VARCHAR, "varchar(32)", "a\"b", false, false))
+            .addAfterColumns(buildNullColumn("memo", Types.VARCHAR))
+            .addAfterColumns(buildNullColumn("count", Types.INTEGER))
+            .build();
+        String json = serialize(FlatMessage.ofRows(10L,
+            buildHeader(EventType.INSERT),
+            RowChange.newBuilder().setEventType(EventType.INSERT).build(),
+            Arrays.asList(row)));
+
+        Assert.assertTrue(json,
+            json.startsWith("{\"id\":10,\"database\":\"test\",\"table\":\"user\",\"type\":\"INSERT\",\"es\":1000,"
+                            + "\"isDdl\":false,\"pkNames\":[\"id\"],\"data\":[{\"id\":1,"));
+        Assert.assertTrue(json, json.contains("\"big\":18446744073709551615,"));
+        Assert.assertTrue(json, json.contains("\"price\":12345678901234567890.0123456789,"));
+        Assert.assertTrue(json, json.contains("\"rate\":1.5E-7,"));
+        Assert.assertTrue(json, json.contains("\"nan\":\"NaN\","));
+        Assert.assertTrue(json, json.contains("\"code\":\"00042\","));
+        Assert.assertFalse(json, json.contains("\"old\""));
+
+        JSONObject data = JSON.parseObject(json, Feature.UseBigDecimal).getJSONArray("data").getJSONObject(0);
+        Assert.assertEquals(1, data.get("id"));
+        Assert.assertEquals(new BigDecimal("18446744073709551615"), data.getBigDecimal("big"));
+        Assert.assertEquals(new BigDecimal("12345678901234567890.0123456789"), data.get("price"));
+        Assert.assertArrayEquals(new byte[] { 0, (byte) 0xff }, data.getBytes("data"));
+        Assert.assertEquals("a\"b", data.get("name"));
+        Assert.assertTrue(data.containsKey("memo"));
+        Assert.assertNull(data.get("memo"));
+        Assert.assertNull(data.get("count"));
+    }
+
+    @Test
+    public void testUpdateAndDelete() {
+        RowData row = RowData.newBuilder()
+            .addBeforeColumns(buildColumn("id", Types.BIGINT, "bigint(20)", "1", true, false))
+            .addBeforeColumns(buildColumn("age", Types.INTEGER, "int(11)", "17", false, false))
+            .addBeforeColumns(buildColumn("name", Types.VARCHAR, "varchar(32)", "a", false, false))
+            .addAfterColumns(buildColumn("id", Types.BIGINT, "bigint(20)", "1", true, false))
+            .addAfterColumns(buildColumn("age", Types.INTEGER, "int(11)", "18", false, true))
+            .addAfterColumns(buildColumn("name", Types.VARCHAR, "varchar(32)", "a", false, false))
+            .build();
+
+        String update = serialize(FlatMessage.ofRows(1L,
+            buildHeader(EventType.UPDATE),
+            RowChange.newBuilder().setEventType(EventType.UPDATE).build(),
+            Arrays.asList(row)));
+        Assert.assertTrue(update, update.endsWith("\"data\":[{\"id\":1,\"age\":18,\"name\":\"a\"}],\"old\":[{\"age\":17}]}"));
+
+        // DELETE输出变更前的值，没有old
+        String delete = serialize(FlatMessage.ofRows(1L,
+            buildHeader(EventType.DELETE),
+            RowChange.newBuilder().setEventType(EventType.DELETE).build(),
+            Arrays.asList(row)));
+        Assert.assertTrue(delete, delete.endsWith("\"data\":[{\"id\":1,\"age\":17,\"name\":\"a\"}]}"));
+    }
+
+    @Test
+    public void testDdl() {
+        RowChange rowChange = RowChange.newBuilder()
+            .setIsDdl(true)
+            .setEventType(EventType.ALTER)
+            .setSql("alter table user add column `desc` varchar(10) default \"\"")
+            .build();
+        String json = serialize(FlatMessage.ofDdl(1L, buildHeader(EventType.ALTER), rowChange));
+
+        JSONObject ddl = JSON.parseObject(json);
+        Assert.assertEquals(Boolean.TRUE, ddl.get("isDdl"));
+        Assert.assertEquals("ALTER", ddl.get("type"));
+        Assert.assertEquals(rowChange.getSql(), ddl.get("sql"));
+        Assert.assertFalse(ddl.containsKey("data"));
+        Assert.assertNull(serializer.serialize("test", null));
+    }
+
+    private String serialize(FlatMessage message) {
+        return new String(serializer.serialize("test", message), UTF_8);
+    }
+
+    private Header buildHeader(EventType eventType) {
+        return Header.newBuilder()
+            .setSchemaName("test")
+            .setTableName("user")
+            .setEventType(eventType)
+            .setExecuteTime(1000L)
+            .build();
+    }
+
+    private Column buildColumn(String name, int sqlType, String mysqlType, String value, boolean key, boolean updated) {
+        return Column.newBuilder()
+            .setName(name)
+            .setSqlType(sqlType)
+            .setMysqlType(mysqlType)
+            .setValue(value)
+            .setIsKey(key)
+            .setUpdated(updated)
+            .build();
+    }
+
+    private Column buildNullColumn(String name, int sqlType) {
+        return Column.newBuilder().setName(name).setSqlType(sqlType).setIsNull(true).build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.alibaba.otter.canal.kafka.producer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+
+/**
+ * 测试按主键hash拆分批次：行路由、entry拆分以及DDL/事务头尾/未配置的表发送到partition 0
+ *
+ * @version 1.0.26
+ */
+public class MessagePartitionerTest {
+
+    private static final int PARTITIONS = 8;
+
+    @Test
+    public void testPkRouting() throws Exception {
+        MessagePartitioner partitioner = new MessagePartitioner(config("test\\.user.*", MessagePartitioner.PK_COLUMNS));
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(buildRowEntry("user", EventType.UPDATE, i));
+        }
+
+        Map<Long, Integer> routes = new HashMap<Long, Integer>();
+        for (Message message : buildMessages(entries)) {
+            Message[] partitions = partitioner.partition(message, PARTITIONS);
+            int used = 0;
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (partitions[p] == null) {
+                    continue;
+                }
+                used++;
+                Assert.assertEquals(message.getId(), partitions[p].getId());
+                for (ByteString raw : partitions[p].getRawEntries()) {
+                    Entry entry = Entry.parseFrom(raw);
+                    RowChange rowChange = RowChange.parseFrom(entry.getStoreValue());
+                    for (RowData rowData : rowChange.getRowDatasList()) {
+                        Assert.assertEquals(p, partitioner.partition(entry.getHeader(),
+                            rowChange.getEventType(),
+                            rowData,
+                            PARTITIONS));
+                        long id = Long.parseLong(rowData.getAfterColumns(0).getValue());
+                        Integer previous = routes.put(id, p);
+                        // raw和已解析的批次路由结果一致
+                        Assert.assertTrue(previous == null || previous == p);
+                    }
+                }
+            }
+            Assert.assertTrue("rows should spread across partitions", used > 1);
+        }
+        Assert.assertEquals(50, routes.size());
+    }
+
+    @Test
+    public void testSplitEntry() throws Exception {
+        MessagePartitioner partitioner = new MessagePartitioner(config("test\\..*", MessagePartitioner.PK_COLUMNS));
+        Entry entry = buildRowEntry("order", EventType.INSERT, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15);
+        for (Message message : buildMessages(Collections.singletonList(entry))) {
+            Message[] partitions = partitioner.partition(message, PARTITIONS);
+            List<Long> ids = new ArrayList<Long>();
+            int used = 0;
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (partitions[p] == null) {
+                    continue;
+                }
+                used++;
+                Assert.assertEquals(1, partitions[p].getRawEntries().size());
+                Entry split = Entry.parseFrom(partitions[p].getRawEntries().get(0));
+                Assert.assertEquals(entry.getHeader(), split.getHeader());
+                RowChange rowChange = RowChange.parseFrom(split.getStoreValue());
+                long last = -1;
+                for (RowData rowData : rowChange.getRowDatasList()) {
+                    long id = Long.parseLong(rowData.getAfterColumns(0).getValue());
+                    Assert.assertTrue("rows keep their original order", id > last);
+                    last = id;
+                    ids.add(id);
+                }
+            }
+            Assert.assertTrue(used > 1);
+            Assert.assertEquals(16, ids.size());
+            Collections.sort(ids);
+            for (int i = 0; i < 16; i++) {
+                Assert.assertEquals(i, ids.get(i).longValue());
+            }
+        }
+    }
+
+    @Test
+    public void testDdlAndUnmatchedToPartitionZero() throws Exception {
+        MessagePartitioner partitioner = new MessagePartitioner(config("test\\.user", MessagePartitioner.PK_COLUMNS));
+        Header header = buildHeader("user", EventType.ALTER);
+        Entry ddl = Entry.newBuilder()
+            .setHeader(header)
+            .setEntryType(EntryType.ROWDATA)
+            .setStoreValue(RowChange.newBuilder()
+                .setIsDdl(true)
+                .setEventType(EventType.ALTER)
+                .setSql("alter table user add column age int")
+                .build()
+                .toByteString())
+            .build();
+        Entry begin = Entry.newBuilder()
+            .setHeader(buildHeader("", EventType.QUERY))
+            .setEntryType(EntryType.TRANSACTIONBEGIN)
+            .build();
+        Entry unmatched = buildRowEntry("other", EventType.INSERT, 1, 2, 3, 4, 5, 6, 7, 8);
+        List<Entry> entries = Arrays.asList(begin, ddl, unmatched);
+
+        for (Message message : buildMessages(entries)) {
+            Message[] partitions = partitioner.partition(message, PARTITIONS);
+            Assert.assertNotNull(partitions[0]);
+            for (int p = 1; p < PARTITIONS; p++) {
+                Assert.assertNull(partitions[p]);
+            }
+            List<ByteString> raws = partitions[0].getRawEntries();
+            Assert.assertEquals(entries.size(), raws.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Assert.assertEquals(entries.get(i), Entry.parseFrom(raws.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testColumnsAndDelete() throws Exception {
+        MessagePartitioner partitioner = new MessagePartitioner(config("test\\.user", "Name"));
+        Header header = buildHeader("user", EventType.DELETE);
+        RowData first = RowData.newBuilder()
+            .addBeforeColumns(buildColumn(0, "id", "1", true))
+            .addBeforeColumns(buildColumn(1, "name", "canal", false))
+            .build();
+        RowData second = RowData.newBuilder()
+            .addBeforeColumns(buildColumn(0, "id", "2", true))
+            .addBeforeColumns(buildColumn(1, "name", "canal", false))
+            .build();
+        // 按name列hash，主键不同但name相同的行在同一个partition
+        Assert.assertEquals(partitioner.partition(header, EventType.DELETE, first, PARTITIONS),
+            partitioner.partition(header, EventType.DELETE, second, PARTITIONS));
+        Assert.assertEquals(0, partitioner.partition(buildHeader("other", EventType.DELETE),
+            EventType.DELETE,
+            first,
+            PARTITIONS));
+    }
+
+    private Map<String, String> config(String pattern, String columns) {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(pattern, columns);
+        return config;
+    }
+
+    private Entry buildRowEntry(String table, EventType eventType, long... ids) {
+        RowChange.Builder rowChange = RowChange.newBuilder().setTableId(1).setEventType(eventType);
+        for (long id : ids) {
+            rowChange.addRowDatas(RowData.newBuilder()
+                .addAfterColumns(buildColumn(0, "id", String.valueOf(id), true))
+                .addAfterColumns(buildColumn(1, "name", "name_" + id, false)));
+        }
+        return Entry.newBuilder()
+            .setHeader(buildHeader(table, eventType))
+            .setEntryType(EntryType.ROWDATA)
+            .setStoreValue(rowChange.build().toByteString())
+            .build();
+    }
+
+    private Header buildHeader(String table, EventType eventType) {
+        return Header.newBuilder()
+            .setLogfileName("mysql-bin.000001")
+            .setLogfileOffset(4)
+            .setSchemaName("test")
+            .setTableName(table)
+            .setEventType(eventType)
+            .build();
+    }
+
+    private Column buildColumn(int index, String name, String value, boolean key) {
+        return Column.newBuilder().setIndex(index).setName(name).setValue(value).setIsKey(key).build();
+    }
+
+    /**
+     * 同一批entry分别构造raw模式和已解析的Message
+     */
+    private List<Message> buildMessages(List<Entry> entries) {
+        List<ByteString> rawEntries = new ArrayList<ByteString>();
+        for (Entry entry : entries) {
+            rawEntries.add(entry.toByteString());
+        }
+        List<Message> messages = new ArrayList<Message>();
+        messages.add(new Message(1L, true, rawEntries));
+        messages.add(new Message(2L, new ArrayList<Entry>(entries)));
+        return messages;
+    }
+}
@@ -1,6 +1,7 @@
 package com.alibaba.otter.canal.parse.inbound;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Timer;
@@ -23,7 +24,7 @@ import com.alibaba.otter.canal.parse.CanalEventParser;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.MysqlGTIDSet;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.exception.TableIdNotFoundException;
-import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.TransactionFlushCallback;
+import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.RawTransactionFlushCallback;
 import com.alibaba.otter.canal.parse.index.CanalLogPositionManager;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
 import com.alibaba.otter.canal.protocol.CanalEntry;
@@ -34,7 +35,9 @@ import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.protocol.position.LogIdentity;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.alibaba.otter.canal.sink.CanalEventSink;
+import com.alibaba.otter.canal.sink.CanalRawEventSink;
 import com.alibaba.otter.canal.sink.exception.CanalSinkException;
+import com.google.protobuf.ByteString;
 
 /**
  * 抽象的EventParser, 最大化共用mysql/oracle版本的实现
@@ -126,10 +129,15 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
 
     public AbstractEventParser(){
         // 初始化一下
-        transactionBuffer = new EventTransactionBuffer(new TransactionFlushCallback() {
+        transactionBuffer = new EventTransactionBuffer(new RawTransactionFlushCallback() {
 
             public void flush(List<CanalEntry.Entry> transaction) throws InterruptedException {
-                boolean successed = consumeTheEventAndProfilingIfNecessary(transaction);
+                flush(transaction, null);
+            }
+
+            public void flush(List<CanalEntry.Entry> transaction, List<ByteString> rawTransaction)
+                                                                                                  throws InterruptedException {
+                boolean successed = consumeTheEventAndProfilingIfNecessary(transaction, rawTransaction);
                 if (!running) {
                     return;
                 }
@@ -370,13 +378,29 @@ public abstract class AbstractEventParser<EVENT> extends AbstractCanalLifeCycle
 
     protected boolean consumeTheEventAndProfilingIfNecessary(List<CanalEntry.Entry> entrys) throws CanalSinkException,
                                                                                            InterruptedException {
+        return consumeTheEventAndProfilingIfNecessary(entrys, null);
+    }
+
+    protected boolean consumeTheEventAndProfilingIfNecessary(List<CanalEntry.Entry> entrys, List<ByteString> rawEntrys)
+                                                                                                                  throws CanalSinkException,
+                                                                                                                  InterruptedException {
         long startTs = -1;
         boolean enabled = getProfilingEnabled();
         if (enabled) {
             startTs = System.currentTimeMillis();
         }
 
-        boolean result = eventSink.sink(entrys, (runningInfo == null) ? null : runningInfo.getAddress(), destination);
+        InetSocketAddress address = (runningInfo == null) ? null : runningInfo.getAddress();
+        boolean result = false;
+        if (rawEntrys != null && eventSink instanceof CanalRawEventSink) {
+            // 带上parser并行阶段已经序列化好的数据
+            result = ((CanalRawEventSink<List<CanalEntry.Entry>, List<ByteString>>) eventSink).sink(entrys,
+                rawEntrys,
+                address,
+                destination);
+        } else {
+            result = eventSink.sink(entrys, address, destination);
+        }
 
         if (enabled) {
             this.processingInterval = System.currentTimeMillis() - startTs;
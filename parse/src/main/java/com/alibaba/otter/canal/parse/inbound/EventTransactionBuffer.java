@@ -10,6 +10,7 @@ import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
 import com.alibaba.otter.canal.store.CanalStoreException;
+import com.google.protobuf.ByteString;
 
 /**
  * 缓冲event队列，提供按事务刷新数据的机制
@@ -23,6 +24,7 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
     private int                      bufferSize    = 1024;
     private int                      indexMask;
     private CanalEntry.Entry[]       entries;
+    private ByteString[]             rawEntries;                                    // 预先序列化好的entry数据
 
     private AtomicLong               putSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前put操作最后一次写操作发生的位置
     private AtomicLong               flushSequence = new AtomicLong(INIT_SQEUENCE); // 代表满足flush条件后最后一次数据flush的时间
@@ -46,6 +48,7 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         Assert.notNull(flushCallback, "flush callback is null!");
         indexMask = bufferSize - 1;
         entries = new CanalEntry.Entry[bufferSize];
+        rawEntries = new ByteString[bufferSize];
     }
 
     public void stop() throws CanalStoreException {
@@ -53,6 +56,7 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         flushSequence.set(INIT_SQEUENCE);
 
         entries = null;
+        rawEntries = null;
         super.stop();
     }
 
@@ -63,17 +67,24 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
     }
 
     public void add(CanalEntry.Entry entry) throws InterruptedException {
+        add(entry, null);
+    }
+
+    /**
+     * 添加entry，rawEntry为预先序列化好的entry数据，可以为null
+     */
+    public void add(CanalEntry.Entry entry, ByteString rawEntry) throws InterruptedException {
         switch (entry.getEntryType()) {
             case TRANSACTIONBEGIN:
                 flush();// 刷新上一次的数据
-                put(entry);
+                put(entry, rawEntry);
                 break;
             case TRANSACTIONEND:
-                put(entry);
+                put(entry, rawEntry);
                 flush();
                 break;
             case ROWDATA:
-                put(entry);
+                put(entry, rawEntry);
                 // 针对非DML的数据，直接输出，不进行buffer控制
                 EventType eventType = entry.getHeader().getEventType();
                 if (eventType != null && !isDml(eventType)) {
@@ -90,7 +101,7 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         flushSequence.set(INIT_SQEUENCE);
     }
 
-    private void put(CanalEntry.Entry data) throws InterruptedException {
+    private void put(CanalEntry.Entry data, ByteString rawData) throws InterruptedException {
         // 首先检查是否有空位
         if (checkFreeSlotAt(putSequence.get() + 1)) {
             long current = putSequence.get();
@@ -98,10 +109,11 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
 
             // 先写数据，再更新对应的cursor,并发度高的情况，putSequence会被get请求可见，拿出了ringbuffer中的老的Entry值
             entries[getIndex(next)] = data;
+            rawEntries[getIndex(next)] = rawData;
             putSequence.set(next);
         } else {
             flush();// buffer区满了，刷新一下
-            put(data);// 继续加一下新数据
+            put(data, rawData);// 继续加一下新数据
         }
     }
 
@@ -111,11 +123,18 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
 
         if (start <= end) {
             List<CanalEntry.Entry> transaction = new ArrayList<CanalEntry.Entry>();
+            List<ByteString> rawTransaction = new ArrayList<ByteString>();
             for (long next = start; next <= end; next++) {
                 transaction.add(this.entries[getIndex(next)]);
+                rawTransaction.add(this.rawEntries[getIndex(next)]);
+                this.rawEntries[getIndex(next)] = null;
             }
 
-            flushCallback.flush(transaction);
+            if (flushCallback instanceof RawTransactionFlushCallback) {
+                ((RawTransactionFlushCallback) flushCallback).flush(transaction, rawTransaction);
+            } else {
+                flushCallback.flush(transaction);
+            }
             flushSequence.set(end);// flush成功后，更新flush位置
         }
     }
@@ -161,4 +180,13 @@ public class EventTransactionBuffer extends AbstractCanalLifeCycle {
         public void flush(List<CanalEntry.Entry> transaction) throws InterruptedException;
     }
 
+    /**
+     * 事务刷新机制，同时带上预先序列化好的entry数据，和transaction一一对应，未序列化的为null
+     */
+    public static interface RawTransactionFlushCallback extends TransactionFlushCallback {
+
+        public void flush(List<CanalEntry.Entry> transaction, List<ByteString> rawTransaction)
+                                                                                              throws InterruptedException;
+    }
+
 }
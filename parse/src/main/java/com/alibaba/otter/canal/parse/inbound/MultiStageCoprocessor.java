@@ -2,6 +2,7 @@ package com.alibaba.otter.canal.parse.inbound;
 
 import com.alibaba.otter.canal.common.CanalLifeCycle;
 import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
 
 /**
  * 针对解析器提供一个多阶段协同的处理
@@ -25,5 +26,10 @@ public interface MultiStageCoprocessor extends CanalLifeCycle {
 
     public boolean publish(LogBuffer buffer, String binlogFileName);
 
+    /**
+     * 投递已经解析好的event，用于多个binlog文件并行解析的场景，buffer为event的原始数据，eventOrigin为event在buffer底层数组中的起始位置
+     */
+    public boolean publish(LogEvent event, LogBuffer buffer, int eventOrigin);
+
     public void reset();
 }
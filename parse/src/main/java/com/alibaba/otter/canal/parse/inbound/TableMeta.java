@@ -21,10 +21,11 @@ import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
  */
 public class TableMeta {
 
-    private String          schema;
-    private String          table;
-    private List<FieldMeta> fields = new ArrayList<TableMeta.FieldMeta>();
-    private String          ddl;                                          // 表结构的DDL语句
+    private String                schema;
+    private String                table;
+    private List<FieldMeta>       fields = new ArrayList<TableMeta.FieldMeta>();
+    private String                ddl;                                          // 表结构的DDL语句
+    private volatile ColumnPlan[] columnPlans;                                  // 按字段预先计算的解析信息，字段变化时重建
 
     public TableMeta(){
 
@@ -62,6 +63,7 @@ public class TableMeta {
 
     public void setFields(List<FieldMeta> fileds) {
         this.fields = fileds;
+        this.columnPlans = null;
     }
 
     public FieldMeta getFieldMetaByName(String name) {
@@ -95,6 +97,22 @@ public class TableMeta {
 
     public void addFieldMeta(FieldMeta fieldMeta) {
         this.fields.add(fieldMeta);
+        this.columnPlans = null;
+    }
+
+    /**
+     * 每个字段的解析信息，避免解析每一行时重复判断字段类型
+     */
+    public ColumnPlan[] getColumnPlans() {
+        ColumnPlan[] plans = columnPlans;
+        if (plans == null || plans.length != fields.size()) {
+            plans = new ColumnPlan[fields.size()];
+            for (int i = 0; i < plans.length; i++) {
+                plans[i] = new ColumnPlan(fields.get(i));
+            }
+            columnPlans = plans;
+        }
+        return plans;
     }
 
     @Override
@@ -108,6 +126,49 @@ public class TableMeta {
         return data.toString();
     }
 
+    /**
+     * 字段解析时需要的类型判断结果
+     */
+    public static class ColumnPlan {
+
+        private final FieldMeta fieldMeta;
+        private final boolean   binary;
+        private final boolean   text;
+        private final boolean   singleBit;
+        private final boolean   unsigned;
+
+        public ColumnPlan(FieldMeta fieldMeta){
+            String columnType = fieldMeta.getColumnType();
+            this.fieldMeta = fieldMeta;
+            // binary/varbinary不能做编码处理
+            this.binary = StringUtils.containsIgnoreCase(columnType, "BINARY");
+            this.singleBit = !binary && StringUtils.containsIgnoreCase(columnType, "TINYINT(1)");
+            this.text = "LONGTEXT".equalsIgnoreCase(columnType) || "MEDIUMTEXT".equalsIgnoreCase(columnType)
+                        || "TEXT".equalsIgnoreCase(columnType) || "TINYTEXT".equalsIgnoreCase(columnType);
+            this.unsigned = fieldMeta.isUnsigned();
+        }
+
+        public FieldMeta getFieldMeta() {
+            return fieldMeta;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        public boolean isText() {
+            return text;
+        }
+
+        public boolean isSingleBit() {
+            return singleBit;
+        }
+
+        public boolean isUnsigned() {
+            return unsigned;
+        }
+    }
+
     public static class FieldMeta {
 
         public FieldMeta(){
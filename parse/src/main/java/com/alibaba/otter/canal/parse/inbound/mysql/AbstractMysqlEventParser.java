@@ -1,12 +1,14 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
 import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.filter.CanalEventFilter;
 import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.filter.regex.CompiledRegexFilter;
 import com.alibaba.otter.canal.parse.CanalEventParser;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.MysqlGTIDSet;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
@@ -38,15 +40,18 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
     protected boolean              filterRows              = false;
     protected boolean              filterTableError        = false;
     protected boolean              useDruidDdlFilter       = true;
+    // 并行解析时校验binlog event的crc32，只对开启了binlog_checksum的库生效
+    protected boolean              verifyChecksum          = false;
+    protected AtomicLong           checksumErrorCount      = new AtomicLong();
 
     protected BinlogParser buildParser() {
         LogEventConvert convert = new LogEventConvert();
-        if (eventFilter != null && eventFilter instanceof AviaterRegexFilter) {
-            convert.setNameFilter((AviaterRegexFilter) eventFilter);
+        if (isNameFilter(eventFilter)) {
+            convert.setNameFilter(eventFilter);
         }
 
-        if (eventBlackFilter != null && eventBlackFilter instanceof AviaterRegexFilter) {
-            convert.setNameBlackFilter((AviaterRegexFilter) eventBlackFilter);
+        if (isNameFilter(eventBlackFilter)) {
+            convert.setNameBlackFilter(eventBlackFilter);
         }
 
         convert.setCharset(connectionCharset);
@@ -62,8 +67,8 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         super.setEventFilter(eventFilter);
 
         // 触发一下filter变更
-        if (eventFilter != null && eventFilter instanceof AviaterRegexFilter && binlogParser instanceof LogEventConvert) {
-            ((LogEventConvert) binlogParser).setNameFilter((AviaterRegexFilter) eventFilter);
+        if (isNameFilter(eventFilter) && binlogParser instanceof LogEventConvert) {
+            ((LogEventConvert) binlogParser).setNameFilter(eventFilter);
         }
     }
 
@@ -124,18 +129,28 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         super.setEventBlackFilter(eventBlackFilter);
 
         // 触发一下filter变更
-        if (eventBlackFilter != null && eventBlackFilter instanceof AviaterRegexFilter
-            && binlogParser instanceof LogEventConvert) {
-            ((LogEventConvert) binlogParser).setNameBlackFilter((AviaterRegexFilter) eventBlackFilter);
+        if (isNameFilter(eventBlackFilter) && binlogParser instanceof LogEventConvert) {
+            ((LogEventConvert) binlogParser).setNameBlackFilter(eventBlackFilter);
         }
     }
 
+    /**
+     * 是否为基于schema.table名字的过滤器
+     */
+    private boolean isNameFilter(CanalEventFilter filter) {
+        return filter instanceof AviaterRegexFilter || filter instanceof CompiledRegexFilter;
+    }
+
     protected MultiStageCoprocessor buildMultiStageCoprocessor() {
-        return new MysqlMultiStageCoprocessor(parallelBufferSize,
+        MysqlMultiStageCoprocessor coprocessor = new MysqlMultiStageCoprocessor(parallelBufferSize,
             parallelThreadSize,
             (LogEventConvert) binlogParser,
             transactionBuffer,
             destination);
+        coprocessor.setVerifyChecksum(verifyChecksum);
+        coprocessor.setChecksumErrorCount(checksumErrorCount);
+        coprocessor.setAlarmHandler(getAlarmHandler());
+        return coprocessor;
     }
 
     // ============================ setter / getter =========================
@@ -180,6 +195,18 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
         this.useDruidDdlFilter = useDruidDdlFilter;
     }
 
+    public boolean isVerifyChecksum() {
+        return verifyChecksum;
+    }
+
+    public void setVerifyChecksum(boolean verifyChecksum) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    public Long getChecksumErrorCount() {
+        return checksumErrorCount.get();
+    }
+
     public void setEnableTsdb(boolean enableTsdb) {
         this.enableTsdb = enableTsdb;
         if (this.enableTsdb) {
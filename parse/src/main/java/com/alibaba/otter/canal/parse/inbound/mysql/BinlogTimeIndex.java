@@ -0,0 +1,218 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.otter.canal.common.utils.JsonUtils;
+
+/**
+ * binlog的时间索引，用于按时间戳查找起始位点时跳过已经扫描过的数据
+ *
+ * <pre>
+ * 1. 每个文件记录第一个事件的时间戳(即文件的创建时间)，多个文件之间按这个时间戳二分
+ * 2. 文件内记录事务头的位置作为检查点，同时记录该位置之前所有事务头尾的最大时间戳，这个值随offset单调递增，可以二分，
+ *    从检查点开始扫描和从文件头开始扫描的结果一致
+ * 3. 检查点之间至少间隔checkpointInterval字节，只在扫描时追加到最后一个检查点之后
+ * 4. dataFile不为空时以json的形式持久化，overwrite模式
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class BinlogTimeIndex {
+
+    private static final Logger          logger              = LoggerFactory.getLogger(BinlogTimeIndex.class);
+    private static final Charset         charset             = Charset.forName("UTF-8");
+    private static final long            BINLOG_START_OFFSET = 4L;
+
+    private final File                   dataFile;
+    private long                         checkpointInterval  = 16 * 1024 * 1024;                       // 两个检查点之间的最小间隔，单位byte
+    private final Map<String, FileIndex> files               = new TreeMap<String, FileIndex>();
+    private boolean                      dirty               = false;
+
+    public BinlogTimeIndex(File dataFile){
+        this.dataFile = dataFile;
+        load();
+    }
+
+    /**
+     * 文件中第一个事件的时间戳，单位ms，没有记录时返回null
+     */
+    public synchronized Long getFirstTimestamp(String fileName) {
+        FileIndex index = files.get(fileName);
+        return (index != null && index.getFirstTimestamp() > 0) ? index.getFirstTimestamp() : null;
+    }
+
+    public synchronized void setFirstTimestamp(String fileName, long timestamp) {
+        FileIndex index = getOrCreate(fileName);
+        if (index.getFirstTimestamp() != timestamp) {
+            index.setFirstTimestamp(timestamp);
+            dirty = true;
+        }
+    }
+
+    /**
+     * 记录一个检查点，maxTimestamp为该位置之前所有事务头尾的最大时间戳，距离上一个检查点不足checkpointInterval时忽略
+     */
+    public synchronized boolean addCheckpoint(String fileName, long offset, long maxTimestamp) {
+        FileIndex index = getOrCreate(fileName);
+        List<Long> offsets = index.getOffsets();
+        long last = offsets.isEmpty() ? BINLOG_START_OFFSET : offsets.get(offsets.size() - 1);
+        if (offset - last < checkpointInterval) {
+            return false;
+        }
+
+        offsets.add(offset);
+        index.getMaxTimestamps().add(maxTimestamp);
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * 二分查找之前的最大时间戳小于timestamp的最后一个检查点，返回{offset, maxTimestamp}，没有时返回文件头{4, 0}
+     */
+    public synchronized long[] floorCheckpoint(String fileName, long timestamp) {
+        FileIndex index = files.get(fileName);
+        if (index == null || index.getOffsets().isEmpty()) {
+            return new long[] { BINLOG_START_OFFSET, 0 };
+        }
+
+        List<Long> maxTimestamps = index.getMaxTimestamps();
+        int low = 0;
+        int high = maxTimestamps.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (maxTimestamps.get(middle) < timestamp) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (found < 0) {
+            return new long[] { BINLOG_START_OFFSET, 0 };
+        }
+        return new long[] { index.getOffsets().get(found), maxTimestamps.get(found) };
+    }
+
+    /**
+     * 只保留仍然存在的binlog文件，已经purge的文件直接删除
+     */
+    public synchronized void retain(Collection<String> fileNames) {
+        if (files.keySet().retainAll(new HashSet<String>(fileNames))) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void remove(String fileName) {
+        if (files.remove(fileName) != null) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void clear() {
+        if (!files.isEmpty()) {
+            files.clear();
+            dirty = true;
+        }
+    }
+
+    /**
+     * 有变更时写入dataFile
+     */
+    public synchronized void flush() {
+        if (dataFile == null || !dirty) {
+            return;
+        }
+
+        try {
+            FileUtils.writeStringToFile(dataFile, JsonUtils.marshalToString(files), charset.name());
+            dirty = false;
+        } catch (IOException e) {
+            logger.warn("failed to flush binlog time index to " + dataFile.getPath(), e);
+        }
+    }
+
+    private void load() {
+        if (dataFile == null || !dataFile.exists()) {
+            return;
+        }
+
+        try {
+            String json = FileUtils.readFileToString(dataFile, charset.name());
+            Map<String, FileIndex> loaded = JsonUtils.unmarshalFromString(json,
+                new TypeReference<TreeMap<String, FileIndex>>() {
+                });
+            if (loaded != null) {
+                files.putAll(loaded);
+            }
+        } catch (Throwable e) {
+            // 索引只用于加速，损坏时重新建立
+            logger.warn("failed to load binlog time index from " + dataFile.getPath() + ", rebuild it", e);
+        }
+    }
+
+    private FileIndex getOrCreate(String fileName) {
+        FileIndex index = files.get(fileName);
+        if (index == null) {
+            index = new FileIndex();
+            files.put(fileName, index);
+        }
+        return index;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public File getDataFile() {
+        return dataFile;
+    }
+
+    public static class FileIndex {
+
+        private long       firstTimestamp;
+        private List<Long> offsets       = new ArrayList<Long>();
+        private List<Long> maxTimestamps = new ArrayList<Long>();
+
+        public long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public void setFirstTimestamp(long firstTimestamp) {
+            this.firstTimestamp = firstTimestamp;
+        }
+
+        public List<Long> getOffsets() {
+            return offsets;
+        }
+
+        public void setOffsets(List<Long> offsets) {
+            this.offsets = offsets;
+        }
+
+        public List<Long> getMaxTimestamps() {
+            return maxTimestamps;
+        }
+
+        public void setMaxTimestamps(List<Long> maxTimestamps) {
+            this.maxTimestamps = maxTimestamps;
+        }
+    }
+}
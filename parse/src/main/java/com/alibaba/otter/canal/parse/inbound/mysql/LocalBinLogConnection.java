@@ -15,12 +15,14 @@ import com.alibaba.otter.canal.parse.inbound.ErosaConnection;
 import com.alibaba.otter.canal.parse.inbound.MultiStageCoprocessor;
 import com.alibaba.otter.canal.parse.inbound.SinkFunction;
 import com.alibaba.otter.canal.parse.inbound.mysql.local.BinLogFileQueue;
+import com.alibaba.otter.canal.parse.inbound.mysql.local.BinLogFileSequencer;
 import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
 import com.taobao.tddl.dbsync.binlog.LogBuffer;
 import com.taobao.tddl.dbsync.binlog.LogContext;
 import com.taobao.tddl.dbsync.binlog.LogDecoder;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.MappedFileLogFetcher;
 import com.taobao.tddl.dbsync.binlog.event.QueryLogEvent;
 import com.taobao.tddl.dbsync.binlog.event.RotateLogEvent;
 
@@ -31,12 +33,15 @@ import com.taobao.tddl.dbsync.binlog.event.RotateLogEvent;
  */
 public class LocalBinLogConnection implements ErosaConnection {
 
-    private static final Logger logger     = LoggerFactory.getLogger(LocalBinLogConnection.class);
-    private BinLogFileQueue     binlogs    = null;
+    private static final Logger logger             = LoggerFactory.getLogger(LocalBinLogConnection.class);
+    private BinLogFileQueue     binlogs            = null;
     private boolean             needWait;
     private String              directory;
-    private int                 bufferSize = 16 * 1024;
-    private boolean             running    = false;
+    private int                 bufferSize         = 16 * 1024;
+    private int                 readAheadChunkSize = MappedFileLogFetcher.DEFAULT_CHUNK_SIZE;        // 顺序回放时每次预读的大小
+    private int                 readAheadChunks    = MappedFileLogFetcher.DEFAULT_READ_AHEAD_CHUNKS; // 最多预读的chunk数量
+    private int                 parallelFiles      = 1;                                              // 同时解析的文件数，大于1时多个文件并行解析
+    private boolean             running            = false;
     private long                serverId;
     private FileParserListener  parserListener;
 
@@ -80,10 +85,33 @@ public class LocalBinLogConnection implements ErosaConnection {
     public void seek(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
     }
 
-    public void dump(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
+    public void dump(String binlogfilename, Long binlogPosition, final SinkFunction func) throws IOException {
         File current = new File(directory, binlogfilename);
+        if (parallelFiles > 1) {
+            replay(current, binlogPosition, new BinLogFileSequencer.EventHandler() {
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+                private String fileName;
+
+                public boolean handle(LogEvent event, LogBuffer buffer, int eventOrigin) {
+                    if (!running) {
+                        return false;
+                    }
+                    if (!event.getHeader().getLogFileName().equals(fileName)) {
+                        // 处理一下binlog文件名
+                        fileName = event.getHeader().getLogFileName();
+                        func.sink(new RotateLogEvent(fileName, 4));
+                    }
+                    return func.sink(event);
+                }
+
+                public void finish(String fileName) {
+                    parserFinish(fileName);
+                }
+            });
+            return;
+        }
+
+        MappedFileLogFetcher fetcher = new MappedFileLogFetcher(readAheadChunkSize, readAheadChunks);
         LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
         LogContext context = new LogContext();
         try {
@@ -223,21 +251,37 @@ public class LocalBinLogConnection implements ErosaConnection {
     }
 
     @Override
-    public void dump(String binlogfilename, Long binlogPosition, MultiStageCoprocessor coprocessor) throws IOException {
+    public void dump(String binlogfilename, Long binlogPosition, final MultiStageCoprocessor coprocessor)
+                                                                                                      throws IOException {
         File current = new File(directory, binlogfilename);
+        if (parallelFiles > 1) {
+            replay(current, binlogPosition, new BinLogFileSequencer.EventHandler() {
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+                public boolean handle(LogEvent event, LogBuffer buffer, int eventOrigin) {
+                    return running && coprocessor.publish(event, buffer, eventOrigin);
+                }
+
+                public void finish(String fileName) {
+                    parserFinish(fileName);
+                }
+            });
+            return;
+        }
+
+        MappedFileLogFetcher fetcher = new MappedFileLogFetcher(readAheadChunkSize, readAheadChunks);
         try {
             fetcher.open(current, binlogPosition);
             while (running) {
                 boolean needContinue = true;
-                while (fetcher.fetch()) {
-                    LogBuffer buffer = fetcher.duplicate();
-                    fetcher.consume(fetcher.limit());
-                    // set filename
-                    if (!coprocessor.publish(buffer, binlogfilename)) {
-                        needContinue = false;
-                        break;
+                while (needContinue && fetcher.fetch()) {
+                    // 每个event单独投递，和预读的chunk共享数据，不再拷贝
+                    LogBuffer buffer;
+                    while ((buffer = fetcher.handoff()) != null) {
+                        // set filename
+                        if (!coprocessor.publish(buffer, binlogfilename)) {
+                            needContinue = false;
+                            break;
+                        }
                     }
                 }
 
@@ -272,6 +316,22 @@ public class LocalBinLogConnection implements ErosaConnection {
         }
     }
 
+    /**
+     * 多个文件并行解析，按文件顺序输出
+     */
+    private void replay(File current, Long binlogPosition, BinLogFileSequencer.EventHandler handler)
+                                                                                                  throws IOException {
+        BinLogFileSequencer sequencer = new BinLogFileSequencer(binlogs, parallelFiles);
+        sequencer.setReadAheadChunkSize(readAheadChunkSize);
+        sequencer.setReadAheadChunks(readAheadChunks);
+        sequencer.setServerId(serverId);
+        try {
+            sequencer.replay(current, binlogPosition, needWait, handler);
+        } catch (InterruptedException e) {
+            logger.warn("LocalBinLogConnection dump interrupted");
+        }
+    }
+
     private void parserFinish(String fileName){
         if (parserListener != null){
             parserListener.onFinish(fileName);
@@ -364,6 +424,9 @@ public class LocalBinLogConnection implements ErosaConnection {
         LocalBinLogConnection connection = new LocalBinLogConnection();
 
         connection.setBufferSize(this.bufferSize);
+        connection.setReadAheadChunkSize(this.readAheadChunkSize);
+        connection.setReadAheadChunks(this.readAheadChunks);
+        connection.setParallelFiles(this.parallelFiles);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
         return connection;
@@ -398,6 +461,30 @@ public class LocalBinLogConnection implements ErosaConnection {
         this.bufferSize = bufferSize;
     }
 
+    public int getReadAheadChunkSize() {
+        return readAheadChunkSize;
+    }
+
+    public void setReadAheadChunkSize(int readAheadChunkSize) {
+        this.readAheadChunkSize = readAheadChunkSize;
+    }
+
+    public int getReadAheadChunks() {
+        return readAheadChunks;
+    }
+
+    public void setReadAheadChunks(int readAheadChunks) {
+        this.readAheadChunks = readAheadChunks;
+    }
+
+    public int getParallelFiles() {
+        return parallelFiles;
+    }
+
+    public void setParallelFiles(int parallelFiles) {
+        this.parallelFiles = parallelFiles;
+    }
+
     public long getServerId() {
         return serverId;
     }
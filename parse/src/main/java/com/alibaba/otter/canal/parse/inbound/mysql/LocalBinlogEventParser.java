@@ -14,6 +14,7 @@ import com.alibaba.otter.canal.parse.index.CanalLogPositionManager;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.taobao.tddl.dbsync.binlog.MappedFileLogFetcher;
 
 /**
  * 基于本地binlog文件的复制
@@ -30,8 +31,11 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
     protected TableMetaCache     tableMetaCache;        // 对应meta
 
     protected String             directory;
-    protected boolean            needWait   = false;
-    protected int                bufferSize = 16 * 1024;
+    protected boolean            needWait           = false;
+    protected int                bufferSize         = 16 * 1024;
+    protected int                readAheadChunkSize = MappedFileLogFetcher.DEFAULT_CHUNK_SIZE;
+    protected int                readAheadChunks    = MappedFileLogFetcher.DEFAULT_READ_AHEAD_CHUNKS;
+    protected int                parallelFiles      = 1;                                              // 并行解析的文件数，用于已经关闭的binlog文件的批量回放
 
     public LocalBinlogEventParser(){
         // this.runningInfo = new AuthenticationInfo();
@@ -103,6 +107,9 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         LocalBinLogConnection connection = new LocalBinLogConnection();
 
         connection.setBufferSize(this.bufferSize);
+        connection.setReadAheadChunkSize(this.readAheadChunkSize);
+        connection.setReadAheadChunks(this.readAheadChunks);
+        connection.setParallelFiles(this.parallelFiles);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
 
@@ -169,6 +176,18 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         this.bufferSize = bufferSize;
     }
 
+    public void setReadAheadChunkSize(int readAheadChunkSize) {
+        this.readAheadChunkSize = readAheadChunkSize;
+    }
+
+    public void setReadAheadChunks(int readAheadChunks) {
+        this.readAheadChunks = readAheadChunks;
+    }
+
+    public void setParallelFiles(int parallelFiles) {
+        this.parallelFiles = parallelFiles;
+    }
+
     public void setMasterPosition(EntryPosition masterPosition) {
         this.masterPosition = masterPosition;
     }
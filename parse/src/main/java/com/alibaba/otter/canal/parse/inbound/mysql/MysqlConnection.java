@@ -32,10 +32,11 @@ import com.alibaba.otter.canal.parse.inbound.MultiStageCoprocessor;
 import com.alibaba.otter.canal.parse.inbound.SinkFunction;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.DirectLogFetcher;
 import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
-import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogBufferPool;
 import com.taobao.tddl.dbsync.binlog.LogContext;
 import com.taobao.tddl.dbsync.binlog.LogDecoder;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.PooledLogBuffer;
 
 public class MysqlConnection implements ErosaConnection {
 
@@ -203,11 +204,13 @@ public class MysqlConnection implements ErosaConnection {
         sendBinlogDump(binlogfilename, binlogPosition);
         ((MysqlMultiStageCoprocessor) coprocessor).setConnection(this);
         DirectLogFetcher fetcher = new DirectLogFetcher(connector.getReceiveBufferSize());
+        // event数据直接由pool中的buffer承载，sink完成之后回收，coprocessor停止时未回收的buffer交给gc
+        LogBufferPool pool = new LogBufferPool(connector.getReceiveBufferSize(),
+            ((MysqlMultiStageCoprocessor) coprocessor).getRingBufferSize());
         try {
             fetcher.start(connector.getChannel());
             while (fetcher.fetch()) {
-                LogBuffer buffer = fetcher.duplicate();
-                fetcher.consume(fetcher.limit());
+                PooledLogBuffer buffer = fetcher.handoff(pool);
                 if (!coprocessor.publish(buffer)) {
                     break;
                 }
@@ -229,11 +232,13 @@ public class MysqlConnection implements ErosaConnection {
 
         ((MysqlMultiStageCoprocessor) coprocessor).setConnection(this);
         DirectLogFetcher fetcher = new DirectLogFetcher(connector.getReceiveBufferSize());
+        // event数据直接由pool中的buffer承载，sink完成之后回收，coprocessor停止时未回收的buffer交给gc
+        LogBufferPool pool = new LogBufferPool(connector.getReceiveBufferSize(),
+            ((MysqlMultiStageCoprocessor) coprocessor).getRingBufferSize());
         try {
             fetcher.start(connector.getChannel());
             while (fetcher.fetch()) {
-                LogBuffer buffer = fetcher.duplicate();
-                fetcher.consume(fetcher.limit());
+                PooledLogBuffer buffer = fetcher.handoff(pool);
                 if (!coprocessor.publish(buffer)) {
                     break;
                 }
@@ -1,9 +1,12 @@
 package com.alibaba.otter.canal.parse.inbound.mysql;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +74,10 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
     private int                dumpErrorCount                    = 0;        // binlogDump失败异常计数
     private int                dumpErrorCountThreshold           = 2;        // binlogDump失败异常计数阀值
 
+    // 按时间戳查找位点时使用的时间索引，按mysql地址区分，timeIndexDir为空时只保存在内存中
+    private String                             timeIndexDir;
+    private final Map<String, BinlogTimeIndex> timeIndexes = new HashMap<String, BinlogTimeIndex>();
+
     protected ErosaConnection buildErosaConnection() {
         return buildMysqlConnection(this.runningInfo);
     }
@@ -554,65 +561,159 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
     }
 
     // 根据时间查找binlog位置
+    // 先按每个文件第一个事件的时间戳二分找到文件，再从时间索引中最接近的检查点开始扫描，扫描过程中补充检查点
     private EntryPosition findByStartTimeStamp(MysqlConnection mysqlConnection, Long startTimestamp) {
         EntryPosition endPosition = findEndPosition(mysqlConnection);
-        EntryPosition startPosition = findStartPosition(mysqlConnection);
-        String maxBinlogFileName = endPosition.getJournalName();
-        String minBinlogFileName = startPosition.getJournalName();
+        List<String> binlogFiles = findBinlogFiles(mysqlConnection);
         logger.info("show master status to set search end condition:{} ", endPosition);
-        String startSearchBinlogFile = endPosition.getJournalName();
-        boolean shouldBreak = false;
-        while (running && !shouldBreak) {
-            try {
+        BinlogTimeIndex timeIndex = getTimeIndex(mysqlConnection);
+        timeIndex.retain(binlogFiles);
+        try {
+            int fileIndex = findFileByStartTimeStamp(mysqlConnection, timeIndex, binlogFiles, startTimestamp);
+            // 文件中第一个事务的时间可能已经超过startTimestamp，继续往前找
+            for (int i = fileIndex; running && i >= 0; i--) {
+                String searchBinlogFile = binlogFiles.get(i);
+                long[] checkpoint = timeIndex.floorCheckpoint(searchBinlogFile, startTimestamp);
+                logger.info("search binlog file {} from checkpoint {}", searchBinlogFile, checkpoint[0]);
                 EntryPosition entryPosition = findAsPerTimestampInSpecificLogFile(mysqlConnection,
                     startTimestamp,
                     endPosition,
-                    startSearchBinlogFile,
-                    false);
-                if (entryPosition == null) {
-                    if (StringUtils.equalsIgnoreCase(minBinlogFileName, startSearchBinlogFile)) {
-                        // 已经找到最早的一个binlog，没必要往前找了
-                        shouldBreak = true;
-                        logger.warn("Didn't find the corresponding binlog files from {} to {}",
-                            minBinlogFileName,
-                            maxBinlogFileName);
-                    } else {
-                        // 继续往前找
-                        int binlogSeqNum = Integer.parseInt(startSearchBinlogFile.substring(startSearchBinlogFile.indexOf(".") + 1));
-                        if (binlogSeqNum <= 1) {
-                            logger.warn("Didn't find the corresponding binlog files");
-                            shouldBreak = true;
-                        } else {
-                            int nextBinlogSeqNum = binlogSeqNum - 1;
-                            String binlogFileNamePrefix = startSearchBinlogFile.substring(0,
-                                startSearchBinlogFile.indexOf(".") + 1);
-                            String binlogFileNameSuffix = String.format("%06d", nextBinlogSeqNum);
-                            startSearchBinlogFile = binlogFileNamePrefix + binlogFileNameSuffix;
-                        }
-                    }
-                } else {
+                    searchBinlogFile,
+                    false,
+                    checkpoint,
+                    timeIndex);
+                if (entryPosition != null) {
                     logger.info("found and return:{} in findByStartTimeStamp operation.", entryPosition);
                     return entryPosition;
                 }
-            } catch (Exception e) {
-                logger.warn(String.format("the binlogfile:%s doesn't exist, to continue to search the next binlogfile , caused by",
-                    startSearchBinlogFile),
-                    e);
-                int binlogSeqNum = Integer.parseInt(startSearchBinlogFile.substring(startSearchBinlogFile.indexOf(".") + 1));
-                if (binlogSeqNum <= 1) {
-                    logger.warn("Didn't find the corresponding binlog files");
-                    shouldBreak = true;
-                } else {
-                    int nextBinlogSeqNum = binlogSeqNum - 1;
-                    String binlogFileNamePrefix = startSearchBinlogFile.substring(0,
-                        startSearchBinlogFile.indexOf(".") + 1);
-                    String binlogFileNameSuffix = String.format("%06d", nextBinlogSeqNum);
-                    startSearchBinlogFile = binlogFileNamePrefix + binlogFileNameSuffix;
+            }
+
+            if (!binlogFiles.isEmpty()) {
+                logger.warn("Didn't find the corresponding binlog files from {} to {}",
+                    binlogFiles.get(0),
+                    binlogFiles.get(binlogFiles.size() - 1));
+            }
+            // 找不到
+            return null;
+        } finally {
+            timeIndex.flush();
+        }
+    }
+
+    /**
+     * 二分查找第一个事件的时间戳小于startTimestamp的最后一个文件，都不满足时返回-1
+     */
+    private int findFileByStartTimeStamp(MysqlConnection mysqlConnection, BinlogTimeIndex timeIndex,
+                                         List<String> binlogFiles, long startTimestamp) {
+        int low = 0;
+        int high = binlogFiles.size() - 1;
+        int found = -1;
+        while (running && low <= high) {
+            int middle = (low + high) >>> 1;
+            Long firstTimestamp = findFirstTimestamp(mysqlConnection, timeIndex, binlogFiles.get(middle), false);
+            if (firstTimestamp == null || firstTimestamp < startTimestamp) {
+                // 读取不到的文件按已经过期处理，继续往后找
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        if (found >= 0) {
+            // 索引中的记录可能来自reset master之前的同名文件，重新读取一次选中的文件进行校验
+            String binlogFile = binlogFiles.get(found);
+            Long indexed = timeIndex.getFirstTimestamp(binlogFile);
+            Long actual = findFirstTimestamp(mysqlConnection, timeIndex, binlogFile, true);
+            if (indexed != null && !indexed.equals(actual)) {
+                logger.warn("binlog time index of {} is stale, rebuild it", binlogFile);
+                timeIndex.clear();
+                return findFileByStartTimeStamp(mysqlConnection, timeIndex, binlogFiles, startTimestamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 读取文件的第一个事件(FORMAT_DESCRIPTION_EVENT)的时间戳，只解析事件头，单位ms
+     */
+    private Long findFirstTimestamp(MysqlConnection mysqlConnection, BinlogTimeIndex timeIndex, String binlogFile,
+                                    boolean force) {
+        if (!force) {
+            Long firstTimestamp = timeIndex.getFirstTimestamp(binlogFile);
+            if (firstTimestamp != null) {
+                return firstTimestamp;
+            }
+        }
+
+        final AtomicLong firstTimestamp = new AtomicLong(0L);
+        try {
+            mysqlConnection.reconnect();
+            mysqlConnection.seek(binlogFile, BINLOG_START_OFFEST, new SinkFunction<LogEvent>() {
+
+                public boolean sink(LogEvent event) {
+                    if (event.getWhen() > 0) { // 跳过when为0的fake rotate
+                        firstTimestamp.set(event.getWhen() * 1000);
+                        return false;
+                    }
+                    return running;
                 }
+            });
+        } catch (Exception e) {
+            logger.warn(String.format("the binlogfile:%s doesn't exist, to continue to search the next binlogfile , caused by",
+                binlogFile),
+                e);
+        }
+
+        if (firstTimestamp.get() <= 0) {
+            timeIndex.remove(binlogFile);
+            return null;
+        }
+        timeIndex.setFirstTimestamp(binlogFile, firstTimestamp.get());
+        return firstTimestamp.get();
+    }
+
+    /**
+     * 查询所有的binlog文件，按先后顺序排列
+     */
+    private List<String> findBinlogFiles(MysqlConnection mysqlConnection) {
+        try {
+            ResultSetPacket packet = mysqlConnection.query("show binary logs");
+            List<String> fields = packet.getFieldValues();
+            if (CollectionUtils.isEmpty(fields)) {
+                throw new CanalParseException("command : 'show binary logs' has an error! pls check. you need (at least one of) the SUPER,REPLICATION CLIENT privilege(s) for this operation");
+            }
+            int columns = packet.getFieldDescriptors().size();
+            List<String> binlogFiles = new ArrayList<String>(fields.size() / columns);
+            for (int i = 0; i < fields.size(); i += columns) {
+                binlogFiles.add(fields.get(i));
             }
+            return binlogFiles;
+        } catch (IOException e) {
+            throw new CanalParseException("command : 'show binary logs' has an error!", e);
+        }
+    }
+
+    private BinlogTimeIndex getTimeIndex(MysqlConnection mysqlConnection) {
+        InetSocketAddress address = mysqlConnection.getConnector().getAddress();
+        String key = address.getHostString() + "_" + address.getPort();
+        synchronized (timeIndexes) {
+            BinlogTimeIndex timeIndex = timeIndexes.get(key);
+            if (timeIndex == null) {
+                File dataFile = null;
+                if (StringUtils.isNotEmpty(timeIndexDir)) {
+                    File dir = new File(timeIndexDir, destination);
+                    if (dir.exists() || dir.mkdirs()) {
+                        dataFile = new File(dir, "binlog_time_" + key + ".dat");
+                    } else {
+                        logger.warn("can not create dir {}, binlog time index will not be persisted", dir.getPath());
+                    }
+                }
+                timeIndex = new BinlogTimeIndex(dataFile);
+                timeIndexes.put(key, timeIndex);
+            }
+            return timeIndex;
         }
-        // 找不到
-        return null;
     }
 
     /**
@@ -721,14 +822,39 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
                                                               final EntryPosition endPosition,
                                                               final String searchBinlogFile,
                                                               final Boolean justForPositionTimestamp) {
+        return findAsPerTimestampInSpecificLogFile(mysqlConnection,
+            startTimestamp,
+            endPosition,
+            searchBinlogFile,
+            justForPositionTimestamp,
+            new long[] { BINLOG_START_OFFEST, 0 },
+            null);
+    }
+
+    /**
+     * 从检查点{offset, 之前事务头尾的最大时间戳}开始查找，timeIndex不为空时同时记录扫描过的事务头作为新的检查点
+     */
+    private EntryPosition findAsPerTimestampInSpecificLogFile(MysqlConnection mysqlConnection,
+                                                              final Long startTimestamp,
+                                                              final EntryPosition endPosition,
+                                                              final String searchBinlogFile,
+                                                              final Boolean justForPositionTimestamp,
+                                                              final long[] checkpoint,
+                                                              final BinlogTimeIndex timeIndex) {
 
         final LogPosition logPosition = new LogPosition();
+        if (checkpoint[0] > BINLOG_START_OFFEST) {
+            // 检查点是一个事务头，之前事务头尾的时间戳都小于startTimestamp，检查点处的事务头已经不满足条件时直接使用检查点，
+            // 和从文件头扫描时得到的事务边界一致，避免返回null之后回退到上一个文件
+            logPosition.setPostion(new EntryPosition(searchBinlogFile, checkpoint[0], checkpoint[1]));
+        }
         try {
             mysqlConnection.reconnect();
             // 开始遍历文件
-            mysqlConnection.seek(searchBinlogFile, 4L, new SinkFunction<LogEvent>() {
+            mysqlConnection.seek(searchBinlogFile, checkpoint[0], new SinkFunction<LogEvent>() {
 
                 private LogPosition lastPosition;
+                private long        maxTimestamp = checkpoint[1]; // 已经扫描过的事务头尾的最大时间戳
 
                 public boolean sink(LogEvent event) {
                     EntryPosition entryPosition = null;
@@ -754,6 +880,12 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
 
                         if (CanalEntry.EntryType.TRANSACTIONBEGIN.equals(entry.getEntryType())
                             || CanalEntry.EntryType.TRANSACTIONEND.equals(entry.getEntryType())) {
+                            if (timeIndex != null
+                                && CanalEntry.EntryType.TRANSACTIONBEGIN.equals(entry.getEntryType())
+                                && StringUtils.equals(searchBinlogFile, logfilename)) {
+                                timeIndex.addCheckpoint(logfilename, logfileoffset, maxTimestamp);
+                            }
+                            maxTimestamp = Math.max(maxTimestamp, logposTimestamp);
                             if (logger.isDebugEnabled()) {
                                 logger.debug("compare exit condition:{},{},{}, startTimestamp={}...", new Object[] {
                                         logfilename, logfileoffset, logposTimestamp, startTimestamp });
@@ -791,7 +923,7 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
 
                         lastPosition = buildLastPosition(entry);
                     } catch (Throwable e) {
-                        processSinkError(e, lastPosition, searchBinlogFile, 4L);
+                        processSinkError(e, lastPosition, searchBinlogFile, checkpoint[0]);
                     }
 
                     return running;
@@ -906,6 +1038,10 @@ public class MysqlEventParser extends AbstractMysqlEventParser implements CanalE
         this.haController = haController;
     }
 
+    public void setTimeIndexDir(String timeIndexDir) {
+        this.timeIndexDir = timeIndexDir;
+    }
+
     public void setDumpErrorCountThreshold(int dumpErrorCountThreshold) {
         this.dumpErrorCountThreshold = dumpErrorCountThreshold;
     }
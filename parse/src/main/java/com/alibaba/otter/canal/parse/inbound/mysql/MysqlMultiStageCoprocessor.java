@@ -2,11 +2,16 @@ package com.alibaba.otter.canal.parse.inbound.mysql;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
 
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.alarm.CanalAlarmHandler;
 import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.inbound.ErosaConnection;
@@ -15,6 +20,7 @@ import com.alibaba.otter.canal.parse.inbound.MultiStageCoprocessor;
 import com.alibaba.otter.canal.parse.inbound.TableMeta;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
 import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.google.protobuf.ByteString;
 import com.lmax.disruptor.BatchEventProcessor;
 import com.lmax.disruptor.BlockingWaitStrategy;
 import com.lmax.disruptor.EventFactory;
@@ -32,10 +38,9 @@ import com.taobao.tddl.dbsync.binlog.LogContext;
 import com.taobao.tddl.dbsync.binlog.LogDecoder;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.LogPosition;
-import com.taobao.tddl.dbsync.binlog.event.DeleteRowsLogEvent;
+import com.taobao.tddl.dbsync.binlog.PooledLogBuffer;
+import com.taobao.tddl.dbsync.binlog.event.LogHeader;
 import com.taobao.tddl.dbsync.binlog.event.RowsLogEvent;
-import com.taobao.tddl.dbsync.binlog.event.UpdateRowsLogEvent;
-import com.taobao.tddl.dbsync.binlog.event.WriteRowsLogEvent;
 
 /**
  * 针对解析器提供一个多阶段协同的处理
@@ -43,7 +48,7 @@ import com.taobao.tddl.dbsync.binlog.event.WriteRowsLogEvent;
  * <pre>
  * 1. 网络接收 (单线程)
  * 2. 事件基本解析 (单线程，事件类型、DDL解析构造TableMeta、维护位点信息)
- * 3. 事件深度解析 (多线程, DML事件数据的完整解析)
+ * 3. 事件深度解析 (多线程, DML事件数据的完整解析，同时完成entry的序列化，可选的crc32校验)
  * 4. 投递到store (单线程)
  * </pre>
  * 
@@ -52,6 +57,8 @@ import com.taobao.tddl.dbsync.binlog.event.WriteRowsLogEvent;
  */
 public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implements MultiStageCoprocessor {
 
+    private static final Logger          logger             = LoggerFactory.getLogger(MysqlMultiStageCoprocessor.class);
+
     private LogEventConvert              logEventConvert;
     private EventTransactionBuffer       transactionBuffer;
     private ErosaConnection              connection;
@@ -63,6 +70,9 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
     private ExecutorService              stageExecutor;
     private String                       destination;
     private volatile CanalParseException exception;
+    private boolean                      verifyChecksum     = false;
+    private AtomicLong                   checksumErrorCount = new AtomicLong();
+    private CanalAlarmHandler            alarmHandler;
 
     public MysqlMultiStageCoprocessor(int ringBufferSize, int parserThreadCount, LogEventConvert logEventConvert,
                                       EventTransactionBuffer transactionBuffer, String destination){
@@ -146,6 +156,17 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
     }
 
     public boolean publish(LogBuffer buffer, String binlogFileName) {
+        return publish(buffer, binlogFileName, null, 0);
+    }
+
+    /**
+     * 已经解析好的event投递，跳过基本解析阶段的decode
+     */
+    public boolean publish(LogEvent logEvent, LogBuffer buffer, int eventOrigin) {
+        return publish(buffer, null, logEvent, eventOrigin);
+    }
+
+    private boolean publish(LogBuffer buffer, String binlogFileName, LogEvent logEvent, int eventOrigin) {
         if (!isStart()) {
             if (exception != null) {
                 throw exception;
@@ -169,6 +190,10 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
                 if (binlogFileName != null) {
                     event.setBinlogFileName(binlogFileName);
                 }
+                if (logEvent != null) {
+                    event.setEvent(logEvent);
+                    event.setEventOrigin(eventOrigin);
+                }
                 disruptorMsgBuffer.publish(next);
                 break;
             } catch (InsufficientCapacityException e) {
@@ -201,21 +226,26 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
 
         public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
             try {
-                LogBuffer buffer = event.getBuffer();
-                if (StringUtils.isNotEmpty(event.getBinlogFileName())
-                    && (context.getLogPosition() == null
-                    || !context.getLogPosition().getFileName().equals(event.getBinlogFileName()))) {
-                    // set roate binlog file name
-                    if (context.getLogPosition() == null){
-                        context.setLogPosition(new LogPosition(event.getBinlogFileName(), 0));
-                    }else{
-                        context.setLogPosition(new LogPosition(event.getBinlogFileName(), context.getLogPosition()
-                                .getPosition()));
+                LogEvent logEvent = event.getEvent();
+                if (logEvent == null) {
+                    LogBuffer buffer = event.getBuffer();
+                    if (StringUtils.isNotEmpty(event.getBinlogFileName())
+                        && (context.getLogPosition() == null
+                        || !context.getLogPosition().getFileName().equals(event.getBinlogFileName()))) {
+                        // set roate binlog file name
+                        if (context.getLogPosition() == null){
+                            context.setLogPosition(new LogPosition(event.getBinlogFileName(), 0));
+                        }else{
+                            context.setLogPosition(new LogPosition(event.getBinlogFileName(), context.getLogPosition()
+                                    .getPosition()));
+                        }
                     }
-                }
 
-                LogEvent logEvent = decoder.decode(buffer, context);
-                event.setEvent(logEvent);
+                    // decode之后buffer的origin会被consume掉，提前记录event在底层数组中的起始位置
+                    event.setEventOrigin(buffer.origin());
+                    logEvent = decoder.decode(buffer, context);
+                    event.setEvent(logEvent);
+                }
 
                 int eventType = logEvent.getHeader().getType();
                 TableMeta tableMeta = null;
@@ -223,18 +253,16 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
                 switch (eventType) {
                     case LogEvent.WRITE_ROWS_EVENT_V1:
                     case LogEvent.WRITE_ROWS_EVENT:
-                        tableMeta = logEventConvert.parseRowsEventForTableMeta((WriteRowsLogEvent) logEvent);
-                        needDmlParse = true;
-                        break;
                     case LogEvent.UPDATE_ROWS_EVENT_V1:
                     case LogEvent.UPDATE_ROWS_EVENT:
-                        tableMeta = logEventConvert.parseRowsEventForTableMeta((UpdateRowsLogEvent) logEvent);
-                        needDmlParse = true;
-                        break;
                     case LogEvent.DELETE_ROWS_EVENT_V1:
                     case LogEvent.DELETE_ROWS_EVENT:
-                        tableMeta = logEventConvert.parseRowsEventForTableMeta((DeleteRowsLogEvent) logEvent);
-                        needDmlParse = true;
+                        RowsLogEvent rowsLogEvent = (RowsLogEvent) logEvent;
+                        // 被过滤的表直接丢弃，不再进入dml解析
+                        if (!logEventConvert.isFilteredRowsEvent(rowsLogEvent)) {
+                            tableMeta = logEventConvert.parseRowsEventForTableMeta(rowsLogEvent);
+                            needDmlParse = true;
+                        }
                         break;
                     case LogEvent.ROWS_QUERY_LOG_EVENT:
                         needDmlParse = true;
@@ -266,9 +294,15 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
 
     private class DmlParserStage implements WorkHandler<MessageEvent>, LifecycleAware {
 
+        private CRC32 crc32 = new CRC32(); // 每个线程独立一个，jdk会使用硬件指令加速
+
         @Override
         public void onEvent(MessageEvent event) throws Exception {
             try {
+                if (verifyChecksum && event.getBuffer() != null) {
+                    verifyChecksum(event);
+                }
+
                 if (event.isNeedDmlParse()) {
                     int eventType = event.getEvent().getHeader().getType();
                     CanalEntry.Entry entry = null;
@@ -282,6 +316,10 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
                     }
 
                     event.setEntry(entry);
+                    if (entry != null) {
+                        // 在并行阶段完成序列化，减少sink单线程的开销
+                        event.setRawEntry(entry.toByteString());
+                    }
                 }
             } catch (Throwable e) {
                 exception = new CanalParseException(e);
@@ -289,6 +327,28 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
             }
         }
 
+        /**
+         * 校验失败只记录和报警，不中断解析
+         */
+        private void verifyChecksum(MessageEvent event) {
+            LogHeader header = event.getEvent().getHeader();
+            if (header.verifyChecksum(event.getBuffer(), event.getEventOrigin(), crc32)) {
+                return;
+            }
+
+            if (checksumErrorCount.incrementAndGet() < 0) {
+                checksumErrorCount.set(0);
+            }
+            String message = "binlog checksum mismatch, type: " + LogEvent.getTypeName(header.getType())
+                             + ", position: " + header.getLogFileName() + ":"
+                             + (header.getLogPos() - header.getEventLen()) + ", expected: " + header.getCrc()
+                             + ", actual: " + crc32.getValue();
+            logger.error(message);
+            if (alarmHandler != null) {
+                alarmHandler.sendAlarm(destination, message);
+            }
+        }
+
         @Override
         public void onStart() {
 
@@ -305,7 +365,7 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
             try {
                 if (event.getEntry() != null) {
-                    transactionBuffer.add(event.getEntry());
+                    transactionBuffer.add(event.getEntry(), event.getRawEntry());
                 }
 
                 LogEvent logEvent = event.getEvent();
@@ -315,13 +375,20 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
                         logEvent.getHeader().getLogPos());
                 }
 
+                // 回收网络层的buffer，之后不能再访问event中解析出的数据
+                if (event.getBuffer() instanceof PooledLogBuffer) {
+                    ((PooledLogBuffer) event.getBuffer()).release();
+                }
+
                 // clear for gc
                 event.setBuffer(null);
                 event.setBinlogFileName(null);
                 event.setEvent(null);
                 event.setTable(null);
                 event.setEntry(null);
+                event.setRawEntry(null);
                 event.setNeedDmlParse(false);
+                event.setEventOrigin(0);
             } catch (Throwable e) {
                 exception = new CanalParseException(e);
                 throw exception;
@@ -344,9 +411,11 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         private String           binlogFileName;      // for local binlog parse
         private LogBuffer        buffer;
         private CanalEntry.Entry entry;
+        private ByteString       rawEntry;            // entry序列化后的数据
         private boolean          needDmlParse = false;
         private TableMeta        table;
         private LogEvent         event;
+        private int              eventOrigin;         // event在buffer底层数组中的起始位置，用于checksum校验
 
         public String getBinlogFileName() {
             return binlogFileName;
@@ -380,6 +449,14 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
             this.entry = entry;
         }
 
+        public ByteString getRawEntry() {
+            return rawEntry;
+        }
+
+        public void setRawEntry(ByteString rawEntry) {
+            this.rawEntry = rawEntry;
+        }
+
         public boolean isNeedDmlParse() {
             return needDmlParse;
         }
@@ -396,6 +473,14 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
             this.table = table;
         }
 
+        public int getEventOrigin() {
+            return eventOrigin;
+        }
+
+        public void setEventOrigin(int eventOrigin) {
+            this.eventOrigin = eventOrigin;
+        }
+
     }
 
     class SimpleFatalExceptionHandler implements ExceptionHandler {
@@ -432,4 +517,20 @@ public class MysqlMultiStageCoprocessor extends AbstractCanalLifeCycle implement
         this.connection = connection;
     }
 
+    public void setVerifyChecksum(boolean verifyChecksum) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    public void setChecksumErrorCount(AtomicLong checksumErrorCount) {
+        this.checksumErrorCount = checksumErrorCount;
+    }
+
+    public void setAlarmHandler(CanalAlarmHandler alarmHandler) {
+        this.alarmHandler = alarmHandler;
+    }
+
+    public int getRingBufferSize() {
+        return ringBufferSize;
+    }
+
 }
@@ -9,7 +9,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.parse.driver.mysql.socket.SocketChannel;
+import com.taobao.tddl.dbsync.binlog.LogBufferPool;
 import com.taobao.tddl.dbsync.binlog.LogFetcher;
+import com.taobao.tddl.dbsync.binlog.PooledLogBuffer;
 
 /**
  * 基于socket的logEvent实现
@@ -165,6 +167,18 @@ public class DirectLogFetcher extends LogFetcher {
         }
     }
 
+    /**
+     * 将当前fetch到的event直接移交给pooled buffer，fetcher换用pool中的空闲数组继续读取，整个过程不复制数据
+     */
+    public PooledLogBuffer handoff(LogBufferPool pool) {
+        PooledLogBuffer pooled = pool.acquire();
+        buffer = pooled.swap(buffer, origin, limit, semival);
+        origin = 0;
+        position = 0;
+        limit = 0;
+        return pooled;
+    }
+
     private final boolean fetch0(final int off, final int len) throws IOException {
         ensureCapacity(off + len);
 
@@ -1,14 +1,14 @@
 package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
 
-import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.sql.Types;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import com.alibaba.otter.canal.parse.inbound.mysql.tablemeta.TableMetaCacheInterface;
 import com.alibaba.otter.canal.parse.inbound.mysql.tablemeta.TableMetaStorage;
@@ -19,12 +19,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
-import com.alibaba.otter.canal.filter.aviater.AviaterRegexFilter;
+import com.alibaba.otter.canal.filter.CanalEventFilter;
 import com.alibaba.otter.canal.parse.driver.mysql.packets.GTIDSet;
 import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.exception.TableIdNotFoundException;
 import com.alibaba.otter.canal.parse.inbound.BinlogParser;
 import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.TableMeta.ColumnPlan;
 import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
 import com.alibaba.otter.canal.parse.inbound.mysql.ddl.DdlResult;
 import com.alibaba.otter.canal.parse.inbound.mysql.ddl.DruidDdlParser;
@@ -41,6 +42,7 @@ import com.alibaba.otter.canal.protocol.CanalEntry.TransactionBegin;
 import com.alibaba.otter.canal.protocol.CanalEntry.TransactionEnd;
 import com.alibaba.otter.canal.protocol.CanalEntry.Type;
 import com.alibaba.otter.canal.protocol.position.EntryPosition;
+import com.google.common.collect.MapMaker;
 import com.google.protobuf.ByteString;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
 import com.taobao.tddl.dbsync.binlog.event.DeleteRowsLogEvent;
@@ -87,9 +89,12 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
     public static final String          COMMIT              = "COMMIT";
     public static final Logger          logger              = LoggerFactory.getLogger(LogEventConvert.class);
 
-    private volatile AviaterRegexFilter nameFilter;                                                          // 运行时引用可能会有变化，比如规则发生变化时
-    private volatile AviaterRegexFilter nameBlackFilter;
-
+    private volatile CanalEventFilter<String> nameFilter;                                                    // 运行时引用可能会有变化，比如规则发生变化时
+    private volatile CanalEventFilter<String> nameBlackFilter;
+    // 按tableId缓存表名过滤的结果，过滤规则变化时清空
+    private Map<Long, TableFilterResult> tableFilterResults = new MapMaker().makeMap();
+    // 表名对应的最新tableId，表名换了新的tableId时淘汰旧tableId的缓存，避免tableId递增导致缓存无限增长
+    private ConcurrentMap<String, Long>  tableFilterIds     = new MapMaker().makeMap();
 
     private TableMetaCacheInterface tableMetaCache;
     private String                      binlogFileName      = "mysql-bin.000001";
@@ -446,12 +451,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         boolean isHeartBeat = isAliSQLHeartBeat(table.getDbName(), table.getTableName());
         boolean isRDSHeartBeat = tableMetaCache.isOnRDS() && isRDSHeartBeat(table.getDbName(), table.getTableName());
 
-        String fullname = table.getDbName() + "." + table.getTableName();
         // check name filter
-        if (nameFilter != null && !nameFilter.filter(fullname)) {
-            return null;
-        }
-        if (nameBlackFilter != null && nameBlackFilter.filter(fullname)) {
+        if (isFiltered(table)) {
             return null;
         }
 
@@ -479,7 +480,8 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             tableMeta = getTableMeta(table.getDbName(), table.getTableName(), true, position);
             if (tableMeta == null) {
                 if (!filterTableError) {
-                    throw new CanalParseException("not found [" + fullname + "] in db , pls check!");
+                    throw new CanalParseException("not found [" + table.getDbName() + "." + table.getTableName()
+                                                  + "] in db , pls check!");
                 }
             }
         }
@@ -487,6 +489,52 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         return tableMeta;
     }
 
+    /**
+     * 判断rows事件是否需要被丢弃，可以在解析列数据之前调用
+     */
+    public boolean isFilteredRowsEvent(RowsLogEvent event) {
+        if (filterRows) {
+            return true;
+        }
+
+        TableMapLogEvent table = event.getTable();
+        if (table == null) {
+            return false; // 交给后续解析处理tableId不存在的情况
+        }
+        return isFiltered(table);
+    }
+
+    /**
+     * 表名是否被过滤，同一个tableId只计算一次，tableId对应的表名变化时重新计算
+     */
+    private boolean isFiltered(TableMapLogEvent table) {
+        CanalEventFilter<String> nameFilter = this.nameFilter;
+        CanalEventFilter<String> nameBlackFilter = this.nameBlackFilter;
+        if (nameFilter == null && nameBlackFilter == null) {
+            return false;
+        }
+
+        long tableId = table.getTableId();
+        TableFilterResult result = tableFilterResults.get(tableId);
+        if (result == null || !result.match(table)) {
+            String fullname = table.getDbName() + "." + table.getTableName();
+            boolean filtered = (nameFilter != null && !nameFilter.filter(fullname))
+                               || (nameBlackFilter != null && nameBlackFilter.filter(fullname));
+            if (result != null) {
+                // tableId被其他表复用，旧表名不再指向该tableId
+                tableFilterIds.remove(result.getFullname(), tableId);
+            }
+            result = new TableFilterResult(table.getDbName(), table.getTableName(), filtered);
+            tableFilterResults.put(tableId, result);
+            Long previousId = tableFilterIds.put(fullname, tableId);
+            if (previousId != null && previousId != tableId) {
+                // 表重新分配了tableId(DDL/FLUSH TABLES)，旧tableId不会再出现
+                tableFilterResults.remove(previousId);
+            }
+        }
+        return result.filtered;
+    }
+
     public Entry parseRowsEvent(RowsLogEvent event) {
         return parseRowsEvent(event, null);
     }
@@ -631,6 +679,11 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             }
         }
 
+        ColumnPlan[] columnPlans = null;
+        if (tableMeta != null && !tableError) {
+            columnPlans = tableMeta.getColumnPlans();
+        }
+
         for (int i = 0; i < columnCnt; i++) {
             ColumnInfo info = columnInfo[i];
             // mysql 5.6开始支持nolob/mininal类型,并不一定记录所有的列,需要进行判断
@@ -640,16 +693,17 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
 
             if (existRDSNoPrimaryKey && i == columnCnt - 1 && info.type == LogEvent.MYSQL_TYPE_LONGLONG) {
                 // 不解析最后一列
-                buffer.nextValue(info.type, info.meta, false);
+                buffer.readNextValue(info.type, info.meta, false);
                 continue;
             }
 
             Column.Builder columnBuilder = Column.newBuilder();
 
-            FieldMeta fieldMeta = null;
-            if (tableMeta != null && !tableError) {
+            ColumnPlan columnPlan = null;
+            if (columnPlans != null) {
                 // 处理file meta
-                fieldMeta = tableMeta.getFields().get(i);
+                columnPlan = columnPlans[i];
+                FieldMeta fieldMeta = columnPlan.getFieldMeta();
                 columnBuilder.setName(fieldMeta.getColumnName());
                 columnBuilder.setIsKey(fieldMeta.isKey());
                 // 增加mysql type类型,issue 73
@@ -660,18 +714,9 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
 
             // fixed issue
             // https://github.com/alibaba/canal/issues/66，特殊处理binary/varbinary，不能做编码处理
-            boolean isBinary = false;
-            boolean isSingleBit = false;
-            if (fieldMeta != null) {
-                if (StringUtils.containsIgnoreCase(fieldMeta.getColumnType(), "VARBINARY")) {
-                    isBinary = true;
-                } else if (StringUtils.containsIgnoreCase(fieldMeta.getColumnType(), "BINARY")) {
-                    isBinary = true;
-                } else if (StringUtils.containsIgnoreCase(fieldMeta.getColumnType(), "TINYINT(1)")) {
-                    isSingleBit = true;
-                }
-            }
-            buffer.nextValue(info.type, info.meta, isBinary);
+            boolean isBinary = columnPlan != null && columnPlan.isBinary();
+            boolean isSingleBit = columnPlan != null && columnPlan.isSingleBit();
+            buffer.readNextValue(info.type, info.meta, isBinary);
             if (existRDSNoPrimaryKey && i == columnCnt - 1 && info.type == LogEvent.MYSQL_TYPE_LONGLONG) {
                 // 不解析最后一列
                 continue;
@@ -684,63 +729,51 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             if (buffer.isNull()) {
                 columnBuilder.setIsNull(true);
             } else {
-                final Serializable value = buffer.getValue();
-                // 处理各种类型
+                // 处理各种类型，数值类型直接取原始值，避免装箱
                 switch (javaType) {
                     case Types.INTEGER:
                     case Types.TINYINT:
                     case Types.SMALLINT:
                     case Types.BIGINT:
                         // 处理unsigned类型
-                        Number number = (Number) value;
-                        if (fieldMeta != null && fieldMeta.isUnsigned() && number.longValue() < 0) {
+                        long number = buffer.getLongValue();
+                        if (columnPlan != null && columnPlan.isUnsigned() && number < 0) {
                             switch (buffer.getLength()) {
                                 case 1: /* MYSQL_TYPE_TINY */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(TINYINT_MAX_VALUE
-                                                                                          + number.intValue())));
+                                    columnBuilder.setValue(String.valueOf(TINYINT_MAX_VALUE + number));
                                     javaType = Types.SMALLINT; // 往上加一个量级
                                     break;
 
                                 case 2: /* MYSQL_TYPE_SHORT */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(SMALLINT_MAX_VALUE
-                                                                                          + number.intValue())));
+                                    columnBuilder.setValue(String.valueOf(SMALLINT_MAX_VALUE + number));
                                     javaType = Types.INTEGER; // 往上加一个量级
                                     break;
 
                                 case 3: /* MYSQL_TYPE_INT24 */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(MEDIUMINT_MAX_VALUE
-                                                                                          + number.intValue())));
+                                    columnBuilder.setValue(String.valueOf(MEDIUMINT_MAX_VALUE + number));
                                     javaType = Types.INTEGER; // 往上加一个量级
                                     break;
 
                                 case 4: /* MYSQL_TYPE_LONG */
-                                    columnBuilder.setValue(String.valueOf(Long.valueOf(INTEGER_MAX_VALUE
-                                                                                       + number.longValue())));
+                                    columnBuilder.setValue(String.valueOf(INTEGER_MAX_VALUE + number));
                                     javaType = Types.BIGINT; // 往上加一个量级
                                     break;
 
                                 case 8: /* MYSQL_TYPE_LONGLONG */
-                                    columnBuilder.setValue(BIGINT_MAX_VALUE.add(BigInteger.valueOf(number.longValue()))
-                                        .toString());
+                                    columnBuilder.setValue(BIGINT_MAX_VALUE.add(BigInteger.valueOf(number)).toString());
                                     javaType = Types.DECIMAL; // 往上加一个量级，避免执行出错
                                     break;
                             }
                         } else {
-                            // 对象为number类型，直接valueof即可
-                            columnBuilder.setValue(String.valueOf(value));
+                            columnBuilder.setValue(String.valueOf(number));
                         }
                         break;
                     case Types.REAL: // float
                     case Types.DOUBLE: // double
-                        // 对象为number类型，直接valueof即可
-                        columnBuilder.setValue(String.valueOf(value));
-                        break;
                     case Types.BIT:// bit
-                        // 对象为number类型
-                        columnBuilder.setValue(String.valueOf(value));
-                        break;
                     case Types.DECIMAL:
-                        columnBuilder.setValue(((BigDecimal) value).toPlainString());
+                        // 和String.valueOf/toPlainString的结果一致
+                        columnBuilder.setValue(buffer.getNumberString());
                         break;
                     case Types.TIMESTAMP:
                         // 修复时间边界值
@@ -751,7 +784,7 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                     case Types.TIME:
                     case Types.DATE:
                         // 需要处理year
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                         break;
                     case Types.BINARY:
                     case Types.VARBINARY:
@@ -760,21 +793,22 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                         // https://github.com/AlibabaTech/canal/issues/18
                         // mysql binlog中blob/text都处理为blob类型，需要反查table
                         // meta，按编码解析text
-                        if (fieldMeta != null && isText(fieldMeta.getColumnType())) {
-                            columnBuilder.setValue(new String((byte[]) value, charset));
+                        byte[] bytes = (byte[]) buffer.getValue();
+                        if (columnPlan != null && columnPlan.isText()) {
+                            columnBuilder.setValue(new String(bytes, charset));
                             javaType = Types.CLOB;
                         } else {
                             // byte数组，直接使用iso-8859-1保留对应编码，浪费内存
-                            columnBuilder.setValue(new String((byte[]) value, ISO_8859_1));
+                            columnBuilder.setValue(new String(bytes, ISO_8859_1));
                             javaType = Types.BLOB;
                         }
                         break;
                     case Types.CHAR:
                     case Types.VARCHAR:
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                         break;
                     default:
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                 }
 
             }
@@ -892,11 +926,6 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         }
     }
 
-    private boolean isText(String columnType) {
-        return "LONGTEXT".equalsIgnoreCase(columnType) || "MEDIUMTEXT".equalsIgnoreCase(columnType)
-               || "TEXT".equalsIgnoreCase(columnType) || "TINYTEXT".equalsIgnoreCase(columnType);
-    }
-
     private boolean isAliSQLHeartBeat(String schema, String table) {
         return "test".equalsIgnoreCase(schema) && "heartbeat".equalsIgnoreCase(table);
     }
@@ -936,12 +965,16 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
         this.charset = charset;
     }
 
-    public void setNameFilter(AviaterRegexFilter nameFilter) {
+    public void setNameFilter(CanalEventFilter<String> nameFilter) {
         this.nameFilter = nameFilter;
+        this.tableFilterResults.clear();
+        this.tableFilterIds.clear();
     }
 
-    public void setNameBlackFilter(AviaterRegexFilter nameBlackFilter) {
+    public void setNameBlackFilter(CanalEventFilter<String> nameBlackFilter) {
         this.nameBlackFilter = nameBlackFilter;
+        this.tableFilterResults.clear();
+        this.tableFilterIds.clear();
     }
 
     public void setTableMetaCache(TableMetaCacheInterface tableMetaCache) {
@@ -971,4 +1004,28 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
     public void setGtidSet(GTIDSet gtidSet) {
         this.gtidSet = gtidSet;
     }
+
+    /**
+     * tableId对应的表名过滤结果
+     */
+    private static class TableFilterResult {
+
+        private final String  dbName;
+        private final String  tableName;
+        private final boolean filtered;
+
+        public TableFilterResult(String dbName, String tableName, boolean filtered){
+            this.dbName = dbName;
+            this.tableName = tableName;
+            this.filtered = filtered;
+        }
+
+        public boolean match(TableMapLogEvent table) {
+            return StringUtils.equals(dbName, table.getDbName()) && StringUtils.equals(tableName, table.getTableName());
+        }
+
+        public String getFullname() {
+            return dbName + "." + tableName;
+        }
+    }
 }
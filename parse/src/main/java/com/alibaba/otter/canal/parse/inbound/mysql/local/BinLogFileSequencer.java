@@ -0,0 +1,215 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.parse.exception.ServerIdNotMatchException;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.MappedFileLogFetcher;
+
+/**
+ * 多个binlog文件并行解析，按照文件顺序合并输出
+ *
+ * <pre>
+ * 1. 每个文件由一个线程独立解析，使用各自的LogDecoder/LogContext(FDE和table map都是文件内的状态)
+ * 2. 同时解析parallelFiles个文件，event放入每个文件各自的有界队列，队列满时阻塞该文件的解析
+ * 3. 调用线程按照文件顺序依次取出event交给handler，输出顺序和串行解析一致
+ * 4. 一个文件输出完成之后补充解析后面的文件，没有新文件时按needWait决定等待还是结束
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class BinLogFileSequencer {
+
+    private final BinLogFileQueue binlogs;
+    private final int             parallelFiles;
+    private int                   queueSize          = 1024;                                           // 每个文件最多缓存的event数量
+    private int                   readAheadChunkSize = MappedFileLogFetcher.DEFAULT_CHUNK_SIZE;
+    private int                   readAheadChunks    = MappedFileLogFetcher.DEFAULT_READ_AHEAD_CHUNKS;
+    private long                  serverId;
+
+    public BinLogFileSequencer(BinLogFileQueue binlogs, int parallelFiles){
+        if (parallelFiles < 1) {
+            throw new IllegalArgumentException("parallelFiles must be positive: " + parallelFiles);
+        }
+        this.binlogs = binlogs;
+        this.parallelFiles = parallelFiles;
+    }
+
+    /**
+     * 从first文件的position开始顺序输出，handler返回false时中止
+     *
+     * @return handler中止时返回false，没有更多文件时返回true
+     */
+    public boolean replay(File first, long position, boolean needWait, EventHandler handler) throws IOException,
+                                                                                            InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelFiles,
+            new NamedThreadFactory("BinLogFileSequencer-" + first.getName()));
+        LinkedList<FileDecoder> decoders = new LinkedList<FileDecoder>();
+        try {
+            File next = first;
+            File last = null;
+            while (true) {
+                if (next == null && last != null) {
+                    next = binlogs.getNextFile(last);
+                }
+                // 补齐并行解析的文件
+                while (next != null && decoders.size() < parallelFiles) {
+                    FileDecoder decoder = new FileDecoder(next, (last == null) ? position : 0L);
+                    decoders.add(decoder);
+                    executor.execute(decoder);
+                    last = next;
+                    next = binlogs.getNextFile(last);
+                }
+
+                if (decoders.isEmpty()) {
+                    if (!needWait || last == null) {
+                        return true;
+                    }
+                    next = binlogs.waitForNextFile(last);
+                    continue;
+                }
+
+                FileDecoder decoder = decoders.removeFirst();
+                if (!decoder.drain(handler)) {
+                    return false;
+                }
+                handler.finish(decoder.file.getName());
+            }
+        } finally {
+            for (FileDecoder decoder : decoders) {
+                decoder.running = false;
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    public interface EventHandler {
+
+        /**
+         * buffer为event的原始数据，和预读的chunk共享，eventOrigin为event在buffer底层数组中的起始位置
+         */
+        boolean handle(LogEvent event, LogBuffer buffer, int eventOrigin);
+
+        /**
+         * 文件中的event全部输出完成
+         */
+        void finish(String fileName);
+    }
+
+    private static class DecodedEvent {
+
+        final LogEvent  event;
+        final LogBuffer buffer;
+        final int       eventOrigin;
+        final Throwable error;
+
+        DecodedEvent(LogEvent event, LogBuffer buffer, int eventOrigin, Throwable error){
+            this.event = event;
+            this.buffer = buffer;
+            this.eventOrigin = eventOrigin;
+            this.error = error;
+        }
+    }
+
+    private static final DecodedEvent END = new DecodedEvent(null, null, 0, null);
+
+    private class FileDecoder implements Runnable {
+
+        final File                        file;
+        final long                        position;
+        final BlockingQueue<DecodedEvent> events  = new ArrayBlockingQueue<DecodedEvent>(queueSize);
+        volatile boolean                  running = true;
+
+        FileDecoder(File file, long position){
+            this.file = file;
+            this.position = position;
+        }
+
+        public void run() {
+            MappedFileLogFetcher fetcher = new MappedFileLogFetcher(readAheadChunkSize, readAheadChunks);
+            LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+            LogContext context = new LogContext();
+            context.setLogPosition(new LogPosition(file.getName(), position));
+            try {
+                fetcher.open(file, position);
+                while (running && fetcher.fetch()) {
+                    LogBuffer buffer;
+                    while (running && (buffer = fetcher.handoff()) != null) {
+                        final int eventOrigin = buffer.origin();
+                        LogEvent event = decoder.decode(buffer, context);
+                        if (serverId != 0 && event.getServerId() != serverId) {
+                            throw new ServerIdNotMatchException("unexpected serverId " + serverId
+                                                                + " in binlog file !");
+                        }
+                        events.put(new DecodedEvent(event, buffer, eventOrigin, null));
+                    }
+                }
+                events.put(END);
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (Throwable e) {
+                try {
+                    // 之前解析成功的event仍然按顺序输出
+                    events.put(new DecodedEvent(null, null, 0, e));
+                } catch (InterruptedException ie) {
+                    // stopped
+                }
+            } finally {
+                try {
+                    fetcher.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        boolean drain(EventHandler handler) throws IOException, InterruptedException {
+            while (true) {
+                DecodedEvent decoded = events.take();
+                if (decoded == END) {
+                    return true;
+                }
+                if (decoded.error != null) {
+                    if (decoded.error instanceof IOException) {
+                        throw (IOException) decoded.error;
+                    } else if (decoded.error instanceof RuntimeException) {
+                        throw (RuntimeException) decoded.error;
+                    }
+                    throw new CanalParseException("decode binlog file " + file.getName() + " failed", decoded.error);
+                }
+
+                if (!handler.handle(decoded.event, decoded.buffer, decoded.eventOrigin)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setReadAheadChunkSize(int readAheadChunkSize) {
+        this.readAheadChunkSize = readAheadChunkSize;
+    }
+
+    public void setReadAheadChunks(int readAheadChunks) {
+        this.readAheadChunks = readAheadChunks;
+    }
+
+    public void setServerId(long serverId) {
+        this.serverId = serverId;
+    }
+}
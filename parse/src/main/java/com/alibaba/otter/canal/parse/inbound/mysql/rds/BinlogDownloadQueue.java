@@ -2,6 +2,8 @@ package com.alibaba.otter.canal.parse.inbound.mysql.rds;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -12,17 +14,27 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
 import com.alibaba.otter.canal.parse.inbound.mysql.rds.data.BinlogFile;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
 
 /**
+ * rds binlog文件下载队列
+ *
+ * <pre>
+ * 1. 最多预取batchSize个未解析完成的文件，由parallelDownloads个线程并发下载
+ * 2. 下载先写入.tmp文件(tar包边读边解出binlog，不落地tar包)，按照文件顺序rename发布，保证本地解析看到的文件是连续的
+ * 3. 磁盘剩余空间不足以放下下一个文件+minFreeSpace时暂停下载，等待已解析的文件被删除
+ * </pre>
+ *
  * @author chengjin.lyf on 2018/8/7 下午3:10
  * @since 1.0.25
  */
@@ -30,23 +42,42 @@ public class BinlogDownloadQueue {
 
     private static final Logger logger = LoggerFactory.getLogger(BinlogDownloadQueue.class);
     private static final int      TIMEOUT             = 10000;
+    private static final long     RETRY_INTERVAL      = 5000;
 
     private LinkedBlockingQueue<BinlogFile> downloadQueue = new LinkedBlockingQueue<BinlogFile>();
     private LinkedBlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<Runnable>();
     private LinkedList<BinlogFile> binlogList;
+    private LinkedList<DownloadTask> downloading = new LinkedList<DownloadTask>(); // 按文件顺序，还未发布的下载
+    private LinkedList<String> published = new LinkedList<String>(); // 已发布还未解析完成的文件
     private final int batchSize;
+    private final int parallelDownloads;
     private Thread downloadThread;
-    public boolean running = true;
+    private ExecutorService downloadExecutor;
+    private CloseableHttpClient httpClient;
+    public volatile boolean running = true;
     private final String destDir;
     private String hostId;
     private int currentSize;
     private String lastDownload;
+    private long minFreeSpace = 0; // 下载之后磁盘至少保留的空间
+    private long reservedSpace = 0; // 下载中的文件预留的空间
+    private int generation = 0; // 切换host之后丢弃之前的下载
 
     public BinlogDownloadQueue(List<BinlogFile> downloadQueue, int batchSize, String destDir) throws IOException {
+        this(downloadQueue, batchSize, 1, destDir);
+    }
+
+    public BinlogDownloadQueue(List<BinlogFile> downloadQueue, int batchSize, int parallelDownloads, String destDir)
+                                                                                                                 throws IOException {
         this.binlogList = new LinkedList(downloadQueue);
         this.batchSize = batchSize;
+        this.parallelDownloads = Math.max(1, parallelDownloads);
         this.destDir = destDir;
         this.currentSize = 0;
+        this.httpClient = HttpClientBuilder.create()
+                .setMaxConnPerRoute(Math.max(50, this.parallelDownloads))
+                .setMaxConnTotal(Math.max(100, this.parallelDownloads))
+                .build();
         prepareBinlogList();
         cleanDir();
     }
@@ -74,6 +105,8 @@ public class BinlogDownloadQueue {
         if (downloadThread != null) {
             return;
         }
+        downloadExecutor = Executors.newFixedThreadPool(parallelDownloads,
+            new NamedThreadFactory("rds-binlog-download"));
         downloadThread = new Thread(new DownloadThread());
         downloadThread.start();
     }
@@ -81,14 +114,28 @@ public class BinlogDownloadQueue {
 
     public BinlogFile tryOne() throws IOException {
         BinlogFile binlogFile = binlogList.poll();
-        download(binlogFile);
+        List<File> files = download(binlogFile, null);
+        synchronized (this) {
+            publish(files);
+        }
         hostId = binlogFile.getHostInstanceID();
         this.currentSize ++;
         return binlogFile;
     }
 
     public void notifyNotMatch(){
-        this.currentSize --;
+        synchronized (this) {
+            generation++;
+            for (DownloadTask task : downloading) {
+                task.cancel();
+            }
+            downloading.clear();
+            published.clear();
+            reservedSpace = 0;
+        }
+        downloadQueue.clear();
+        // 当前host的文件都会被清理掉
+        this.currentSize = 0;
         filter(hostId);
     }
 
@@ -106,8 +153,8 @@ public class BinlogDownloadQueue {
 
     public boolean isLastFile(String fileName){
         String needCompareName = lastDownload;
-        if (StringUtils.isNotEmpty(needCompareName) && StringUtils.endsWith(needCompareName, "tar")){
-            needCompareName = needCompareName.substring(0, needCompareName.indexOf("."));
+        if (StringUtils.isNotEmpty(needCompareName) && StringUtils.endsWith(needCompareName, ".tar")){
+            needCompareName = StringUtils.removeEnd(needCompareName, ".tar");
         }
         return fileName.equalsIgnoreCase(needCompareName) && binlogList.isEmpty();
     }
@@ -131,104 +178,212 @@ public class BinlogDownloadQueue {
         }
     }
 
-    public void downOne(){
+    /**
+     * 文件解析完成，删除本地文件，释放一个预取名额
+     */
+    public void downOne(String fileName){
         this.currentSize --;
+        synchronized (this) {
+            published.remove(fileName);
+        }
+        File file = new File(destDir, fileName);
+        if (file.exists() && !file.delete()) {
+            logger.warn("delete parsed binlog file " + file.getPath() + " failed");
+        }
     }
 
     public void release(){
         running = false;
+        synchronized (this) {
+            for (DownloadTask task : downloading) {
+                task.cancel();
+            }
+            downloading.clear();
+            published.clear();
+            reservedSpace = 0;
+        }
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+        IOUtils.closeQuietly(httpClient);
         this.currentSize = 0;
         binlogList.clear();
         downloadQueue.clear();
     }
 
-    private void download(BinlogFile binlogFile) throws IOException {
+    private List<File> download(BinlogFile binlogFile, DownloadTask task) throws IOException {
         String downloadLink = binlogFile.getDownloadLink();
         String fileName = binlogFile.getFileName();
         HttpGet httpGet = new HttpGet(downloadLink);
-        CloseableHttpClient httpClient = HttpClientBuilder.create()
-                .setMaxConnPerRoute(50)
-                .setMaxConnTotal(100)
-                .build();
         RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectTimeout(TIMEOUT)
                 .setConnectionRequestTimeout(TIMEOUT)
                 .setSocketTimeout(TIMEOUT)
                 .build();
         httpGet.setConfig(requestConfig);
-        HttpResponse response = httpClient.execute(httpGet);
-        int statusCode = response.getStatusLine().getStatusCode();
-        if (statusCode != HttpResponseStatus.OK.code()) {
-            throw new RuntimeException("download failed , url:" + downloadLink + " , statusCode:"
-                                       + statusCode);
+        if (task != null) {
+            task.httpGet = httpGet;
+        }
+        CloseableHttpResponse response = httpClient.execute(httpGet);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpResponseStatus.OK.code()) {
+                throw new RuntimeException("download failed , url:" + downloadLink + " , statusCode:"
+                                           + statusCode);
+            }
+            return saveFile(new File(destDir), "mysql-bin." + fileName, response);
+        } finally {
+            IOUtils.closeQuietly(response);
         }
-        saveFile(new File(destDir), "mysql-bin." + fileName, response);
     }
 
-    private static void saveFile(File parentFile, String fileName, HttpResponse response) throws IOException {
+    /**
+     * 按顺序发布下载完成的文件，.tmp文件rename之后才会被本地解析看到
+     */
+    private void publish(List<File> files) throws IOException {
+        for (File file : files) {
+            File tmpFile = new File(file.getPath() + ".tmp");
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("rename " + tmpFile.getPath() + " to " + file.getName() + " failed");
+            }
+            published.add(file.getName());
+            logger.info("binlog file " + file.getName() + " is ready");
+        }
+    }
+
+    private synchronized void finish(DownloadTask task) {
+        task.done = true;
+        if (!running || task.generation != generation) {
+            deleteTmpFiles(task.files);
+            return;
+        }
+        while (!downloading.isEmpty() && downloading.getFirst().done) {
+            DownloadTask head = downloading.removeFirst();
+            reservedSpace -= head.size;
+            if (head.files == null) {
+                continue;
+            }
+            try {
+                publish(head.files);
+            } catch (IOException e) {
+                logger.error("publish binlog file " + head.binlogFile.getFileName() + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * 磁盘空间足够时提交下载，否则等待已解析的文件被删除或者下载中的文件完成
+     */
+    private void submit(BinlogFile binlogFile) throws InterruptedException {
+        long size = (binlogFile.getFileSize() == null) ? 0 : binlogFile.getFileSize();
+        File dir = new File(destDir);
+        int current;
+        synchronized (this) {
+            current = generation;
+        }
+        long lastWarn = 0;
+        while (running) {
+            synchronized (this) {
+                if (current != generation) {
+                    return;
+                }
+                long usable = dir.getUsableSpace() - reservedSpace;
+                // 没有可以释放的空间时直接下载
+                if (usable >= size + minFreeSpace || (downloading.isEmpty() && published.isEmpty())) {
+                    DownloadTask task = new DownloadTask(binlogFile, current, size);
+                    downloading.add(task);
+                    reservedSpace += size;
+                    downloadExecutor.execute(task);
+                    return;
+                }
+
+                if (System.currentTimeMillis() - lastWarn > 60 * 1000L) {
+                    logger.warn("disk space of " + destDir + " is not enough, usable : " + usable
+                                + " , need : " + (size + minFreeSpace) + " , wait for parsed binlog to be deleted");
+                    lastWarn = System.currentTimeMillis();
+                }
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    private static void deleteTmpFiles(List<File> files) {
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            FileUtils.deleteQuietly(new File(file.getPath() + ".tmp"));
+        }
+    }
+
+    /**
+     * 边下载边写入.tmp文件，返回最终的文件列表，失败时清理已写入的.tmp文件
+     */
+    private static List<File> saveFile(File parentFile, String fileName, HttpResponse response) throws IOException {
         InputStream is = response.getEntity().getContent();
-        long totalSize = Long.parseLong(response.getFirstHeader("Content-Length").getValue());
+        long totalSize = response.getEntity().getContentLength();
         if(response.getFirstHeader("Content-Disposition")!=null){
             fileName = response.getFirstHeader("Content-Disposition").getValue();
             fileName = StringUtils.substringAfter(fileName, "filename=");
         }
         boolean isTar = StringUtils.endsWith(fileName, ".tar");
         FileUtils.forceMkdir(parentFile);
-        FileOutputStream fos = null;
+        List<File> files = new ArrayList<File>();
+        boolean success = false;
         try {
             if (isTar) {
                 TarArchiveInputStream tais = new TarArchiveInputStream(is);
                 TarArchiveEntry tarArchiveEntry = null;
                 while ((tarArchiveEntry = tais.getNextTarEntry()) != null) {
-                    String name = tarArchiveEntry.getName();
-                    File tarFile = new File(parentFile, name + ".tmp");
-                    logger.info("start to download file " + tarFile.getName());
-                    BufferedOutputStream bos = null;
-                    try {
-                        bos = new BufferedOutputStream(new FileOutputStream(tarFile));
-                        int read = -1;
-                        byte[] buffer = new byte[1024];
-                        while ((read = tais.read(buffer)) != -1) {
-                            bos.write(buffer, 0, read);
-                        }
-                        logger.info("download file " + tarFile.getName() + " end!");
-                        tarFile.renameTo(new File(parentFile, name));
-                    } finally {
-                        IOUtils.closeQuietly(bos);
+                    if (!tarArchiveEntry.isFile()) {
+                        continue;
                     }
+                    String name = tarArchiveEntry.getName();
+                    File file = new File(parentFile, name);
+                    files.add(file);
+                    logger.info("start to download file " + file.getName());
+                    copy(tais, new File(parentFile, name + ".tmp"), tarArchiveEntry.getSize());
+                    logger.info("download file " + file.getName() + " end!");
                 }
-                tais.close();
             } else {
-                File file = new File(parentFile, fileName + ".tmp");
-                if (!file.isFile()) {
-                    file.createNewFile();
-                }
-                try {
-                    fos = new FileOutputStream(file);
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    long copySize = 0;
-                    long nextPrintProgress = 0;
-                    logger.info("start to download file " + file.getName());
-                    while ((len = is.read(buffer)) != -1) {
-                        fos.write(buffer, 0, len);
-                        copySize += len;
-                        long progress = copySize * 100 / totalSize;
-                        if (progress >= nextPrintProgress) {
-                            logger.info("download " + file.getName() + " progress : " + progress
-                                        + "% , download size : " + copySize + ", total size : " + totalSize);
-                            nextPrintProgress += 10;
-                        }
+                File file = new File(parentFile, fileName);
+                files.add(file);
+                logger.info("start to download file " + file.getName());
+                copy(is, new File(parentFile, fileName + ".tmp"), totalSize);
+                logger.info("download file " + file.getName() + " end!");
+            }
+            success = true;
+            return files;
+        } finally {
+            if (!success) {
+                deleteTmpFiles(files);
+            }
+        }
+    }
+
+    private static void copy(InputStream is, File file, long totalSize) throws IOException {
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            long copySize = 0;
+            long nextPrintProgress = 0;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+                copySize += len;
+                if (totalSize > 0) {
+                    long progress = copySize * 100 / totalSize;
+                    if (progress >= nextPrintProgress) {
+                        logger.info("download " + file.getName() + " progress : " + progress
+                                    + "% , download size : " + copySize + ", total size : " + totalSize);
+                        nextPrintProgress += 10;
                     }
-                    logger.info("download file " + file.getName() + " end!");
-                    fos.flush();
-                } finally {
-                    IOUtils.closeQuietly(fos);
                 }
-                file.renameTo(new File(parentFile, fileName));
             }
+            os.flush();
         } finally {
-            IOUtils.closeQuietly(fos);
+            IOUtils.closeQuietly(os);
         }
     }
 
@@ -242,19 +397,74 @@ public class BinlogDownloadQueue {
         public void run() {
             while (running) {
                 try {
-                    BinlogFile binlogFile = downloadQueue.poll(5000, TimeUnit.MILLISECONDS);
+                    BinlogFile binlogFile = downloadQueue.poll(1000, TimeUnit.MILLISECONDS);
                     if (binlogFile != null){
-                        download(binlogFile);
+                        submit(binlogFile);
                     }
-                    Runnable runnable = taskQueue.poll(5000, TimeUnit.MILLISECONDS);
+                    Runnable runnable = taskQueue.poll();
                     if (runnable != null){
                         runnable.run();
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    logger.error("download binlog failed", e);
+                }
+            }
+
+        }
+    }
+
+    private class DownloadTask implements Runnable {
+
+        final BinlogFile  binlogFile;
+        final int         generation;
+        final long        size;
+        volatile HttpGet  httpGet;
+        volatile boolean  cancelled = false;
+        volatile List<File> files;
+        boolean           done      = false;
+
+        DownloadTask(BinlogFile binlogFile, int generation, long size){
+            this.binlogFile = binlogFile;
+            this.generation = generation;
+            this.size = size;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running && !cancelled) {
+                    try {
+                        files = download(binlogFile, this);
+                        return;
+                    } catch (Throwable e) {
+                        if (!running || cancelled) {
+                            return;
+                        }
+                        logger.error("download binlog " + binlogFile.getFileName() + " failed, retry after "
+                                     + RETRY_INTERVAL + "ms", e);
+                        Thread.sleep(RETRY_INTERVAL);
+                    }
                 }
+            } catch (InterruptedException e) {
+                // stopped
+            } finally {
+                finish(this);
             }
+        }
 
+        void cancel() {
+            cancelled = true;
+            HttpGet get = httpGet;
+            if (get != null) {
+                get.abort();
+            }
         }
     }
+
+    public void setMinFreeSpace(long minFreeSpace) {
+        this.minFreeSpace = minFreeSpace;
+    }
 }
@@ -22,6 +22,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
     private Long endTime;
     private String directory; //binlog 目录
     private int batchSize = 4; //最多下载的binlog文件数量
+    private int parallelDownloads = 2; //并发下载的binlog文件数量
+    private long minFreeSpace = 0; //下载时磁盘至少保留的空间
 
     private RdsLocalBinlogEventParser rdsBinlogEventParser = new RdsLocalBinlogEventParser();
     private ExecutorService executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
@@ -61,6 +63,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
         rdsBinlogEventParser.setEventSink(eventSink);
         rdsBinlogEventParser.setDirectory(directory);
         rdsBinlogEventParser.setBatchSize(batchSize);
+        rdsBinlogEventParser.setParallelDownloads(parallelDownloads);
+        rdsBinlogEventParser.setMinFreeSpace(minFreeSpace);
         rdsBinlogEventParser.setFinishListener(new RdsLocalBinlogEventParser.ParseFinishListener() {
             @Override
             public void onFinish() {
@@ -146,4 +150,12 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
     }
+
+    public void setParallelDownloads(int parallelDownloads) {
+        this.parallelDownloads = parallelDownloads;
+    }
+
+    public void setMinFreeSpace(long minFreeSpace) {
+        this.minFreeSpace = minFreeSpace;
+    }
 }
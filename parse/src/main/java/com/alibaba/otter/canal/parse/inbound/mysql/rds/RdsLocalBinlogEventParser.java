@@ -1,6 +1,5 @@
 package com.alibaba.otter.canal.parse.inbound.mysql.rds;
 
-import java.io.File;
 import java.util.Date;
 import java.util.List;
 
@@ -37,6 +36,8 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     private BinlogDownloadQueue binlogDownloadQueue;
     private ParseFinishListener finishListener;
     private int batchSize;
+    private int parallelDownloads = 2; // 并发下载的文件数
+    private long minFreeSpace = 0; // 下载时磁盘至少保留的空间
 
     public RdsLocalBinlogEventParser(){
     }
@@ -64,12 +65,15 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
                 instanceId,
                 new Date(startTime),
                 new Date(endTime));
-            binlogDownloadQueue = new BinlogDownloadQueue(binlogFiles, batchSize, directory);
+            binlogDownloadQueue = new BinlogDownloadQueue(binlogFiles, batchSize, parallelDownloads, directory);
+            binlogDownloadQueue.setMinFreeSpace(minFreeSpace);
             binlogDownloadQueue.silenceDownload();
             needWait = true;
             parallel = false;
             // try to download one file,use to test server id
             binlogDownloadQueue.tryOne();
+            // 解析第一个文件的同时预取后续文件
+            binlogDownloadQueue.prepare();
         } catch (Throwable e) {
             logger.error("download binlog failed", e);
             throw new CanalParseException(e);
@@ -160,11 +164,7 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     @Override
     public void onFinish(String fileName) {
         try {
-            binlogDownloadQueue.downOne();
-            File needDeleteFile = new File(directory + File.separator + fileName);
-            if (needDeleteFile.exists()){
-                needDeleteFile.delete();
-            }
+            binlogDownloadQueue.downOne(fileName);
             // 处理下logManager位点问题
             LogPosition logPosition = logPositionManager.getLatestIndexBy(destination);
             EntryPosition position = logPosition.getPostion();
@@ -209,4 +209,12 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
     }
+
+    public void setParallelDownloads(int parallelDownloads) {
+        this.parallelDownloads = parallelDownloads;
+    }
+
+    public void setMinFreeSpace(long minFreeSpace) {
+        this.minFreeSpace = minFreeSpace;
+    }
 }
@@ -2,17 +2,20 @@ package com.alibaba.otter.canal.parse.inbound;
 
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.RawTransactionFlushCallback;
 import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer.TransactionFlushCallback;
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
 import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.google.protobuf.ByteString;
 
 public class EventTransactionBufferTest {
 
@@ -116,6 +119,54 @@ public class EventTransactionBufferTest {
         buffer.stop();
     }
 
+    @Test
+    public void testRawTransactionFlush() {
+        final int bufferSize = 64;
+        final int transactionSize = 5;
+        final List<Integer> flushed = new ArrayList<Integer>();
+        EventTransactionBuffer buffer = new EventTransactionBuffer();
+        buffer.setBufferSize(bufferSize);
+        buffer.setFlushCallback(new RawTransactionFlushCallback() {
+
+            public void flush(List<Entry> transaction) throws InterruptedException {
+                Assert.fail("raw callback should be used");
+            }
+
+            public void flush(List<Entry> transaction, List<ByteString> rawTransaction) throws InterruptedException {
+                Assert.assertEquals(transaction.size(), rawTransaction.size());
+                for (int i = 0; i < transaction.size(); i++) {
+                    Entry data = transaction.get(i);
+                    if (data.getEntryType() == EntryType.ROWDATA) {
+                        // 预先序列化的数据原样传递
+                        Assert.assertEquals(data.toByteString(), rawTransaction.get(i));
+                    } else {
+                        Assert.assertNull(rawTransaction.get(i));
+                    }
+                }
+                flushed.add(transaction.size());
+            }
+        });
+        buffer.start();
+
+        try {
+            for (int i = 0; i < transactionSize * 10; i++) {
+                if (i % transactionSize == 0) {
+                    buffer.add(buildEntry("1", 1L + i, 40L + i, EntryType.TRANSACTIONBEGIN));
+                } else if ((i + 1) % transactionSize == 0) {
+                    buffer.add(buildEntry("1", 1L + i, 40L + i, EntryType.TRANSACTIONEND));
+                } else {
+                    Entry entry = buildEntry("1", 1L + i, 40L + i);
+                    buffer.add(entry, entry.toByteString());
+                }
+            }
+        } catch (InterruptedException e) {
+            Assert.fail(e.getMessage());
+        }
+
+        Assert.assertEquals(10, flushed.size());
+        buffer.stop();
+    }
+
     private static Entry buildEntry(String binlogFile, long offset, long timestamp) {
         Header.Builder headerBuilder = Header.newBuilder();
         headerBuilder.setLogfileName(binlogFile);
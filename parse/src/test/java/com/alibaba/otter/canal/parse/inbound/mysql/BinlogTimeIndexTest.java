@@ -0,0 +1,75 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinlogTimeIndexTest {
+
+    private static final String tmp      = System.getProperty("java.io.tmpdir", "/tmp");
+    private static final File   dataFile = new File(new File(tmp, "canal"), "binlog_time_test.dat");
+
+    @Before
+    public void setUp() {
+        try {
+            FileUtils.deleteQuietly(dataFile);
+            FileUtils.forceMkdir(dataFile.getParentFile());
+        } catch (IOException e) {
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFloorCheckpoint() {
+        BinlogTimeIndex index = new BinlogTimeIndex(null);
+        index.setCheckpointInterval(100);
+        Assert.assertArrayEquals(new long[] { 4L, 0L }, index.floorCheckpoint("mysql-bin.000001", 1000L));
+
+        Assert.assertTrue(index.addCheckpoint("mysql-bin.000001", 200L, 1000L));
+        Assert.assertFalse(index.addCheckpoint("mysql-bin.000001", 250L, 1500L)); // 间隔不足
+        Assert.assertTrue(index.addCheckpoint("mysql-bin.000001", 400L, 2000L));
+        Assert.assertTrue(index.addCheckpoint("mysql-bin.000001", 600L, 3000L));
+        Assert.assertFalse(index.addCheckpoint("mysql-bin.000001", 300L, 1000L)); // 只能追加在最后
+
+        Assert.assertArrayEquals(new long[] { 4L, 0L }, index.floorCheckpoint("mysql-bin.000001", 1000L));
+        Assert.assertArrayEquals(new long[] { 200L, 1000L }, index.floorCheckpoint("mysql-bin.000001", 1001L));
+        Assert.assertArrayEquals(new long[] { 400L, 2000L }, index.floorCheckpoint("mysql-bin.000001", 3000L));
+        Assert.assertArrayEquals(new long[] { 600L, 3000L }, index.floorCheckpoint("mysql-bin.000001", 9999L));
+        Assert.assertArrayEquals(new long[] { 4L, 0L }, index.floorCheckpoint("mysql-bin.000002", 9999L));
+    }
+
+    @Test
+    public void testPersist() {
+        BinlogTimeIndex index = new BinlogTimeIndex(dataFile);
+        index.setCheckpointInterval(100);
+        index.setFirstTimestamp("mysql-bin.000001", 1000L);
+        index.setFirstTimestamp("mysql-bin.000002", 5000L);
+        index.addCheckpoint("mysql-bin.000001", 200L, 1000L);
+        index.addCheckpoint("mysql-bin.000001", 400L, 2000L);
+        index.flush();
+
+        BinlogTimeIndex loaded = new BinlogTimeIndex(dataFile);
+        Assert.assertEquals(Long.valueOf(1000L), loaded.getFirstTimestamp("mysql-bin.000001"));
+        Assert.assertEquals(Long.valueOf(5000L), loaded.getFirstTimestamp("mysql-bin.000002"));
+        Assert.assertArrayEquals(new long[] { 400L, 2000L }, loaded.floorCheckpoint("mysql-bin.000001", 3000L));
+
+        // purge之后的文件被删除
+        loaded.retain(Arrays.asList("mysql-bin.000002"));
+        loaded.flush();
+        loaded = new BinlogTimeIndex(dataFile);
+        Assert.assertNull(loaded.getFirstTimestamp("mysql-bin.000001"));
+        Assert.assertEquals(Long.valueOf(5000L), loaded.getFirstTimestamp("mysql-bin.000002"));
+    }
+
+    @Test
+    public void testCorruptedFile() throws IOException {
+        FileUtils.writeStringToFile(dataFile, "{not json", "UTF-8");
+        BinlogTimeIndex index = new BinlogTimeIndex(dataFile);
+        Assert.assertNull(index.getFirstTimestamp("mysql-bin.000001"));
+    }
+}
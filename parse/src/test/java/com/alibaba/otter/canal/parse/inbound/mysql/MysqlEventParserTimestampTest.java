@@ -0,0 +1,191 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.parse.inbound.AbstractEventParser;
+import com.alibaba.otter.canal.parse.inbound.SinkFunction;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
+import com.alibaba.otter.canal.parse.support.AuthenticationInfo;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
+import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+
+/**
+ * 基于本地binlog文件，测试从时间索引的检查点开始按时间戳查找位点
+ *
+ * @version 1.0.26
+ */
+public class MysqlEventParserTimestampTest {
+
+    private static final String BINLOG_FILE = "mysql-bin.000001";
+
+    private File                directory;
+    private MysqlEventParser    parser;
+    private Method              findMethod;
+
+    @Before
+    public void setUp() throws Exception {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("binlog/" + BINLOG_FILE);
+        directory = new File(url.getFile()).getParentFile();
+
+        parser = new MysqlEventParser();
+        parser.setBinlogParser(new LogEventConvert());
+        Field running = AbstractCanalLifeCycle.class.getDeclaredField("running");
+        running.setAccessible(true);
+        running.set(parser, true);
+        Field runningInfo = AbstractEventParser.class.getDeclaredField("runningInfo");
+        runningInfo.setAccessible(true);
+        runningInfo.set(parser, new AuthenticationInfo(new InetSocketAddress("127.0.0.1", 3306), "canal", "canal"));
+
+        findMethod = MysqlEventParser.class.getDeclaredMethod("findAsPerTimestampInSpecificLogFile",
+            MysqlConnection.class,
+            Long.class,
+            EntryPosition.class,
+            String.class,
+            Boolean.class,
+            long[].class,
+            BinlogTimeIndex.class);
+        findMethod.setAccessible(true);
+    }
+
+    @Test
+    public void testCheckpointBeginAfterTimestamp() throws Exception {
+        List<Entry> boundaries = scanBoundaries();
+        // 找一个时间戳大于之前所有事务头尾的事务头，作为检查点
+        long maxTimestamp = 0;
+        Entry begin = null;
+        long checkpointTimestamp = 0;
+        for (Entry entry : boundaries) {
+            long timestamp = entry.getHeader().getExecuteTime();
+            if (begin == null && maxTimestamp > 0 && entry.getEntryType() == EntryType.TRANSACTIONBEGIN
+                && timestamp > maxTimestamp) {
+                begin = entry;
+                checkpointTimestamp = maxTimestamp;
+            }
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+        Assert.assertNotNull("no proper transaction begin in " + BINLOG_FILE, begin);
+
+        long startTimestamp = begin.getHeader().getExecuteTime();
+        long offset = begin.getHeader().getLogfileOffset();
+        EntryPosition fromStart = find(startTimestamp, new long[] { 4L, 0L });
+        Assert.assertNotNull(fromStart);
+        Assert.assertTrue(fromStart.getPosition() <= offset);
+        Assert.assertTrue(fromStart.getTimestamp() < startTimestamp);
+
+        // 检查点处的事务头已经不满足条件，返回检查点本身，而不是null导致回退到上一个文件
+        EntryPosition fromCheckpoint = find(startTimestamp, new long[] { offset, checkpointTimestamp });
+        Assert.assertNotNull(fromCheckpoint);
+        Assert.assertEquals(BINLOG_FILE, fromCheckpoint.getJournalName());
+        Assert.assertEquals(Long.valueOf(offset), fromCheckpoint.getPosition());
+        Assert.assertEquals(Long.valueOf(checkpointTimestamp), fromCheckpoint.getTimestamp());
+        Assert.assertTrue(fromCheckpoint.getPosition() >= fromStart.getPosition());
+    }
+
+    @Test
+    public void testCheckpointSameAsFullScan() throws Exception {
+        List<Entry> boundaries = scanBoundaries();
+        Entry last = boundaries.get(boundaries.size() - 1);
+        long startTimestamp = last.getHeader().getExecuteTime() + 1000;
+        EntryPosition fromStart = find(startTimestamp, new long[] { 4L, 0L });
+        Assert.assertNotNull(fromStart);
+
+        // 从文件中间的任意事务头开始查找，结果和从头扫描一致
+        long maxTimestamp = 0;
+        for (Entry entry : boundaries) {
+            if (entry.getEntryType() == EntryType.TRANSACTIONBEGIN && maxTimestamp > 0) {
+                long[] checkpoint = new long[] { entry.getHeader().getLogfileOffset(), maxTimestamp };
+                Assert.assertEquals(fromStart, find(startTimestamp, checkpoint));
+            }
+            maxTimestamp = Math.max(maxTimestamp, entry.getHeader().getExecuteTime());
+        }
+    }
+
+    private EntryPosition find(long startTimestamp, long[] checkpoint) throws Exception {
+        return (EntryPosition) findMethod.invoke(parser,
+            new LocalFileConnection(),
+            startTimestamp,
+            new EntryPosition(BINLOG_FILE, Long.MAX_VALUE),
+            BINLOG_FILE,
+            false,
+            checkpoint,
+            null);
+    }
+
+    /**
+     * 文件中所有的事务头尾
+     */
+    private List<Entry> scanBoundaries() throws Exception {
+        final List<Entry> boundaries = new ArrayList<Entry>();
+        final LogEventConvert convert = new LogEventConvert();
+        new LocalFileConnection().seek(BINLOG_FILE, 4L, new SinkFunction<LogEvent>() {
+
+            public boolean sink(LogEvent event) {
+                Entry entry = convert.parse(event, true);
+                if (entry != null
+                    && (entry.getEntryType() == EntryType.TRANSACTIONBEGIN || entry.getEntryType() == EntryType.TRANSACTIONEND)) {
+                    boundaries.add(entry);
+                }
+                return true;
+            }
+        });
+        Assert.assertTrue(boundaries.size() > 4);
+        return boundaries;
+    }
+
+    /**
+     * 从本地文件读取binlog，和mysql的COM_BINLOG_DUMP一样先返回FORMAT_DESCRIPTION，再从指定位置开始返回事件
+     */
+    private class LocalFileConnection extends MysqlConnection {
+
+        @Override
+        public void reconnect() throws IOException {
+        }
+
+        @Override
+        public void seek(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
+            FileLogFetcher fetcher = new FileLogFetcher(16 * 1024);
+            LogDecoder decoder = new LogDecoder();
+            decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
+            decoder.handle(LogEvent.QUERY_EVENT);
+            decoder.handle(LogEvent.XID_EVENT);
+            LogContext context = new LogContext();
+            context.setLogPosition(new LogPosition(binlogfilename));
+            try {
+                fetcher.open(new File(directory, binlogfilename));
+                while (fetcher.fetch()) {
+                    LogEvent event = decoder.decode(fetcher, context);
+                    if (event == null) {
+                        continue;
+                    }
+                    long start = event.getLogPos() - event.getEventLen();
+                    if (event.getHeader().getType() != LogEvent.FORMAT_DESCRIPTION_EVENT && start < binlogPosition) {
+                        continue;
+                    }
+                    if (!func.sink(event)) {
+                        break;
+                    }
+                }
+            } finally {
+                fetcher.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.local;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.MappedFileLogFetcher;
+
+public class BinLogFileSequencerTest {
+
+    private File            directory;
+    private BinLogFileQueue binlogs;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        directory = new File(new File(url.getFile()).getParent(), "binlog");
+        binlogs = new BinLogFileQueue(directory);
+    }
+
+    @After
+    public void tearDown() {
+        binlogs.destory();
+    }
+
+    @Test
+    public void testReplayInOrder() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        for (File file : binlogs.currentBinlogs()) {
+            expected.addAll(decode(file));
+        }
+
+        // 小chunk和小队列，解析线程会频繁阻塞
+        BinLogFileSequencer sequencer = new BinLogFileSequencer(binlogs, 2);
+        sequencer.setQueueSize(4);
+        sequencer.setReadAheadChunkSize(256);
+        sequencer.setReadAheadChunks(1);
+        final List<String> actual = new ArrayList<String>();
+        final List<String> finished = new ArrayList<String>();
+        boolean completed = sequencer.replay(binlogs.currentBinlogs().get(0),
+            4L,
+            false,
+            new BinLogFileSequencer.EventHandler() {
+
+                public boolean handle(LogEvent event, LogBuffer buffer, int eventOrigin) {
+                    actual.add(describe(event));
+                    return true;
+                }
+
+                public void finish(String fileName) {
+                    finished.add(fileName);
+                }
+            });
+
+        Assert.assertTrue(completed);
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(2, finished.size());
+        Assert.assertEquals("mysql-bin.000001", finished.get(0));
+        Assert.assertEquals("mysql-bin.000002", finished.get(1));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        BinLogFileSequencer sequencer = new BinLogFileSequencer(binlogs, 2);
+        sequencer.setQueueSize(4);
+        final List<String> actual = new ArrayList<String>();
+        boolean completed = sequencer.replay(binlogs.currentBinlogs().get(0),
+            4L,
+            false,
+            new BinLogFileSequencer.EventHandler() {
+
+                public boolean handle(LogEvent event, LogBuffer buffer, int eventOrigin) {
+                    actual.add(describe(event));
+                    return actual.size() < 10;
+                }
+
+                public void finish(String fileName) {
+                    Assert.fail("should not finish " + fileName);
+                }
+            });
+
+        Assert.assertFalse(completed);
+        Assert.assertEquals(10, actual.size());
+    }
+
+    private List<String> decode(File file) throws Exception {
+        List<String> events = new ArrayList<String>();
+        MappedFileLogFetcher fetcher = new MappedFileLogFetcher();
+        LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        LogContext context = new LogContext();
+        context.setLogPosition(new LogPosition(file.getName()));
+        try {
+            fetcher.open(file);
+            while (fetcher.fetch()) {
+                LogEvent event = decoder.decode(fetcher, context);
+                if (event != null) {
+                    events.add(describe(event));
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        return events;
+    }
+
+    private static String describe(LogEvent event) {
+        return event.getHeader().getLogFileName() + ":" + event.getLogPos() + ":" + event.getHeader().getType();
+    }
+}
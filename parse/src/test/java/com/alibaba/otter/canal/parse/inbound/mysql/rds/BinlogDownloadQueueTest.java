@@ -0,0 +1,185 @@
+package com.alibaba.otter.canal.parse.inbound.mysql.rds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.mysql.rds.data.BinlogFile;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class BinlogDownloadQueueTest {
+
+    private HttpServer          server;
+    private File                directory;
+    private byte[]              data;
+    private BinlogDownloadQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        data = Files.readAllBytes(new File(new File(url.getFile()).getParent(), "binlog/mysql-bin.000001").toPath());
+        directory = Files.createTempDirectory("rds-binlog").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.release();
+        }
+        server.stop(0);
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testPublishInOrder() throws Exception {
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch tarServed = new CountDownLatch(1);
+        server.createContext("/mysql-bin.000001", new BinlogHandler(data, null, null));
+        server.createContext("/mysql-bin.000002", new BinlogHandler(data, slow, null));
+        server.createContext("/mysql-bin.000003.tar", new BinlogHandler(tar("mysql-bin.000003", data), null, tarServed));
+
+        queue = new BinlogDownloadQueue(binlogs(3), 4, 2, directory.getPath());
+        queue.silenceDownload();
+        queue.tryOne();
+        Assert.assertArrayEquals(data, read("mysql-bin.000001"));
+
+        queue.prepare();
+        Assert.assertTrue(tarServed.await(10, TimeUnit.SECONDS));
+        waitFor(new File(directory, "mysql-bin.000003.tmp"), data.length);
+        // 000002还在下载，000003不能先发布
+        Assert.assertFalse(new File(directory, "mysql-bin.000002").exists());
+        Assert.assertFalse(new File(directory, "mysql-bin.000003").exists());
+
+        slow.countDown();
+        waitFor(new File(directory, "mysql-bin.000003"), data.length);
+        Assert.assertArrayEquals(data, read("mysql-bin.000002"));
+        Assert.assertArrayEquals(data, read("mysql-bin.000003"));
+        Assert.assertTrue(queue.isLastFile("mysql-bin.000003"));
+
+        queue.downOne("mysql-bin.000001");
+        Assert.assertFalse(new File(directory, "mysql-bin.000001").exists());
+    }
+
+    @Test
+    public void testWaitForDiskSpace() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/mysql-bin.000001", new BinlogHandler(data, null, null));
+        server.createContext("/mysql-bin.000002", new BinlogHandler(data, null, null, requests));
+
+        queue = new BinlogDownloadQueue(binlogs(2), 4, 2, directory.getPath());
+        queue.setMinFreeSpace(Long.MAX_VALUE / 2);
+        queue.silenceDownload();
+        queue.tryOne();
+        queue.prepare();
+
+        // 空间不足，等待000001解析完成
+        Thread.sleep(2000);
+        Assert.assertEquals(0, requests.get());
+
+        queue.downOne("mysql-bin.000001");
+        waitFor(new File(directory, "mysql-bin.000002"), data.length);
+        Assert.assertEquals(1, requests.get());
+    }
+
+    private List<BinlogFile> binlogs(int count) {
+        List<BinlogFile> binlogs = new ArrayList<BinlogFile>();
+        for (int i = 1; i <= count; i++) {
+            String name = "mysql-bin.00000" + i + ((i == 3) ? ".tar" : "");
+            BinlogFile binlog = new BinlogFile();
+            binlog.setDownloadLink("http://127.0.0.1:" + server.getAddress().getPort() + "/" + name + "?Expires=0");
+            binlog.setHostInstanceID("1");
+            binlog.setFileSize((long) data.length);
+            binlogs.add(binlog);
+        }
+        return binlogs;
+    }
+
+    private byte[] read(String name) throws IOException {
+        return Files.readAllBytes(new File(directory, name).toPath());
+    }
+
+    private static void waitFor(File file, long length) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!(file.exists() && file.length() == length)) {
+            Assert.assertTrue("wait for " + file.getName() + " timeout", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static byte[] tar(String name, byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveOutputStream taos = new TarArchiveOutputStream(out);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        taos.putArchiveEntry(entry);
+        taos.write(content);
+        taos.closeArchiveEntry();
+        taos.close();
+        return out.toByteArray();
+    }
+
+    private static class BinlogHandler implements HttpHandler {
+
+        private final byte[]         content;
+        private final CountDownLatch before;
+        private final CountDownLatch after;
+        private final AtomicInteger  requests;
+
+        BinlogHandler(byte[] content, CountDownLatch before, CountDownLatch after){
+            this(content, before, after, new AtomicInteger());
+        }
+
+        BinlogHandler(byte[] content, CountDownLatch before, CountDownLatch after, AtomicInteger requests){
+            this.content = content;
+            this.before = before;
+            this.after = after;
+            this.requests = requests;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            try {
+                exchange.sendResponseHeaders(200, content.length);
+                OutputStream os = exchange.getResponseBody();
+                // 先输出一半，模拟慢速下载
+                os.write(content, 0, content.length / 2);
+                os.flush();
+                if (before != null) {
+                    before.await(10, TimeUnit.SECONDS);
+                }
+                os.write(content, content.length / 2, content.length - content.length / 2);
+                os.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+                if (after != null) {
+                    after.countDown();
+                }
+            }
+        }
+    }
+}
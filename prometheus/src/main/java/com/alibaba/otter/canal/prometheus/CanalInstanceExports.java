@@ -3,6 +3,7 @@ package com.alibaba.otter.canal.prometheus;
 import com.alibaba.otter.canal.instance.core.CanalInstance;
 import com.alibaba.otter.canal.prometheus.impl.InstanceMetaCollector;
 import com.alibaba.otter.canal.prometheus.impl.MemoryStoreCollector;
+import com.alibaba.otter.canal.prometheus.impl.ParserCollector;
 import com.alibaba.otter.canal.prometheus.impl.PrometheusCanalEventDownStreamHandler;
 import com.alibaba.otter.canal.sink.CanalEventSink;
 import com.alibaba.otter.canal.sink.entry.EntryEventSink;
@@ -34,11 +35,14 @@ public class CanalInstanceExports {
 
     private Collector                metaCollector;
 
+    private Collector                parserCollector;
+
     private CanalInstanceExports(CanalInstance instance) {
         this.destination = instance.getDestination();
         initDelayGauge(instance);
         initStoreCollector(instance);
         initMetaCollector(instance);
+        initParserCollector(instance);
     }
 
 
@@ -57,6 +61,9 @@ public class CanalInstanceExports {
         if (metaCollector != null) {
             metaCollector.register();
         }
+        if (parserCollector != null) {
+            parserCollector.register();
+        }
     }
 
     void unregister() {
@@ -69,6 +76,9 @@ public class CanalInstanceExports {
         if (metaCollector != null) {
             CollectorRegistry.defaultRegistry.unregister(metaCollector);
         }
+        if (parserCollector != null) {
+            CollectorRegistry.defaultRegistry.unregister(parserCollector);
+        }
     }
 
     private void initDelayGauge(CanalInstance instance) {
@@ -95,4 +105,12 @@ public class CanalInstanceExports {
     private void initMetaCollector(CanalInstance instance) {
         metaCollector = new InstanceMetaCollector(instance);
     }
+
+    private void initParserCollector(CanalInstance instance) {
+        try {
+            parserCollector = new ParserCollector(instance.getEventParser(), destination);
+        } catch (IllegalArgumentException iae) {
+            logger.warn("Failed to register parser metrics for destination {}.", destination, iae);
+        }
+    }
 }
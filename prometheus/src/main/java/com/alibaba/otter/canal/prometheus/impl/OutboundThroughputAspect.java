@@ -1,11 +1,13 @@
 package com.alibaba.otter.canal.prometheus.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.prometheus.client.Collector;
 import io.prometheus.client.CounterMetricFamily;
 import org.aspectj.lang.annotation.After;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
-import org.jboss.netty.channel.Channel;
 import org.jctools.maps.ConcurrentAutoTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +57,18 @@ public class OutboundThroughputAspect {
             total.add(HEADER_LENGTH + buf.limit());
         }
     }
+
+    @Pointcut("call(* com.alibaba.otter.canal.server.netty.NettyUtils.writePooled(..))")
+    public void writePooled() {}
+
+    // 写出完成后buffer会被netty释放，需要在写出之前统计，header已经包含在buffer中
+    @Before("writePooled() && args(ch, buf, ..)")
+    public void recordWritePooled(Channel ch, ByteBuf buf) {
+        if (buf != null) {
+            accumulateBytes(buf.readableBytes());
+        }
+    }
+
     private void accumulateBytes(int count) {
         try {
             total.add(count);
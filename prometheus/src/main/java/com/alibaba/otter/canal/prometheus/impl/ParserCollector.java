@@ -0,0 +1,62 @@
+package com.alibaba.otter.canal.prometheus.impl;
+
+import com.alibaba.otter.canal.parse.CanalEventParser;
+import com.alibaba.otter.canal.parse.inbound.group.GroupEventParser;
+import com.alibaba.otter.canal.parse.inbound.mysql.AbstractMysqlEventParser;
+import com.alibaba.otter.canal.prometheus.CanalInstanceExports;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * binlog解析相关的指标，group模式下为所有mysql parser的累加值
+ *
+ * @version 1.0.26
+ */
+public class ParserCollector extends Collector {
+
+    private final List<AbstractMysqlEventParser> parsers = new ArrayList<AbstractMysqlEventParser>();
+
+    private final String                         destination;
+
+    private final String                         checksumHelp;
+
+    public ParserCollector(CanalEventParser parser, String destination) {
+        this.destination = destination;
+        if (parser instanceof GroupEventParser) {
+            for (CanalEventParser eventParser : ((GroupEventParser) parser).getEventParsers()) {
+                addParser(eventParser);
+            }
+        } else {
+            addParser(parser);
+        }
+        if (parsers.isEmpty()) {
+            throw new IllegalArgumentException("EventParser must be AbstractMysqlEventParser");
+        }
+        this.checksumHelp = "Binlog events failed checksum verification of canal instance " + destination;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        long checksumErrors = 0;
+        for (AbstractMysqlEventParser parser : parsers) {
+            checksumErrors += parser.getChecksumErrorCount();
+        }
+        List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+        CounterMetricFamily checksum = new CounterMetricFamily("canal_instance_parser_checksum_errors",
+                checksumHelp, CanalInstanceExports.labelList);
+        checksum.addMetric(Collections.singletonList(destination), checksumErrors);
+        mfs.add(checksum);
+        return mfs;
+    }
+
+    private void addParser(CanalEventParser parser) {
+        if (parser instanceof AbstractMysqlEventParser) {
+            parsers.add((AbstractMysqlEventParser) parser);
+        }
+    }
+
+}
@@ -30,7 +30,15 @@ public final class CanalPacket {
         /**
          * <code>LZF = 4;</code>
          */
-        LZF(3, 4), ;
+        LZF(3, 4),
+        /**
+         * <code>LZ4 = 5;</code>
+         */
+        LZ4(4, 5),
+        /**
+         * <code>ZSTD = 6;</code>
+         */
+        ZSTD(5, 6), ;
 
         /**
          * <code>NONE = 1;</code>
@@ -48,6 +56,14 @@ public final class CanalPacket {
          * <code>LZF = 4;</code>
          */
         public static final int LZF_VALUE  = 4;
+        /**
+         * <code>LZ4 = 5;</code>
+         */
+        public static final int LZ4_VALUE  = 5;
+        /**
+         * <code>ZSTD = 6;</code>
+         */
+        public static final int ZSTD_VALUE = 6;
 
         public final int getNumber() {
             return value;
@@ -63,6 +79,10 @@ public final class CanalPacket {
                     return GZIP;
                 case 4:
                     return LZF;
+                case 5:
+                    return LZ4;
+                case 6:
+                    return ZSTD;
                 default:
                     return null;
             }
@@ -170,7 +190,15 @@ public final class CanalPacket {
         /**
          * <code>CLIENTROLLBACK = 12;</code>
          */
-        CLIENTROLLBACK(11, 12), ;
+        CLIENTROLLBACK(11, 12),
+        /**
+         * <code>STREAM = 13;</code>
+         *
+         * <pre>
+         * 流式订阅，server持续推送数据
+         * </pre>
+         */
+        STREAM(12, 13), ;
 
         /**
          * <code>HANDSHAKE = 1;</code>
@@ -228,6 +256,14 @@ public final class CanalPacket {
          * <code>CLIENTROLLBACK = 12;</code>
          */
         public static final int CLIENTROLLBACK_VALUE       = 12;
+        /**
+         * <code>STREAM = 13;</code>
+         *
+         * <pre>
+         * 流式订阅，server持续推送数据
+         * </pre>
+         */
+        public static final int STREAM_VALUE               = 13;
 
         public final int getNumber() {
             return value;
@@ -259,6 +295,8 @@ public final class CanalPacket {
                     return HEARTBEAT;
                 case 12:
                     return CLIENTROLLBACK;
+                case 13:
+                    return STREAM;
                 default:
                     return null;
             }
@@ -2457,6 +2495,24 @@ public final class CanalPacket {
          * <code>optional int64 start_timestamp = 8;</code>
          */
         long getStartTimestamp();
+
+        /**
+         * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+         *
+         * <pre>
+         * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+         * </pre>
+         */
+        boolean hasCompression();
+
+        /**
+         * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+         *
+         * <pre>
+         * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+         * </pre>
+         */
+        com.alibaba.otter.canal.protocol.CanalPacket.Compression getCompression();
     }
 
     /**
@@ -2561,6 +2617,17 @@ public final class CanalPacket {
                             startTimestamp_ = input.readInt64();
                             break;
                         }
+                        case 72: {
+                            int rawValue = input.readEnum();
+                            com.alibaba.otter.canal.protocol.CanalPacket.Compression value = com.alibaba.otter.canal.protocol.CanalPacket.Compression.valueOf(rawValue);
+                            if (value == null) {
+                                unknownFields.mergeVarintField(9, rawValue);
+                            } else {
+                                bitField0_ |= 0x00000100;
+                                compression_ = value;
+                            }
+                            break;
+                        }
                     }
                 }
             } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2854,6 +2921,31 @@ public final class CanalPacket {
             return startTimestamp_;
         }
 
+        public static final int                                          COMPRESSION_FIELD_NUMBER = 9;
+        private com.alibaba.otter.canal.protocol.CanalPacket.Compression compression_;
+
+        /**
+         * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+         *
+         * <pre>
+         * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+         * </pre>
+         */
+        public boolean hasCompression() {
+            return ((bitField0_ & 0x00000100) == 0x00000100);
+        }
+
+        /**
+         * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+         *
+         * <pre>
+         * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+         * </pre>
+         */
+        public com.alibaba.otter.canal.protocol.CanalPacket.Compression getCompression() {
+            return compression_;
+        }
+
         private void initFields() {
             username_ = "";
             password_ = com.google.protobuf.ByteString.EMPTY;
@@ -2863,6 +2955,7 @@ public final class CanalPacket {
             clientId_ = "";
             filter_ = "";
             startTimestamp_ = 0L;
+            compression_ = com.alibaba.otter.canal.protocol.CanalPacket.Compression.NONE;
         }
 
         private byte memoizedIsInitialized = -1;
@@ -2902,6 +2995,9 @@ public final class CanalPacket {
             if (((bitField0_ & 0x00000080) == 0x00000080)) {
                 output.writeInt64(8, startTimestamp_);
             }
+            if (((bitField0_ & 0x00000100) == 0x00000100)) {
+                output.writeEnum(9, compression_.getNumber());
+            }
             getUnknownFields().writeTo(output);
         }
 
@@ -2936,6 +3032,9 @@ public final class CanalPacket {
             if (((bitField0_ & 0x00000080) == 0x00000080)) {
                 size += com.google.protobuf.CodedOutputStream.computeInt64Size(8, startTimestamp_);
             }
+            if (((bitField0_ & 0x00000100) == 0x00000100)) {
+                size += com.google.protobuf.CodedOutputStream.computeEnumSize(9, compression_.getNumber());
+            }
             size += getUnknownFields().getSerializedSize();
             memoizedSerializedSize = size;
             return size;
@@ -3083,6 +3182,8 @@ public final class CanalPacket {
                 bitField0_ = (bitField0_ & ~0x00000040);
                 startTimestamp_ = 0L;
                 bitField0_ = (bitField0_ & ~0x00000080);
+                compression_ = com.alibaba.otter.canal.protocol.CanalPacket.Compression.NONE;
+                bitField0_ = (bitField0_ & ~0x00000100);
                 return this;
             }
 
@@ -3142,6 +3243,10 @@ public final class CanalPacket {
                     to_bitField0_ |= 0x00000080;
                 }
                 result.startTimestamp_ = startTimestamp_;
+                if (((from_bitField0_ & 0x00000100) == 0x00000100)) {
+                    to_bitField0_ |= 0x00000100;
+                }
+                result.compression_ = compression_;
                 result.bitField0_ = to_bitField0_;
                 onBuilt();
                 return result;
@@ -3190,6 +3295,9 @@ public final class CanalPacket {
                 if (other.hasStartTimestamp()) {
                     setStartTimestamp(other.getStartTimestamp());
                 }
+                if (other.hasCompression()) {
+                    setCompression(other.getCompression());
+                }
                 this.mergeUnknownFields(other.getUnknownFields());
                 return this;
             }
@@ -3716,6 +3824,61 @@ public final class CanalPacket {
                 return this;
             }
 
+            private com.alibaba.otter.canal.protocol.CanalPacket.Compression compression_ = com.alibaba.otter.canal.protocol.CanalPacket.Compression.NONE;
+
+            /**
+             * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+             *
+             * <pre>
+             * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+             * </pre>
+             */
+            public boolean hasCompression() {
+                return ((bitField0_ & 0x00000100) == 0x00000100);
+            }
+
+            /**
+             * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+             *
+             * <pre>
+             * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+             * </pre>
+             */
+            public com.alibaba.otter.canal.protocol.CanalPacket.Compression getCompression() {
+                return compression_;
+            }
+
+            /**
+             * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+             *
+             * <pre>
+             * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+             * </pre>
+             */
+            public Builder setCompression(com.alibaba.otter.canal.protocol.CanalPacket.Compression value) {
+                if (value == null) {
+                    throw new NullPointerException();
+                }
+                bitField0_ |= 0x00000100;
+                compression_ = value;
+                onChanged();
+                return this;
+            }
+
+            /**
+             * <code>optional .com.alibaba.otter.canal.protocol.Compression compression = 9 [default = NONE];</code>
+             *
+             * <pre>
+             * client期望的MESSAGES压缩方式，需要在handshake的supported_compressions中
+             * </pre>
+             */
+            public Builder clearCompression() {
+                bitField0_ = (bitField0_ & ~0x00000100);
+                compression_ = com.alibaba.otter.canal.protocol.CanalPacket.Compression.NONE;
+                onChanged();
+                return this;
+            }
+
             // @@protoc_insertion_point(builder_scope:com.alibaba.otter.canal.protocol.ClientAuth)
         }
 
@@ -6777,6 +6940,24 @@ public final class CanalPacket {
          * </pre>
          */
         boolean getAutoAck();
+
+        /**
+         * <code>optional int32 window = 7 [default = 0];</code>
+         *
+         * <pre>
+         * 流式订阅时允许未ack的批次数量
+         * </pre>
+         */
+        boolean hasWindow();
+
+        /**
+         * <code>optional int32 window = 7 [default = 0];</code>
+         *
+         * <pre>
+         * 流式订阅时允许未ack的批次数量
+         * </pre>
+         */
+        int getWindow();
     }
 
     /**
@@ -6869,6 +7050,11 @@ public final class CanalPacket {
                             autoAck_ = input.readBool();
                             break;
                         }
+                        case 56: {
+                            bitField0_ |= 0x00000040;
+                            window_ = input.readInt32();
+                            break;
+                        }
                     }
                 }
             } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -7079,6 +7265,31 @@ public final class CanalPacket {
             return autoAck_;
         }
 
+        public static final int WINDOW_FIELD_NUMBER = 7;
+        private int             window_;
+
+        /**
+         * <code>optional int32 window = 7 [default = 0];</code>
+         *
+         * <pre>
+         * 流式订阅时允许未ack的批次数量
+         * </pre>
+         */
+        public boolean hasWindow() {
+            return ((bitField0_ & 0x00000040) == 0x00000040);
+        }
+
+        /**
+         * <code>optional int32 window = 7 [default = 0];</code>
+         *
+         * <pre>
+         * 流式订阅时允许未ack的批次数量
+         * </pre>
+         */
+        public int getWindow() {
+            return window_;
+        }
+
         private void initFields() {
             destination_ = "";
             clientId_ = "";
@@ -7086,6 +7297,7 @@ public final class CanalPacket {
             timeout_ = -1L;
             unit_ = 2;
             autoAck_ = false;
+            window_ = 0;
         }
 
         private byte memoizedIsInitialized = -1;
@@ -7119,6 +7331,9 @@ public final class CanalPacket {
             if (((bitField0_ & 0x00000020) == 0x00000020)) {
                 output.writeBool(6, autoAck_);
             }
+            if (((bitField0_ & 0x00000040) == 0x00000040)) {
+                output.writeInt32(7, window_);
+            }
             getUnknownFields().writeTo(output);
         }
 
@@ -7147,6 +7362,9 @@ public final class CanalPacket {
             if (((bitField0_ & 0x00000020) == 0x00000020)) {
                 size += com.google.protobuf.CodedOutputStream.computeBoolSize(6, autoAck_);
             }
+            if (((bitField0_ & 0x00000040) == 0x00000040)) {
+                size += com.google.protobuf.CodedOutputStream.computeInt32Size(7, window_);
+            }
             size += getUnknownFields().getSerializedSize();
             memoizedSerializedSize = size;
             return size;
@@ -7290,6 +7508,8 @@ public final class CanalPacket {
                 bitField0_ = (bitField0_ & ~0x00000010);
                 autoAck_ = false;
                 bitField0_ = (bitField0_ & ~0x00000020);
+                window_ = 0;
+                bitField0_ = (bitField0_ & ~0x00000040);
                 return this;
             }
 
@@ -7341,6 +7561,10 @@ public final class CanalPacket {
                     to_bitField0_ |= 0x00000020;
                 }
                 result.autoAck_ = autoAck_;
+                if (((from_bitField0_ & 0x00000040) == 0x00000040)) {
+                    to_bitField0_ |= 0x00000040;
+                }
+                result.window_ = window_;
                 result.bitField0_ = to_bitField0_;
                 onBuilt();
                 return result;
@@ -7379,6 +7603,9 @@ public final class CanalPacket {
                 if (other.hasAutoAck()) {
                     setAutoAck(other.getAutoAck());
                 }
+                if (other.hasWindow()) {
+                    setWindow(other.getWindow());
+                }
                 this.mergeUnknownFields(other.getUnknownFields());
                 return this;
             }
@@ -7750,6 +7977,58 @@ public final class CanalPacket {
                 return this;
             }
 
+            private int window_;
+
+            /**
+             * <code>optional int32 window = 7 [default = 0];</code>
+             *
+             * <pre>
+             * 流式订阅时允许未ack的批次数量
+             * </pre>
+             */
+            public boolean hasWindow() {
+                return ((bitField0_ & 0x00000040) == 0x00000040);
+            }
+
+            /**
+             * <code>optional int32 window = 7 [default = 0];</code>
+             *
+             * <pre>
+             * 流式订阅时允许未ack的批次数量
+             * </pre>
+             */
+            public int getWindow() {
+                return window_;
+            }
+
+            /**
+             * <code>optional int32 window = 7 [default = 0];</code>
+             *
+             * <pre>
+             * 流式订阅时允许未ack的批次数量
+             * </pre>
+             */
+            public Builder setWindow(int value) {
+                bitField0_ |= 0x00000040;
+                window_ = value;
+                onChanged();
+                return this;
+            }
+
+            /**
+             * <code>optional int32 window = 7 [default = 0];</code>
+             *
+             * <pre>
+             * 流式订阅时允许未ack的批次数量
+             * </pre>
+             */
+            public Builder clearWindow() {
+                bitField0_ = (bitField0_ & ~0x00000040);
+                window_ = 0;
+                onChanged();
+                return this;
+            }
+
             // @@protoc_insertion_point(builder_scope:com.alibaba.otter.canal.protocol.Get)
         }
 
@@ -9765,33 +10044,37 @@ public final class CanalPacket {
                     + "(\003\"\217\001\n\tHandshake\022$\n\026communication_encodi"
                     + "ng\030\001 \001(\t:\004utf8\022\r\n\005seeds\030\002 \001(\014\022M\n\026support",
             "ed_compressions\030\003 \003(\0162-.com.alibaba.otte"
-                    + "r.canal.protocol.Compression\"\274\001\n\nClientA"
+                    + "r.canal.protocol.Compression\"\206\002\n\nClientA"
                     + "uth\022\020\n\010username\030\001 \001(\t\022\020\n\010password\030\002 \001(\014\022"
                     + "\033\n\020net_read_timeout\030\003 \001(\005:\0010\022\034\n\021net_writ"
                     + "e_timeout\030\004 \001(\005:\0010\022\023\n\013destination\030\005 \001(\t\022"
                     + "\021\n\tclient_id\030\006 \001(\t\022\016\n\006filter\030\007 \001(\t\022\027\n\017st"
-                    + "art_timestamp\030\010 \001(\003\"3\n\003Ack\022\025\n\nerror_code"
-                    + "\030\001 \001(\005:\0010\022\025\n\rerror_message\030\002 \001(\t\"E\n\tClie"
-                    + "ntAck\022\023\n\013destination\030\001 \001(\t\022\021\n\tclient_id\030"
-                    + "\002 \001(\t\022\020\n\010batch_id\030\003 \001(\003\"=\n\003Sub\022\023\n\013destin",
-            "ation\030\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022\016\n\006filter"
-                    + "\030\007 \001(\t\"?\n\005Unsub\022\023\n\013destination\030\001 \001(\t\022\021\n\t"
-                    + "client_id\030\002 \001(\t\022\016\n\006filter\030\007 \001(\t\"\200\001\n\003Get\022"
-                    + "\023\n\013destination\030\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022"
-                    + "\022\n\nfetch_size\030\003 \001(\005\022\023\n\007timeout\030\004 \001(\003:\002-1"
-                    + "\022\017\n\004unit\030\005 \001(\005:\0012\022\027\n\010auto_ack\030\006 \001(\010:\005fal"
-                    + "se\".\n\010Messages\022\020\n\010batch_id\030\001 \001(\003\022\020\n\010mess"
-                    + "ages\030\002 \003(\014\"?\n\004Dump\022\017\n\007journal\030\001 \001(\t\022\020\n\010p"
-                    + "osition\030\002 \001(\003\022\024\n\ttimestamp\030\003 \001(\003:\0010\"J\n\016C"
-                    + "lientRollback\022\023\n\013destination\030\001 \001(\t\022\021\n\tcl",
-            "ient_id\030\002 \001(\t\022\020\n\010batch_id\030\003 \001(\003*4\n\013Compr"
-                    + "ession\022\010\n\004NONE\020\001\022\010\n\004ZLIB\020\002\022\010\n\004GZIP\020\003\022\007\n\003"
-                    + "LZF\020\004*\305\001\n\nPacketType\022\r\n\tHANDSHAKE\020\001\022\030\n\024C"
-                    + "LIENTAUTHENTICATION\020\002\022\007\n\003ACK\020\003\022\020\n\014SUBSCR"
-                    + "IPTION\020\004\022\022\n\016UNSUBSCRIPTION\020\005\022\007\n\003GET\020\006\022\014\n"
-                    + "\010MESSAGES\020\007\022\r\n\tCLIENTACK\020\010\022\014\n\010SHUTDOWN\020\t"
-                    + "\022\010\n\004DUMP\020\n\022\r\n\tHEARTBEAT\020\013\022\022\n\016CLIENTROLLB"
-                    + "ACK\020\014B1\n com.alibaba.otter.canal.protoco" + "lB\013CanalPacketH\001" };
+                    + "art_timestamp\030\010 \001(\003\022H\n\013compression\030\t \001(\016"
+                    + "2-.com.alibaba.otter.canal.protocol.Comp"
+                    + "ression:\004NONE\"3\n\003Ack\022\025\n\nerror_code\030\001 \001(\005"
+                    + ":\0010\022\025\n\rerror_message\030\002 \001(\t\"E\n\tClientAck\022",
+            "\023\n\013destination\030\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022"
+                    + "\020\n\010batch_id\030\003 \001(\003\"=\n\003Sub\022\023\n\013destination\030"
+                    + "\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022\016\n\006filter\030\007 \001(\t"
+                    + "\"?\n\005Unsub\022\023\n\013destination\030\001 \001(\t\022\021\n\tclient"
+                    + "_id\030\002 \001(\t\022\016\n\006filter\030\007 \001(\t\"\223\001\n\003Get\022\023\n\013des"
+                    + "tination\030\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022\022\n\nfet"
+                    + "ch_size\030\003 \001(\005\022\023\n\007timeout\030\004 \001(\003:\002-1\022\017\n\004un"
+                    + "it\030\005 \001(\005:\0012\022\027\n\010auto_ack\030\006 \001(\010:\005false\022\021\n\006"
+                    + "window\030\007 \001(\005:\0010\".\n\010Messages\022\020\n\010batch_id\030"
+                    + "\001 \001(\003\022\020\n\010messages\030\002 \003(\014\"?\n\004Dump\022\017\n\007journ",
+            "al\030\001 \001(\t\022\020\n\010position\030\002 \001(\003\022\024\n\ttimestamp\030"
+                    + "\003 \001(\003:\0010\"J\n\016ClientRollback\022\023\n\013destinatio"
+                    + "n\030\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022\020\n\010batch_id\030\003"
+                    + " \001(\003*G\n\013Compression\022\010\n\004NONE\020\001\022\010\n\004ZLIB\020\002\022"
+                    + "\010\n\004GZIP\020\003\022\007\n\003LZF\020\004\022\007\n\003LZ4\020\005\022\010\n\004ZSTD\020\006*\321\001"
+                    + "\n\nPacketType\022\r\n\tHANDSHAKE\020\001\022\030\n\024CLIENTAUT"
+                    + "HENTICATION\020\002\022\007\n\003ACK\020\003\022\020\n\014SUBSCRIPTION\020\004"
+                    + "\022\022\n\016UNSUBSCRIPTION\020\005\022\007\n\003GET\020\006\022\014\n\010MESSAGE"
+                    + "S\020\007\022\r\n\tCLIENTACK\020\010\022\014\n\010SHUTDOWN\020\t\022\010\n\004DUMP"
+                    + "\020\n\022\r\n\tHEARTBEAT\020\013\022\022\n\016CLIENTROLLBACK\020\014\022\n\n",
+            "\006STREAM\020\rB1\n com.alibaba.otter.canal.pro"
+                    + "tocolB\013CanalPacketH\001" };
         com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner = new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
 
             public com.google.protobuf.ExtensionRegistry assignDescriptors(com.google.protobuf.Descriptors.FileDescriptor root) {
@@ -9817,7 +10100,7 @@ public final class CanalPacket {
             .get(3);
         internal_static_com_alibaba_otter_canal_protocol_ClientAuth_fieldAccessorTable = new com.google.protobuf.GeneratedMessage.FieldAccessorTable(internal_static_com_alibaba_otter_canal_protocol_ClientAuth_descriptor,
             new java.lang.String[] { "Username", "Password", "NetReadTimeout", "NetWriteTimeout", "Destination",
-            "ClientId", "Filter", "StartTimestamp", });
+            "ClientId", "Filter", "StartTimestamp", "Compression", });
         internal_static_com_alibaba_otter_canal_protocol_Ack_descriptor = getDescriptor().getMessageTypes().get(4);
         internal_static_com_alibaba_otter_canal_protocol_Ack_fieldAccessorTable = new com.google.protobuf.GeneratedMessage.FieldAccessorTable(internal_static_com_alibaba_otter_canal_protocol_Ack_descriptor,
             new java.lang.String[] { "ErrorCode", "ErrorMessage", });
@@ -9833,7 +10116,7 @@ public final class CanalPacket {
             new java.lang.String[] { "Destination", "ClientId", "Filter", });
         internal_static_com_alibaba_otter_canal_protocol_Get_descriptor = getDescriptor().getMessageTypes().get(8);
         internal_static_com_alibaba_otter_canal_protocol_Get_fieldAccessorTable = new com.google.protobuf.GeneratedMessage.FieldAccessorTable(internal_static_com_alibaba_otter_canal_protocol_Get_descriptor,
-            new java.lang.String[] { "Destination", "ClientId", "FetchSize", "Timeout", "Unit", "AutoAck", });
+            new java.lang.String[] { "Destination", "ClientId", "FetchSize", "Timeout", "Unit", "AutoAck", "Window", });
         internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor = getDescriptor().getMessageTypes().get(9);
         internal_static_com_alibaba_otter_canal_protocol_Messages_fieldAccessorTable = new com.google.protobuf.GeneratedMessage.FieldAccessorTable(internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor,
             new java.lang.String[] { "BatchId", "Messages", });
@@ -0,0 +1,164 @@
+package com.alibaba.otter.canal.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+import com.google.protobuf.ByteString;
+
+/**
+ * MESSAGES包体的压缩/解压，server和client共用
+ *
+ * <pre>
+ * 压缩后的格式：4字节原始长度(big endian) + 压缩数据
+ * 1. LZ4使用block格式，压缩器线程安全，解压使用safe模式校验长度
+ * 2. ZSTD通过{@linkplain ZstdCodec}反射加载，zstd-jni为可选依赖(需要java 8)，codec上下文按线程复用
+ * 3. 依赖缺失或者native库加载失败时对应的压缩方式视为不支持，handshake中不会对外声明
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class CompressionUtils {
+
+    private static final Logger            logger                = LoggerFactory.getLogger(CompressionUtils.class);
+    private static final int               HEADER_SIZE           = 4;
+    private static final String            ZSTD_CODEC_CLASS      = "com.alibaba.otter.canal.protocol.ZstdCodec";
+    private static final List<Compression> supportedCompressions = new ArrayList<Compression>();
+    private static LZ4Compressor           lz4Compressor;
+    private static LZ4SafeDecompressor     lz4Decompressor;
+    private static ZstdCodec               zstdCodec;
+
+    static {
+        supportedCompressions.add(Compression.NONE);
+        try {
+            LZ4Factory factory = LZ4Factory.fastestInstance();
+            lz4Compressor = factory.fastCompressor();
+            lz4Decompressor = factory.safeDecompressor();
+            supportedCompressions.add(Compression.LZ4);
+        } catch (Throwable e) {
+            logger.warn("lz4 is not available, ignore it", e);
+        }
+        try {
+            zstdCodec = (ZstdCodec) Class.forName(ZSTD_CODEC_CLASS).newInstance();
+            supportedCompressions.add(Compression.ZSTD);
+        } catch (Throwable e) {
+            logger.warn("zstd is not available, ignore it : {}", e.toString());
+        }
+    }
+
+    /**
+     * 当前环境可用的压缩方式，NONE总是可用
+     */
+    public static List<Compression> supportedCompressions() {
+        return Collections.unmodifiableList(supportedCompressions);
+    }
+
+    public static boolean isSupported(Compression compression) {
+        return supportedCompressions.contains(compression);
+    }
+
+    public static byte[] compress(Compression compression, byte[] src) {
+        return compress(compression, src, 0, src.length);
+    }
+
+    public static byte[] compress(Compression compression, byte[] src, int offset, int length) {
+        byte[] dst = new byte[maxCompressedLength(compression, length)];
+        int size = compress(compression, src, offset, length, dst, 0);
+        if (size == dst.length) {
+            return dst;
+        }
+        byte[] result = new byte[size];
+        System.arraycopy(dst, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * 压缩length字节的数据之后最大的大小，包含原始长度
+     */
+    public static int maxCompressedLength(Compression compression, int length) {
+        checkSupported(compression);
+        switch (compression) {
+            case LZ4:
+                return HEADER_SIZE + lz4Compressor.maxCompressedLength(length);
+            case ZSTD:
+                return HEADER_SIZE + zstdCodec.compressBound(length);
+            default:
+                return length;
+        }
+    }
+
+    /**
+     * 压缩到调用方提供的dst中(例如pooled buffer的数组)，dst从dstOffset开始至少有{@linkplain #maxCompressedLength}的空间，返回写入的大小
+     */
+    public static int compress(Compression compression, byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        checkSupported(compression);
+        int maxLength = maxCompressedLength(compression, length);
+        int size;
+        switch (compression) {
+            case LZ4:
+                size = lz4Compressor.compress(src, offset, length, dst, dstOffset + HEADER_SIZE, maxLength - HEADER_SIZE);
+                break;
+            case ZSTD:
+                size = zstdCodec.compress(dst, dstOffset + HEADER_SIZE, maxLength - HEADER_SIZE, src, offset, length);
+                break;
+            default:
+                System.arraycopy(src, offset, dst, dstOffset, length);
+                return length;
+        }
+
+        dst[dstOffset] = (byte) (length >>> 24);
+        dst[dstOffset + 1] = (byte) (length >>> 16);
+        dst[dstOffset + 2] = (byte) (length >>> 8);
+        dst[dstOffset + 3] = (byte) length;
+        return size + HEADER_SIZE;
+    }
+
+    public static byte[] decompress(Compression compression, ByteString data) {
+        if (compression == Compression.NONE) {
+            return data.toByteArray();
+        }
+
+        checkSupported(compression);
+        byte[] src = data.toByteArray();
+        if (src.length < HEADER_SIZE) {
+            throw new CanalClientException("compressed body is too short : " + src.length);
+        }
+        int length = ((src[0] & 0xff) << 24) | ((src[1] & 0xff) << 16) | ((src[2] & 0xff) << 8) | (src[3] & 0xff);
+        if (length < 0) {
+            throw new CanalClientException("illegal decompressed length : " + length);
+        }
+
+        byte[] dst = new byte[length];
+        int size;
+        switch (compression) {
+            case LZ4:
+                size = lz4Decompressor.decompress(src, HEADER_SIZE, src.length - HEADER_SIZE, dst, 0, length);
+                break;
+            case ZSTD:
+                size = zstdCodec.decompress(dst, 0, length, src, HEADER_SIZE, src.length - HEADER_SIZE);
+                break;
+            default:
+                throw new CanalClientException("compression is not supported : " + compression);
+        }
+
+        if (size != length) {
+            throw new CanalClientException("decompressed length mismatch, expect " + length + " but " + size);
+        }
+        return dst;
+    }
+
+    private static void checkSupported(Compression compression) {
+        if (!isSupported(compression)) {
+            throw new CanalClientException("compression is not supported : " + compression);
+        }
+    }
+}
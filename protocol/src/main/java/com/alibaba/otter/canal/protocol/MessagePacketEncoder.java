@@ -0,0 +1,125 @@
+package com.alibaba.otter.canal.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * 直接拼装MESSAGES类型的Packet，entry已经是序列化好的ByteString，不需要再构造Messages对象
+ *
+ * <pre>
+ * Packet  : type(3) + compression(4，非NONE时) + body(5)
+ * Messages: batch_id(1) + messages(2) * n
+ *
+ * 编码结果和protobuf生成的代码一致，写入调用方提供的ByteBuffer(可以是direct buffer)，entry数据只拷贝一次。
+ * 也可以只写出entry之外的部分({@linkplain #writeBatchId}/{@linkplain #writeEntryHeader})，由调用方将entry数据直接拼接在后面
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class MessagePacketEncoder {
+
+    private static final int TYPE_TAG        = (3 << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int COMPRESSION_TAG = (4 << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int BODY_TAG        = (5 << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int BATCH_ID_TAG    = (1 << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int MESSAGES_TAG    = (2 << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    /**
+     * Messages序列化后的大小
+     */
+    public static int messagesSize(long batchId, List<ByteString> entries) {
+        int size = CodedOutputStream.computeInt64Size(1, batchId);
+        for (int i = 0; i < entries.size(); i++) {
+            size += CodedOutputStream.computeBytesSize(2, entries.get(i));
+        }
+        return size;
+    }
+
+    /**
+     * 包体为bodySize的Packet的大小
+     */
+    public static int packetSize(Compression compression, int bodySize) {
+        int size = CodedOutputStream.computeEnumSize(3, PacketType.MESSAGES.getNumber());
+        if (compression != Compression.NONE) {
+            size += CodedOutputStream.computeEnumSize(4, compression.getNumber());
+        }
+        size += CodedOutputStream.computeTagSize(5) + CodedOutputStream.computeRawVarint32Size(bodySize) + bodySize;
+        return size;
+    }
+
+    /**
+     * 写出Packet中包体之前的部分，之后紧接着写bodySize大小的包体
+     */
+    public static void writePacketHeader(ByteBuffer out, Compression compression, int bodySize) {
+        writeRawVarint32(out, TYPE_TAG);
+        writeRawVarint32(out, PacketType.MESSAGES.getNumber());
+        if (compression != Compression.NONE) {
+            writeRawVarint32(out, COMPRESSION_TAG);
+            writeRawVarint32(out, compression.getNumber());
+        }
+        writeRawVarint32(out, BODY_TAG);
+        writeRawVarint32(out, bodySize);
+    }
+
+    /**
+     * 写出Messages
+     */
+    public static void writeMessages(ByteBuffer out, long batchId, List<ByteString> entries) {
+        writeBatchId(out, batchId);
+        for (int i = 0; i < entries.size(); i++) {
+            ByteString entry = entries.get(i);
+            writeEntryHeader(out, entry.size());
+            entry.copyTo(out);
+        }
+    }
+
+    /**
+     * 写出Messages中所有entry之前的batch_id
+     */
+    public static void writeBatchId(ByteBuffer out, long batchId) {
+        writeRawVarint32(out, BATCH_ID_TAG);
+        writeRawVarint64(out, batchId);
+    }
+
+    /**
+     * 写出一个entry的tag和长度，之后紧接着是entrySize大小的entry数据
+     */
+    public static void writeEntryHeader(ByteBuffer out, int entrySize) {
+        writeRawVarint32(out, MESSAGES_TAG);
+        writeRawVarint32(out, entrySize);
+    }
+
+    /**
+     * 编码为不压缩的完整Packet
+     */
+    public static byte[] encode(long batchId, List<ByteString> entries) {
+        int messagesSize = messagesSize(batchId, entries);
+        byte[] packet = new byte[packetSize(Compression.NONE, messagesSize)];
+        ByteBuffer out = ByteBuffer.wrap(packet);
+        writePacketHeader(out, Compression.NONE, messagesSize);
+        writeMessages(out, batchId, entries);
+        return packet;
+    }
+
+    private static void writeRawVarint32(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void writeRawVarint64(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (((int) value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
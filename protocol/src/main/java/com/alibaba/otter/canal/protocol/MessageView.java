@@ -0,0 +1,238 @@
+package com.alibaba.otter.canal.protocol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+
+/**
+ * {@linkplain Message}的只读视图，按需解析entry并缓存结果，配合lazyParseEntry使用
+ *
+ * <pre>
+ * 1. getHeader只解析Entry中的header，跳过storeValue，适合按库表/事件类型路由后直接转发的场景
+ * 2. getRowChange直接从原始数据中解析storeValue，不需要先构造Entry再拷贝一次storeValue
+ * 3. decode可以在ForkJoinPool中并行解析所有entry及其RowChange，之后的访问直接读缓存
+ * 4. 解析结果是不可变的，多线程访问时最多重复解析，不需要加锁
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class MessageView {
+
+    private static final int                      DECODE_THRESHOLD = 16;                                     // 并行解析时每个任务至少处理的entry数量
+    private static final int                      HEADER_TAG       = (1 << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int                      ENTRY_TYPE_TAG   = (2 << 3) | WireFormat.WIRETYPE_VARINT;
+    private static final int                      STORE_VALUE_TAG  = (3 << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private final Message                         message;
+    private final List<ByteString>                rawEntries;                                                // raw模式下的原始数据，否则为null
+    private final AtomicReferenceArray<Entry>     entries;
+    private final AtomicReferenceArray<Header>    headers;
+    private final AtomicReferenceArray<RowChange> rowChanges;
+
+    public MessageView(Message message){
+        this.message = message;
+        List<Entry> parsed = null;
+        if (message.getRawEntries() != null && !message.getRawEntries().isEmpty()) {
+            this.rawEntries = message.getRawEntries();
+        } else { // client非lazyParseEntry模式下raw标记仍为true，以实际的数据为准
+            this.rawEntries = null;
+            parsed = message.getEntries() == null ? new ArrayList<Entry>() : message.getEntries();
+        }
+
+        int size = (parsed != null) ? parsed.size() : rawEntries.size();
+        this.entries = new AtomicReferenceArray<Entry>(size);
+        this.headers = new AtomicReferenceArray<Header>(size);
+        this.rowChanges = new AtomicReferenceArray<RowChange>(size);
+        if (parsed != null) {
+            for (int i = 0; i < size; i++) {
+                entries.set(i, parsed.get(i));
+            }
+        }
+    }
+
+    public long getId() {
+        return message.getId();
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public int size() {
+        return entries.length();
+    }
+
+    /**
+     * 完整的Entry，第一次访问时解析
+     */
+    public Entry getEntry(int index) {
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            try {
+                entry = Entry.parseFrom(rawEntries.get(index));
+            } catch (IOException e) {
+                throw new CanalClientException("failed to parse entry at index : " + index, e);
+            }
+            entries.set(index, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * 只解析header，不解析storeValue
+     */
+    public Header getHeader(int index) {
+        Entry entry = entries.get(index);
+        if (entry != null) {
+            return entry.getHeader();
+        }
+
+        Header header = headers.get(index);
+        if (header == null) {
+            try {
+                CodedInputStream input = rawEntries.get(index).newCodedInput();
+                Header.Builder builder = Header.newBuilder();
+                for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                    if (tag == HEADER_TAG) {
+                        // 和Entry.parseFrom一致，重复出现的header合并
+                        input.readMessage(builder, ExtensionRegistryLite.getEmptyRegistry());
+                    } else if (!input.skipField(tag)) {
+                        break;
+                    }
+                }
+                header = builder.build();
+            } catch (IOException e) {
+                throw new CanalClientException("failed to parse header at index : " + index, e);
+            }
+            headers.set(index, header);
+        }
+        return header;
+    }
+
+    public EntryType getEntryType(int index) {
+        Entry entry = entries.get(index);
+        if (entry != null) {
+            return entry.getEntryType();
+        }
+
+        EntryType entryType = EntryType.ROWDATA; // 和Entry中的默认值保持一致
+        try {
+            CodedInputStream input = rawEntries.get(index).newCodedInput();
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                if (tag == ENTRY_TYPE_TAG) {
+                    // 和Entry.parseFrom一致，以最后一次出现的已知值为准
+                    EntryType value = EntryType.valueOf(input.readEnum());
+                    if (value != null) {
+                        entryType = value;
+                    }
+                } else if (!input.skipField(tag)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new CanalClientException("failed to parse entryType at index : " + index, e);
+        }
+        return entryType;
+    }
+
+    /**
+     * storeValue对应的RowChange，第一次访问时解析
+     */
+    public RowChange getRowChange(int index) {
+        RowChange rowChange = rowChanges.get(index);
+        if (rowChange == null) {
+            try {
+                Entry entry = entries.get(index);
+                if (entry != null) {
+                    rowChange = RowChange.parseFrom(entry.getStoreValue());
+                } else {
+                    rowChange = parseRowChange(rawEntries.get(index));
+                }
+            } catch (IOException e) {
+                throw new CanalClientException("failed to parse rowChange at index : " + index, e);
+            }
+            rowChanges.set(index, rowChange);
+        }
+        return rowChange;
+    }
+
+    /**
+     * 所有的Entry，按原始顺序返回
+     */
+    public List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<Entry>(size());
+        for (int i = 0; i < size(); i++) {
+            result.add(getEntry(i));
+        }
+        return result;
+    }
+
+    /**
+     * 在pool中并行解析所有的Entry，ROWDATA类型的entry同时解析RowChange
+     */
+    public MessageView decode(ForkJoinPool pool) {
+        if (size() > 0) {
+            pool.invoke(new DecodeTask(0, size()));
+        }
+        return this;
+    }
+
+    private void decode(int index) {
+        Entry entry = getEntry(index);
+        if (entry.getEntryType() == EntryType.ROWDATA) {
+            getRowChange(index); // 解析Entry时已经拷贝了storeValue，直接从中解析，不再扫描一遍原始数据
+        }
+    }
+
+    private static RowChange parseRowChange(ByteString rawEntry) throws IOException {
+        CodedInputStream input = rawEntry.newCodedInput();
+        RowChange rowChange = RowChange.getDefaultInstance();
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            if (tag == STORE_VALUE_TAG) {
+                // bytes字段以最后一次出现的为准
+                int limit = input.pushLimit(input.readRawVarint32());
+                rowChange = RowChange.parseFrom(input);
+                input.popLimit(limit);
+            } else if (!input.skipField(tag)) {
+                break;
+            }
+        }
+        return rowChange;
+    }
+
+    private class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -2510434432315498218L;
+        private final int         from;
+        private final int         to;
+
+        public DecodeTask(int from, int to){
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= DECODE_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    decode(i);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecodeTask(from, middle), new DecodeTask(middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.alibaba.otter.canal.protocol;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+
+/**
+ * zstd-jni的适配，只由{@linkplain CompressionUtils}反射加载。zstd-jni是可选依赖且需要java 8，缺失或者版本不支持时加载失败，ZSTD视为不支持
+ *
+ * @version 1.0.26
+ */
+class ZstdCodec {
+
+    private static final int                            ZSTD_LEVEL        = 3;
+    // codec上下文按线程复用，避免每个批次重新分配native内存
+    private static final ThreadLocal<ZstdCompressCtx>   zstdCompressCtx   = new ThreadLocal<ZstdCompressCtx>() {
+
+                                                                              protected ZstdCompressCtx initialValue() {
+                                                                                  return new ZstdCompressCtx().setLevel(ZSTD_LEVEL);
+                                                                              }
+                                                                          };
+    private static final ThreadLocal<ZstdDecompressCtx> zstdDecompressCtx = new ThreadLocal<ZstdDecompressCtx>() {
+
+                                                                              protected ZstdDecompressCtx initialValue() {
+                                                                                  return new ZstdDecompressCtx();
+                                                                              }
+                                                                          };
+
+    public ZstdCodec(){
+        // 提前加载native库，不可用时直接失败
+        Zstd.compressBound(0);
+    }
+
+    public int compressBound(int length) {
+        return (int) Zstd.compressBound(length);
+    }
+
+    public int compress(byte[] dst, int dstOffset, int dstSize, byte[] src, int srcOffset, int srcSize) {
+        return zstdCompressCtx.get().compressByteArray(dst, dstOffset, dstSize, src, srcOffset, srcSize);
+    }
+
+    public int decompress(byte[] dst, int dstOffset, int dstSize, byte[] src, int srcOffset, int srcSize) {
+        return zstdDecompressCtx.get().decompressByteArray(dst, dstOffset, dstSize, src, srcOffset, srcSize);
+    }
+}
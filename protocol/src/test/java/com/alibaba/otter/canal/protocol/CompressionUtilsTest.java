@@ -0,0 +1,102 @@
+package com.alibaba.otter.canal.protocol;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+import com.google.protobuf.ByteString;
+
+/**
+ * 测试MESSAGES包体各种压缩方式的压缩/解压
+ *
+ * @version 1.0.26
+ */
+public class CompressionUtilsTest {
+
+    @Test
+    public void testSupported() {
+        Assert.assertTrue(CompressionUtils.isSupported(Compression.NONE));
+        Assert.assertTrue(CompressionUtils.isSupported(Compression.LZ4));
+        Assert.assertTrue(CompressionUtils.isSupported(Compression.ZSTD));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] text = buildText(64 * 1024);
+        byte[] random = new byte[64 * 1024];
+        new Random(0).nextBytes(random);
+
+        for (Compression compression : CompressionUtils.supportedCompressions()) {
+            for (byte[] data : Arrays.asList(new byte[0], new byte[] { 1 }, text, random)) {
+                byte[] compressed = CompressionUtils.compress(compression, data);
+                byte[] decompressed = CompressionUtils.decompress(compression, ByteString.copyFrom(compressed));
+                Assert.assertArrayEquals(compression + " length " + data.length, data, decompressed);
+            }
+
+            // 可压缩的数据需要变小
+            if (compression != Compression.NONE) {
+                Assert.assertTrue(CompressionUtils.compress(compression, text).length < text.length / 2);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTripWithOffset() {
+        byte[] text = buildText(8 * 1024);
+        for (Compression compression : CompressionUtils.supportedCompressions()) {
+            byte[] compressed = CompressionUtils.compress(compression, text, 100, 4000);
+            byte[] decompressed = CompressionUtils.decompress(compression, ByteString.copyFrom(compressed));
+            Assert.assertArrayEquals(compression.toString(), Arrays.copyOfRange(text, 100, 4100), decompressed);
+        }
+    }
+
+    @Test
+    public void testCompressIntoBuffer() {
+        byte[] text = buildText(8 * 1024);
+        for (Compression compression : CompressionUtils.supportedCompressions()) {
+            // 压缩到调用方提供的数组中间，前后的数据不受影响
+            byte[] dst = new byte[16 + CompressionUtils.maxCompressedLength(compression, 4000) + 16];
+            Arrays.fill(dst, (byte) 7);
+            int size = CompressionUtils.compress(compression, text, 100, 4000, dst, 16);
+            Assert.assertTrue(size <= dst.length - 32);
+            Assert.assertEquals(7, dst[15]);
+            Assert.assertEquals(7, dst[dst.length - 1]);
+            byte[] decompressed = CompressionUtils.decompress(compression, ByteString.copyFrom(dst, 16, size));
+            Assert.assertArrayEquals(compression.toString(), Arrays.copyOfRange(text, 100, 4100), decompressed);
+        }
+    }
+
+    @Test
+    public void testCorruptedBody() {
+        byte[] text = buildText(8 * 1024);
+        for (Compression compression : Arrays.asList(Compression.LZ4, Compression.ZSTD)) {
+            try {
+                CompressionUtils.decompress(compression, ByteString.copyFrom(new byte[] { 0, 0 }));
+                Assert.fail(compression + " should fail on short body");
+            } catch (CanalClientException e) {
+                // expected
+            }
+
+            byte[] compressed = CompressionUtils.compress(compression, text);
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+            try {
+                CompressionUtils.decompress(compression, ByteString.copyFrom(truncated));
+                Assert.fail(compression + " should fail on truncated body");
+            } catch (RuntimeException e) {
+                // expected
+            }
+        }
+    }
+
+    private byte[] buildText(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("id=").append(i).append(",name=user_").append(i % 100).append(",status=ACTIVE;");
+        }
+        return builder.substring(0, size).getBytes();
+    }
+}
@@ -0,0 +1,159 @@
+package com.alibaba.otter.canal.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.canal.protocol.CanalEntry.TransactionEnd;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * 对比MessageView按tag解析的结果和Entry.parseFrom的结果
+ *
+ * @version 1.0.26
+ */
+public class MessageViewTest {
+
+    @Test
+    public void testRawMessage() throws Exception {
+        List<Entry> entries = buildEntries();
+        List<ByteString> rawEntries = new ArrayList<ByteString>();
+        for (Entry entry : entries) {
+            rawEntries.add(entry.toByteString());
+        }
+        rawEntries.add(buildDuplicatedFields());
+
+        MessageView view = new MessageView(new Message(1L, true, rawEntries));
+        Assert.assertEquals(rawEntries.size(), view.size());
+        for (int i = 0; i < rawEntries.size(); i++) {
+            checkView(view, i, Entry.parseFrom(rawEntries.get(i)));
+        }
+    }
+
+    @Test
+    public void testParsedMessage() throws Exception {
+        List<Entry> entries = buildEntries();
+        MessageView view = new MessageView(new Message(1L, entries));
+        Assert.assertEquals(entries.size(), view.size());
+        for (int i = 0; i < entries.size(); i++) {
+            checkView(view, i, entries.get(i));
+            Assert.assertSame(entries.get(i), view.getEntry(i));
+        }
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        List<ByteString> rawEntries = new ArrayList<ByteString>();
+        for (int i = 0; i < 100; i++) {
+            for (Entry entry : buildEntries()) {
+                rawEntries.add(entry.toByteString());
+            }
+        }
+
+        MessageView view = new MessageView(new Message(1L, true, rawEntries));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            view.decode(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Entry> decoded = view.getEntries();
+        for (int i = 0; i < rawEntries.size(); i++) {
+            Entry expected = Entry.parseFrom(rawEntries.get(i));
+            Assert.assertEquals(expected, decoded.get(i));
+            checkView(view, i, expected);
+        }
+    }
+
+    @Test
+    public void testEmptyMessage() {
+        MessageView view = new MessageView(new Message(-1L));
+        Assert.assertEquals(0, view.size());
+        Assert.assertTrue(view.getEntries().isEmpty());
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            view.decode(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void checkView(MessageView view, int index, Entry expected) throws Exception {
+        Assert.assertEquals(expected.getHeader(), view.getHeader(index));
+        Assert.assertEquals(expected.getEntryType(), view.getEntryType(index));
+        Assert.assertEquals(RowChange.parseFrom(expected.getStoreValue()), view.getRowChange(index));
+        Assert.assertEquals(expected, view.getEntry(index));
+    }
+
+    private List<Entry> buildEntries() {
+        List<Entry> entries = new ArrayList<Entry>();
+        Header header = Header.newBuilder()
+            .setLogfileName("mysql-bin.000001")
+            .setLogfileOffset(1024)
+            .setServerId(1)
+            .setExecuteTime(System.currentTimeMillis())
+            .setSchemaName("test")
+            .setTableName("user")
+            .setEventType(EventType.INSERT)
+            .setEventLength(100)
+            .build();
+
+        RowChange rowChange = RowChange.newBuilder()
+            .setTableId(1)
+            .setEventType(EventType.INSERT)
+            .addRowDatas(RowData.newBuilder()
+                .addAfterColumns(Column.newBuilder().setIndex(0).setName("id").setValue("1").setIsKey(true))
+                .addAfterColumns(Column.newBuilder().setIndex(1).setName("name").setValue("canal")))
+            .build();
+
+        // 没有设置entryType，使用默认值ROWDATA
+        entries.add(Entry.newBuilder().setHeader(header).setStoreValue(rowChange.toByteString()).build());
+        entries.add(Entry.newBuilder()
+            .setHeader(header)
+            .setEntryType(EntryType.ROWDATA)
+            .setStoreValue(rowChange.toByteString())
+            .build());
+        entries.add(Entry.newBuilder()
+            .setHeader(header.toBuilder().setEventType(EventType.QUERY))
+            .setEntryType(EntryType.TRANSACTIONEND)
+            .setStoreValue(TransactionEnd.newBuilder().setTransactionId("1").build().toByteString())
+            .build());
+        // 没有header和storeValue
+        entries.add(Entry.newBuilder().setEntryType(EntryType.HEARTBEAT).build());
+        entries.add(Entry.getDefaultInstance());
+        return entries;
+    }
+
+    /**
+     * 重复出现的字段：header合并，entryType和storeValue以最后一次为准
+     */
+    private ByteString buildDuplicatedFields() throws Exception {
+        RowChange first = RowChange.newBuilder().setTableId(1).setSql("first").build();
+        RowChange last = RowChange.newBuilder().setTableId(2).setSql("last").build();
+        ByteString.Output output = ByteString.newOutput();
+        CodedOutputStream coded = CodedOutputStream.newInstance(output);
+        coded.writeMessage(1, Header.newBuilder().setSchemaName("test").build());
+        coded.writeEnum(2, EntryType.TRANSACTIONBEGIN.getNumber());
+        coded.writeBytes(3, first.toByteString());
+        coded.writeMessage(1, Header.newBuilder().setTableName("user").build());
+        coded.writeEnum(2, EntryType.ROWDATA.getNumber());
+        coded.writeTag(15, WireFormat.WIRETYPE_VARINT); // 未知字段
+        coded.writeUInt64NoTag(1);
+        coded.writeBytes(3, last.toByteString());
+        coded.flush();
+        return output.toByteString();
+    }
+}
@@ -23,6 +23,9 @@ import com.alibaba.otter.canal.server.CanalServer;
 import com.alibaba.otter.canal.server.CanalService;
 import com.alibaba.otter.canal.server.exception.CanalServerException;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalMultiClientEventStore;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalWatchableEventStore;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
 import com.google.common.base.Function;
@@ -40,11 +43,17 @@ import com.google.protobuf.ByteString;
  */
 public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements CanalServer, CanalService {
 
-    private static final Logger        logger           = LoggerFactory.getLogger(CanalServerWithEmbedded.class);
-    private Map<String, CanalInstance> canalInstances;
+    private static final Logger         logger       = LoggerFactory.getLogger(CanalServerWithEmbedded.class);
+    private Map<String, CanalInstance>  canalInstances;
     // private Map<ClientIdentity, Position> lastRollbackPostions;
-    private CanalInstanceGenerator     canalInstanceGenerator;
-    private CanalMetricsService        metrics          = NopCanalMetricsService.NOP;
+    private CanalInstanceGenerator      canalInstanceGenerator;
+    private CanalMetricsService         metrics      = NopCanalMetricsService.NOP;
+    private Map<ClientIdentity, Object> clientMutexs = MigrateMap.makeComputingMap(new Function<ClientIdentity, Object>() {
+
+                                                         public Object apply(ClientIdentity clientIdentity) {
+                                                             return new Object();
+                                                         }
+                                                     });
 
     private static class SingletonHolder {
 
@@ -151,6 +160,16 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         canalInstance.getMetaManager().subscribe(clientIdentity); // 执行一下meta订阅
 
         Position position = canalInstance.getMetaManager().getCursor(clientIdentity);
+        if (canalInstance.getEventStore() instanceof CanalMultiClientEventStore) {
+            // 按照client的消费位点创建store游标，订阅之后该client未消费的数据不会被回收
+            try {
+                ((CanalMultiClientEventStore) canalInstance.getEventStore()).subscribe(clientIdentity, position);
+            } catch (CanalStoreException e) {
+                throw new CanalServerException(String.format("subscribe %s with cursor %s failed",
+                    clientIdentity.toString(),
+                    position), e);
+            }
+        }
         if (position == null) {
             position = canalInstance.getEventStore().getFirstPosition();// 获取一下store中的第一条
             if (position != null) {
@@ -172,6 +191,10 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     public void unsubscribe(ClientIdentity clientIdentity) throws CanalServerException {
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
         canalInstance.getMetaManager().unsubscribe(clientIdentity); // 执行一下meta订阅
+        if (canalInstance.getEventStore() instanceof CanalMultiClientEventStore) {
+            // 释放client在store中的游标
+            ((CanalMultiClientEventStore) canalInstance.getEventStore()).unsubscribe(clientIdentity);
+        }
 
         logger.info("unsubscribe successfully, {}", clientIdentity);
     }
@@ -215,7 +238,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         checkStart(clientIdentity.getDestination());
         checkSubscribe(clientIdentity);
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
-        synchronized (canalInstance) {
+        synchronized (getMutex(canalInstance, clientIdentity)) {
             // 获取到流式数据中的最后一批获取的位置
             PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().getLastestBatch(clientIdentity);
 
@@ -227,7 +250,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
 
             Events<Event> events = null;
             Position start = canalInstance.getMetaManager().getCursor(clientIdentity);
-            events = getEvents(canalInstance.getEventStore(), start, batchSize, timeout, unit);
+            events = getEvents(canalInstance.getEventStore(), clientIdentity, start, batchSize, timeout, unit);
 
             if (CollectionUtils.isEmpty(events.getEvents())) {
                 logger.debug("get successfully, clientId:{} batchSize:{} but result is null",
@@ -292,21 +315,14 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         checkSubscribe(clientIdentity);
 
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
-        synchronized (canalInstance) {
-            // 获取到流式数据中的最后一批获取的位置
-            PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().getLastestBatch(clientIdentity);
-
-            Events<Event> events = null;
-            if (positionRanges != null) { // 存在流数据
-                events = getEvents(canalInstance.getEventStore(), positionRanges.getStart(), batchSize, timeout, unit);
-            } else {// ack后第一次获取
-                Position start = canalInstance.getMetaManager().getCursor(clientIdentity);
-                if (start == null) { // 第一次，还没有过ack记录，则获取当前store中的第一条
-                    start = canalInstance.getEventStore().getFirstPosition();
-                }
-
-                events = getEvents(canalInstance.getEventStore(), start, batchSize, timeout, unit);
-            }
+        synchronized (getMutex(canalInstance, clientIdentity)) {
+            Position start = getStartPosition(canalInstance, clientIdentity);
+            Events<Event> events = getEvents(canalInstance.getEventStore(),
+                clientIdentity,
+                start,
+                batchSize,
+                timeout,
+                unit);
 
             if (CollectionUtils.isEmpty(events.getEvents())) {
                 logger.debug("getWithoutAck successfully, clientId:{} batchSize:{} but result is null",
@@ -336,6 +352,46 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
     }
 
+    /**
+     * 注册数据到达的监听，client可get的数据满足batchSize时回调，之后可以通过{@linkplain #getWithoutAck(ClientIdentity, int)}即时获取.
+     *
+     * <pre>
+     * 用于网络层异步处理带timeout的get请求，不需要占用线程阻塞等待:
+     * 1. 回调在store的put线程中执行，不能阻塞，获取数据需要交给其他线程
+     * 2. 监听只触发一次，超时或者连接断开时需要调用{@linkplain #unwatch(ClientIdentity, Runnable)}移除
+     * </pre>
+     *
+     * @return store不支持监听时返回false，调用方需要退化为阻塞的get
+     */
+    public boolean watch(ClientIdentity clientIdentity, int batchSize, Runnable callback) throws CanalServerException {
+        checkStart(clientIdentity.getDestination());
+        checkSubscribe(clientIdentity);
+
+        CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
+        if (!(canalInstance.getEventStore() instanceof CanalWatchableEventStore)) {
+            return false;
+        }
+
+        CanalWatchableEventStore eventStore = (CanalWatchableEventStore) canalInstance.getEventStore();
+        Position start = null;
+        synchronized (getMutex(canalInstance, clientIdentity)) {
+            start = getStartPosition(canalInstance, clientIdentity);
+        }
+
+        eventStore.watch(clientIdentity, start, batchSize, callback);
+        return true;
+    }
+
+    /**
+     * 移除还未触发的监听
+     */
+    public void unwatch(ClientIdentity clientIdentity, Runnable callback) throws CanalServerException {
+        CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
+        if (canalInstance != null && canalInstance.getEventStore() instanceof CanalWatchableEventStore) {
+            ((CanalWatchableEventStore) canalInstance.getEventStore()).unwatch(callback);
+        }
+    }
+
     /**
      * 查询当前未被ack的batch列表，batchId会按照从小到大进行返回
      */
@@ -400,7 +456,11 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
 
         // 可定时清理数据
-        canalInstance.getEventStore().ack(positionRanges.getEnd());
+        if (canalInstance.getEventStore() instanceof CanalMultiClientEventStore) {
+            ((CanalMultiClientEventStore) canalInstance.getEventStore()).ack(clientIdentity, positionRanges.getEnd());
+        } else {
+            canalInstance.getEventStore().ack(positionRanges.getEnd());
+        }
 
     }
 
@@ -417,11 +477,11 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             return;
         }
 
-        synchronized (canalInstance) {
+        synchronized (getMutex(canalInstance, clientIdentity)) {
             // 清除batch信息
             canalInstance.getMetaManager().clearAllBatchs(clientIdentity);
             // rollback eventStore中的状态信息
-            canalInstance.getEventStore().rollback();
+            rollbackEventStore(canalInstance.getEventStore(), clientIdentity);
             logger.info("rollback successfully, clientId:{}", new Object[] { clientIdentity.getClientId() });
         }
     }
@@ -439,7 +499,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         if (!hasSubscribe) {
             return;
         }
-        synchronized (canalInstance) {
+        synchronized (getMutex(canalInstance, clientIdentity)) {
             // 清除batch信息
             PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().removeBatch(clientIdentity,
                 batchId);
@@ -452,8 +512,8 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             // lastRollbackPostions.put(clientIdentity,
             // positionRanges.getEnd());// 记录一下最后rollback的位置
             // TODO 后续rollback到指定的batchId位置
-            canalInstance.getEventStore().rollback();// rollback
-                                                     // eventStore中的状态信息
+            rollbackEventStore(canalInstance.getEventStore(), clientIdentity);// rollback
+                                                                               // eventStore中的状态信息
             logger.info("rollback successfully, clientId:{} batchId:{} position:{}",
                 clientIdentity.getClientId(),
                 batchId,
@@ -468,10 +528,19 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     // ======================== helper method =======================
 
     /**
-     * 根据不同的参数，选择不同的方式获取数据
+     * 根据不同的参数，选择不同的方式获取数据，store支持多client时使用client独立的游标
      */
-    private Events<Event> getEvents(CanalEventStore eventStore, Position start, int batchSize, Long timeout,
-                                    TimeUnit unit) {
+    private Events<Event> getEvents(CanalEventStore eventStore, ClientIdentity clientIdentity, Position start,
+                                    int batchSize, Long timeout, TimeUnit unit) {
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            return getEvents((CanalMultiClientEventStore) eventStore,
+                clientIdentity,
+                start,
+                batchSize,
+                timeout,
+                unit);
+        }
+
         if (timeout == null) {
             return eventStore.tryGet(start, batchSize);
         } else {
@@ -487,6 +556,68 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
     }
 
+    private Events<Event> getEvents(CanalMultiClientEventStore eventStore, ClientIdentity clientIdentity,
+                                    Position start, int batchSize, Long timeout, TimeUnit unit) {
+        if (timeout == null) {
+            return eventStore.tryGet(clientIdentity, start, batchSize);
+        } else {
+            try {
+                if (timeout <= 0) {
+                    return eventStore.get(clientIdentity, start, batchSize);
+                } else {
+                    return eventStore.get(clientIdentity, start, batchSize, timeout, unit);
+                }
+            } catch (Exception e) {
+                throw new CanalServerException(e);
+            }
+        }
+    }
+
+    /**
+     * 获取本次get的起始位置，需要在client的mutex中调用
+     */
+    private Position getStartPosition(CanalInstance canalInstance, ClientIdentity clientIdentity) {
+        // 获取到流式数据中的最后一批获取的位置
+        PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().getLastestBatch(clientIdentity);
+        if (positionRanges != null) { // 存在流数据
+            return positionRanges.getStart();
+        }
+
+        // ack后第一次获取
+        Position start = canalInstance.getMetaManager().getCursor(clientIdentity);
+        if (start == null) { // 第一次，还没有过ack记录，则获取当前store中的第一条
+            start = getFirstPosition(canalInstance.getEventStore(), clientIdentity);
+        }
+        return start;
+    }
+
+    private Position getFirstPosition(CanalEventStore eventStore, ClientIdentity clientIdentity) {
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            return ((CanalMultiClientEventStore) eventStore).getFirstPosition(clientIdentity);
+        } else {
+            return eventStore.getFirstPosition();
+        }
+    }
+
+    private void rollbackEventStore(CanalEventStore eventStore, ClientIdentity clientIdentity) {
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            ((CanalMultiClientEventStore) eventStore).rollback(clientIdentity);
+        } else {
+            eventStore.rollback();
+        }
+    }
+
+    /**
+     * store支持多client时，每个client的游标相互独立，只需要保证单个client内部meta和数据获取的顺序性
+     */
+    private Object getMutex(CanalInstance canalInstance, ClientIdentity clientIdentity) {
+        if (canalInstance.getEventStore() instanceof CanalMultiClientEventStore) {
+            return clientMutexs.get(clientIdentity);
+        } else {
+            return canalInstance;
+        }
+    }
+
     private void checkSubscribe(ClientIdentity clientIdentity) {
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
         boolean hasSubscribe = canalInstance.getMetaManager().hasSubscribe(clientIdentity);
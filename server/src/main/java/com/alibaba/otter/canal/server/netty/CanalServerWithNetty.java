@@ -1,19 +1,37 @@
 package com.alibaba.otter.canal.server.netty;
 
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.protobuf.ProtobufDecoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
-import org.jboss.netty.bootstrap.ServerBootstrap;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.group.ChannelGroup;
-import org.jboss.netty.channel.group.DefaultChannelGroup;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
+import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.server.CanalServer;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.handler.ClientAuthenticationHandler;
@@ -24,20 +42,32 @@ import com.alibaba.otter.canal.server.netty.handler.SessionHandler;
 /**
  * 基于netty网络服务的server实现
  * 
+ * <pre>
+ * 1. linux下有native库时使用epoll，否则使用nio，io线程数量固定
+ * 2. 输出使用pooled direct buffer，写缓冲超过高水位时暂停流式推送
+ * </pre>
+ * 
  * @author jianghang 2012-7-12 下午01:34:49
  * @version 1.0.0
  */
 public class CanalServerWithNetty extends AbstractCanalLifeCycle implements CanalServer {
 
-    private CanalServerWithEmbedded embeddedServer;      // 嵌入式server
+    private static final Logger     logger                   = LoggerFactory.getLogger(CanalServerWithNetty.class);
+    private CanalServerWithEmbedded embeddedServer;                                                                // 嵌入式server
     private String                  ip;
     private int                     port;
-    private Channel                 serverChannel = null;
-    private ServerBootstrap         bootstrap     = null;
-    private ChannelGroup            childGroups   = null; // socket channel
-                                                          // container, used to
-                                                          // close sockets
-                                                          // explicitly.
+    private int                     ioThreads                = Runtime.getRuntime().availableProcessors() * 2;     // io线程数量
+    private int                     writeBufferLowWaterMark  = 1024 * 1024;                                        // 写缓冲回落到该值以下时恢复推送
+    private int                     writeBufferHighWaterMark = 4 * 1024 * 1024;                                    // 写缓冲超过该值时暂停推送
+    private Channel                 serverChannel            = null;
+    private ServerBootstrap         bootstrap                = null;
+    private EventLoopGroup          bossGroup                = null;
+    private EventLoopGroup          workerGroup              = null;
+    private ChannelGroup            childGroups              = null;                                               // socket channel
+                                                                                                                   // container, used to
+                                                                                                                   // close sockets
+                                                                                                                   // explicitly.
+    private ExecutorService         getExecutor              = null;                                               // 异步get请求获取数据的线程池
 
     private static class SingletonHolder {
 
@@ -46,7 +76,7 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
 
     private CanalServerWithNetty(){
         this.embeddedServer = CanalServerWithEmbedded.instance();
-        this.childGroups = new DefaultChannelGroup();
+        this.childGroups = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     }
 
     public static CanalServerWithNetty instance() {
@@ -60,43 +90,58 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
             embeddedServer.start();
         }
 
-        this.bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
-            Executors.newCachedThreadPool()));
+        this.getExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("canal-server-get"));
+        this.bootstrap = new ServerBootstrap();
+        if (Epoll.isAvailable()) {
+            this.bossGroup = new EpollEventLoopGroup(1, new DefaultThreadFactory("canal-server-boss"));
+            this.workerGroup = new EpollEventLoopGroup(ioThreads, new DefaultThreadFactory("canal-server-io"));
+            bootstrap.channel(EpollServerSocketChannel.class);
+        } else {
+            this.bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("canal-server-boss"));
+            this.workerGroup = new NioEventLoopGroup(ioThreads, new DefaultThreadFactory("canal-server-io"));
+            bootstrap.channel(NioServerSocketChannel.class);
+        }
+        logger.info("start netty server with {} transport", Epoll.isAvailable() ? "epoll" : "nio");
+        bootstrap.group(bossGroup, workerGroup);
         /*
          * enable keep-alive mechanism, handle abnormal network connection
          * scenarios on OS level. the threshold parameters are depended on OS.
          * e.g. On Linux: net.ipv4.tcp_keepalive_time = 300
          * net.ipv4.tcp_keepalive_probes = 2 net.ipv4.tcp_keepalive_intvl = 30
          */
-        bootstrap.setOption("child.keepAlive", true);
+        bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
         /*
          * optional parameter.
          */
-        bootstrap.setOption("child.tcpNoDelay", true);
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+        bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+            new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
 
         // 构造对应的pipeline
-        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+        final ProtobufDecoder packetDecoder = new ProtobufDecoder(Packet.getDefaultInstance());
+        bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
 
-            public ChannelPipeline getPipeline() throws Exception {
-                ChannelPipeline pipelines = Channels.pipeline();
+            protected void initChannel(SocketChannel ch) throws Exception {
+                ChannelPipeline pipelines = ch.pipeline();
                 pipelines.addLast(FixedHeaderFrameDecoder.class.getName(), new FixedHeaderFrameDecoder());
+                pipelines.addLast(ProtobufDecoder.class.getName(), packetDecoder);
                 // support to maintain child socket channel.
                 pipelines.addLast(HandshakeInitializationHandler.class.getName(),
                     new HandshakeInitializationHandler(childGroups));
                 pipelines.addLast(ClientAuthenticationHandler.class.getName(),
                     new ClientAuthenticationHandler(embeddedServer));
 
-                SessionHandler sessionHandler = new SessionHandler(embeddedServer);
+                SessionHandler sessionHandler = new SessionHandler(embeddedServer, getExecutor);
                 pipelines.addLast(SessionHandler.class.getName(), sessionHandler);
-                return pipelines;
             }
         });
 
         // 启动
         if (StringUtils.isNotEmpty(ip)) {
-            this.serverChannel = bootstrap.bind(new InetSocketAddress(this.ip, this.port));
+            this.serverChannel = bootstrap.bind(new InetSocketAddress(this.ip, this.port)).syncUninterruptibly().channel();
         } else {
-            this.serverChannel = bootstrap.bind(new InetSocketAddress(this.port));
+            this.serverChannel = bootstrap.bind(new InetSocketAddress(this.port)).syncUninterruptibly().channel();
         }
     }
 
@@ -113,8 +158,16 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
             this.childGroups.close().awaitUninterruptibly(5000);
         }
 
-        if (this.bootstrap != null) {
-            this.bootstrap.releaseExternalResources();
+        if (this.bossGroup != null) {
+            this.bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+
+        if (this.workerGroup != null) {
+            this.workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+
+        if (this.getExecutor != null) {
+            this.getExecutor.shutdownNow();
         }
 
         if (embeddedServer.isStart()) {
@@ -134,4 +187,16 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
         this.embeddedServer = embeddedServer;
     }
 
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
 }
@@ -1,18 +1,16 @@
 package com.alibaba.otter.canal.server.netty;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.buffer.CompositeChannelBuffer;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.util.HashedWheelTimer;
-import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,24 +26,38 @@ public class NettyUtils {
 
     public static void write(Channel channel, ByteBuffer body, ChannelFutureListener channelFutureListner) {
         byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN).putInt(body.limit()).array();
-        List<ChannelBuffer> components = new ArrayList<ChannelBuffer>(2);
-        components.add(ChannelBuffers.wrappedBuffer(ByteOrder.BIG_ENDIAN, header));
-        components.add(ChannelBuffers.wrappedBuffer(body));
-
-        if (channelFutureListner == null) {
-            Channels.write(channel, new CompositeChannelBuffer(ByteOrder.BIG_ENDIAN, components));
-        } else {
-            Channels.write(channel, new CompositeChannelBuffer(ByteOrder.BIG_ENDIAN, components))
-                .addListener(channelFutureListner);
+        ChannelFuture future = channel.writeAndFlush(Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(header),
+            Unpooled.wrappedBuffer(body)));
+        if (channelFutureListner != null) {
+            future.addListener(channelFutureListner);
         }
     }
 
     public static void write(Channel channel, byte[] body, ChannelFutureListener channelFutureListner) {
         byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN).putInt(body.length).array();
-        if (channelFutureListner == null) {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body));
-        } else {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body)).addListener(channelFutureListner);
+        ChannelFuture future = channel.writeAndFlush(Unpooled.wrappedBuffer(header, body));
+        if (channelFutureListner != null) {
+            future.addListener(channelFutureListner);
+        }
+    }
+
+    /**
+     * 从channel的pooled allocator中申请direct buffer并写好header，header中的长度为bodySize，buffer只容纳其中的前capacity字节，
+     * 其余部分由调用方以CompositeByteBuf组件的方式拼接
+     */
+    public static ByteBuf allocate(Channel channel, int bodySize, int capacity) {
+        ByteBuf buffer = channel.alloc().directBuffer(HEADER_LENGTH + capacity);
+        buffer.writeInt(bodySize);
+        return buffer;
+    }
+
+    /**
+     * 写出allocate申请的buffer或者由其组成的CompositeByteBuf，写出完成后由netty释放
+     */
+    public static void writePooled(Channel channel, ByteBuf packet, ChannelFutureListener channelFutureListner) {
+        ChannelFuture future = channel.writeAndFlush(packet);
+        if (channelFutureListner != null) {
+            future.addListener(channelFutureListner);
         }
     }
 
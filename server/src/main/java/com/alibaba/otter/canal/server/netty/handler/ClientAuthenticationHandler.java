@@ -1,26 +1,27 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.channel.SimpleChannelHandler;
-import org.jboss.netty.handler.timeout.IdleStateAwareChannelHandler;
-import org.jboss.netty.handler.timeout.IdleStateEvent;
-import org.jboss.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.slf4j.helpers.MessageFormatter;
 
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningMonitor;
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningMonitors;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAuth;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.CompressionUtils;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 
@@ -30,7 +31,7 @@ import com.alibaba.otter.canal.server.netty.NettyUtils;
  * @author jianghang 2012-10-24 上午11:12:45
  * @version 1.0.0
  */
-public class ClientAuthenticationHandler extends SimpleChannelHandler {
+public class ClientAuthenticationHandler extends SimpleChannelInboundHandler<Packet> {
 
     private static final Logger     logger                                  = LoggerFactory.getLogger(ClientAuthenticationHandler.class);
     private final int               SUPPORTED_VERSION                       = 3;
@@ -45,13 +46,23 @@ public class ClientAuthenticationHandler extends SimpleChannelHandler {
         this.embeddedServer = embeddedServer;
     }
 
-    public void messageReceived(final ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-        final Packet packet = Packet.parseFrom(buffer.readBytes(buffer.readableBytes()).array());
+    protected void channelRead0(final ChannelHandlerContext ctx, final Packet packet) throws Exception {
         switch (packet.getVersion()) {
             case SUPPORTED_VERSION:
             default:
                 final ClientAuth clientAuth = ClientAuth.parseFrom(packet.getBody());
+                if (!CompressionUtils.isSupported(clientAuth.getCompression())) {
+                    NettyUtils.error(400,
+                        MessageFormatter.format("compression {} is not supported", clientAuth.getCompression())
+                            .getMessage(),
+                        ctx.channel(),
+                        null);
+                    break;
+                }
+                SessionHandler sessionHandler = ctx.pipeline().get(SessionHandler.class);
+                if (sessionHandler != null) {
+                    sessionHandler.setCompression(clientAuth.getCompression());
+                }
                 // 如果存在订阅信息
                 if (StringUtils.isNotEmpty(clientAuth.getDestination())
                     && StringUtils.isNotEmpty(clientAuth.getClientId())) {
@@ -61,7 +72,6 @@ public class ClientAuthenticationHandler extends SimpleChannelHandler {
                     try {
                         MDC.put("destination", clientIdentity.getDestination());
                         embeddedServer.subscribe(clientIdentity);
-                        ctx.setAttachment(clientIdentity);// 设置状态数据
                         // 尝试启动，如果已经启动，忽略
                         if (!embeddedServer.isStart(clientIdentity.getDestination())) {
                             ServerRunningMonitor runningMonitor = ServerRunningMonitors.getRunningMonitor(clientIdentity.getDestination());
@@ -74,12 +84,12 @@ public class ClientAuthenticationHandler extends SimpleChannelHandler {
                     }
                 }
 
-                NettyUtils.ack(ctx.getChannel(), new ChannelFutureListener() {
+                NettyUtils.ack(ctx.channel(), new ChannelFutureListener() {
 
                     public void operationComplete(ChannelFuture future) throws Exception {
                         logger.info("remove unused channel handlers after authentication is done successfully.");
-                        ctx.getPipeline().remove(HandshakeInitializationHandler.class.getName());
-                        ctx.getPipeline().remove(ClientAuthenticationHandler.class.getName());
+                        ctx.pipeline().remove(HandshakeInitializationHandler.class.getName());
+                        ctx.pipeline().remove(ClientAuthenticationHandler.class.getName());
 
                         int readTimeout = defaultSubscriptorDisconnectIdleTimeout;
                         int writeTimeout = defaultSubscriptorDisconnectIdleTimeout;
@@ -91,26 +101,29 @@ public class ClientAuthenticationHandler extends SimpleChannelHandler {
                         }
                         // fix bug: soTimeout parameter's unit from connector is
                         // millseconds.
-                        IdleStateHandler idleStateHandler = new IdleStateHandler(NettyUtils.hashedWheelTimer,
-                            readTimeout,
+                        IdleStateHandler idleStateHandler = new IdleStateHandler(readTimeout,
                             writeTimeout,
                             0,
                             TimeUnit.MILLISECONDS);
-                        ctx.getPipeline().addBefore(SessionHandler.class.getName(),
+                        ctx.pipeline().addBefore(SessionHandler.class.getName(),
                             IdleStateHandler.class.getName(),
                             idleStateHandler);
 
-                        IdleStateAwareChannelHandler idleStateAwareChannelHandler = new IdleStateAwareChannelHandler() {
+                        ChannelInboundHandlerAdapter idleStateAwareChannelHandler = new ChannelInboundHandlerAdapter() {
 
-                            public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
-                                logger.warn("channel:{} idle timeout exceeds, close channel to save server resources...",
-                                    ctx.getChannel());
-                                ctx.getChannel().close();
+                            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                                if (evt instanceof IdleStateEvent) {
+                                    logger.warn("channel:{} idle timeout exceeds, close channel to save server resources...",
+                                        ctx.channel());
+                                    ctx.channel().close();
+                                } else {
+                                    super.userEventTriggered(ctx, evt);
+                                }
                             }
 
                         };
-                        ctx.getPipeline().addBefore(SessionHandler.class.getName(),
-                            IdleStateAwareChannelHandler.class.getName(),
+                        ctx.pipeline().addBefore(SessionHandler.class.getName(),
+                            "idleStateAwareChannelHandler",
                             idleStateAwareChannelHandler);
                     }
 
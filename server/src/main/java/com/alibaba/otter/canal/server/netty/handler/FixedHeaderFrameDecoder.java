@@ -1,21 +1,16 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
-import org.jboss.netty.handler.codec.replay.VoidEnum;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 
 /**
- * 解析对应的header信息
+ * 解析对应的header信息，4字节的长度之后为packet，输出时去掉header
  * 
  * @author jianghang 2012-10-24 上午11:31:39
  * @version 1.0.0
  */
-public class FixedHeaderFrameDecoder extends ReplayingDecoder<VoidEnum> {
+public class FixedHeaderFrameDecoder extends LengthFieldBasedFrameDecoder {
 
-    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, VoidEnum state)
-                                                                                                             throws Exception {
-        return buffer.readBytes(buffer.readInt());
+    public FixedHeaderFrameDecoder(){
+        super(Integer.MAX_VALUE, 0, 4, 0, 4);
     }
 }
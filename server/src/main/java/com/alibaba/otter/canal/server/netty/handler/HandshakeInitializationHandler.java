@@ -1,15 +1,16 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelStateEvent;
-import org.jboss.netty.channel.SimpleChannelHandler;
-import org.jboss.netty.channel.group.ChannelGroup;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.group.ChannelGroup;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.Handshake;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CompressionUtils;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 
 /**
@@ -18,7 +19,7 @@ import com.alibaba.otter.canal.server.netty.NettyUtils;
  * @author jianghang 2012-10-24 上午11:39:54
  * @version 1.0.0
  */
-public class HandshakeInitializationHandler extends SimpleChannelHandler {
+public class HandshakeInitializationHandler extends ChannelInboundHandlerAdapter {
 
     // support to maintain socket channel.
     private ChannelGroup childGroups;
@@ -29,18 +30,22 @@ public class HandshakeInitializationHandler extends SimpleChannelHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(HandshakeInitializationHandler.class);
 
-    public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
         // add new socket channel in channel container, used to manage sockets.
         if (childGroups != null) {
-            childGroups.add(ctx.getChannel());
+            childGroups.add(ctx.channel());
         }
 
         byte[] body = Packet.newBuilder()
             .setType(CanalPacket.PacketType.HANDSHAKE)
-            .setBody(Handshake.newBuilder().build().toByteString())
+            .setBody(Handshake.newBuilder()
+                .addAllSupportedCompressions(CompressionUtils.supportedCompressions())
+                .build()
+                .toByteString())
             .build()
             .toByteArray();
-        NettyUtils.write(ctx.getChannel(), body, null);
-        logger.info("send handshake initialization packet to : {}", ctx.getChannel());
+        NettyUtils.write(ctx.channel(), body, null);
+        logger.info("send handshake initialization packet to : {}", ctx.channel());
+        super.channelActive(ctx);
     }
 }
@@ -1,16 +1,26 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelStateEvent;
-import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.channel.SimpleChannelHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -23,24 +33,28 @@ import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAck;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientRollback;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
 import com.alibaba.otter.canal.protocol.CanalPacket.Get;
-import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
-import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
 import com.alibaba.otter.canal.protocol.CanalPacket.Sub;
 import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.CompressionUtils;
 import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.MessagePacketEncoder;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 import com.google.protobuf.ByteString;
-import com.google.protobuf.CodedOutputStream;
-import com.google.protobuf.WireFormat;
 
-public class SessionHandler extends SimpleChannelHandler {
+public class SessionHandler extends SimpleChannelInboundHandler<Packet> {
 
-    private static final Logger     logger = LoggerFactory.getLogger(SessionHandler.class);
+    private static final Logger     logger            = LoggerFactory.getLogger(SessionHandler.class);
+    private static final int        MIN_COMPRESS_SIZE = 1024;                                        // 小于该大小的Messages不压缩
     private CanalServerWithEmbedded embeddedServer;
+    private ExecutorService         getExecutor;                                                     // 带timeout的get请求在数据到达或者超时后，在该线程池中获取数据
+    private volatile PendingGet     pendingGet;                                                      // 当前连接上等待数据的get请求
+    private volatile StreamSession  stream;                                                          // 当前连接上的流式订阅
+    private volatile Compression    compression       = Compression.NONE;                            // MESSAGES包体的压缩方式，认证时和client协商
 
     public SessionHandler(){
     }
@@ -49,10 +63,13 @@ public class SessionHandler extends SimpleChannelHandler {
         this.embeddedServer = embeddedServer;
     }
 
-    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    public SessionHandler(CanalServerWithEmbedded embeddedServer, ExecutorService getExecutor){
+        this.embeddedServer = embeddedServer;
+        this.getExecutor = getExecutor;
+    }
+
+    protected void channelRead0(ChannelHandlerContext ctx, Packet packet) throws Exception {
         logger.info("message receives in session handler...");
-        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-        Packet packet = Packet.parseFrom(buffer.readBytes(buffer.readableBytes()).array());
         ClientIdentity clientIdentity = null;
         try {
             switch (packet.getType()) {
@@ -74,11 +91,11 @@ public class SessionHandler extends SimpleChannelHandler {
 
                         embeddedServer.subscribe(clientIdentity);
                         // ctx.setAttachment(clientIdentity);// 设置状态数据
-                        NettyUtils.ack(ctx.getChannel(), null);
+                        NettyUtils.ack(ctx.channel(), null);
                     } else {
                         NettyUtils.error(401,
                             MessageFormatter.format("destination or clientId is null", sub.toString()).getMessage(),
-                            ctx.getChannel(),
+                            ctx.channel(),
                             null);
                     }
                     break;
@@ -89,13 +106,14 @@ public class SessionHandler extends SimpleChannelHandler {
                             Short.valueOf(unsub.getClientId()),
                             unsub.getFilter());
                         MDC.put("destination", clientIdentity.getDestination());
+                        stopStream();
                         embeddedServer.unsubscribe(clientIdentity);
                         stopCanalInstanceIfNecessary(clientIdentity);// 尝试关闭
-                        NettyUtils.ack(ctx.getChannel(), null);
+                        NettyUtils.ack(ctx.channel(), null);
                     } else {
                         NettyUtils.error(401,
                             MessageFormatter.format("destination or clientId is null", unsub.toString()).getMessage(),
-                            ctx.getChannel(),
+                            ctx.channel(),
                             null);
                     }
                     break;
@@ -120,6 +138,18 @@ public class SessionHandler extends SimpleChannelHandler {
                             message = embeddedServer.getWithoutAck(clientIdentity, get.getFetchSize());
                         } else {
                             TimeUnit unit = convertTimeUnit(get.getUnit());
+                            if (getExecutor != null) {
+                                // 异步等待数据，不占用io线程
+                                PendingGet pendingGet = new PendingGet(ctx.channel(),
+                                    clientIdentity,
+                                    get.getFetchSize(),
+                                    null);
+                                this.pendingGet = pendingGet;
+                                if (pendingGet.watch(get.getFetchSize(), get.getTimeout(), unit)) {
+                                    break;
+                                }
+                            }
+
                             message = embeddedServer.getWithoutAck(clientIdentity,
                                 get.getFetchSize(),
                                 get.getTimeout(),
@@ -127,78 +157,39 @@ public class SessionHandler extends SimpleChannelHandler {
                         }
                         // }
 
-                        if (message.getId() != -1 && message.isRaw()) {
-                            List<ByteString> rowEntries = message.getRawEntries();
-                            // message size
-                            int messageSize = 0;
-                            messageSize += com.google.protobuf.CodedOutputStream.computeInt64Size(1, message.getId());
-
-                            int dataSize = 0;
-                            for (int i = 0; i < rowEntries.size(); i++) {
-                                dataSize += com.google.protobuf.CodedOutputStream.computeBytesSizeNoTag(rowEntries.get(i));
-                            }
-                            messageSize += dataSize;
-                            messageSize += 1 * rowEntries.size();
-                            // packet size
-                            int size = 0;
-                            size += com.google.protobuf.CodedOutputStream.computeEnumSize(3,
-                                PacketType.MESSAGES.getNumber());
-                            size += com.google.protobuf.CodedOutputStream.computeTagSize(5)
-                                    + com.google.protobuf.CodedOutputStream.computeRawVarint32Size(messageSize)
-                                    + messageSize;
-                            // recyle bytes
-                            // ByteBuffer byteBuffer = (ByteBuffer)
-                            // ctx.getAttachment();
-                            // if (byteBuffer != null && size <=
-                            // byteBuffer.capacity()) {
-                            // byteBuffer.clear();
-                            // } else {
-                            // byteBuffer =
-                            // ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
-                            // ctx.setAttachment(byteBuffer);
-                            // }
-                            // CodedOutputStream output =
-                            // CodedOutputStream.newInstance(byteBuffer);
-                            byte[] body = new byte[size];
-                            CodedOutputStream output = CodedOutputStream.newInstance(body);
-                            output.writeEnum(3, PacketType.MESSAGES.getNumber());
-
-                            output.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                            output.writeRawVarint32(messageSize);
-                            // message
-                            output.writeInt64(1, message.getId());
-                            for (int i = 0; i < rowEntries.size(); i++) {
-                                output.writeBytes(2, rowEntries.get(i));
-                            }
-                            output.checkNoSpaceLeft();
-                            NettyUtils.write(ctx.getChannel(), body, null);
-                            
-                            // output.flush();
-                            // byteBuffer.flip();
-                            // NettyUtils.write(ctx.getChannel(), byteBuffer,
-                            // null);
-                        } else {
-                            Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
-                            packetBuilder.setType(PacketType.MESSAGES);
-
-                            Messages.Builder messageBuilder = CanalPacket.Messages.newBuilder();
-                            messageBuilder.setBatchId(message.getId());
-                            if (message.getId() != -1) {
-                                if (message.isRaw() && !CollectionUtils.isEmpty(message.getRawEntries())) {
-                                    messageBuilder.addAllMessages(message.getRawEntries());
-                                } else if (!CollectionUtils.isEmpty(message.getEntries())) {
-                                    for (Entry entry : message.getEntries()) {
-                                        messageBuilder.addMessages(entry.toByteString());
-                                    }
-                                }
-                            }
-                            packetBuilder.setBody(messageBuilder.build().toByteString());
-                            NettyUtils.write(ctx.getChannel(), packetBuilder.build().toByteArray(), null);// 输出数据
-                        }
+                        writeMessage(ctx.channel(), message);
                     } else {
                         NettyUtils.error(401,
                             MessageFormatter.format("destination or clientId is null", get.toString()).getMessage(),
-                            ctx.getChannel(),
+                            ctx.channel(),
+                            null);
+                    }
+                    break;
+                case STREAM:
+                    Get streamGet = CanalPacket.Get.parseFrom(packet.getBody());
+                    if (StringUtils.isNotEmpty(streamGet.getDestination())
+                        && StringUtils.isNotEmpty(streamGet.getClientId())) {
+                        clientIdentity = new ClientIdentity(streamGet.getDestination(),
+                            Short.valueOf(streamGet.getClientId()));
+                        MDC.put("destination", clientIdentity.getDestination());
+                        if (streamGet.getWindow() <= 0) {
+                            NettyUtils.error(402,
+                                MessageFormatter.format("window should be positive", streamGet.toString())
+                                    .getMessage(),
+                                ctx.channel(),
+                                null);
+                        } else if (!startStream(ctx.channel(), clientIdentity, streamGet)) {
+                            NettyUtils.error(400,
+                                MessageFormatter.format("stream is not supported by destination:{}",
+                                    clientIdentity.getDestination()).getMessage(),
+                                ctx.channel(),
+                                null);
+                        }
+                    } else {
+                        NettyUtils.error(401,
+                            MessageFormatter.format("destination or clientId is null", streamGet.toString())
+                                .getMessage(),
+                            ctx.channel(),
                             null);
                     }
                     break;
@@ -209,18 +200,22 @@ public class SessionHandler extends SimpleChannelHandler {
                         if (ack.getBatchId() == 0L) {
                             NettyUtils.error(402,
                                 MessageFormatter.format("batchId should assign value", ack.toString()).getMessage(),
-                                ctx.getChannel(),
+                                ctx.channel(),
                                 null);
                         } else if (ack.getBatchId() == -1L) { // -1代表上一次get没有数据，直接忽略之
                             // donothing
                         } else {
                             clientIdentity = new ClientIdentity(ack.getDestination(), Short.valueOf(ack.getClientId()));
                             embeddedServer.ack(clientIdentity, ack.getBatchId());
+                            StreamSession stream = this.stream;
+                            if (stream != null) {
+                                stream.schedule(); // 释放了credit，继续推送
+                            }
                         }
                     } else {
                         NettyUtils.error(401,
                             MessageFormatter.format("destination or clientId is null", ack.toString()).getMessage(),
-                            ctx.getChannel(),
+                            ctx.channel(),
                             null);
                     }
                     break;
@@ -231,7 +226,10 @@ public class SessionHandler extends SimpleChannelHandler {
                         && StringUtils.isNotEmpty(rollback.getClientId())) {
                         clientIdentity = new ClientIdentity(rollback.getDestination(),
                             Short.valueOf(rollback.getClientId()));
-                        if (rollback.getBatchId() == 0L) {
+                        StreamSession stream = this.stream;
+                        if (stream != null) {
+                            stream.rollback();
+                        } else if (rollback.getBatchId() == 0L) {
                             embeddedServer.rollback(clientIdentity);// 回滚所有批次
                         } else {
                             embeddedServer.rollback(clientIdentity, rollback.getBatchId()); // 只回滚单个批次
@@ -240,42 +238,193 @@ public class SessionHandler extends SimpleChannelHandler {
                         NettyUtils.error(401,
                             MessageFormatter.format("destination or clientId is null", rollback.toString())
                                 .getMessage(),
-                            ctx.getChannel(),
+                            ctx.channel(),
                             null);
                     }
                     break;
                 default:
                     NettyUtils.error(400, MessageFormatter.format("packet type={} is NOT supported!", packet.getType())
-                        .getMessage(), ctx.getChannel(), null);
+                        .getMessage(), ctx.channel(), null);
                     break;
             }
         } catch (Throwable exception) {
             NettyUtils.error(400,
                 MessageFormatter.format("something goes wrong with channel:{}, exception={}",
-                    ctx.getChannel(),
+                    ctx.channel(),
                     ExceptionUtils.getStackTrace(exception)).getMessage(),
-                ctx.getChannel(),
+                ctx.channel(),
                 null);
         } finally {
             MDC.remove("destination");
         }
     }
 
-    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.error("something goes wrong with channel:{}, exception={}",
-            ctx.getChannel(),
-            ExceptionUtils.getStackTrace(e.getCause()));
+            ctx.channel(),
+            ExceptionUtils.getStackTrace(cause));
+
+        ctx.channel().close();
+    }
 
-        ctx.getChannel().close();
+    /**
+     * 超过写缓冲的高水位时暂停流式推送，回落到低水位之后继续
+     */
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        StreamSession stream = this.stream;
+        if (stream != null && ctx.channel().isWritable()) {
+            stream.schedule();
+        }
+        super.channelWritabilityChanged(ctx);
     }
 
-    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        PendingGet pendingGet = this.pendingGet;
+        if (pendingGet != null) {
+            pendingGet.cancel();
+        }
+        stopStream();
+
         // logger.info("remove binding subscription value object if any...");
         // ClientIdentity clientIdentity = (ClientIdentity) ctx.getAttachment();
         // // 如果唯一的订阅者都取消了订阅，直接关闭服务，针对内部版本模式下可以减少资源浪费
         // if (clientIdentity != null) {
         // stopCanalInstanceIfNecessary(clientIdentity);
         // }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 开启流式订阅，store不支持数据到达的监听时返回false
+     */
+    private boolean startStream(Channel channel, ClientIdentity clientIdentity, Get get) {
+        stopStream();
+        if (getExecutor == null) {
+            return false;
+        }
+
+        TimeUnit unit = convertTimeUnit(get.getUnit());
+        StreamSession stream = new StreamSession(channel,
+            clientIdentity,
+            get.getFetchSize(),
+            get.getTimeout(),
+            unit,
+            get.getWindow());
+        this.stream = stream;
+        if (!stream.schedule()) {
+            this.stream = null;
+            return false;
+        }
+        return true;
+    }
+
+    private void stopStream() {
+        StreamSession stream = this.stream;
+        if (stream != null) {
+            stream.stop();
+            this.stream = null;
+        }
+    }
+
+    /**
+     * 输出get的结果，raw格式的数据不需要反序列化
+     *
+     * <pre>
+     * 1. 不压缩时按scatter-gather输出：包头、batch_id以及每个entry的tag/长度写入一个小的pooled buffer，
+     *    entry的数据直接包装为CompositeByteBuf的组件，不做拷贝
+     * 2. 压缩时Messages写入pooled的heap buffer，压缩到另一个pooled的heap buffer，和包头组成CompositeByteBuf输出
+     * </pre>
+     */
+    void writeMessage(Channel channel, Message message) throws IOException {
+        List<ByteString> entries = Collections.emptyList();
+        if (message.getId() != -1) {
+            if (message.isRaw()) {
+                entries = message.getRawEntries();
+            } else if (!CollectionUtils.isEmpty(message.getEntries())) {
+                entries = new ArrayList<ByteString>(message.getEntries().size());
+                for (Entry entry : message.getEntries()) {
+                    entries.add(entry.toByteString());
+                }
+            }
+        }
+
+        int messagesSize = MessagePacketEncoder.messagesSize(message.getId(), entries);
+        if (isCompressible(messagesSize)) {
+            writeCompressed(channel, message.getId(), entries, messagesSize);
+            return;
+        }
+
+        int entriesSize = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            entriesSize += entries.get(i).size();
+        }
+        int packetSize = MessagePacketEncoder.packetSize(Compression.NONE, messagesSize);
+        // 不限制组件数量，避免超过之后被合并拷贝
+        CompositeByteBuf packet = channel.alloc().compositeDirectBuffer(Integer.MAX_VALUE);
+        ByteBuf headers = NettyUtils.allocate(channel, packetSize, packetSize - entriesSize);
+        try {
+            ByteBuffer out = headers.nioBuffer(headers.writerIndex(), headers.writableBytes());
+            MessagePacketEncoder.writePacketHeader(out, Compression.NONE, messagesSize);
+            MessagePacketEncoder.writeBatchId(out, message.getId());
+            int start = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                ByteString entry = entries.get(i);
+                MessagePacketEncoder.writeEntryHeader(out, entry.size());
+                int end = headers.writerIndex() + out.position();
+                packet.addComponent(true, headers.retainedSlice(start, end - start));
+                packet.addComponent(true, Unpooled.wrappedBuffer(entry.asReadOnlyByteBuffer()));
+                start = end;
+            }
+            int end = headers.writerIndex() + out.position();
+            if (end > start) {
+                packet.addComponent(true, headers.retainedSlice(start, end - start));
+            }
+        } catch (RuntimeException e) {
+            packet.release();
+            throw e;
+        } finally {
+            headers.release(); // 组件中的slice各自持有引用
+        }
+        NettyUtils.writePooled(channel, packet, null);// 输出数据
+    }
+
+    private boolean isCompressible(int messageSize) {
+        return compression != Compression.NONE && messageSize >= MIN_COMPRESS_SIZE;
+    }
+
+    /**
+     * 压缩Messages包体后输出，包体太小时不压缩，client根据packet的compression判断。压缩需要连续的数组，entry在这里拷贝一次
+     */
+    private void writeCompressed(Channel channel, long batchId, List<ByteString> entries, int messagesSize) {
+        Compression compression = this.compression;
+        ByteBuf compressed = channel.alloc().heapBuffer(CompressionUtils.maxCompressedLength(compression,
+            messagesSize));
+        ByteBuf messages = channel.alloc().heapBuffer(messagesSize);
+        try {
+            MessagePacketEncoder.writeMessages(messages.nioBuffer(0, messagesSize), batchId, entries);
+            int size = CompressionUtils.compress(compression,
+                messages.array(),
+                messages.arrayOffset(),
+                messagesSize,
+                compressed.array(),
+                compressed.arrayOffset());
+            compressed.writerIndex(size);
+        } catch (RuntimeException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            messages.release();
+        }
+
+        int bodySize = compressed.readableBytes();
+        int packetSize = MessagePacketEncoder.packetSize(compression, bodySize);
+        ByteBuf header = NettyUtils.allocate(channel, packetSize, packetSize - bodySize);
+        ByteBuffer out = header.nioBuffer(header.writerIndex(), header.writableBytes());
+        MessagePacketEncoder.writePacketHeader(out, compression, bodySize);
+        header.writerIndex(header.writerIndex() + out.position());
+        CompositeByteBuf packet = channel.alloc().compositeDirectBuffer(2);
+        packet.addComponents(true, header, compressed);
+        NettyUtils.writePooled(channel, packet, null);
     }
 
     private void stopCanalInstanceIfNecessary(ClientIdentity clientIdentity) {
@@ -313,4 +462,228 @@ public class SessionHandler extends SimpleChannelHandler {
         this.embeddedServer = embeddedServer;
     }
 
+    public void setGetExecutor(ExecutorService getExecutor) {
+        this.getExecutor = getExecutor;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 等待数据的get请求，store中的数据满足batchSize或者超时之后，在getExecutor中获取数据并输出，两者只会有一个生效
+     */
+    private class PendingGet implements Runnable, TimerTask {
+
+        private final Channel        channel;
+        private final ClientIdentity clientIdentity;
+        private final int            batchSize;
+        private final StreamSession  stream;                           // 流式订阅的推送，普通get时为null
+        private final AtomicBoolean  done = new AtomicBoolean(false);
+        private volatile Timeout     timeout;
+
+        public PendingGet(Channel channel, ClientIdentity clientIdentity, int batchSize, StreamSession stream){
+            this.channel = channel;
+            this.clientIdentity = clientIdentity;
+            this.batchSize = batchSize;
+            this.stream = stream;
+        }
+
+        /**
+         * 注册数据到达的监听以及超时，store不支持监听时返回false
+         */
+        public boolean watch(int watchSize, long time, TimeUnit unit) {
+            if (!embeddedServer.watch(clientIdentity, watchSize, this)) {
+                return false;
+            }
+
+            if (time > 0) { // timeout为0时一直等待到有足够的数据
+                timeout = NettyUtils.hashedWheelTimer.newTimeout(this, time, unit);
+                if (done.get()) {
+                    timeout.cancel();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * store中已经有足够的数据，在put线程中回调
+         */
+        public void run() {
+            complete();
+        }
+
+        /**
+         * 超时，有多少返回多少
+         */
+        public void run(Timeout timeout) throws Exception {
+            complete();
+        }
+
+        public void cancel() {
+            if (done.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        private void complete() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                getExecutor.execute(new Runnable() {
+
+                    public void run() {
+                        doGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // server已经关闭
+                logger.warn("discard get request of client:{} as server is stopped", clientIdentity);
+                release();
+            }
+        }
+
+        private void doGet() {
+            MDC.put("destination", clientIdentity.getDestination());
+            try {
+                release();
+                if (!channel.isActive()) {
+                    return; // 连接已经断开，避免生成无人ack的batch
+                }
+
+                if (stream != null) {
+                    stream.push(this);
+                } else {
+                    Message message = embeddedServer.getWithoutAck(clientIdentity, batchSize);
+                    writeMessage(channel, message);
+                }
+            } catch (Throwable exception) {
+                NettyUtils.error(400,
+                    MessageFormatter.format("something goes wrong with channel:{}, exception={}",
+                        channel,
+                        ExceptionUtils.getStackTrace(exception)).getMessage(),
+                    channel,
+                    null);
+            } finally {
+                if (pendingGet == this) {
+                    pendingGet = null;
+                }
+                MDC.remove("destination");
+            }
+        }
+
+        private void release() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            embeddedServer.unwatch(clientIdentity, this);
+        }
+    }
+
+    /**
+     * 流式订阅，server持续推送数据，不需要client逐个批次发起get
+     *
+     * <pre>
+     * 1. client授予window个credit，未ack的批次数量达到window时暂停推送，client的ack异步到达后继续
+     * 2. 每次推送等待数据满足batchSize或者超时(timeout>0)，超时推送空包；timeout<=0时有数据就推送
+     * 3. rollback时取消正在等待的推送，回滚之后输出一个ack包作为分界，client丢弃分界之前收到的数据
+ * 4. 分界之前的批次都被丢弃，rollback(batchId)同样回滚所有批次
+     * </pre>
+     */
+    private class StreamSession {
+
+        private final Channel        channel;
+        private final ClientIdentity clientIdentity;
+        private final int            batchSize;
+        private final long           timeout;
+        private final TimeUnit       unit;
+        private final int            window;
+        private boolean              running = true;
+        private PendingGet           pending;                        // 等待中的推送
+
+        public StreamSession(Channel channel, ClientIdentity clientIdentity, int batchSize, long timeout,
+                             TimeUnit unit, int window){
+            this.channel = channel;
+            this.clientIdentity = clientIdentity;
+            this.batchSize = batchSize;
+            this.timeout = timeout;
+            this.unit = unit;
+            this.window = window;
+        }
+
+        /**
+         * 有可用的credit时注册下一次推送，store不支持监听时返回false
+         */
+        public synchronized boolean schedule() {
+            if (!running || pending != null) {
+                return true;
+            }
+
+            if (embeddedServer.listBatchIds(clientIdentity).size() >= window) {
+                return true; // credit用完，等待client ack
+            }
+
+            if (!channel.isWritable()) {
+                return true; // 写缓冲超过高水位，等待channel可写
+            }
+
+            pending = new PendingGet(channel, clientIdentity, batchSize, this);
+            boolean watched = (timeout > 0) ? pending.watch(batchSize, timeout, unit) : pending.watch(1, 0, unit);
+            if (!watched) {
+                pending = null;
+            }
+            return watched;
+        }
+
+        /**
+         * 在getExecutor中获取数据并推送给client
+         */
+        public synchronized void push(PendingGet pendingGet) throws IOException {
+            if (pending != pendingGet) {
+                return; // 已经被rollback/stop取消
+            }
+
+            pending = null;
+            if (!running) {
+                return;
+            }
+
+            Message message = embeddedServer.getWithoutAck(clientIdentity, batchSize);
+            if (message.getId() != -1 || timeout > 0) {
+                writeMessage(channel, message);
+            }
+            schedule();
+        }
+
+        public synchronized void rollback() {
+            cancelPending();
+            // 分界之前推送的批次都会被client丢弃，无论指定了哪个batchId都回滚所有批次，否则未回滚的批次会一直留在meta中占用window
+            embeddedServer.rollback(clientIdentity);
+
+            // 已推送的批次可能还在event loop的任务队列中，ack同样排队，保证client在分界之前收到这些批次
+            channel.eventLoop().execute(new Runnable() {
+
+                public void run() {
+                    NettyUtils.ack(channel, null);
+                }
+            });
+            schedule();
+        }
+
+        public synchronized void stop() {
+            running = false;
+            cancelPending();
+        }
+
+        private void cancelPending() {
+            if (pending != null) {
+                pending.cancel();
+                pending = null;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,176 @@
+package com.alibaba.otter.canal.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.impl.SimpleCanalConnector;
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.instance.core.CanalInstanceGenerator;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
+import com.alibaba.otter.canal.server.netty.CanalServerWithNetty;
+
+/**
+ * 测试STREAM订阅模式下的推送顺序、窗口以及rollback之后的重放
+ *
+ * @version 1.0.26
+ */
+public class CanalServerWithNettyStreamTest {
+
+    private static final String  DESTINATION = "example";
+    private static final int     PORT        = 11199;
+    private static final int     TOTAL       = 5000;
+
+    private MemoryCanalInstance  instance;
+    private CanalServerWithNetty nettyServer;
+    private SimpleCanalConnector connector;
+
+    @Before
+    public void setUp() {
+        instance = new MemoryCanalInstance(DESTINATION, 1024);
+        CanalServerWithEmbedded embeddedServer = new CanalServerWithEmbedded();
+        embeddedServer.setCanalInstanceGenerator(new CanalInstanceGenerator() {
+
+            public CanalInstance generate(String destination) {
+                return instance;
+            }
+        });
+        embeddedServer.start();
+        embeddedServer.start(DESTINATION);
+
+        nettyServer = CanalServerWithNetty.instance();
+        nettyServer.setEmbeddedServer(embeddedServer);
+        nettyServer.setPort(PORT);
+        nettyServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (connector != null) {
+            connector.disconnect();
+        }
+        nettyServer.stop();
+    }
+
+    @Test
+    public void testStreamWindowOne() throws Exception {
+        doTestStream(1);
+    }
+
+    @Test
+    public void testStreamWindowFour() throws Exception {
+        doTestStream(4);
+    }
+
+    @Test
+    public void testStreamRollbackBatchId() throws Exception {
+        connector = new SimpleCanalConnector(new InetSocketAddress("127.0.0.1", PORT), "", "", DESTINATION);
+        connector.setStreamWindow(4);
+        connector.connect();
+        connector.subscribe();
+        for (long i = 1; i <= 200; i++) {
+            instance.getEventStore().put(MemoryCanalInstance.buildEvent(i));
+        }
+
+        // 连续获取多个批次不ack，rollback其中最新的一个批次
+        Message last = null;
+        long expected = 1;
+        for (int i = 0; i < 3; i++) {
+            last = nextMessage();
+            for (Entry entry : last.getEntries()) {
+                Assert.assertEquals(expected++, entry.getHeader().getExecuteTime());
+            }
+        }
+        connector.rollback(last.getId());
+
+        // 流式订阅下回滚所有批次，从头重新推送，之后的ack都能成功
+        expected = 1;
+        while (expected <= 200) {
+            Message message = nextMessage();
+            for (Entry entry : message.getEntries()) {
+                Assert.assertEquals(expected++, entry.getHeader().getExecuteTime());
+            }
+            connector.ack(message.getId());
+        }
+
+        ClientIdentity client = new ClientIdentity(DESTINATION, (short) 1001);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!instance.getMetaManager().listAllBatchs(client).isEmpty()) {
+            Assert.assertTrue("batches not acked", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+        connector.unsubscribe();
+    }
+
+    private Message nextMessage() {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            Message message = connector.getWithoutAck(10, 100L, TimeUnit.MILLISECONDS);
+            if (message.getId() != -1) {
+                return message;
+            }
+        }
+        throw new AssertionError("no message in 10s");
+    }
+
+    private void doTestStream(int window) throws Exception {
+        connector = new SimpleCanalConnector(new InetSocketAddress("127.0.0.1", PORT), "", "", DESTINATION);
+        connector.setStreamWindow(window);
+        connector.connect();
+        connector.subscribe();
+
+        Thread producer = new Thread() {
+
+            public void run() {
+                try {
+                    for (long i = 1; i <= TOTAL; i++) {
+                        instance.getEventStore().put(MemoryCanalInstance.buildEvent(i));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        producer.start();
+
+        long expected = 1;
+        long lastAcked = 0;
+        boolean rollbacked = false;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (expected <= TOTAL) {
+            Assert.assertTrue("stream timeout at " + expected, System.currentTimeMillis() < deadline);
+            Message message = connector.getWithoutAck(50, 100L, TimeUnit.MILLISECONDS);
+            if (message.getId() == -1) {
+                continue;
+            }
+
+            for (Entry entry : message.getEntries()) {
+                Assert.assertEquals(expected, entry.getHeader().getExecuteTime());
+                expected++;
+            }
+
+            if (!rollbacked && expected > TOTAL / 2) {
+                // 回滚之后，已推送但未ack的数据被丢弃，从最后一次ack之后重新推送
+                rollbacked = true;
+                connector.rollback();
+                expected = lastAcked + 1;
+                continue;
+            }
+
+            connector.ack(message.getId());
+            lastAcked = expected - 1;
+        }
+
+        Assert.assertTrue(rollbacked);
+        Assert.assertEquals(1, connector.getStreamRollbacks());
+        producer.join(5000);
+        connector.unsubscribe();
+    }
+}
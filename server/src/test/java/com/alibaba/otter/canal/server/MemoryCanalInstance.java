@@ -0,0 +1,94 @@
+package com.alibaba.otter.canal.server;
+
+import java.net.InetSocketAddress;
+
+import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.alarm.CanalAlarmHandler;
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.meta.CanalMetaManager;
+import com.alibaba.otter.canal.meta.MemoryMetaManager;
+import com.alibaba.otter.canal.parse.CanalEventParser;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.sink.CanalEventSink;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.Event;
+import com.google.protobuf.ByteString;
+
+/**
+ * 只包含memory store和memory meta的instance，测试中直接向store写入数据，不依赖mysql
+ *
+ * @version 1.0.26
+ */
+public class MemoryCanalInstance extends AbstractCanalLifeCycle implements CanalInstance {
+
+    private final String                     destination;
+    private final MemoryEventStoreWithBuffer eventStore  = new MemoryEventStoreWithBuffer();
+    private final MemoryMetaManager          metaManager = new MemoryMetaManager();
+
+    public MemoryCanalInstance(String destination, int bufferSize){
+        this.destination = destination;
+        this.eventStore.setBufferSize(bufferSize);
+    }
+
+    public void start() {
+        super.start();
+        eventStore.start();
+        metaManager.start();
+    }
+
+    public void stop() {
+        super.stop();
+        eventStore.stop();
+        metaManager.stop();
+    }
+
+    /**
+     * 构造一条事务结束的数据，executeTime和logfileOffset都为sequence，用于校验顺序
+     */
+    public static Event buildEvent(long sequence) {
+        Header header = Header.newBuilder()
+            .setLogfileName("mysql-bin.000001")
+            .setLogfileOffset(sequence)
+            .setExecuteTime(sequence)
+            .setEventLength(100)
+            .build();
+        Entry entry = Entry.newBuilder()
+            .setHeader(header)
+            .setEntryType(EntryType.TRANSACTIONEND)
+            .setStoreValue(ByteString.copyFromUtf8("id=" + sequence))
+            .build();
+        return new Event(new LogIdentity(new InetSocketAddress("127.0.0.1", 3306), 1234L), entry);
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public CanalEventParser getEventParser() {
+        return null;
+    }
+
+    public CanalEventSink getEventSink() {
+        return null;
+    }
+
+    public MemoryEventStoreWithBuffer getEventStore() {
+        return eventStore;
+    }
+
+    public CanalMetaManager getMetaManager() {
+        return metaManager;
+    }
+
+    public CanalAlarmHandler getAlarmHandler() {
+        return null;
+    }
+
+    public boolean subscribeChange(ClientIdentity identity) {
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+package com.alibaba.otter.canal.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.impl.PrefetchCanalConnector;
+import com.alibaba.otter.canal.client.impl.SimpleCanalConnector;
+import com.alibaba.otter.canal.instance.core.CanalInstance;
+import com.alibaba.otter.canal.instance.core.CanalInstanceGenerator;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
+import com.alibaba.otter.canal.server.netty.CanalServerWithNetty;
+
+/**
+ * 测试预取connector的异步顺序ack、乱序ack以及rollback丢弃已预取的批次
+ *
+ * @version 1.0.26
+ */
+public class PrefetchCanalConnectorTest {
+
+    private static final String    DESTINATION = "example";
+    private static final int       PORT        = 11199;
+    private static final int       BATCH_SIZE  = 10;
+
+    private final ClientIdentity   client      = new ClientIdentity(DESTINATION, (short) 1001);
+    private MemoryCanalInstance    instance;
+    private CanalServerWithNetty   nettyServer;
+    private PrefetchCanalConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        instance = new MemoryCanalInstance(DESTINATION, 1024);
+        CanalServerWithEmbedded embeddedServer = new CanalServerWithEmbedded();
+        embeddedServer.setCanalInstanceGenerator(new CanalInstanceGenerator() {
+
+            public CanalInstance generate(String destination) {
+                return instance;
+            }
+        });
+        embeddedServer.start();
+        embeddedServer.start(DESTINATION);
+
+        nettyServer = CanalServerWithNetty.instance();
+        nettyServer.setEmbeddedServer(embeddedServer);
+        nettyServer.setPort(PORT);
+        nettyServer.start();
+
+        for (long i = 1; i <= 200; i++) {
+            instance.getEventStore().put(MemoryCanalInstance.buildEvent(i));
+        }
+
+        SimpleCanalConnector simple = new SimpleCanalConnector(new InetSocketAddress("127.0.0.1", PORT),
+            "",
+            "",
+            DESTINATION);
+        connector = new PrefetchCanalConnector(simple);
+        connector.setPrefetchSize(4);
+        connector.connect();
+        connector.subscribe();
+    }
+
+    @After
+    public void tearDown() {
+        if (connector != null) {
+            connector.disconnect();
+        }
+        nettyServer.stop();
+    }
+
+    @Test
+    public void testOrderedAck() throws Exception {
+        long expected = 1;
+        while (expected <= 200) {
+            Message message = nextMessage();
+            expected = checkMessage(message, expected);
+            connector.ack(message.getId());
+        }
+
+        // ack异步发送，全部到达server之后cursor停在最后一条
+        waitForCursor(200);
+        Assert.assertTrue(instance.getMetaManager().listAllBatchs(client).isEmpty());
+    }
+
+    @Test
+    public void testOutOfOrderAck() throws Exception {
+        Message first = nextMessage();
+        Message second = nextMessage();
+        Message third = nextMessage();
+        checkMessage(first, 1);
+        checkMessage(second, 11);
+        checkMessage(third, 21);
+
+        // 前面的批次没有ack，后面的ack不能发给server
+        Position cursor = instance.getMetaManager().getCursor(client);
+        connector.ack(third.getId());
+        connector.ack(second.getId());
+        Thread.sleep(200);
+        Assert.assertEquals(cursor, instance.getMetaManager().getCursor(client));
+        Assert.assertNotNull(instance.getMetaManager().getBatch(client, first.getId()));
+
+        connector.ack(first.getId());
+        waitForCursor(30);
+        Assert.assertNull(instance.getMetaManager().getBatch(client, third.getId()));
+
+        // 下一次get不会因为server端ack失败而抛出异常
+        checkMessage(nextMessage(), 31);
+    }
+
+    @Test
+    public void testAckUnknownBatch() throws Exception {
+        Message message = nextMessage();
+        try {
+            connector.ack(message.getId() + 100);
+            Assert.fail("ack unknown batch should fail");
+        } catch (Exception e) {
+            // expected
+        }
+        connector.ack(message.getId());
+        waitForCursor(10);
+    }
+
+    @Test
+    public void testRollbackDiscardPrefetched() throws Exception {
+        Message first = nextMessage();
+        checkMessage(first, 1);
+        connector.ack(first.getId());
+        checkMessage(nextMessage(), 11);
+        // 等待reader预取满窗口，保证本地队列中有rollback之前的批次
+        Thread.sleep(200);
+
+        connector.rollback();
+        // 已预取的批次被丢弃，从最后一次ack之后重新获取
+        long expected = 11;
+        while (expected <= 200) {
+            Message message = nextMessage();
+            expected = checkMessage(message, expected);
+            connector.ack(message.getId());
+        }
+        waitForCursor(200);
+    }
+
+    @Test
+    public void testRollbackBatchId() throws Exception {
+        // 多个批次未ack时rollback其中一个批次，所有批次都回滚，之后的ack不会失败
+        Message first = nextMessage();
+        Message second = nextMessage();
+        checkMessage(first, 1);
+        checkMessage(second, 11);
+        checkMessage(nextMessage(), 21);
+        connector.rollback(second.getId());
+
+        long expected = 1;
+        while (expected <= 200) {
+            Message message = nextMessage();
+            expected = checkMessage(message, expected);
+            connector.ack(message.getId());
+        }
+        waitForCursor(200);
+        Assert.assertTrue(instance.getMetaManager().listAllBatchs(client).isEmpty());
+    }
+
+    private Message nextMessage() {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            Message message = connector.getWithoutAck(BATCH_SIZE, 100L, TimeUnit.MILLISECONDS);
+            if (message.getId() != -1) {
+                return message;
+            }
+        }
+        throw new AssertionError("no message in 10s");
+    }
+
+    private long checkMessage(Message message, long expected) {
+        Assert.assertFalse(message.getEntries().isEmpty());
+        for (Entry entry : message.getEntries()) {
+            Assert.assertEquals(expected, entry.getHeader().getExecuteTime());
+            expected++;
+        }
+        return expected;
+    }
+
+    private void waitForCursor(long timestamp) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (;;) {
+            LogPosition cursor = (LogPosition) instance.getMetaManager().getCursor(client);
+            if (cursor != null && cursor.getPostion().getTimestamp() == timestamp) {
+                return;
+            }
+            Assert.assertTrue("cursor " + cursor + " not reach " + timestamp, System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.alibaba.otter.canal.server.netty.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
+import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.CompressionUtils;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+
+/**
+ * 测试MESSAGES包的输出：不压缩时entry作为CompositeByteBuf的组件直接输出，压缩时输出包头 + 压缩后的包体
+ *
+ * @version 1.0.26
+ */
+public class SessionHandlerTest {
+
+    private EmbeddedChannel channel;
+    private SessionHandler  handler;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel();
+        handler = new SessionHandler();
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testScatterGather() throws Exception {
+        List<ByteString> entries = buildEntries(20, 100);
+        handler.writeMessage(channel, new Message(10L, true, entries));
+
+        CompositeByteBuf packet = (CompositeByteBuf) channel.readOutbound();
+        try {
+            // 每个entry前面是一个小的header分片，entry本身只做包装
+            Assert.assertEquals(entries.size() * 2, packet.numComponents());
+            for (int i = 0; i < entries.size(); i++) {
+                ByteBuf header = packet.component(i * 2);
+                ByteBuf entry = packet.component(i * 2 + 1);
+                Assert.assertTrue(header.isDirect());
+                Assert.assertTrue(header.readableBytes() < 32);
+                Assert.assertEquals(entries.get(i).size(), entry.readableBytes());
+                Assert.assertEquals(entries.get(i).asReadOnlyByteBuffer(), entry.nioBuffer());
+            }
+
+            Packet result = decode(packet);
+            Assert.assertEquals(PacketType.MESSAGES, result.getType());
+            Assert.assertEquals(Compression.NONE, result.getCompression());
+            Messages messages = Messages.parseFrom(result.getBody());
+            Assert.assertEquals(10L, messages.getBatchId());
+            Assert.assertEquals(entries, messages.getMessagesList());
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testEmptyMessage() throws Exception {
+        handler.writeMessage(channel, new Message(-1L, true, new ArrayList<ByteString>()));
+        ByteBuf packet = (ByteBuf) channel.readOutbound();
+        try {
+            Messages messages = Messages.parseFrom(decode(packet).getBody());
+            Assert.assertEquals(-1L, messages.getBatchId());
+            Assert.assertEquals(0, messages.getMessagesCount());
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        List<ByteString> entries = buildEntries(50, 200);
+        for (Compression compression : Arrays.asList(Compression.LZ4, Compression.ZSTD)) {
+            handler.setCompression(compression);
+            handler.writeMessage(channel, new Message(20L, true, entries));
+
+            ByteBuf packet = (ByteBuf) channel.readOutbound();
+            try {
+                Packet result = decode(packet);
+                Assert.assertEquals(compression, result.getCompression());
+                Messages messages = Messages.parseFrom(CompressionUtils.decompress(compression, result.getBody()));
+                Assert.assertEquals(20L, messages.getBatchId());
+                Assert.assertEquals(entries, messages.getMessagesList());
+            } finally {
+                packet.release();
+            }
+        }
+    }
+
+    /**
+     * 校验4字节的长度之后解析Packet
+     */
+    private Packet decode(ByteBuf packet) throws Exception {
+        Assert.assertEquals(packet.readableBytes() - 4, packet.getInt(packet.readerIndex()));
+        byte[] body = new byte[packet.readableBytes() - 4];
+        packet.getBytes(packet.readerIndex() + 4, body);
+        return Packet.parseFrom(body);
+    }
+
+    private List<ByteString> buildEntries(int count, int size) {
+        List<ByteString> entries = new ArrayList<ByteString>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        for (int i = 0; i < count; i++) {
+            Header header = Header.newBuilder()
+                .setLogfileName("mysql-bin.000001")
+                .setLogfileOffset(i)
+                .setExecuteTime(i)
+                .build();
+            entries.add(Entry.newBuilder()
+                .setHeader(header)
+                .setEntryType(EntryType.ROWDATA)
+                .setStoreValue(ByteString.copyFromUtf8(value.toString()))
+                .build()
+                .toByteString());
+        }
+        return entries;
+    }
+}
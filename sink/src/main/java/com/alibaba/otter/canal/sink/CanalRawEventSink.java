@@ -0,0 +1,19 @@
+package com.alibaba.otter.canal.sink;
+
+import java.net.InetSocketAddress;
+
+import com.alibaba.otter.canal.sink.exception.CanalSinkException;
+
+/**
+ * 支持同时提交预先序列化数据的event消费者，避免在sink线程上重复序列化
+ *
+ * @version 1.0.26
+ */
+public interface CanalRawEventSink<T, R> extends CanalEventSink<T> {
+
+    /**
+     * 提交数据，rawEvent为event预先序列化好的数据，为null时由sink自行序列化
+     */
+    boolean sink(T event, R rawEvent, InetSocketAddress remoteAddress, String destination) throws CanalSinkException,
+                                                                                          InterruptedException;
+}
@@ -17,10 +17,11 @@ import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
 import com.alibaba.otter.canal.protocol.position.LogIdentity;
 import com.alibaba.otter.canal.sink.AbstractCanalEventSink;
 import com.alibaba.otter.canal.sink.CanalEventDownStreamHandler;
-import com.alibaba.otter.canal.sink.CanalEventSink;
+import com.alibaba.otter.canal.sink.CanalRawEventSink;
 import com.alibaba.otter.canal.sink.exception.CanalSinkException;
 import com.alibaba.otter.canal.store.CanalEventStore;
 import com.alibaba.otter.canal.store.model.Event;
+import com.google.protobuf.ByteString;
 
 /**
  * mysql binlog数据对象输出
@@ -28,7 +29,7 @@ import com.alibaba.otter.canal.store.model.Event;
  * @author jianghang 2012-7-4 下午03:23:16
  * @version 1.0.0
  */
-public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry>> implements CanalEventSink<List<CanalEntry.Entry>> {
+public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry>> implements CanalRawEventSink<List<CanalEntry.Entry>, List<ByteString>> {
 
     private static final Logger    logger                        = LoggerFactory.getLogger(EntryEventSink.class);
     private static final int       maxFullTimes                  = 10;
@@ -73,30 +74,46 @@ public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry
     public boolean sink(List<CanalEntry.Entry> entrys, InetSocketAddress remoteAddress, String destination)
                                                                                                            throws CanalSinkException,
                                                                                                            InterruptedException {
+        return sink(entrys, null, remoteAddress, destination);
+    }
+
+    /**
+     * 投递数据，rawEntrys为parser并行阶段预先序列化好的entry数据，与entrys一一对应，为null时在当前线程序列化
+     */
+    public boolean sink(List<CanalEntry.Entry> entrys, List<ByteString> rawEntrys, InetSocketAddress remoteAddress,
+                        String destination) throws CanalSinkException, InterruptedException {
         List rowDatas = entrys;
+        List rowRawDatas = rawEntrys;
         if (filterTransactionEntry) {
             rowDatas = new ArrayList<CanalEntry.Entry>();
-            for (CanalEntry.Entry entry : entrys) {
+            rowRawDatas = (rawEntrys == null) ? null : new ArrayList<ByteString>();
+            for (int i = 0; i < entrys.size(); i++) {
+                CanalEntry.Entry entry = entrys.get(i);
                 if (entry.getEntryType() == EntryType.ROWDATA) {
                     rowDatas.add(entry);
+                    if (rowRawDatas != null) {
+                        rowRawDatas.add(rawEntrys.get(i));
+                    }
                 }
             }
         }
 
-        return sinkData(rowDatas, remoteAddress);
+        return sinkData(rowDatas, rowRawDatas, remoteAddress);
     }
 
-    private boolean sinkData(List<CanalEntry.Entry> entrys, InetSocketAddress remoteAddress)
-                                                                                            throws InterruptedException {
+    private boolean sinkData(List<CanalEntry.Entry> entrys, List<ByteString> rawEntrys,
+                             InetSocketAddress remoteAddress) throws InterruptedException {
         boolean hasRowData = false;
         boolean hasHeartBeat = false;
         List<Event> events = new ArrayList<Event>();
-        for (CanalEntry.Entry entry : entrys) {
+        for (int i = 0; i < entrys.size(); i++) {
+            CanalEntry.Entry entry = entrys.get(i);
             if (!doFilter(entry)) {
                 continue;
             }
 
-            Event event = new Event(new LogIdentity(remoteAddress, -1L), entry);
+            ByteString rawEntry = (rawEntrys == null) ? null : rawEntrys.get(i);
+            Event event = new Event(new LogIdentity(remoteAddress, -1L), entry, rawEntry);
             events.add(event);
             hasRowData |= (entry.getEntryType() == EntryType.ROWDATA);
             hasHeartBeat |= (entry.getEntryType() == EntryType.HEARTBEAT);
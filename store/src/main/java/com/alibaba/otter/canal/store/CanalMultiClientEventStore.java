@@ -0,0 +1,67 @@
+package com.alibaba.otter.canal.store;
+
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 支持多个client独立消费的store，每个{@linkplain ClientIdentity}维护独立的get/ack游标，数据在所有client都ack之后才会被回收
+ * 
+ * <pre>
+ * 注意：
+ * 1. client的游标在subscribe时根据client的消费位点创建，位点已经被回收时拒绝订阅；未subscribe直接get时从store中最早未回收的数据开始
+ * 2. 一旦存在client游标，store的回收只依赖于client游标，不再使用默认的get/ack游标
+ * 3. 不再消费的client需要调用unsubscribe，否则会阻塞数据回收
+ * </pre>
+ * 
+ * @version 1.0.26
+ */
+public interface CanalMultiClientEventStore<T> extends CanalEventStore<T> {
+
+    /**
+     * 创建client的游标，position为client最后一次消费的位置，为null时从store中最早未回收的数据开始
+     * 
+     * @throws CanalStoreException position之后的数据已经被回收
+     */
+    void subscribe(ClientIdentity clientIdentity, Position position) throws CanalStoreException;
+
+    /**
+     * 获取指定大小的数据，阻塞等待其操作完成
+     */
+    Events<T> get(ClientIdentity clientIdentity, Position start, int batchSize) throws InterruptedException,
+                                                                               CanalStoreException;
+
+    /**
+     * 获取指定大小的数据，阻塞等待其操作完成或者时间超时
+     */
+    Events<T> get(ClientIdentity clientIdentity, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                            throws InterruptedException,
+                                                                                                            CanalStoreException;
+
+    /**
+     * 根据指定位置，获取一个指定大小的数据
+     */
+    Events<T> tryGet(ClientIdentity clientIdentity, Position start, int batchSize) throws CanalStoreException;
+
+    /**
+     * 获取client第一条未ack数据的position，如果没有数据返回为null
+     */
+    Position getFirstPosition(ClientIdentity clientIdentity) throws CanalStoreException;
+
+    /**
+     * 删除client在{@linkplain Position}之前的数据，所有client都ack之后才会真正回收
+     */
+    void ack(ClientIdentity clientIdentity, Position position) throws CanalStoreException;
+
+    /**
+     * client出错时执行回滚操作
+     */
+    void rollback(ClientIdentity clientIdentity) throws CanalStoreException;
+
+    /**
+     * 移除client的游标，释放其占用的数据
+     */
+    void unsubscribe(ClientIdentity clientIdentity) throws CanalStoreException;
+}
@@ -0,0 +1,30 @@
+package com.alibaba.otter.canal.store;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.Position;
+
+/**
+ * 支持数据到达通知的store，get请求不需要占用线程阻塞等待，网络层可以据此异步处理带timeout的get请求
+ *
+ * <pre>
+ * 注意：
+ * 1. watch为一次性的监听，触发之后自动移除，需要继续监听时重新注册
+ * 2. 回调在put线程中执行(注册时已满足则在注册线程中执行)，不能阻塞，也不能在回调中直接get数据
+ * 3. 不支持多client的store忽略clientIdentity，按store自身的get位置判断
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public interface CanalWatchableEventStore<T> extends CanalEventStore<T> {
+
+    /**
+     * 注册监听，client从start开始可get的数据满足batchSize时回调
+     */
+    void watch(ClientIdentity clientIdentity, Position start, int batchSize, Runnable callback)
+                                                                                              throws CanalStoreException;
+
+    /**
+     * 移除还未触发的监听
+     */
+    void unwatch(Runnable callback) throws CanalStoreException;
+}
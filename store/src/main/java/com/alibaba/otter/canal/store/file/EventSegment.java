@@ -0,0 +1,300 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.model.Event;
+import com.google.protobuf.ByteString;
+
+/**
+ * 基于memory-mapped file的append-only数据段，存储溢出到磁盘的{@linkplain Event}
+ *
+ * <pre>
+ * 单条记录格式：
+ * int   记录长度(不包含自身)
+ * long  sequence
+ * long  executeTime / position / serverId / rawLength
+ * int   entryType / eventType / logIdentity编号
+ * int+bytes   journalName / gtid
+ * int+bytes   rawEntry
+ *
+ * 每indexInterval条记录保存一个(sequence, offset)的稀疏索引，用于快速定位
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class EventSegment {
+
+    private static final Charset UTF8        = Charset.forName("UTF-8");
+    private static final int     FIXED_BYTES = 8 * 5 + 4 * 3 + 4 * 2 + 4;
+
+    private final File           file;
+    private final long           firstSequence;
+    private final int            indexInterval;
+    private RandomAccessFile     raf;
+    private MappedByteBuffer     buffer;
+    private long                 lastSequence;
+    private int                  writePosition = 0;
+    private long                 memSize       = 0;
+    private long[]               indexSequences;
+    private int[]                indexOffsets;
+    private int                  indexCount    = 0;
+
+    public EventSegment(File file, long firstSequence, int size, int indexInterval){
+        this.file = file;
+        this.firstSequence = firstSequence;
+        this.lastSequence = firstSequence - 1;
+        this.indexInterval = indexInterval;
+        this.indexSequences = new long[16];
+        this.indexOffsets = new int[16];
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(size);
+            buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            close();
+            throw new CanalStoreException("create segment " + file.getPath() + " failed", e);
+        }
+    }
+
+    /**
+     * 写入一条记录，空间不足时返回false
+     */
+    public boolean append(Event event, long sequence, int identity) {
+        if (sequence != lastSequence + 1) {
+            throw new CanalStoreException("segment " + file.getName() + " expect sequence " + (lastSequence + 1)
+                                          + " but " + sequence);
+        }
+
+        byte[] journalName = toBytes(event.getJournalName());
+        byte[] gtid = toBytes(event.getGtid());
+        ByteString rawEntry = event.getRawEntry();
+        int length = FIXED_BYTES + length(journalName) + length(gtid) + (rawEntry == null ? 0 : rawEntry.size());
+        if (writePosition + 4 + length > buffer.capacity()) {
+            return false;
+        }
+
+        ByteBuffer writer = buffer.duplicate();
+        ((Buffer) writer).position(writePosition); // 按Buffer调用，jdk9之后编译的class在java 7/8上也能运行
+        writer.putInt(length);
+        writer.putLong(sequence);
+        writer.putLong(event.getExecuteTime());
+        writer.putLong(event.getPosition());
+        writer.putLong(event.getServerId());
+        writer.putLong(event.getRawLength());
+        writer.putInt(event.getEntryType() == null ? -1 : event.getEntryType().getNumber());
+        writer.putInt(event.getEventType() == null ? -1 : event.getEventType().getNumber());
+        writer.putInt(identity);
+        putBytes(writer, journalName);
+        putBytes(writer, gtid);
+        if (rawEntry == null) {
+            writer.putInt(-1);
+        } else {
+            writer.putInt(rawEntry.size());
+            rawEntry.copyTo(writer);
+        }
+
+        if ((sequence - firstSequence) % indexInterval == 0) {
+            addIndex(sequence, writePosition);
+        }
+        writePosition = writer.position();
+        lastSequence = sequence;
+        memSize += event.getRawLength();
+        return true;
+    }
+
+    /**
+     * 一条记录占用的空间，包含记录长度
+     */
+    static long recordSize(Event event) {
+        byte[] journalName = toBytes(event.getJournalName());
+        byte[] gtid = toBytes(event.getGtid());
+        ByteString rawEntry = event.getRawEntry();
+        return 4L + FIXED_BYTES + length(journalName) + length(gtid) + (rawEntry == null ? 0 : rawEntry.size());
+    }
+
+    /**
+     * 根据稀疏索引找到不大于sequence的最近一条记录的offset，再顺序扫描定位
+     */
+    public int find(long sequence) {
+        if (sequence < firstSequence || sequence > lastSequence) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = indexCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (indexSequences[mid] <= sequence) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        int offset = indexOffsets[low];
+        long current = indexSequences[low];
+        while (current < sequence) {
+            offset = nextOffset(offset);
+            current++;
+        }
+        return offset;
+    }
+
+    /**
+     * 读取offset位置的记录
+     */
+    public Event read(int offset, LogIdentity[] identities) {
+        ByteBuffer reader = buffer.duplicate();
+        ((Buffer) reader).position(offset + 4 + 8);
+        Event event = new Event();
+        event.setExecuteTime(reader.getLong());
+        event.setPosition(reader.getLong());
+        event.setServerId(reader.getLong());
+        event.setRawLength(reader.getLong());
+        int entryType = reader.getInt();
+        event.setEntryType(entryType < 0 ? null : EntryType.valueOf(entryType));
+        int eventType = reader.getInt();
+        event.setEventType(eventType < 0 ? null : EventType.valueOf(eventType));
+        event.setLogIdentity(identities[reader.getInt()]);
+        event.setJournalName(getString(reader));
+        event.setGtid(getString(reader));
+        int rawSize = reader.getInt();
+        if (rawSize >= 0) {
+            ((Buffer) reader).limit(reader.position() + rawSize);
+            event.setRawEntry(ByteString.copyFrom(reader));
+        }
+        return event;
+    }
+
+    public int nextOffset(int offset) {
+        return offset + 4 + buffer.getInt(offset);
+    }
+
+    public void close() {
+        if (buffer != null) {
+            unmap(buffer);
+            buffer = null;
+        }
+
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            raf = null;
+        }
+    }
+
+    public void delete() {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new CanalStoreException("delete segment " + file.getPath() + " failed");
+        }
+    }
+
+    // ================= helper method ==================
+
+    private void addIndex(long sequence, int offset) {
+        if (indexCount == indexSequences.length) {
+            long[] newSequences = new long[indexCount << 1];
+            int[] newOffsets = new int[indexCount << 1];
+            System.arraycopy(indexSequences, 0, newSequences, 0, indexCount);
+            System.arraycopy(indexOffsets, 0, newOffsets, 0, indexCount);
+            indexSequences = newSequences;
+            indexOffsets = newOffsets;
+        }
+
+        indexSequences[indexCount] = sequence;
+        indexOffsets[indexCount] = offset;
+        indexCount++;
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(UTF8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer writer, byte[] bytes) {
+        if (bytes == null) {
+            writer.putInt(-1);
+        } else {
+            writer.putInt(bytes.length);
+            writer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer reader) {
+        int length = reader.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        reader.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * 尽早释放mmap占用的虚拟内存，失败时等待gc回收
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            // jdk8及以下版本
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Throwable ignore) {
+                // ignore
+            }
+        } catch (Throwable ignore) {
+            // ignore
+        }
+    }
+
+    // ================= setter / getter ==================
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getMemSize() {
+        return memSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+}
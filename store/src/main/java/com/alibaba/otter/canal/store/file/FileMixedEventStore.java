@@ -0,0 +1,791 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
+import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalWatchableEventStore;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 内存 + 磁盘混合的store，最新的数据保存在内存ringbuffer中，消费跟不上时将较早的数据溢出到memory-mapped的segment文件
+ *
+ * <pre>
+ * 设计说明：
+ * 1. 所有数据按putSequence编号，小于memSequence的数据在磁盘segment中，其余在内存中
+ * 2. put时内存不足，优先丢弃已经ack的数据，其次将未ack的数据追加写入segment文件，只有磁盘segment数量达到上限时put才会阻塞
+ * 3. segment文件内部维护(sequence, offset)的稀疏索引，rollback之后可以快速定位
+ * 4. cleanUntil之后，整个segment的数据都被ack时直接删除对应的文件
+ * 5. store本身不做持久化恢复，重启时会清理掉目录下残留的segment文件，由parser根据meta位点重新解析
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class FileMixedEventStore extends AbstractCanalStoreScavenge implements CanalWatchableEventStore<Event>, CanalStoreScavenge {
+
+    private static final Logger          logger           = LoggerFactory.getLogger(FileMixedEventStore.class);
+    private static final long            INIT_SQEUENCE    = -1;
+    private static final String          SEGMENT_SUFFIX   = ".seg";
+    private int                          bufferSize       = 16 * 1024;
+    private int                          bufferMemUnit    = 1024;                                  // memsize的单位，默认为1kb大小
+    private int                          indexMask;
+    private Event[]                      entries;
+
+    // 磁盘segment相关参数
+    private String                       dataDir;
+    private int                          segmentSize      = 64 * 1024 * 1024;                      // 单个segment文件大小，默认64MB
+    private int                          maxSegmentCount  = 128;                                   // segment文件的最大个数
+    private int                          indexInterval    = 256;                                   // 每多少条记录记录一次稀疏索引
+    private File                         storeDir;
+    private LinkedList<EventSegment>     segments         = new LinkedList<EventSegment>();
+
+    // 记录下put/get/ack操作的三个下标，以及内存中最早一条数据的下标
+    private long                         putSequence      = INIT_SQEUENCE;
+    private long                         getSequence      = INIT_SQEUENCE;
+    private long                         ackSequence      = INIT_SQEUENCE;
+    private long                         memSequence      = 0;
+
+    // 记录下put/get/ack操作的三个memsize大小，以及内存中数据的大小
+    private long                         putMemSize       = 0;
+    private long                         getMemSize       = 0;
+    private long                         ackMemSize       = 0;
+    private long                         memSize          = 0;
+
+    // 顺序读取磁盘数据的位置，避免每次都通过索引定位
+    private EventSegment                 readSegment;
+    private int                          readOffset;
+    private long                         readSequence;
+
+    // logIdentity字典，segment中只保存编号
+    private Map<LogIdentity, Integer>    identityIndex    = new HashMap<LogIdentity, Integer>();
+    private LogIdentity[]                identities       = new LogIdentity[0];
+
+    // 阻塞put/get操作控制信号
+    private ReentrantLock                lock             = new ReentrantLock();
+    private Condition                    notFull          = lock.newCondition();
+    private Condition                    notEmpty         = lock.newCondition();
+    // 等待数据到达的监听，由lock保护；满足条件的监听移到readyWatchers，在lock外回调
+    private List<Watcher>                watchers         = new ArrayList<Watcher>();
+    private Queue<Watcher>               readyWatchers    = new ConcurrentLinkedQueue<Watcher>();
+
+    private BatchMode                    batchMode        = BatchMode.ITEMSIZE;
+    private boolean                      ddlIsolation     = false;
+
+    public FileMixedEventStore(){
+
+    }
+
+    public FileMixedEventStore(BatchMode batchMode){
+        this.batchMode = batchMode;
+    }
+
+    public void start() throws CanalStoreException {
+        super.start();
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        if (dataDir == null) {
+            throw new IllegalArgumentException("dataDir must be set");
+        }
+
+        indexMask = bufferSize - 1;
+        entries = new Event[bufferSize];
+        storeDir = (destination == null) ? new File(dataDir) : new File(dataDir, destination);
+        if (!storeDir.exists() && !storeDir.mkdirs()) {
+            throw new CanalStoreException("mkdir " + storeDir.getPath() + " failed");
+        }
+
+        // 清理上一次运行残留的segment
+        File[] files = storeDir.listFiles(new FileFilter() {
+
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new CanalStoreException("delete segment " + file.getPath() + " failed");
+                }
+            }
+        }
+    }
+
+    public void stop() throws CanalStoreException {
+        super.stop();
+
+        cleanAll();
+    }
+
+    public void put(List<Event> data) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (!checkFreeSlotAt(data)) { // 检查是否有空位
+                    notFull.await(); // wait until not full
+                }
+            } catch (InterruptedException ie) {
+                notFull.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+            doPut(data);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        } finally {
+            lock.unlock();
+            fireWatchers();
+        }
+    }
+
+    public boolean put(List<Event> data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkFreeSlotAt(data)) {
+                    doPut(data);
+                    return true;
+                }
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                try {
+                    nanos = notFull.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notFull.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+            fireWatchers();
+        }
+    }
+
+    public boolean tryPut(List<Event> data) throws CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!checkFreeSlotAt(data)) {
+                return false;
+            } else {
+                doPut(data);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+            fireWatchers();
+        }
+    }
+
+    public void put(Event data) throws InterruptedException, CanalStoreException {
+        put(Arrays.asList(data));
+    }
+
+    public boolean put(Event data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        return put(Arrays.asList(data), timeout, unit);
+    }
+
+    public boolean tryPut(Event data) throws CanalStoreException {
+        return tryPut(Arrays.asList(data));
+    }
+
+    /**
+     * 执行具体的put操作，调用前已经通过checkFreeSlotAt保证内存有空位
+     */
+    private void doPut(List<Event> data) {
+        long current = putSequence;
+        long end = current + data.size();
+
+        for (long next = current + 1; next <= end; next++) {
+            Event event = data.get((int) (next - current - 1));
+            entries[getIndex(next)] = event;
+            long size = calculateSize(event);
+            memSize += size;
+            putMemSize += size;
+        }
+
+        putSequence = end;
+        // tell other threads that store is not empty
+        notEmpty.signal();
+
+        if (!watchers.isEmpty()) {
+            Iterator<Watcher> iterator = watchers.iterator();
+            while (iterator.hasNext()) {
+                Watcher watcher = iterator.next();
+                if (checkUnGetSlotAt(watcher.start, watcher.batchSize)) {
+                    iterator.remove();
+                    readyWatchers.offer(watcher);
+                }
+            }
+        }
+    }
+
+    public void watch(ClientIdentity clientIdentity, Position start, int batchSize, Runnable callback)
+                                                                                                     throws CanalStoreException {
+        Watcher watcher = new Watcher((LogPosition) start, batchSize, callback);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!checkUnGetSlotAt(watcher.start, watcher.batchSize)) {
+                watchers.add(watcher);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // 已经有足够的数据，直接回调
+        watcher.callback.run();
+    }
+
+    public void unwatch(Runnable callback) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Iterator<Watcher> iterator = watchers.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().callback == callback) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 回调put时已满足条件的监听，需要在lock外调用
+     */
+    private void fireWatchers() {
+        Watcher watcher = null;
+        while ((watcher = readyWatchers.poll()) != null) {
+            watcher.callback.run();
+        }
+    }
+
+    public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (!checkUnGetSlotAt((LogPosition) start, batchSize))
+                    notEmpty.await();
+            } catch (InterruptedException ie) {
+                notEmpty.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                        CanalStoreException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkUnGetSlotAt((LogPosition) start, batchSize)) {
+                    return doGet(start, batchSize);
+                }
+
+                if (nanos <= 0) {
+                    // 如果时间到了，有多少取多少
+                    return doGet(start, batchSize);
+                }
+
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+        LogPosition startPosition = (LogPosition) start;
+
+        long current = getSequence;
+        long maxAbleSequence = putSequence;
+        long next = current;
+        long end = current;
+        // 如果startPosition为null，说明是第一次，默认+1处理
+        if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+            next = next + 1;
+        }
+
+        if (current >= maxAbleSequence) {
+            return new Events<Event>();
+        }
+
+        Events<Event> result = new Events<Event>();
+        List<Event> entrys = result.getEvents();
+        long memsize = 0;
+        if (batchMode.isItemSize()) {
+            end = (next + batchSize - 1) < maxAbleSequence ? (next + batchSize - 1) : maxAbleSequence;
+            // 提取数据并返回
+            for (; next <= end; next++) {
+                Event event = readEvent(next);
+                if (ddlIsolation && isDdl(event.getEventType())) {
+                    // 如果是ddl隔离，直接返回
+                    if (entrys.size() == 0) {
+                        entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        end = next; // 更新end为当前
+                    } else {
+                        // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                        end = next - 1; // next-1一定大于current，不需要判断
+                    }
+                    break;
+                } else {
+                    entrys.add(event);
+                    memsize += calculateSize(event);
+                }
+            }
+        } else {
+            long maxMemSize = batchSize * bufferMemUnit;
+            for (; memsize <= maxMemSize && next <= maxAbleSequence; next++) {
+                // 永远保证可以取出第一条的记录，避免死锁
+                Event event = readEvent(next);
+                if (ddlIsolation && isDdl(event.getEventType())) {
+                    // 如果是ddl隔离，直接返回
+                    if (entrys.size() == 0) {
+                        entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        end = next; // 更新end为当前
+                    } else {
+                        // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                        end = next - 1; // next-1一定大于current，不需要判断
+                    }
+                    break;
+                } else {
+                    entrys.add(event);
+                    memsize += calculateSize(event);
+                    end = next;// 记录end位点
+                }
+            }
+        }
+
+        PositionRange<LogPosition> range = new PositionRange<LogPosition>();
+        result.setPositionRange(range);
+
+        range.setStart(CanalEventUtils.createPosition(entrys.get(0)));
+        range.setEnd(CanalEventUtils.createPosition(entrys.get(result.getEvents().size() - 1)));
+        // 记录一下是否存在可以被ack的点
+
+        for (int i = entrys.size() - 1; i >= 0; i--) {
+            Event event = entrys.get(i);
+            if (CanalEntry.EntryType.TRANSACTIONBEGIN == event.getEntryType()
+                || CanalEntry.EntryType.TRANSACTIONEND == event.getEntryType() || isDdl(event.getEventType())) {
+                // 将事务头/尾设置可被为ack的点
+                range.setAck(CanalEventUtils.createPosition(event));
+                break;
+            }
+        }
+
+        getSequence = end;
+        getMemSize += memsize;
+        return result;
+    }
+
+    public LogPosition getFirstPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long firstSeqeuence = ackSequence;
+            if (firstSeqeuence == INIT_SQEUENCE && firstSeqeuence < putSequence) {
+                // 没有ack过数据
+                Event event = readEvent(firstSeqeuence + 1); // 最后一次ack为-1，需要移动到下一条,included = false
+                return CanalEventUtils.createPosition(event, false);
+            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence < putSequence) {
+                // ack未追上put操作
+                Event event = readEvent(firstSeqeuence + 1); // 最后一次ack的位置数据 + 1
+                return CanalEventUtils.createPosition(event, true);
+            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence == putSequence) {
+                // 已经追上，store中没有数据
+                Event event = readEvent(firstSeqeuence); // 最后一次ack的位置数据，和last为同一条，included = false
+                return CanalEventUtils.createPosition(event, false);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogPosition getLatestPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long latestSequence = putSequence;
+            if (latestSequence > INIT_SQEUENCE && latestSequence != ackSequence) {
+                Event event = readEvent(latestSequence); // 最后一次写入的数据，最后一条未消费的数据
+                return CanalEventUtils.createPosition(event, true);
+            } else if (latestSequence > INIT_SQEUENCE && latestSequence == ackSequence) {
+                // ack已经追上了put操作
+                Event event = readEvent(latestSequence); // 最后一次写入的数据，included = false
+                return CanalEventUtils.createPosition(event, false);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ack(Position position) throws CanalStoreException {
+        cleanUntil(position);
+    }
+
+    public void cleanUntil(Position position) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long memsize = 0;
+            for (long next = ackSequence + 1; next <= getSequence; next++) {
+                Event event = readEvent(next);
+                memsize += calculateSize(event);
+                if (CanalEventUtils.checkPosition(event, (LogPosition) position)) {// 找到对应的position，更新ack seq
+                    ackSequence = next;
+                    ackMemSize += memsize;
+                    truncate();
+                    notFull.signal();
+                    return;
+                }
+            }
+
+            // 找不到对应需要ack的position
+            throw new CanalStoreException("no match ack position" + position.toString());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void rollback() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            getSequence = ackSequence;
+            getMemSize = ackMemSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cleanAll() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (EventSegment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            readSegment = null;
+
+            putSequence = INIT_SQEUENCE;
+            getSequence = INIT_SQEUENCE;
+            ackSequence = INIT_SQEUENCE;
+            memSequence = 0;
+
+            putMemSize = 0;
+            getMemSize = 0;
+            ackMemSize = 0;
+            memSize = 0;
+            entries = null;
+            identityIndex.clear();
+            identities = new LogIdentity[0];
+            watchers.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =================== helper method =================
+
+    /**
+     * 检查内存是否有空位，内存不足时将最早的数据溢出到磁盘，磁盘也满了返回false
+     */
+    private boolean checkFreeSlotAt(List<Event> data) {
+        long size = 0;
+        if (batchMode.isMemSize()) {
+            for (Event event : data) {
+                size += calculateSize(event);
+            }
+        }
+
+        long maxMemSize = bufferSize * bufferMemUnit;
+        while (memSequence <= putSequence
+               && ((putSequence - memSequence + 1) + data.size() > bufferSize || (batchMode.isMemSize() && memSize
+                                                                                                           + size > maxMemSize))) {
+            if (!spill()) {
+                return false;
+            }
+        }
+
+        return data.size() <= bufferSize;
+    }
+
+    /**
+     * 将内存中最早的一条数据移出内存，已经ack的数据直接丢弃，未ack的数据写入磁盘segment
+     */
+    private boolean spill() {
+        long sequence = memSequence;
+        int index = getIndex(sequence);
+        Event event = entries[index];
+        if (sequence >= ackSequence) { // ack位置的数据需要保留，getFirstPosition/rollback时会用到
+            EventSegment segment = segments.isEmpty() ? null : segments.getLast();
+            int identity = identityOf(event.getLogIdentity());
+            if (segment == null || segment.getLastSequence() + 1 != sequence
+                || !segment.append(event, sequence, identity)) {
+                if (segments.size() >= maxSegmentCount) {
+                    return false;
+                }
+
+                segment = createSegment(sequence, event);
+                segments.add(segment);
+                if (!segment.append(event, sequence, identity)) {
+                    throw new CanalStoreException("event at sequence " + sequence + " is too large for segment");
+                }
+            }
+        }
+
+        entries[index] = null;
+        memSize -= calculateSize(event);
+        memSequence++;
+        return true;
+    }
+
+    private EventSegment createSegment(long firstSequence, Event event) {
+        File file = new File(storeDir, String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        int size = segmentSize;
+        // 超大的事件单独使用一个segment
+        long required = EventSegment.recordSize(event);
+        if (required > size) {
+            size = (int) Math.min(required, Integer.MAX_VALUE);
+        }
+
+        logger.info("create segment {} for destination {}", file.getName(), destination);
+        return new EventSegment(file, firstSequence, size, indexInterval);
+    }
+
+    /**
+     * 删除已经全部被ack的segment，同时释放内存中已经ack的数据
+     */
+    private void truncate() {
+        while (!segments.isEmpty() && segments.getFirst().getLastSequence() < ackSequence) {
+            EventSegment segment = segments.removeFirst();
+            if (segment == readSegment) {
+                readSegment = null;
+            }
+            segment.delete();
+        }
+
+        while (memSequence < ackSequence) {
+            int index = getIndex(memSequence);
+            memSize -= calculateSize(entries[index]);
+            entries[index] = null;
+            memSequence++;
+        }
+    }
+
+    /**
+     * 读取sequence对应的数据，内存中没有时从磁盘segment中读取
+     */
+    private Event readEvent(long sequence) {
+        if (sequence >= memSequence) {
+            return entries[getIndex(sequence)];
+        }
+
+        if (readSegment == null || readSequence != sequence) {
+            readSegment = null;
+            for (EventSegment segment : segments) {
+                if (segment.getFirstSequence() <= sequence && sequence <= segment.getLastSequence()) {
+                    readSegment = segment;
+                    readOffset = segment.find(sequence);
+                    readSequence = sequence;
+                    break;
+                }
+            }
+
+            if (readSegment == null) {
+                throw new CanalStoreException("sequence " + sequence + " is not found in segments");
+            }
+        }
+
+        Event event = readSegment.read(readOffset, identities);
+        if (sequence < readSegment.getLastSequence()) {
+            readOffset = readSegment.nextOffset(readOffset);
+            readSequence = sequence + 1;
+        } else {
+            readSegment = null;
+        }
+        return event;
+    }
+
+    private int identityOf(LogIdentity logIdentity) {
+        Integer identity = identityIndex.get(logIdentity);
+        if (identity == null) {
+            identity = identities.length;
+            identities = Arrays.copyOf(identities, identities.length + 1);
+            identities[identity] = logIdentity;
+            identityIndex.put(logIdentity, identity);
+        }
+
+        return identity;
+    }
+
+    /**
+     * 检查是否存在需要get的数据,并且数量>=batchSize
+     */
+    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+        if (batchMode.isItemSize()) {
+            long current = getSequence;
+            long maxAbleSequence = putSequence;
+            long next = current;
+            if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+                next = next + 1;// 少一条数据
+            }
+
+            if (current < maxAbleSequence && next + batchSize - 1 <= maxAbleSequence) {
+                return true;
+            } else {
+                return false;
+            }
+        } else {
+            // 处理内存大小判断
+            if (putMemSize - getMemSize >= batchSize * bufferMemUnit) {
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private long calculateSize(Event event) {
+        // 直接返回binlog中的事件大小
+        return event.getRawLength();
+    }
+
+    private int getIndex(long sequcnce) {
+        return (int) sequcnce & indexMask;
+    }
+
+    private boolean isDdl(EventType type) {
+        return type == EventType.ALTER || type == EventType.CREATE || type == EventType.ERASE
+               || type == EventType.RENAME || type == EventType.TRUNCATE || type == EventType.CINDEX
+               || type == EventType.DINDEX;
+    }
+
+    // ================ setter / getter ==================
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setBufferMemUnit(int bufferMemUnit) {
+        this.bufferMemUnit = bufferMemUnit;
+    }
+
+    public void setBatchMode(BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public void setDdlIsolation(boolean ddlIsolation) {
+        this.ddlIsolation = ddlIsolation;
+    }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setMaxSegmentCount(int maxSegmentCount) {
+        this.maxSegmentCount = maxSegmentCount;
+    }
+
+    public void setIndexInterval(int indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * 等待数据到达的监听
+     */
+    private static class Watcher {
+
+        private final LogPosition start;
+        private final int         batchSize;
+        private final Runnable    callback;
+
+        public Watcher(LogPosition start, int batchSize, Runnable callback){
+            this.start = start;
+            this.batchSize = batchSize;
+            this.callback = callback;
+        }
+    }
+
+}
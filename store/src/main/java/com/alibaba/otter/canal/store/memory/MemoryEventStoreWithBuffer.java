@@ -1,7 +1,13 @@
 package com.alibaba.otter.canal.store.memory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
@@ -9,17 +15,21 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.alibaba.otter.canal.protocol.position.PositionRange;
 import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
-import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalMultiClientEventStore;
 import com.alibaba.otter.canal.store.CanalStoreException;
 import com.alibaba.otter.canal.store.CanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalWatchableEventStore;
 import com.alibaba.otter.canal.store.helper.CanalEventUtils;
 import com.alibaba.otter.canal.store.model.BatchMode;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
+import com.google.common.collect.MapMaker;
 
 /**
  * 基于内存buffer构建内存memory store
@@ -28,36 +38,48 @@ import com.alibaba.otter.canal.store.model.Events;
  * 变更记录：
  * 1. 新增BatchMode类型，支持按内存大小获取批次数据，内存大小更加可控.
  *   a. put操作，会首先根据bufferSize进行控制，然后再进行bufferSize * bufferMemUnit进行控制. 因存储的内容是以Event，如果纯依赖于memsize进行控制，会导致RingBuffer出现动态伸缩
+ * 2. 支持按ClientIdentity维护独立的get/ack游标，多个client共享同一份解析数据，数据回收以所有client中最小的ack为准
+ * 3. get时记录每个批次结束位置的sequence和累计memsize，ack批次结束位置时直接定位，不再逐条扫描比对position
+ * 4. 支持注册数据到达的监听，put之后在lock外回调满足条件的监听
  * </pre>
  * 
  * @author jianghang 2012-6-20 上午09:46:31
  * @version 1.0.0
  */
-public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge implements CanalEventStore<Event>, CanalStoreScavenge {
+public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge implements CanalMultiClientEventStore<Event>, CanalWatchableEventStore<Event>, CanalStoreScavenge {
 
-    private static final long INIT_SQEUENCE = -1;
-    private int               bufferSize    = 16 * 1024;
-    private int               bufferMemUnit = 1024;                         // memsize的单位，默认为1kb大小
-    private int               indexMask;
-    private Event[]           entries;
+    private static final long           INIT_SQEUENCE = -1;
+    private int                         bufferSize    = 16 * 1024;
+    private int                         bufferMemUnit = 1024;                         // memsize的单位，默认为1kb大小
+    private int                         indexMask;
+    private Event[]                     entries;
 
     // 记录下put/get/ack操作的三个下标
-    private AtomicLong        putSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前put操作最后一次写操作发生的位置
-    private AtomicLong        getSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前get操作读取的最后一条的位置
-    private AtomicLong        ackSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前ack操作的最后一条的位置
+    private AtomicLong                  putSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前put操作最后一次写操作发生的位置
+    private AtomicLong                  getSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前get操作读取的最后一条的位置
+    private AtomicLong                  ackSequence   = new AtomicLong(INIT_SQEUENCE); // 代表当前ack操作的最后一条的位置
 
     // 记录下put/get/ack操作的三个memsize大小
-    private AtomicLong        putMemSize    = new AtomicLong(0);
-    private AtomicLong        getMemSize    = new AtomicLong(0);
-    private AtomicLong        ackMemSize    = new AtomicLong(0);
+    private AtomicLong                  putMemSize    = new AtomicLong(0);
+    private AtomicLong                  getMemSize    = new AtomicLong(0);
+    private AtomicLong                  ackMemSize    = new AtomicLong(0);
+
+    // 默认的get/ack游标，以及每个client独立的get/ack游标
+    private Cursor                      defaultCursor = new Cursor(getSequence, ackSequence, getMemSize, ackMemSize);
+    private Map<ClientIdentity, Cursor> clientCursors = new MapMaker().makeMap();
+    private Event                       minAckEvent;                                  // 最小ack位置的数据，该位置的槽可能已经被put覆盖
 
     // 阻塞put/get操作控制信号
-    private ReentrantLock     lock          = new ReentrantLock();
-    private Condition         notFull       = lock.newCondition();
-    private Condition         notEmpty      = lock.newCondition();
+    private ReentrantLock               lock          = new ReentrantLock();
+    private Condition                   notFull       = lock.newCondition();
+    private Condition                   notEmpty      = lock.newCondition();
+
+    // 等待数据到达的监听，由lock保护；满足条件的监听移到readyWatchers，在lock外回调
+    private List<Watcher>               watchers      = new ArrayList<Watcher>();
+    private Queue<Watcher>              readyWatchers = new ConcurrentLinkedQueue<Watcher>();
 
-    private BatchMode         batchMode     = BatchMode.ITEMSIZE;           // 默认为内存大小模式
-    private boolean           ddlIsolation  = false;
+    private BatchMode                   batchMode     = BatchMode.ITEMSIZE;           // 默认为内存大小模式
+    private boolean                     ddlIsolation  = false;
 
     public MemoryEventStoreWithBuffer(){
 
@@ -105,6 +127,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         } finally {
             lock.unlock();
+            fireWatchers();
         }
     }
 
@@ -135,6 +158,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         } finally {
             lock.unlock();
+            fireWatchers();
         }
     }
 
@@ -154,6 +178,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         } finally {
             lock.unlock();
+            fireWatchers();
         }
     }
 
@@ -194,22 +219,74 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
 
         // tell other threads that store is not empty
-        notEmpty.signal();
+        if (clientCursors.isEmpty()) {
+            notEmpty.signal();
+        } else {
+            notEmpty.signalAll(); // 多个client可能同时在等待
+        }
+
+        if (!watchers.isEmpty()) {
+            Iterator<Watcher> iterator = watchers.iterator();
+            while (iterator.hasNext()) {
+                Watcher watcher = iterator.next();
+                if (checkUnGetSlotAt(watcher.cursor, watcher.start, watcher.batchSize)) {
+                    iterator.remove();
+                    readyWatchers.offer(watcher);
+                }
+            }
+        }
     }
 
-    public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+    public void watch(ClientIdentity clientIdentity, Position start, int batchSize, Runnable callback)
+                                                                                                     throws CanalStoreException {
+        Watcher watcher = null;
         final ReentrantLock lock = this.lock;
-        lock.lockInterruptibly();
+        lock.lock();
         try {
-            try {
-                while (!checkUnGetSlotAt((LogPosition) start, batchSize))
-                    notEmpty.await();
-            } catch (InterruptedException ie) {
-                notEmpty.signal(); // propagate to non-interrupted thread
-                throw ie;
+            Cursor cursor = getCursor(clientIdentity);
+            watcher = new Watcher(cursor, (LogPosition) start, batchSize, callback);
+            if (!checkUnGetSlotAt(cursor, (LogPosition) start, batchSize)) {
+                watchers.add(watcher);
+                return;
             }
+        } finally {
+            lock.unlock();
+        }
+
+        // 已经有足够的数据，直接回调
+        watcher.callback.run();
+    }
 
-            return doGet(start, batchSize);
+    public void unwatch(Runnable callback) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Iterator<Watcher> iterator = watchers.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().callback == callback) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 回调put时已满足条件的监听，需要在lock外调用
+     */
+    private void fireWatchers() {
+        Watcher watcher = null;
+        while ((watcher = readyWatchers.poll()) != null) {
+            watcher.callback.run();
+        }
+    }
+
+    public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            return doBlockingGet(defaultCursor, start, batchSize);
         } finally {
             lock.unlock();
         }
@@ -217,47 +294,103 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
 
     public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
                                                                                         CanalStoreException {
-        long nanos = unit.toNanos(timeout);
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         try {
-            for (;;) {
-                if (checkUnGetSlotAt((LogPosition) start, batchSize)) {
-                    return doGet(start, batchSize);
-                }
+            return doBlockingGet(defaultCursor, start, batchSize, unit.toNanos(timeout));
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                if (nanos <= 0) {
-                    // 如果时间到了，有多少取多少
-                    return doGet(start, batchSize);
-                }
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return doGet(defaultCursor, start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                try {
-                    nanos = notEmpty.awaitNanos(nanos);
-                } catch (InterruptedException ie) {
-                    notEmpty.signal(); // propagate to non-interrupted thread
-                    throw ie;
-                }
+    public Events<Event> get(ClientIdentity clientIdentity, Position start, int batchSize)
+                                                                                          throws InterruptedException,
+                                                                                          CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            return doBlockingGet(getCursor(clientIdentity), start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            }
+    public Events<Event> get(ClientIdentity clientIdentity, Position start, int batchSize, long timeout,
+                             TimeUnit unit) throws InterruptedException, CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            return doBlockingGet(getCursor(clientIdentity), start, batchSize, unit.toNanos(timeout));
         } finally {
             lock.unlock();
         }
     }
 
-    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+    public Events<Event> tryGet(ClientIdentity clientIdentity, Position start, int batchSize)
+                                                                                             throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            return doGet(start, batchSize);
+            return doGet(getCursor(clientIdentity), start, batchSize);
         } finally {
             lock.unlock();
         }
     }
 
-    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+    /**
+     * 阻塞等待直到有足够的数据，需要在lock中调用
+     */
+    private Events<Event> doBlockingGet(Cursor cursor, Position start, int batchSize) throws InterruptedException {
+        try {
+            while (!checkUnGetSlotAt(cursor, (LogPosition) start, batchSize))
+                notEmpty.await();
+        } catch (InterruptedException ie) {
+            notEmpty.signal(); // propagate to non-interrupted thread
+            throw ie;
+        }
+
+        return doGet(cursor, start, batchSize);
+    }
+
+    /**
+     * 阻塞等待直到有足够的数据或者超时，需要在lock中调用
+     */
+    private Events<Event> doBlockingGet(Cursor cursor, Position start, int batchSize, long nanos)
+                                                                                                 throws InterruptedException {
+        for (;;) {
+            if (checkUnGetSlotAt(cursor, (LogPosition) start, batchSize)) {
+                return doGet(cursor, start, batchSize);
+            }
+
+            if (nanos <= 0) {
+                // 如果时间到了，有多少取多少
+                return doGet(cursor, start, batchSize);
+            }
+
+            try {
+                nanos = notEmpty.awaitNanos(nanos);
+            } catch (InterruptedException ie) {
+                notEmpty.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+
+        }
+    }
+
+    private Events<Event> doGet(Cursor cursor, Position start, int batchSize) throws CanalStoreException {
         LogPosition startPosition = (LogPosition) start;
 
-        long current = getSequence.get();
+        long current = cursor.getSequence.get();
         long maxAbleSequence = putSequence.get();
         long next = current;
         long end = current;
@@ -282,6 +415,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
                     // 如果是ddl隔离，直接返回
                     if (entrys.size() == 0) {
                         entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        memsize += calculateSize(event);
                         end = next; // 更新end为当前
                     } else {
                         // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
@@ -290,6 +424,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
                     break;
                 } else {
                     entrys.add(event);
+                    memsize += calculateSize(event);
                 }
             }
         } else {
@@ -301,6 +436,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
                     // 如果是ddl隔离，直接返回
                     if (entrys.size() == 0) {
                         entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        memsize += calculateSize(event);
                         end = next; // 更新end为当前
                     } else {
                         // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
@@ -333,8 +469,9 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         }
 
-        if (getSequence.compareAndSet(current, end)) {
-            getMemSize.addAndGet(memsize);
+        if (cursor.getSequence.compareAndSet(current, end)) {
+            // 记录批次的结束位置，ack时可以直接定位
+            cursor.addBoundary(end, cursor.getMemSize.addAndGet(memsize));
             notFull.signal();
             return result;
         } else {
@@ -346,40 +483,55 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            long firstSeqeuence = ackSequence.get();
-            if (firstSeqeuence == INIT_SQEUENCE && firstSeqeuence < putSequence.get()) {
-                // 没有ack过数据
-                Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack为-1，需要移动到下一条,included
-                                                                     // = false
-                return CanalEventUtils.createPosition(event, false);
-            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence < putSequence.get()) {
-                // ack未追上put操作
-                Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack的位置数据
-                                                                     // + 1
-                return CanalEventUtils.createPosition(event, true);
-            } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence == putSequence.get()) {
-                // 已经追上，store中没有数据
-                Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据，和last为同一条，included
-                                                                 // = false
-                return CanalEventUtils.createPosition(event, false);
-            } else {
-                // 没有任何数据
-                return null;
-            }
+            return doGetFirstPosition(getMinimumAck());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogPosition getFirstPosition(ClientIdentity clientIdentity) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Cursor cursor = clientCursors.get(clientIdentity);
+            return doGetFirstPosition(cursor != null ? cursor.ackSequence.get() : getMinimumAck());
         } finally {
             lock.unlock();
         }
     }
 
+    private LogPosition doGetFirstPosition(long firstSeqeuence) {
+        if (firstSeqeuence == INIT_SQEUENCE && firstSeqeuence < putSequence.get()) {
+            // 没有ack过数据
+            Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack为-1，需要移动到下一条,included
+                                                                 // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence < putSequence.get()) {
+            // ack未追上put操作
+            Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack的位置数据
+                                                                 // + 1
+            return CanalEventUtils.createPosition(event, true);
+        } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence == putSequence.get()) {
+            // 已经追上，store中没有数据
+            Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据，和last为同一条，included
+                                                             // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else {
+            // 没有任何数据
+            return null;
+        }
+    }
+
     public LogPosition getLatestPosition() throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
             long latestSequence = putSequence.get();
-            if (latestSequence > INIT_SQEUENCE && latestSequence != ackSequence.get()) {
+            long ackSequence = getMinimumAck();
+            if (latestSequence > INIT_SQEUENCE && latestSequence != ackSequence) {
                 Event event = entries[(int) putSequence.get() & indexMask]; // 最后一次写入的数据，最后一条未消费的数据
                 return CanalEventUtils.createPosition(event, true);
-            } else if (latestSequence > INIT_SQEUENCE && latestSequence == ackSequence.get()) {
+            } else if (latestSequence > INIT_SQEUENCE && latestSequence == ackSequence) {
                 // ack已经追上了put操作
                 Event event = entries[(int) putSequence.get() & indexMask]; // 最后一次写入的数据，included
                                                                             // =
@@ -398,51 +550,158 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         cleanUntil(position);
     }
 
+    public void ack(ClientIdentity clientIdentity, Position position) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Cursor cursor = clientCursors.get(clientIdentity);
+            if (cursor == null) {
+                throw new CanalStoreException("no cursor for client " + clientIdentity.toString());
+            }
+
+            doAck(cursor, position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public void cleanUntil(Position position) throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            long sequence = ackSequence.get();
-            long maxSequence = getSequence.get();
+            doAck(defaultCursor, position);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            boolean hasMatch = false;
+    /**
+     * 更新游标的ack位置，并释放所有游标都已经ack的数据，需要在lock中调用
+     */
+    private void doAck(Cursor cursor, Position position) throws CanalStoreException {
+        long minAckSequence = getMinimumAck();
+        long sequence = cursor.ackSequence.get();
+        long maxSequence = cursor.getSequence.get();
+
+        // 优先匹配get时记录的批次结束位置，ack的一般都是批次的end位置
+        AckBoundary boundary = null;
+        for (AckBoundary candidate : cursor.boundaries) {
+            if (CanalEventUtils.checkPosition(entries[getIndex(candidate.sequence)], (LogPosition) position)) {
+                boundary = candidate;
+                break;
+            }
+        }
+
+        long ackSequence = INIT_SQEUENCE;
+        long ackMemSize = 0;
+        if (boundary != null) {
+            ackSequence = boundary.sequence;
+            ackMemSize = boundary.memsize;
+        } else {
+            // 批次中间的位置，比如事务头/尾的ack点，退化为逐条比对
             long memsize = 0;
             for (long next = sequence + 1; next <= maxSequence; next++) {
                 Event event = entries[getIndex(next)];
                 memsize += calculateSize(event);
-                boolean match = CanalEventUtils.checkPosition(event, (LogPosition) position);
-                if (match) {// 找到对应的position，更新ack seq
-                    hasMatch = true;
-
-                    if (batchMode.isMemSize()) {
-                        ackMemSize.addAndGet(memsize);
-                        // 尝试清空buffer中的内存，将ack之前的内存全部释放掉
-                        for (long index = sequence + 1; index < next; index++) {
-                            entries[getIndex(index)] = null;// 设置为null
-                        }
-                    }
+                if (CanalEventUtils.checkPosition(event, (LogPosition) position)) {// 找到对应的position，更新ack seq
+                    ackSequence = next;
+                    ackMemSize = cursor.ackMemSize.get() + memsize;
+                    break;
+                }
+            }
+        }
 
-                    if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
-                        notFull.signal();
-                        return;
-                    }
+        if (ackSequence == INIT_SQEUENCE) {// 找不到对应需要ack的position
+            throw new CanalStoreException("no match ack position" + position.toString());
+        }
+
+        if (cursor.ackSequence.compareAndSet(sequence, ackSequence)) {// 避免并发ack
+            cursor.ackMemSize.set(ackMemSize);
+            cursor.removeBoundaries(ackSequence);
+            long newMinAckSequence = getMinimumAck();
+            if (batchMode.isMemSize()) {
+                // 尝试清空buffer中的内存，将所有游标都ack之前的内存全部释放掉
+                for (long index = minAckSequence + 1; index < newMinAckSequence; index++) {
+                    entries[getIndex(index)] = null;// 设置为null
                 }
             }
+            if (newMinAckSequence != minAckSequence) {
+                minAckEvent = entries[getIndex(newMinAckSequence)];
+            }
+
+            notFull.signal();
+        }
+    }
+
+    public void rollback() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            defaultCursor.rollback();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            if (!hasMatch) {// 找不到对应需要ack的position
-                throw new CanalStoreException("no match ack position" + position.toString());
+    public void rollback(ClientIdentity clientIdentity) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Cursor cursor = clientCursors.get(clientIdentity);
+            if (cursor != null) {
+                cursor.rollback();
             }
         } finally {
             lock.unlock();
         }
     }
 
-    public void rollback() throws CanalStoreException {
+    public void subscribe(ClientIdentity clientIdentity, Position position) throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            getSequence.set(ackSequence.get());
-            getMemSize.set(ackMemSize.get());
+            if (clientCursors.containsKey(clientIdentity)) {
+                return; // 重复订阅，保留原有游标
+            }
+
+            long minAckSequence = getMinimumAck();
+            long sequence = minAckSequence;
+            if (position != null && ((LogPosition) position).getPostion() != null) {
+                sequence = seekSequence(minAckSequence, (LogPosition) position);
+            }
+
+            long memsize = getMinimumAckMemSize();
+            for (long next = minAckSequence + 1; next <= sequence; next++) {
+                memsize += calculateSize(entries[getIndex(next)]);
+            }
+            clientCursors.put(clientIdentity, new Cursor(new AtomicLong(sequence),
+                new AtomicLong(sequence),
+                new AtomicLong(memsize),
+                new AtomicLong(memsize)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unsubscribe(ClientIdentity clientIdentity) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long minAckSequence = getMinimumAck();
+            Cursor cursor = clientCursors.remove(clientIdentity);
+            if (cursor != null) {
+                if (clientCursors.isEmpty()) {
+                    // 最后一个client，默认游标接着它的ack位置，否则默认游标还停留在client订阅之前的位置
+                    ackSequence.set(cursor.ackSequence.get());
+                    ackMemSize.set(cursor.ackMemSize.get());
+                    defaultCursor.rollback();
+                }
+                long newMinAckSequence = getMinimumAck();
+                if (newMinAckSequence != minAckSequence && newMinAckSequence > INIT_SQEUENCE) {
+                    minAckEvent = entries[getIndex(newMinAckSequence)];
+                }
+                notFull.signal(); // 释放掉该client占用的数据
+            }
         } finally {
             lock.unlock();
         }
@@ -459,6 +718,10 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             putMemSize.set(0);
             getMemSize.set(0);
             ackMemSize.set(0);
+            defaultCursor.boundaries.clear();
+            clientCursors.clear();
+            minAckEvent = null;
+            watchers.clear();
             entries = null;
             // for (int i = 0; i < entries.length; i++) {
             // entries[i] = null;
@@ -470,10 +733,130 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
 
     // =================== helper method =================
 
+    /**
+     * 获取client的游标，没有subscribe时在第一次访问时创建，从最早未回收的数据开始，需要在lock中调用
+     */
+    private Cursor getCursor(ClientIdentity clientIdentity) {
+        Cursor cursor = clientCursors.get(clientIdentity);
+        if (cursor == null) {
+            long sequence = getMinimumAck();
+            long memsize = getMinimumAckMemSize();
+            cursor = new Cursor(new AtomicLong(sequence),
+                new AtomicLong(sequence),
+                new AtomicLong(memsize),
+                new AtomicLong(memsize));
+            clientCursors.put(clientIdentity, cursor);
+        }
+
+        return cursor;
+    }
+
+    /**
+     * 在未回收的数据中查找client最后一次消费的位置，需要在lock中调用
+     */
+    private long seekSequence(long minAckSequence, LogPosition position) throws CanalStoreException {
+        if (minAckSequence > INIT_SQEUENCE && minAckEvent != null && comparePosition(minAckEvent, position) == 0) {
+            // 刚好是所有client都已经消费的位置
+            if (position.getPostion().isIncluded()) {
+                throw new CanalStoreException("position " + position + " has been reclaimed");
+            }
+            return minAckSequence;
+        }
+
+        long maxSequence = putSequence.get();
+        long sequence = INIT_SQEUENCE;
+        boolean found = false;
+        for (long next = minAckSequence + 1; next <= maxSequence; next++) {
+            Event event = entries[getIndex(next)];
+            if (event == null) {
+                continue;
+            }
+
+            int compare = comparePosition(event, position);
+            if (compare > 0) {
+                break;
+            }
+            // included代表该条数据还未消费
+            sequence = (compare == 0 && position.getPostion().isIncluded()) ? next - 1 : next;
+            found = true;
+            if (compare == 0) {
+                break;
+            }
+        }
+
+        if (!found) {
+            if (minAckSequence > INIT_SQEUENCE) {
+                throw new CanalStoreException("position " + position + " has been reclaimed");
+            }
+            sequence = INIT_SQEUENCE;
+        }
+        if (sequence < minAckSequence) {
+            throw new CanalStoreException("position " + position + " has been reclaimed");
+        }
+        return sequence;
+    }
+
+    /**
+     * 比较event和position的先后，优先按照binlog文件名+offset，没有文件信息时按照时间戳
+     */
+    private int comparePosition(Event event, LogPosition logPosition) {
+        if (CanalEventUtils.checkPosition(event, logPosition)) {
+            return 0;
+        }
+
+        EntryPosition position = logPosition.getPostion();
+        if (event.getJournalName() != null && position.getJournalName() != null && position.getPosition() != null) {
+            int compare = event.getJournalName().compareTo(position.getJournalName());
+            if (compare != 0) {
+                return compare;
+            }
+            if (event.getPosition() != position.getPosition()) {
+                return event.getPosition() < position.getPosition() ? -1 : 1;
+            }
+        }
+        return event.getExecuteTime() <= position.getTimestamp() ? -1 : 1;
+    }
+
+    /**
+     * 所有游标中最小的ack位置，存在client游标时只看client游标
+     */
+    private long getMinimumAck() {
+        if (clientCursors.isEmpty()) {
+            return ackSequence.get();
+        }
+
+        long min = Long.MAX_VALUE;
+        for (Cursor cursor : clientCursors.values()) {
+            long ack = cursor.ackSequence.get();
+            min = ack < min ? ack : min;
+        }
+        return min;
+    }
+
+    private long getMinimumAckMemSize() {
+        if (clientCursors.isEmpty()) {
+            return ackMemSize.get();
+        }
+
+        long min = Long.MAX_VALUE;
+        for (Cursor cursor : clientCursors.values()) {
+            long ack = cursor.ackMemSize.get();
+            min = ack < min ? ack : min;
+        }
+        return min;
+    }
+
     private long getMinimumGetOrAck() {
-        long get = getSequence.get();
-        long ack = ackSequence.get();
-        return ack <= get ? ack : get;
+        if (clientCursors.isEmpty()) {
+            return defaultCursor.getMinimumGetOrAck();
+        }
+
+        long min = Long.MAX_VALUE;
+        for (Cursor cursor : clientCursors.values()) {
+            long value = cursor.getMinimumGetOrAck();
+            min = value < min ? value : min;
+        }
+        return min;
     }
 
     /**
@@ -487,7 +870,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         } else {
             // 在bufferSize模式上，再增加memSize控制
             if (batchMode.isMemSize()) {
-                final long memsize = putMemSize.get() - ackMemSize.get();
+                final long memsize = putMemSize.get() - getMinimumAckMemSize();
                 if (memsize < bufferSize * bufferMemUnit) {
                     return true;
                 } else {
@@ -502,9 +885,9 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     /**
      * 检查是否存在需要get的数据,并且数量>=batchSize
      */
-    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+    private boolean checkUnGetSlotAt(Cursor cursor, LogPosition startPosition, int batchSize) {
         if (batchMode.isItemSize()) {
-            long current = getSequence.get();
+            long current = cursor.getSequence.get();
             long maxAbleSequence = putSequence.get();
             long next = current;
             if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
@@ -518,7 +901,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         } else {
             // 处理内存大小判断
-            long currentSize = getMemSize.get();
+            long currentSize = cursor.getMemSize.get();
             long maxAbleSize = putMemSize.get();
 
             if (maxAbleSize - currentSize >= batchSize * bufferMemUnit) {
@@ -544,6 +927,82 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
                || type == EventType.DINDEX;
     }
 
+    /**
+     * 消费者的get/ack游标
+     */
+    private static class Cursor {
+
+        private final AtomicLong             getSequence;
+        private final AtomicLong             ackSequence;
+        private final AtomicLong             getMemSize;
+        private final AtomicLong             ackMemSize;
+        private final ArrayDeque<AckBoundary> boundaries = new ArrayDeque<AckBoundary>(); // 已get未ack的批次结束位置
+
+        public Cursor(AtomicLong getSequence, AtomicLong ackSequence, AtomicLong getMemSize, AtomicLong ackMemSize){
+            this.getSequence = getSequence;
+            this.ackSequence = ackSequence;
+            this.getMemSize = getMemSize;
+            this.ackMemSize = ackMemSize;
+        }
+
+        public long getMinimumGetOrAck() {
+            long get = getSequence.get();
+            long ack = ackSequence.get();
+            return ack <= get ? ack : get;
+        }
+
+        public void rollback() {
+            getSequence.set(ackSequence.get());
+            getMemSize.set(ackMemSize.get());
+            boundaries.clear();
+        }
+
+        public void addBoundary(long sequence, long memsize) {
+            boundaries.addLast(new AckBoundary(sequence, memsize));
+        }
+
+        /**
+         * 移除ack位置之前(包含)的批次
+         */
+        public void removeBoundaries(long sequence) {
+            while (!boundaries.isEmpty() && boundaries.peekFirst().sequence <= sequence) {
+                boundaries.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * 等待数据到达的监听
+     */
+    private static class Watcher {
+
+        private final Cursor      cursor;
+        private final LogPosition start;
+        private final int         batchSize;
+        private final Runnable    callback;
+
+        public Watcher(Cursor cursor, LogPosition start, int batchSize, Runnable callback){
+            this.cursor = cursor;
+            this.start = start;
+            this.batchSize = batchSize;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * get批次的结束位置，以及截止到该位置的累计memsize
+     */
+    private static class AckBoundary {
+
+        private final long sequence;
+        private final long memsize;
+
+        public AckBoundary(long sequence, long memsize){
+            this.sequence = sequence;
+            this.memsize = memsize;
+        }
+    }
+
     // ================ setter / getter ==================
 
     public void setBufferSize(int bufferSize) {
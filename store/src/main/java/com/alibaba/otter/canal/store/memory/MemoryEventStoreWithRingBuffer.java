@@ -0,0 +1,599 @@
+package com.alibaba.otter.canal.store.memory;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
+import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalWatchableEventStore;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.memory.ringbuffer.BlockingWaitStrategy;
+import com.alibaba.otter.canal.store.memory.ringbuffer.Sequence;
+import com.alibaba.otter.canal.store.memory.ringbuffer.WaitStrategy;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 基于无锁ringbuffer构建的内存memory store，语义和{@linkplain MemoryEventStoreWithBuffer}保持一致
+ *
+ * <pre>
+ * 设计说明：
+ * 1. put/get/ack三个下标采用cache line填充的{@linkplain Sequence}，避免伪共享
+ * 2. put操作先通过CAS申请claimSequence，写完数据后按申请顺序发布putSequence，支持多个写入者
+ * 3. get操作通过CAS更新getSequence，put/get之间不再竞争同一把锁，等待行为由{@linkplain WaitStrategy}决定
+ * 4. ack/rollback/cleanAll属于低频操作，使用独立的锁串行化，不影响put/get
+ * 5. get和rollback之间的并发由调用方保证(比如CanalServerWithEmbedded中对instance加锁)
+ * 6. 数据到达的监听放在无锁队列中，发布putSequence之后检查，先从队列中移除成功的一方负责回调，保证只回调一次
+ * </pre>
+ *
+ * @version 1.0.26
+ */
+public class MemoryEventStoreWithRingBuffer extends AbstractCanalStoreScavenge implements CanalWatchableEventStore<Event>, CanalStoreScavenge {
+
+    private static final long INIT_SQEUENCE = -1;
+    private static final long CLAIM_FAILED  = Long.MIN_VALUE;
+    private int               bufferSize    = 16 * 1024;
+    private int               bufferMemUnit = 1024;                             // memsize的单位，默认为1kb大小
+    private int               indexMask;
+    private Event[]           entries;
+
+    // 记录下claim/put/get/ack操作的下标
+    private final Sequence    claimSequence = new Sequence(INIT_SQEUENCE);      // 代表当前put操作已申请的最后一个位置
+    private final Sequence    putSequence   = new Sequence(INIT_SQEUENCE);      // 代表当前put操作最后一次写操作发生的位置
+    private final Sequence    getSequence   = new Sequence(INIT_SQEUENCE);      // 代表当前get操作读取的最后一条的位置
+    private final Sequence    ackSequence   = new Sequence(INIT_SQEUENCE);      // 代表当前ack操作的最后一条的位置
+
+    // 记录下put/get/ack操作的三个memsize大小
+    private final Sequence    putMemSize    = new Sequence(0);
+    private final Sequence    getMemSize    = new Sequence(0);
+    private final Sequence    ackMemSize    = new Sequence(0);
+
+    // ack/rollback等低频操作的控制锁
+    private final Object      controlLock   = new Object();
+    private WaitStrategy      waitStrategy  = new BlockingWaitStrategy();
+    // 等待数据到达的监听
+    private final Queue<Watcher> watchers   = new ConcurrentLinkedQueue<Watcher>();
+
+    private BatchMode         batchMode     = BatchMode.ITEMSIZE;               // 默认为内存大小模式
+    private boolean           ddlIsolation  = false;
+
+    public MemoryEventStoreWithRingBuffer(){
+
+    }
+
+    public MemoryEventStoreWithRingBuffer(BatchMode batchMode){
+        this.batchMode = batchMode;
+    }
+
+    public void start() throws CanalStoreException {
+        super.start();
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+
+        indexMask = bufferSize - 1;
+        entries = new Event[bufferSize];
+    }
+
+    public void stop() throws CanalStoreException {
+        super.stop();
+
+        cleanAll();
+    }
+
+    public void put(List<Event> data) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        doPut(data, Long.MAX_VALUE);
+    }
+
+    public boolean put(List<Event> data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        long nanos = unit.toNanos(timeout);
+        return doPut(data, nanos > 0 ? nanos : 0);
+    }
+
+    public boolean tryPut(List<Event> data) throws CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        long current = tryClaim(data.size());
+        if (current == CLAIM_FAILED) {
+            return false;
+        }
+
+        publish(current, data);
+        return true;
+    }
+
+    public void put(Event data) throws InterruptedException, CanalStoreException {
+        put(Arrays.asList(data));
+    }
+
+    public boolean put(Event data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        return put(Arrays.asList(data), timeout, unit);
+    }
+
+    public boolean tryPut(Event data) throws CanalStoreException {
+        return tryPut(Arrays.asList(data));
+    }
+
+    /**
+     * 申请空位并写入数据，nanos为Long.MAX_VALUE时一直等待
+     */
+    private boolean doPut(final List<Event> data, long nanos) throws InterruptedException {
+        final int size = data.size();
+        WaitStrategy.Barrier freeSlot = new WaitStrategy.Barrier() {
+
+            public boolean isAvailable() {
+                return checkFreeSlotAt(claimSequence.get() + size);
+            }
+        };
+
+        for (;;) {
+            long current = tryClaim(size);
+            if (current != CLAIM_FAILED) {
+                publish(current, data);
+                return true;
+            }
+
+            if (nanos <= 0) {
+                return false;
+            }
+
+            long start = System.nanoTime();
+            if (!waitStrategy.waitFor(freeSlot, nanos)) {
+                return false;
+            }
+
+            if (nanos != Long.MAX_VALUE) {
+                nanos -= System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * 尝试申请size个空位，返回申请前的位置，没有空位返回CLAIM_FAILED
+     */
+    private long tryClaim(int size) {
+        for (;;) {
+            long current = claimSequence.get();
+            long next = current + size;
+            if (!checkFreeSlotAt(next)) {
+                return CLAIM_FAILED;
+            }
+
+            if (claimSequence.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 写入已申请到的位置，并按申请顺序发布putSequence
+     */
+    private void publish(long current, List<Event> data) {
+        long end = current + data.size();
+        // 先写数据，再更新对应的cursor
+        for (long next = current + 1; next <= end; next++) {
+            entries[getIndex(next)] = data.get((int) (next - current - 1));
+        }
+
+        // 记录一下gets memsize信息，方便快速检索
+        long size = 0;
+        if (batchMode.isMemSize()) {
+            for (Event event : data) {
+                size += calculateSize(event);
+            }
+        }
+
+        // 等待前一个申请者发布完成，保证putSequence连续递增
+        while (putSequence.get() != current) {
+            Thread.yield();
+        }
+
+        if (size > 0) {
+            putMemSize.addAndGet(size);
+        }
+        putSequence.setOrdered(end);
+
+        // tell other threads that store is not empty
+        waitStrategy.signalAllWhenBlocking();
+        if (!watchers.isEmpty()) {
+            fireWatchers();
+        }
+    }
+
+    public void watch(ClientIdentity clientIdentity, Position start, int batchSize, Runnable callback)
+                                                                                                     throws CanalStoreException {
+        Watcher watcher = new Watcher((LogPosition) start, batchSize, callback);
+        watchers.offer(watcher);
+        // 先注册再检查，避免和并发的put之间丢失通知
+        if (checkUnGetSlotAt(watcher.start, watcher.batchSize) && watchers.remove(watcher)) {
+            watcher.callback.run();
+        }
+    }
+
+    public void unwatch(Runnable callback) throws CanalStoreException {
+        Iterator<Watcher> iterator = watchers.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().callback == callback) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 回调已满足条件的监听，只有从队列中移除成功的线程执行回调
+     */
+    private void fireWatchers() {
+        for (Watcher watcher : watchers) {
+            if (checkUnGetSlotAt(watcher.start, watcher.batchSize) && watchers.remove(watcher)) {
+                watcher.callback.run();
+            }
+        }
+    }
+
+    public Events<Event> get(final Position start, final int batchSize) throws InterruptedException,
+                                                                       CanalStoreException {
+        WaitStrategy.Barrier barrier = new WaitStrategy.Barrier() {
+
+            public boolean isAvailable() {
+                return checkUnGetSlotAt((LogPosition) start, batchSize);
+            }
+        };
+        // 等到的数据可能被并发的get取走，没有取到时继续等待，阻塞的get不返回空
+        for (;;) {
+            waitStrategy.waitFor(barrier, Long.MAX_VALUE);
+            Events<Event> events = doGet(start, batchSize);
+            if (!events.getEvents().isEmpty()) {
+                return events;
+            }
+        }
+    }
+
+    public Events<Event> get(final Position start, final int batchSize, long timeout, TimeUnit unit)
+                                                                                                    throws InterruptedException,
+                                                                                                    CanalStoreException {
+        long nanos = unit.toNanos(timeout);
+        waitStrategy.waitFor(new WaitStrategy.Barrier() {
+
+            public boolean isAvailable() {
+                return checkUnGetSlotAt((LogPosition) start, batchSize);
+            }
+        }, nanos > 0 ? nanos : 0);
+
+        // 如果时间到了，有多少取多少
+        return doGet(start, batchSize);
+    }
+
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        return doGet(start, batchSize);
+    }
+
+    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+        LogPosition startPosition = (LogPosition) start;
+        // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+        boolean included = startPosition != null && startPosition.getPostion().isIncluded();
+        // 和tryClaim一样，CAS失败时重新读取，只有确实没有可取的数据时才返回空
+        for (;;) {
+            long current = getSequence.get();
+            long maxAbleSequence = putSequence.get();
+            long next = current;
+            long end = current;
+            // 如果startPosition为null，说明是第一次，默认+1处理
+            if (!included) {
+                next = next + 1;
+            }
+
+            if (current >= maxAbleSequence) {
+                return new Events<Event>();
+            }
+
+            Events<Event> result = new Events<Event>();
+            List<Event> entrys = result.getEvents();
+            long memsize = 0;
+            if (batchMode.isItemSize()) {
+                end = (next + batchSize - 1) < maxAbleSequence ? (next + batchSize - 1) : maxAbleSequence;
+                // 提取数据并返回
+                for (; next <= end; next++) {
+                    Event event = entries[getIndex(next)];
+                    if (ddlIsolation && isDdl(event.getEventType())) {
+                        // 如果是ddl隔离，直接返回
+                        if (entrys.size() == 0) {
+                            entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                            end = next; // 更新end为当前
+                        } else {
+                            // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                            end = next - 1; // next-1一定大于current，不需要判断
+                        }
+                        break;
+                    } else {
+                        entrys.add(event);
+                    }
+                }
+            } else {
+                long maxMemSize = batchSize * bufferMemUnit;
+                for (; memsize <= maxMemSize && next <= maxAbleSequence; next++) {
+                    // 永远保证可以取出第一条的记录，避免死锁
+                    Event event = entries[getIndex(next)];
+                    if (ddlIsolation && isDdl(event.getEventType())) {
+                        // 如果是ddl隔离，直接返回
+                        if (entrys.size() == 0) {
+                            entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                            end = next; // 更新end为当前
+                        } else {
+                            // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                            end = next - 1; // next-1一定大于current，不需要判断
+                        }
+                        break;
+                    } else {
+                        entrys.add(event);
+                        memsize += calculateSize(event);
+                        end = next;// 记录end位点
+                    }
+                }
+
+            }
+
+            PositionRange<LogPosition> range = new PositionRange<LogPosition>();
+            result.setPositionRange(range);
+
+            range.setStart(CanalEventUtils.createPosition(entrys.get(0)));
+            range.setEnd(CanalEventUtils.createPosition(entrys.get(result.getEvents().size() - 1)));
+            // 记录一下是否存在可以被ack的点
+
+            for (int i = entrys.size() - 1; i >= 0; i--) {
+                Event event = entrys.get(i);
+                if (CanalEntry.EntryType.TRANSACTIONBEGIN == event.getEntryType()
+                    || CanalEntry.EntryType.TRANSACTIONEND == event.getEntryType() || isDdl(event.getEventType())) {
+                    // 将事务头/尾设置可被为ack的点
+                    range.setAck(CanalEventUtils.createPosition(event));
+                    break;
+                }
+            }
+
+            if (getSequence.compareAndSet(current, end)) {
+                getMemSize.addAndGet(memsize);
+                waitStrategy.signalAllWhenBlocking();
+                return result;
+            }
+            // 并发的get已经移动了getSequence，数据可能还有剩余，从新的getSequence之后重新读取
+            included = false;
+        }
+    }
+
+    public LogPosition getFirstPosition() throws CanalStoreException {
+        long firstSeqeuence = ackSequence.get();
+        long latestSequence = putSequence.get();
+        if (firstSeqeuence == INIT_SQEUENCE && firstSeqeuence < latestSequence) {
+            // 没有ack过数据
+            Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack为-1，需要移动到下一条,included
+                                                                 // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence < latestSequence) {
+            // ack未追上put操作
+            Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack的位置数据
+                                                                 // + 1
+            return CanalEventUtils.createPosition(event, true);
+        } else if (firstSeqeuence > INIT_SQEUENCE && firstSeqeuence == latestSequence) {
+            // 已经追上，store中没有数据
+            Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据，和last为同一条，included
+                                                             // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else {
+            // 没有任何数据
+            return null;
+        }
+    }
+
+    public LogPosition getLatestPosition() throws CanalStoreException {
+        long latestSequence = putSequence.get();
+        if (latestSequence > INIT_SQEUENCE && latestSequence != ackSequence.get()) {
+            Event event = entries[getIndex(latestSequence)]; // 最后一次写入的数据，最后一条未消费的数据
+            return CanalEventUtils.createPosition(event, true);
+        } else if (latestSequence > INIT_SQEUENCE && latestSequence == ackSequence.get()) {
+            // ack已经追上了put操作
+            Event event = entries[getIndex(latestSequence)]; // 最后一次写入的数据，included
+                                                             // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else {
+            // 没有任何数据
+            return null;
+        }
+    }
+
+    public void ack(Position position) throws CanalStoreException {
+        cleanUntil(position);
+    }
+
+    public void cleanUntil(Position position) throws CanalStoreException {
+        synchronized (controlLock) {
+            long sequence = ackSequence.get();
+            long maxSequence = getSequence.get();
+
+            boolean hasMatch = false;
+            long memsize = 0;
+            for (long next = sequence + 1; next <= maxSequence; next++) {
+                Event event = entries[getIndex(next)];
+                memsize += calculateSize(event);
+                boolean match = CanalEventUtils.checkPosition(event, (LogPosition) position);
+                if (match) {// 找到对应的position，更新ack seq
+                    hasMatch = true;
+
+                    if (batchMode.isMemSize()) {
+                        ackMemSize.addAndGet(memsize);
+                        // 尝试清空buffer中的内存，将ack之前的内存全部释放掉
+                        for (long index = sequence + 1; index < next; index++) {
+                            entries[getIndex(index)] = null;// 设置为null
+                        }
+                    }
+
+                    if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
+                        waitStrategy.signalAllWhenBlocking();
+                        return;
+                    }
+                }
+            }
+
+            if (!hasMatch) {// 找不到对应需要ack的position
+                throw new CanalStoreException("no match ack position" + position.toString());
+            }
+        }
+    }
+
+    public void rollback() throws CanalStoreException {
+        synchronized (controlLock) {
+            getSequence.set(ackSequence.get());
+            getMemSize.set(ackMemSize.get());
+        }
+    }
+
+    public void cleanAll() throws CanalStoreException {
+        synchronized (controlLock) {
+            claimSequence.set(INIT_SQEUENCE);
+            putSequence.set(INIT_SQEUENCE);
+            getSequence.set(INIT_SQEUENCE);
+            ackSequence.set(INIT_SQEUENCE);
+
+            putMemSize.set(0);
+            getMemSize.set(0);
+            ackMemSize.set(0);
+            entries = null;
+            watchers.clear();
+        }
+    }
+
+    // =================== helper method =================
+
+    private long getMinimumGetOrAck() {
+        long get = getSequence.get();
+        long ack = ackSequence.get();
+        return ack <= get ? ack : get;
+    }
+
+    /**
+     * 查询是否有空位
+     */
+    private boolean checkFreeSlotAt(final long sequence) {
+        final long wrapPoint = sequence - bufferSize;
+        final long minPoint = getMinimumGetOrAck();
+        if (wrapPoint > minPoint) { // 刚好追上一轮
+            return false;
+        } else {
+            // 在bufferSize模式上，再增加memSize控制
+            if (batchMode.isMemSize()) {
+                final long memsize = putMemSize.get() - ackMemSize.get();
+                if (memsize < bufferSize * bufferMemUnit) {
+                    return true;
+                } else {
+                    return false;
+                }
+            } else {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 检查是否存在需要get的数据,并且数量>=batchSize
+     */
+    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+        if (batchMode.isItemSize()) {
+            long current = getSequence.get();
+            long maxAbleSequence = putSequence.get();
+            long next = current;
+            if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+                next = next + 1;// 少一条数据
+            }
+
+            if (current < maxAbleSequence && next + batchSize - 1 <= maxAbleSequence) {
+                return true;
+            } else {
+                return false;
+            }
+        } else {
+            // 处理内存大小判断
+            long currentSize = getMemSize.get();
+            long maxAbleSize = putMemSize.get();
+
+            if (maxAbleSize - currentSize >= batchSize * bufferMemUnit) {
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private long calculateSize(Event event) {
+        // 直接返回binlog中的事件大小
+        return event.getRawLength();
+    }
+
+    private int getIndex(long sequcnce) {
+        return (int) sequcnce & indexMask;
+    }
+
+    private boolean isDdl(EventType type) {
+        return type == EventType.ALTER || type == EventType.CREATE || type == EventType.ERASE
+               || type == EventType.RENAME || type == EventType.TRUNCATE || type == EventType.CINDEX
+               || type == EventType.DINDEX;
+    }
+
+    // ================ setter / getter ==================
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setBufferMemUnit(int bufferMemUnit) {
+        this.bufferMemUnit = bufferMemUnit;
+    }
+
+    public void setBatchMode(BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public void setDdlIsolation(boolean ddlIsolation) {
+        this.ddlIsolation = ddlIsolation;
+    }
+
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * 等待数据到达的监听
+     */
+    private static class Watcher {
+
+        private final LogPosition start;
+        private final int         batchSize;
+        private final Runnable    callback;
+
+        public Watcher(LogPosition start, int batchSize, Runnable callback){
+            this.start = start;
+            this.batchSize = batchSize;
+            this.callback = callback;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.alibaba.otter.canal.store.memory.ringbuffer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于lock + condition的阻塞等待，只有存在等待者时才会在signal时获取锁，避免put/get之间频繁交换锁
+ * 
+ * @version 1.0.26
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private final ReentrantLock lock         = new ReentrantLock();
+    private final Condition     condition    = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    public boolean waitFor(Barrier barrier, long nanos) throws InterruptedException {
+        if (barrier.isAvailable()) {
+            return true;
+        }
+
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                signalNeeded.getAndSet(true); // 先声明存在等待者，再检查条件，避免丢失signal
+                if (barrier.isAvailable()) {
+                    return true;
+                }
+
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                if (nanos == Long.MAX_VALUE) {
+                    condition.await();
+                } else {
+                    nanos = condition.awaitNanos(nanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void signalAllWhenBlocking() {
+        if (signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
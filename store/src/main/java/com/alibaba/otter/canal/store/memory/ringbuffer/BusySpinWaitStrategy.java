@@ -0,0 +1,29 @@
+package com.alibaba.otter.canal.store.memory.ringbuffer;
+
+/**
+ * 纯自旋等待，延迟最低，但会一直占用cpu，适合线程绑核的场景
+ * 
+ * @version 1.0.26
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    public boolean waitFor(Barrier barrier, long nanos) throws InterruptedException {
+        long deadline = (nanos == Long.MAX_VALUE) ? Long.MAX_VALUE : System.nanoTime() + nanos;
+        while (!barrier.isAvailable()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void signalAllWhenBlocking() {
+        // do nothing
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.alibaba.otter.canal.store.memory.ringbuffer;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+class LhsPadding {
+
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class Value extends LhsPadding {
+
+    protected volatile long value;
+}
+
+class RhsPadding extends Value {
+
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * 参考disruptor的Sequence实现，前后填充cache line，避免put/get/ack三个下标之间出现伪共享
+ * 
+ * @version 1.0.26
+ */
+public class Sequence extends RhsPadding {
+
+    private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater.newUpdater(Value.class,
+                                                                   "value");
+
+    public Sequence(long initialValue){
+        UPDATER.lazySet(this, initialValue);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    /**
+     * 有序写入(store-store barrier)，适合单写者发布位置
+     */
+    public void setOrdered(long newValue) {
+        UPDATER.lazySet(this, newValue);
+    }
+
+    public void set(long newValue) {
+        value = newValue;
+    }
+
+    public boolean compareAndSet(long expect, long update) {
+        return UPDATER.compareAndSet(this, expect, update);
+    }
+
+    public long addAndGet(long increment) {
+        return UPDATER.addAndGet(this, increment);
+    }
+
+    public double doubleValue() {
+        return (double) value;
+    }
+
+    public String toString() {
+        return Long.toString(value);
+    }
+}
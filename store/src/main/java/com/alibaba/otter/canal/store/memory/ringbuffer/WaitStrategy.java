@@ -0,0 +1,31 @@
+package com.alibaba.otter.canal.store.memory.ringbuffer;
+
+/**
+ * ringbuffer中put/get操作的等待策略
+ * 
+ * @version 1.0.26
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等待直到barrier可用或者超时
+     * 
+     * @param barrier 等待的条件
+     * @param nanos 最长等待时间，Long.MAX_VALUE代表一直等待
+     * @return barrier是否可用，超时返回false
+     */
+    boolean waitFor(Barrier barrier, long nanos) throws InterruptedException;
+
+    /**
+     * 状态发生变化后，通知阻塞中的等待者
+     */
+    void signalAllWhenBlocking();
+
+    /**
+     * 等待的条件
+     */
+    public static interface Barrier {
+
+        boolean isAvailable();
+    }
+}
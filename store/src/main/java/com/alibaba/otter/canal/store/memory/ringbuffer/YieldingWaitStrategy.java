@@ -0,0 +1,38 @@
+package com.alibaba.otter.canal.store.memory.ringbuffer;
+
+/**
+ * 先自旋一定次数，之后采用Thread.yield()让出cpu，适合低延迟且cpu较为充裕的场景
+ * 
+ * @version 1.0.26
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    public boolean waitFor(Barrier barrier, long nanos) throws InterruptedException {
+        long deadline = (nanos == Long.MAX_VALUE) ? Long.MAX_VALUE : System.nanoTime() + nanos;
+        int counter = SPIN_TRIES;
+        while (!barrier.isAvailable()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+
+            if (counter > 0) {
+                --counter;
+            } else {
+                Thread.yield();
+            }
+        }
+
+        return true;
+    }
+
+    public void signalAllWhenBlocking() {
+        // do nothing
+    }
+
+}
@@ -36,6 +36,13 @@ public class Event implements Serializable {
     }
 
     public Event(LogIdentity logIdentity, CanalEntry.Entry entry){
+        this(logIdentity, entry, entry.toByteString());
+    }
+
+    /**
+     * 使用预先序列化好的entry数据构造，避免在sink线程上重复序列化
+     */
+    public Event(LogIdentity logIdentity, CanalEntry.Entry entry, ByteString rawEntry){
         this.logIdentity = logIdentity;
         this.entryType = entry.getEntryType();
         this.executeTime = entry.getHeader().getExecuteTime();
@@ -45,8 +52,8 @@ public class Event implements Serializable {
         this.gtid = entry.getHeader().getGtid();
         this.eventType = entry.getHeader().getEventType();
         // build raw
-        this.rawEntry = entry.toByteString();
-        this.rawLength = rawEntry.size();
+        this.rawEntry = (rawEntry != null) ? rawEntry : entry.toByteString();
+        this.rawLength = this.rawEntry.size();
     }
 
     public LogIdentity getLogIdentity() {
@@ -0,0 +1,188 @@
+package com.alibaba.otter.cancel.store.file;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.cancel.store.memory.buffer.MemoryEventStoreBase;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.file.FileMixedEventStore;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 测试内存+磁盘混合store的溢出、读取、回滚以及segment清理
+ *
+ * @version 1.0.26
+ */
+public class FileMixedEventStoreTest extends MemoryEventStoreBase {
+
+    private static final String DESTINATION = "example";
+    private File                dataDir;
+
+    @Before
+    public void setUp() {
+        dataDir = new File(System.getProperty("java.io.tmpdir"), "canal_store_" + System.currentTimeMillis());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    @Test
+    public void testSpillAndRead() {
+        FileMixedEventStore eventStore = buildStore(16, 4);
+        int total = 100;
+        for (int i = 0; i < total; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", i, 1L + i)));
+        }
+        // 超出内存的数据写入了磁盘
+        Assert.assertTrue(segmentCount() > 0);
+
+        Position position = eventStore.getFirstPosition();
+        long expect = 0;
+        while (expect < total) {
+            Events<Event> events = eventStore.tryGet(position, 10);
+            Assert.assertEquals(10, events.getEvents().size());
+            for (Event event : events.getEvents()) {
+                Assert.assertEquals(expect++, event.getPosition());
+                Assert.assertEquals("1", event.getJournalName());
+                Assert.assertNotNull(event.getLogIdentity());
+                Assert.assertNotNull(event.getRawEntry());
+            }
+            position = events.getPositionRange().getEnd();
+            eventStore.ack(position);
+        }
+
+        // 全部ack之后，磁盘数据被清理
+        Assert.assertEquals(0, segmentCount());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testRollback() {
+        FileMixedEventStore eventStore = buildStore(16, 4);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", i, 1L + i)));
+        }
+
+        Position first = eventStore.getFirstPosition();
+        Events<Event> events = eventStore.tryGet(first, 20);
+        Assert.assertEquals(20, events.getEvents().size());
+        eventStore.ack(events.getPositionRange().getEnd());
+        Position ack = events.getPositionRange().getEnd();
+
+        // 跨越磁盘和内存边界读取后回滚
+        events = eventStore.tryGet(ack, 25);
+        Assert.assertEquals(25, events.getEvents().size());
+        Assert.assertEquals(20L, events.getEvents().get(0).getPosition());
+        eventStore.rollback();
+
+        events = eventStore.tryGet(ack, 30);
+        Assert.assertEquals(30, events.getEvents().size());
+        Assert.assertEquals(20L, events.getEvents().get(0).getPosition());
+        Assert.assertEquals(49L, events.getEvents().get(29).getPosition());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testDiskFull() {
+        FileMixedEventStore eventStore = buildStore(16, 1);
+        int count = 0;
+        while (eventStore.tryPut(buildEvent("1", count, 1L + count))) {
+            count++;
+            Assert.assertTrue(count < 10000);
+        }
+        Assert.assertEquals(1, segmentCount());
+
+        // ack之后释放出磁盘空间
+        Events<Event> events = eventStore.tryGet(eventStore.getFirstPosition(), count);
+        Assert.assertEquals(count, events.getEvents().size());
+        eventStore.ack(events.getPositionRange().getEnd());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", count, 1L + count)));
+        eventStore.stop();
+    }
+
+    @Test
+    public void testLargeString() {
+        FileMixedEventStore eventStore = buildStore(16, 100);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 40000) {
+            builder.append("3E11FA47-71CA-11E1-9E33-C80AA9429562:").append(builder.length()).append(',');
+        }
+        String gtid = builder.toString();
+        for (int i = 0; i < 50; i++) {
+            Event event = buildEvent("1", i, 1L + i);
+            event.setGtid(i % 10 == 0 ? gtid : "gtid_" + i);
+            Assert.assertTrue(eventStore.tryPut(event));
+        }
+        Assert.assertTrue(segmentCount() > 0);
+
+        // 超过32767字节的gtid从磁盘读取后保持不变
+        Events<Event> events = eventStore.tryGet(eventStore.getFirstPosition(), 50);
+        Assert.assertEquals(50, events.getEvents().size());
+        for (int i = 0; i < 50; i++) {
+            Event event = events.getEvents().get(i);
+            Assert.assertEquals(i, event.getPosition());
+            Assert.assertEquals(i % 10 == 0 ? gtid : "gtid_" + i, event.getGtid());
+        }
+        eventStore.stop();
+    }
+
+    @Test
+    public void testWatch() {
+        FileMixedEventStore eventStore = buildStore(16, 4);
+        final AtomicInteger fired = new AtomicInteger(0);
+        Runnable callback = new Runnable() {
+
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        eventStore.watch(null, null, 4, callback);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", i, 1L + i)));
+        }
+        Assert.assertEquals(0, fired.get());
+
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 3L, 4L)));
+        Assert.assertEquals(1, fired.get());
+
+        Events<Event> events = eventStore.tryGet(null, 4);
+        Assert.assertEquals(4, events.getEvents().size());
+
+        // 没有新数据，注册后移除不再回调
+        eventStore.watch(null, events.getPositionRange().getEnd(), 1, callback);
+        eventStore.unwatch(callback);
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 4L, 5L)));
+        Assert.assertEquals(1, fired.get());
+
+        // 已经满足的直接回调
+        eventStore.watch(null, events.getPositionRange().getEnd(), 1, callback);
+        Assert.assertEquals(2, fired.get());
+        eventStore.stop();
+    }
+
+    private FileMixedEventStore buildStore(int bufferSize, int maxSegmentCount) {
+        FileMixedEventStore eventStore = new FileMixedEventStore();
+        eventStore.setDestination(DESTINATION);
+        eventStore.setDataDir(dataDir.getPath());
+        eventStore.setBufferSize(bufferSize);
+        eventStore.setSegmentSize(2 * 1024);
+        eventStore.setIndexInterval(4);
+        eventStore.setMaxSegmentCount(maxSegmentCount);
+        eventStore.start();
+        return eventStore;
+    }
+
+    private int segmentCount() {
+        String[] files = new File(dataDir, DESTINATION).list();
+        return files == null ? 0 : files.length;
+    }
+}
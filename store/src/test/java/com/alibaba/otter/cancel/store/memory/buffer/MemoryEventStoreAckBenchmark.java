@@ -0,0 +1,113 @@
+package com.alibaba.otter.cancel.store.memory.buffer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.google.protobuf.ByteString;
+
+/**
+ * ack操作的耗时和批次大小的关系，每次调用前put并get一个完整批次，只统计ack的耗时
+ *
+ * @version 1.0.26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryEventStoreAckBenchmark {
+
+    private static final int           EVENT_SIZE = 1024;
+
+    @Param({ "16", "256", "4096" })
+    private int                        batchSize;
+
+    @Param({ "ITEMSIZE", "MEMSIZE" })
+    private String                     batchMode;
+
+    private MemoryEventStoreWithBuffer eventStore;
+    private List<Event>                batch;
+    private Position                   ack;
+    private long                       offset     = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        eventStore = new MemoryEventStoreWithBuffer(BatchMode.valueOf(batchMode));
+        eventStore.setBufferSize(16 * 1024);
+        eventStore.setBufferMemUnit(EVENT_SIZE); // 每条event的大小正好为1kb，两种模式下的批次条数一致
+        eventStore.start();
+        batch = new ArrayList<Event>(batchSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        batch.clear();
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(buildEvent(offset++));
+        }
+        eventStore.tryPut(batch);
+        ack = eventStore.tryGet(ack, batchSize).getPositionRange().getEnd();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        eventStore.stop();
+    }
+
+    @Benchmark
+    public void ack() {
+        eventStore.ack(ack);
+    }
+
+    /**
+     * 用storeValue补齐，序列化后的entry(即event的rawLength)正好为EVENT_SIZE
+     */
+    private Event buildEvent(long offset) {
+        Header.Builder headerBuilder = Header.newBuilder();
+        headerBuilder.setLogfileName("mysql-bin.000001");
+        headerBuilder.setLogfileOffset(offset);
+        headerBuilder.setExecuteTime(offset);
+        headerBuilder.setEventLength(EVENT_SIZE);
+        Entry.Builder entryBuilder = Entry.newBuilder();
+        entryBuilder.setHeader(headerBuilder.build());
+        // storeValue的tag占1字节，长度在128到16383之间时varint占2字节
+        int padding = EVENT_SIZE - entryBuilder.build().getSerializedSize() - 3;
+        entryBuilder.setStoreValue(ByteString.copyFrom(new byte[padding]));
+        Entry entry = entryBuilder.build();
+        if (entry.getSerializedSize() != EVENT_SIZE) {
+            throw new IllegalStateException("unexpected event size : " + entry.getSerializedSize());
+        }
+        return new Event(new LogIdentity(new InetSocketAddress("127.0.0.1", 3306), 1234L), entry);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MemoryEventStoreAckBenchmark.class.getSimpleName()).build()).run();
+    }
+}
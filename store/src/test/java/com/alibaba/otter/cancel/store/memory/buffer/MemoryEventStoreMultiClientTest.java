@@ -0,0 +1,179 @@
+package com.alibaba.otter.cancel.store.memory.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 测试多个client独立游标的get/ack/rollback
+ *
+ * @version 1.0.26
+ */
+public class MemoryEventStoreMultiClientTest extends MemoryEventStoreBase {
+
+    private ClientIdentity client1 = new ClientIdentity("example", (short) 1001);
+    private ClientIdentity client2 = new ClientIdentity("example", (short) 1002);
+
+    @Test
+    public void testIndependentCursor() {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        for (int i = 0; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+
+        Position first = eventStore.getFirstPosition();
+        Events<Event> events1 = eventStore.tryGet(client1, first, bufferSize / 2);
+        Events<Event> events2 = eventStore.tryGet(client2, first, bufferSize);
+        // 两个client都能拿到完整的数据
+        Assert.assertEquals(bufferSize / 2, events1.getEvents().size());
+        Assert.assertEquals(bufferSize, events2.getEvents().size());
+        Assert.assertEquals(1L, events1.getEvents().get(0).getExecuteTime());
+        Assert.assertEquals(1L, events2.getEvents().get(0).getExecuteTime());
+
+        // client2全部ack，但client1还未ack，依然不能写入
+        eventStore.ack(client2, events2.getPositionRange().getEnd());
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+
+        // client1 ack之后，释放最小ack之前的空间
+        eventStore.ack(client1, events1.getPositionRange().getEnd());
+        for (int i = 0; i < bufferSize / 2; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize * 2)));
+
+        Events<Event> next1 = eventStore.tryGet(client1, events1.getPositionRange().getEnd(), bufferSize);
+        Events<Event> next2 = eventStore.tryGet(client2, events2.getPositionRange().getEnd(), bufferSize);
+        Assert.assertEquals(bufferSize, next1.getEvents().size());
+        Assert.assertEquals(bufferSize / 2, next2.getEvents().size());
+        Assert.assertEquals(1L + bufferSize / 2, next1.getEvents().get(0).getExecuteTime());
+        Assert.assertEquals(1L + bufferSize, next2.getEvents().get(0).getExecuteTime());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testRollbackAndUnsubscribe() {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer(BatchMode.ITEMSIZE);
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        for (int i = 0; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+
+        Position first = eventStore.getFirstPosition();
+        Events<Event> events1 = eventStore.tryGet(client1, first, bufferSize);
+        Events<Event> events2 = eventStore.tryGet(client2, first, 4);
+        Assert.assertEquals(4, events2.getEvents().size());
+
+        // client2回滚不影响client1
+        eventStore.rollback(client2);
+        Assert.assertEquals(0, eventStore.tryGet(client1, events1.getPositionRange().getEnd(), bufferSize)
+            .getEvents()
+            .size());
+        events2 = eventStore.tryGet(client2, first, bufferSize);
+        Assert.assertEquals(bufferSize, events2.getEvents().size());
+
+        eventStore.ack(client1, events1.getPositionRange().getEnd());
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+
+        // client2不再消费后，不再阻塞数据回收
+        eventStore.unsubscribe(client2);
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+        eventStore.stop();
+    }
+
+    @Test
+    public void testSubscribeFromPosition() {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        for (int i = 0; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+
+        // client1订阅后还没有get，client2的ack不能回收client1未消费的数据
+        eventStore.subscribe(client1, null);
+        Events<Event> events2 = eventStore.tryGet(client2, eventStore.getFirstPosition(), bufferSize);
+        eventStore.ack(client2, events2.getPositionRange().getEnd());
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+        Events<Event> events1 = eventStore.tryGet(client1, null, 4);
+        Assert.assertEquals(1L, events1.getEvents().get(0).getExecuteTime());
+        eventStore.ack(client1, events1.getPositionRange().getEnd());
+
+        // client3从上次消费的第8条之后开始
+        ClientIdentity client3 = new ClientIdentity("example", (short) 1003);
+        Position cursor = CanalEventUtils.createPosition(buildEvent("1", 1L, 8L));
+        eventStore.subscribe(client3, cursor);
+        Events<Event> events3 = eventStore.tryGet(client3, cursor, bufferSize);
+        Assert.assertEquals(bufferSize - 8, events3.getEvents().size());
+        Assert.assertEquals(9L, events3.getEvents().get(0).getExecuteTime());
+
+        // client1之前的数据已经回收，不能再从之前的位置订阅
+        eventStore.unsubscribe(client2);
+        eventStore.unsubscribe(client3);
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+        try {
+            eventStore.subscribe(client2, CanalEventUtils.createPosition(buildEvent("1", 1L, 2L)));
+            Assert.fail("position has been reclaimed");
+        } catch (CanalStoreException e) {
+            // expected
+        }
+        eventStore.stop();
+    }
+
+    @Test
+    public void testResubscribeAfterLastUnsubscribe() {
+        doResubscribeAfterLastUnsubscribe(BatchMode.ITEMSIZE);
+        doResubscribeAfterLastUnsubscribe(BatchMode.MEMSIZE);
+    }
+
+    private void doResubscribeAfterLastUnsubscribe(BatchMode batchMode) {
+        int bufferSize = 16;
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer(batchMode);
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        for (int i = 0; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+        eventStore.subscribe(client1, null);
+        Events<Event> events = eventStore.tryGet(client1, null, bufferSize);
+        Assert.assertEquals(bufferSize, events.getEvents().size());
+        eventStore.ack(client1, events.getPositionRange().getEnd());
+        Position cursor = events.getPositionRange().getEnd();
+        eventStore.unsubscribe(client1);
+
+        // 没有client时，默认游标从最后一个client的ack位置继续
+        for (int round = 1; round <= 2; round++) {
+            for (int i = 0; i < bufferSize; i++) {
+                Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + round * bufferSize + i)));
+            }
+
+            eventStore.subscribe(client1, cursor);
+            events = eventStore.tryGet(client1, cursor, bufferSize);
+            Assert.assertEquals(bufferSize, events.getEvents().size());
+            for (int i = 0; i < bufferSize; i++) {
+                Assert.assertEquals(1L + round * bufferSize + i, events.getEvents().get(i).getExecuteTime());
+            }
+            eventStore.ack(client1, events.getPositionRange().getEnd());
+            cursor = events.getPositionRange().getEnd();
+            eventStore.unsubscribe(client1);
+        }
+        eventStore.stop();
+    }
+}
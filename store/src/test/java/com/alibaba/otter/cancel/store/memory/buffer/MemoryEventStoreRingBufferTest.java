@@ -0,0 +1,209 @@
+package com.alibaba.otter.cancel.store.memory.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithRingBuffer;
+import com.alibaba.otter.canal.store.memory.ringbuffer.BlockingWaitStrategy;
+import com.alibaba.otter.canal.store.memory.ringbuffer.BusySpinWaitStrategy;
+import com.alibaba.otter.canal.store.memory.ringbuffer.WaitStrategy;
+import com.alibaba.otter.canal.store.memory.ringbuffer.YieldingWaitStrategy;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 测试无锁ringbuffer的put/get/ack/rollback操作
+ *
+ * @version 1.0.26
+ */
+public class MemoryEventStoreRingBufferTest extends MemoryEventStoreBase {
+
+    @Test
+    public void testFullPutAndAck() {
+        int bufferSize = 16;
+        MemoryEventStoreWithRingBuffer eventStore = new MemoryEventStoreWithRingBuffer();
+        eventStore.setBufferSize(bufferSize);
+        eventStore.start();
+
+        for (int i = 0; i < bufferSize; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+
+        Position first = eventStore.getFirstPosition();
+        Events<Event> events = eventStore.tryGet(first, bufferSize / 2);
+        Assert.assertEquals(bufferSize / 2, events.getEvents().size());
+        // get之后未ack，依然不能写入
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize)));
+
+        eventStore.rollback();
+        events = eventStore.tryGet(first, bufferSize / 2);
+        Assert.assertEquals(bufferSize / 2, events.getEvents().size());
+
+        eventStore.ack(events.getPositionRange().getEnd());
+        for (int i = 0; i < bufferSize / 2; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 1L, 1L + bufferSize * 2)));
+
+        events = eventStore.tryGet(events.getPositionRange().getEnd(), bufferSize);
+        Assert.assertEquals(bufferSize, events.getEvents().size());
+        Assert.assertEquals(1L + bufferSize / 2, events.getEvents().get(0).getExecuteTime());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testGetTimeout() throws Exception {
+        MemoryEventStoreWithRingBuffer eventStore = new MemoryEventStoreWithRingBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.start();
+
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L)));
+        long start = System.currentTimeMillis();
+        Events<Event> events = eventStore.get(eventStore.getFirstPosition(), 10, 200L, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 150L);
+        Assert.assertEquals(1, events.getEvents().size()); // 超时后有多少取多少
+        eventStore.stop();
+    }
+
+    @Test
+    public void testConcurrentGet() throws Exception {
+        final int threads = 4;
+        final int total = 65536;
+        final MemoryEventStoreWithRingBuffer eventStore = new MemoryEventStoreWithRingBuffer();
+        eventStore.setBufferSize(total);
+        eventStore.start();
+        for (long offset = 0; offset < total; offset++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", offset, 1L)));
+        }
+
+        // 多个线程并发get，每次get一条，CAS失败时不能返回空，正好取完所有数据
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Set<Long> result = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final AtomicInteger empty = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < threads; i++) {
+            final boolean blocking = (i % 2 == 0);
+            futures.add(executor.submit(new Callable<Object>() {
+
+                public Object call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < total / threads; j++) {
+                        Events<Event> events = blocking ? eventStore.get(null, 1) : eventStore.tryGet(null, 1);
+                        if (events.getEvents().isEmpty()) {
+                            empty.incrementAndGet();
+                        }
+                        for (Event event : events.getEvents()) {
+                            Assert.assertTrue(result.add(event.getPosition()));
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdownNow();
+
+        Assert.assertEquals(0, empty.get());
+        Assert.assertEquals(total, result.size());
+        Assert.assertTrue(eventStore.tryGet(null, 1).getEvents().isEmpty());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testMultiThreadWithBlocking() throws Exception {
+        doMultiThread(new BlockingWaitStrategy(), BatchMode.ITEMSIZE);
+        doMultiThread(new BlockingWaitStrategy(), BatchMode.MEMSIZE);
+    }
+
+    @Test
+    public void testMultiThreadWithYielding() throws Exception {
+        doMultiThread(new YieldingWaitStrategy(), BatchMode.ITEMSIZE);
+    }
+
+    @Test
+    public void testMultiThreadWithBusySpin() throws Exception {
+        doMultiThread(new BusySpinWaitStrategy(), BatchMode.MEMSIZE);
+    }
+
+    private void doMultiThread(WaitStrategy waitStrategy, BatchMode batchMode) throws Exception {
+        final int total = 100000;
+        final MemoryEventStoreWithRingBuffer eventStore = new MemoryEventStoreWithRingBuffer();
+        eventStore.setBufferSize(256);
+        eventStore.setBatchMode(batchMode);
+        eventStore.setBufferMemUnit(32);
+        eventStore.setWaitStrategy(waitStrategy);
+        eventStore.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Long> result = new ArrayList<Long>(total);
+        executor.submit(new Runnable() {
+
+            public void run() {
+                try {
+                    for (long offset = 0; offset < total; offset++) {
+                        eventStore.put(buildEvent("1", offset, 1L));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        executor.submit(new Runnable() {
+
+            public void run() {
+                try {
+                    Position position = null;
+                    while (result.size() < total) {
+                        Events<Event> events = eventStore.get(position, 50, 100L, TimeUnit.MILLISECONDS);
+                        if (events.getEvents().isEmpty()) {
+                            continue;
+                        }
+
+                        for (Event event : events.getEvents()) {
+                            result.add(event.getPosition());
+                        }
+                        position = events.getPositionRange().getEnd();
+                        eventStore.ack(position);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+
+        Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        eventStore.stop();
+
+        Assert.assertEquals(total, result.size());
+        long last = -1L;
+        for (Long offset : result) {
+            Assert.assertTrue(last + 1 == offset);// 取出来的数据一定是递增的
+            last = offset;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.alibaba.otter.cancel.store.memory.buffer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithRingBuffer;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 测试数据到达的监听
+ *
+ * @version 1.0.26
+ */
+public class MemoryEventStoreWatchTest extends MemoryEventStoreBase {
+
+    private ClientIdentity client = new ClientIdentity("example", (short) 1001);
+
+    @Test
+    public void testWatchUntilBatchSize() {
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.start();
+
+        final AtomicInteger fired = new AtomicInteger(0);
+        Runnable callback = new Runnable() {
+
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        eventStore.watch(client, null, 4, callback);
+        Assert.assertEquals(0, fired.get());
+
+        // 数据不足batchSize，不回调
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+        Assert.assertEquals(0, fired.get());
+
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 4L)));
+        Assert.assertEquals(1, fired.get());
+
+        // 一次性的监听，不会重复回调
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 5L)));
+        Assert.assertEquals(1, fired.get());
+
+        Events<Event> events = eventStore.tryGet(client, null, 4);
+        Assert.assertEquals(4, events.getEvents().size());
+
+        // 已经满足的直接回调
+        eventStore.watch(client, events.getPositionRange().getEnd(), 1, callback);
+        Assert.assertEquals(2, fired.get());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testUnwatch() {
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.start();
+
+        final AtomicInteger fired = new AtomicInteger(0);
+        Runnable callback = new Runnable() {
+
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        eventStore.watch(client, null, 1, callback);
+        eventStore.unwatch(callback);
+
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L)));
+        Assert.assertEquals(0, fired.get());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testRingBufferWatch() {
+        MemoryEventStoreWithRingBuffer eventStore = new MemoryEventStoreWithRingBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.start();
+
+        final AtomicInteger fired = new AtomicInteger(0);
+        Runnable callback = new Runnable() {
+
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        eventStore.watch(client, null, 4, callback);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 1L + i)));
+        }
+        Assert.assertEquals(0, fired.get());
+
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 4L)));
+        Assert.assertEquals(1, fired.get());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 5L)));
+        Assert.assertEquals(1, fired.get());
+
+        Events<Event> events = eventStore.tryGet(null, 4);
+        Assert.assertEquals(4, events.getEvents().size());
+
+        eventStore.watch(client, events.getPositionRange().getEnd(), 1, callback);
+        Assert.assertEquals(2, fired.get());
+
+        eventStore.watch(client, events.getPositionRange().getEnd(), 2, callback);
+        eventStore.unwatch(callback);
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L, 6L)));
+        Assert.assertEquals(2, fired.get());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testRingBufferWatchConcurrentPut() throws Exception {
+        final MemoryEventStoreWithRingBuffer eventStore = new MemoryEventStoreWithRingBuffer();
+        eventStore.setBufferSize(1024);
+        eventStore.start();
+
+        // 并发put和watch，每个监听都只回调一次且不会丢失
+        final int count = 500;
+        final AtomicInteger fired = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(count);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.submit(new Runnable() {
+
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    eventStore.tryPut(buildEvent("1", 1L, 1L + i));
+                }
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            final int batchSize = i + 1;
+            eventStore.watch(client, null, batchSize, new Runnable() {
+
+                public void run() {
+                    fired.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assert.assertEquals(count, fired.get());
+        executor.shutdownNow();
+        eventStore.stop();
+    }
+}